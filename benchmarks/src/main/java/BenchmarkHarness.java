@@ -0,0 +1,391 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * A small JMH-style benchmark harness: warmup and measurement iterations,
+ * one forked JVM per benchmark, and allocation per operation read from the
+ * thread's allocation counter (the same source as JMH's GC profiler).
+ * @author Parusan
+ * @version 1.0
+ */
+public class BenchmarkHarness {
+
+    /**
+     * A benchmarked operation. setup() runs once before timing starts and
+     * run() is called repeatedly while timing.
+     */
+    public interface Benchmark {
+        /**
+         * Prepares the state for the given size parameter
+         * @param size the deck, hand, or pile size to benchmark with
+         */
+        void setup(int size);
+        
+        /**
+         * Performs one operation
+         * @return a value that depends on the work done, so it cannot be optimized away
+         */
+        long run();
+    }
+    
+    /**
+     * The measured result of one benchmark at one size
+     */
+    public static class Result {
+        final String name;
+        final int size;
+        final double opsPerSecond;
+        final double error;
+        final double bytesPerOp;
+        final double allocMbPerSecond;
+        
+        Result(String name, int size, double opsPerSecond, double error, double bytesPerOp, double allocMbPerSecond) {
+            this.name = name;
+            this.size = size;
+            this.opsPerSecond = opsPerSecond;
+            this.error = error;
+            this.bytesPerOp = bytesPerOp;
+            this.allocMbPerSecond = allocMbPerSecond;
+        }
+        
+        /**
+         * Formats the result as one machine-readable line, used between forked JVMs
+         * @return the encoded result
+         */
+        String encode() {
+            return "RESULT " + name + " " + size + " " + opsPerSecond + " " + error + " " + bytesPerOp + " " + allocMbPerSecond;
+        }
+        
+        /**
+         * Parses a line written by encode()
+         * @param line the encoded result
+         * @return the result
+         */
+        static Result decode(String line) {
+            String[] parts = line.split(" ");
+            return new Result(parts[1], Integer.parseInt(parts[2]), Double.parseDouble(parts[3]),
+                              Double.parseDouble(parts[4]), Double.parseDouble(parts[5]), Double.parseDouble(parts[6]));
+        }
+    }
+    
+    // Consumed results end up here so the JIT cannot drop the benchmarked work
+    static volatile long sink;
+    
+    private final List<String> names = new ArrayList<>();
+    private final List<Class<? extends Benchmark>> benchmarks = new ArrayList<>();
+    private final List<String[]> benchmarkJvmArgs = new ArrayList<>();
+    private final List<String[]> comparisons = new ArrayList<>();
+    private int[] sizes = {52};
+    private int warmupIterations = 3;
+    private int measurementIterations = 5;
+    private long iterationMillis = 500;
+    private int forks = 1;
+    private String[] jvmArgs = new String[0];
+    
+    /**
+     * Registers a benchmark under a name
+     * @param name the benchmark name shown in the report
+     * @param benchmark the benchmark class, which needs a public no-argument constructor
+     * @param jvmArgs extra arguments for the benchmark's forked JVMs, such as system properties
+     * @return this harness
+     */
+    public BenchmarkHarness add(String name, Class<? extends Benchmark> benchmark, String... jvmArgs) {
+        names.add(name);
+        benchmarks.add(benchmark);
+        benchmarkJvmArgs.add(jvmArgs);
+        return this;
+    }
+    
+    /**
+     * Reports how much longer one benchmark's operation takes than a baseline's,
+     * at each size both of them ran with
+     * @param name the benchmark to compare
+     * @param baseline the benchmark it is compared with, such as the same work without instrumentation
+     * @return this harness
+     */
+    public BenchmarkHarness compare(String name, String baseline) {
+        comparisons.add(new String[] {name, baseline});
+        return this;
+    }
+    
+    /**
+     * Sets the default size parameters
+     * @param sizes the sizes every benchmark runs with
+     * @return this harness
+     */
+    public BenchmarkHarness sizes(int... sizes) {
+        this.sizes = sizes;
+        return this;
+    }
+    
+    /**
+     * Parses the command line and runs the selected benchmarks.
+     * Options: [regex] [-p sizes] [-wi n] [-i n] [-r millis] [-f forks] [-jvmArgs "args"]
+     * @param args the command line arguments
+     * @throws Exception if a forked benchmark JVM fails
+     */
+    public void main(String[] args) throws Exception {
+        Pattern filter = null;
+        
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--run":
+                    // Forked child: run exactly one benchmark at one size
+                    runOne(args[i + 1], Integer.parseInt(args[i + 2]));
+                    return;
+                case "-p":
+                    String[] parts = args[++i].split(",");
+                    sizes = new int[parts.length];
+                    for (int j = 0; j < parts.length; j++) {
+                        sizes[j] = Integer.parseInt(parts[j].trim());
+                    }
+                    break;
+                case "-wi":
+                    warmupIterations = Integer.parseInt(args[++i]);
+                    break;
+                case "-i":
+                    measurementIterations = Integer.parseInt(args[++i]);
+                    break;
+                case "-r":
+                    iterationMillis = Long.parseLong(args[++i]);
+                    break;
+                case "-f":
+                    forks = Integer.parseInt(args[++i]);
+                    break;
+                case "-jvmArgs":
+                    jvmArgs = args[++i].trim().split("\\s+");
+                    break;
+                default:
+                    filter = Pattern.compile(args[i]);
+            }
+        }
+        
+        List<Result> results = new ArrayList<>();
+        for (int b = 0; b < names.size(); b++) {
+            if (filter != null && !filter.matcher(names.get(b)).find()) {
+                continue;
+            }
+            for (int size : sizes) {
+                Result result = forks > 0 ? fork(names.get(b), size) : measure(b, size);
+                results.add(result);
+                System.out.println(String.format(Locale.ROOT, "%-28s size=%-6d %,16.1f ops/s", result.name, result.size, result.opsPerSecond));
+            }
+        }
+        
+        printReport(results);
+        printComparisons(results);
+    }
+    
+    /**
+     * Runs one benchmark in the current JVM and prints its encoded result
+     * @param name the benchmark name
+     * @param size the size parameter
+     */
+    private void runOne(String name, int size) throws Exception {
+        Result result = measure(names.indexOf(name), size);
+        System.out.println(result.encode());
+    }
+    
+    /**
+     * Runs one benchmark in freshly started JVMs and averages their results
+     * @param name the benchmark name
+     * @param size the size parameter
+     * @return the averaged result
+     */
+    private Result fork(String name, int size) throws Exception {
+        double ops = 0, error = 0, bytes = 0, alloc = 0;
+        
+        for (int f = 0; f < forks; f++) {
+            List<String> command = new ArrayList<>();
+            command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+            for (String arg : jvmArgs) {
+                if (!arg.isEmpty()) {
+                    command.add(arg);
+                }
+            }
+            for (String arg : benchmarkJvmArgs.get(names.indexOf(name))) {
+                command.add(arg);
+            }
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(mainClassName());
+            command.add("-wi");
+            command.add(String.valueOf(warmupIterations));
+            command.add("-i");
+            command.add(String.valueOf(measurementIterations));
+            command.add("-r");
+            command.add(String.valueOf(iterationMillis));
+            command.add("--run");
+            command.add(name);
+            command.add(String.valueOf(size));
+            
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            Result result = null;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("RESULT ")) {
+                        result = Result.decode(line);
+                    } else {
+                        System.out.println("  [fork] " + line);
+                    }
+                }
+            }
+            if (process.waitFor() != 0 || result == null) {
+                throw new IllegalStateException("Forked benchmark failed: " + name + " size=" + size);
+            }
+            
+            ops += result.opsPerSecond;
+            error += result.error;
+            bytes += result.bytesPerOp;
+            alloc += result.allocMbPerSecond;
+        }
+        
+        return new Result(name, size, ops / forks, error / forks, bytes / forks, alloc / forks);
+    }
+    
+    /**
+     * Returns the class whose main method started this JVM
+     * @return the main class name
+     */
+    private static String mainClassName() {
+        String command = System.getProperty("sun.java.command", "CardBenchmarks");
+        return command.split(" ")[0];
+    }
+    
+    /**
+     * Times one benchmark in the current JVM
+     * @param index the benchmark's registration index
+     * @param size the size parameter
+     * @return the measured result
+     */
+    private Result measure(int index, int size) throws Exception {
+        Benchmark benchmark = benchmarks.get(index).getDeclaredConstructor().newInstance();
+        benchmark.setup(size);
+        
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(benchmark, null);
+        }
+        
+        double[] opsPerSecond = new double[measurementIterations];
+        long totalOps = 0;
+        long totalBytes = 0;
+        long totalNanos = 0;
+        long[] counters = new long[3];
+        for (int i = 0; i < measurementIterations; i++) {
+            iteration(benchmark, counters);
+            opsPerSecond[i] = counters[0] * 1e9 / counters[2];
+            totalOps += counters[0];
+            totalBytes += counters[1];
+            totalNanos += counters[2];
+        }
+        
+        double mean = 0;
+        for (double value : opsPerSecond) {
+            mean += value;
+        }
+        mean /= opsPerSecond.length;
+        double variance = 0;
+        for (double value : opsPerSecond) {
+            variance += (value - mean) * (value - mean);
+        }
+        double error = opsPerSecond.length > 1 ? 2 * Math.sqrt(variance / (opsPerSecond.length - 1)) : 0;
+        
+        double bytesPerOp = totalBytes < 0 ? Double.NaN : (double) totalBytes / totalOps;
+        double allocMbPerSecond = totalBytes < 0 ? Double.NaN : totalBytes / (totalNanos / 1e9) / (1024 * 1024);
+        return new Result(names.get(index), size, mean, error, bytesPerOp, allocMbPerSecond);
+    }
+    
+    /**
+     * Calls the benchmark in batches until the iteration time has passed
+     * @param benchmark the benchmark to call
+     * @param counters receives operations, allocated bytes, and elapsed nanoseconds, or null for warmup
+     */
+    private void iteration(Benchmark benchmark, long[] counters) {
+        long deadline = iterationMillis * 1_000_000L;
+        long result = 0;
+        long ops = 0;
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long elapsed;
+        
+        do {
+            for (int i = 0; i < 64; i++) {
+                result += benchmark.run();
+            }
+            ops += 64;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < deadline);
+        
+        long bytesAfter = allocatedBytes();
+        sink = result;
+        if (counters != null) {
+            counters[0] = ops;
+            counters[1] = bytesBefore < 0 ? -1 : bytesAfter - bytesBefore;
+            counters[2] = elapsed;
+        }
+    }
+    
+    /**
+     * Returns the bytes allocated so far by the current thread
+     * @return the allocated bytes, or -1 if the JVM does not report them
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+    
+    /**
+     * Prints the final results table
+     * @param results the results to print
+     */
+    private static void printReport(List<Result> results) {
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "%-28s %7s %18s %14s %12s %12s",
+                                         "Benchmark", "size", "ops/s", "error", "B/op", "alloc MB/s"));
+        for (Result r : results) {
+            System.out.println(String.format(Locale.ROOT, "%-28s %7d %,18.1f %,14.1f %12.1f %12.1f",
+                                             r.name, r.size, r.opsPerSecond, r.error, r.bytesPerOp, r.allocMbPerSecond));
+        }
+    }
+    
+    /**
+     * Prints the difference between each compared benchmark and its baseline
+     * @param results the results to compare
+     */
+    private void printComparisons(List<Result> results) {
+        boolean first = true;
+        for (String[] comparison : comparisons) {
+            for (Result r : results) {
+                if (!r.name.equals(comparison[0])) {
+                    continue;
+                }
+                for (Result base : results) {
+                    if (!base.name.equals(comparison[1]) || base.size != r.size) {
+                        continue;
+                    }
+                    if (first) {
+                        System.out.println();
+                        System.out.println(String.format(Locale.ROOT, "%-28s %7s %-20s %12s %10s",
+                                                         "Benchmark", "size", "baseline", "ns/op diff", "diff %"));
+                        first = false;
+                    }
+                    double nanos = 1e9 / r.opsPerSecond;
+                    double baseNanos = 1e9 / base.opsPerSecond;
+                    System.out.println(String.format(Locale.ROOT, "%-28s %7d %-20s %+12.2f %+9.1f%%",
+                                                     r.name, r.size, base.name, nanos - baseNanos,
+                                                     (nanos - baseNanos) / baseNanos * 100));
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
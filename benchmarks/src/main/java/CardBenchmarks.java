@@ -0,0 +1,540 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Benchmarks for the hot paths of Card, Deck, Player, DiscardPile and HighCardGame.
+ * The size parameter is the number of cards in the deck, hand, or pile being
+ * worked on: 52 for a single deck up to multi-deck shoes of several thousand cards.
+ * When an operation empties or overfills its structure, the structure is rebuilt
+ * from a template; that cost is shared across the size operations before it.
+ * @author Parusan
+ * @version 1.0
+ */
+public class CardBenchmarks {
+
+    /**
+     * Runs the benchmarks
+     * @param args harness options, see BenchmarkHarness.main
+     * @throws Exception if a forked benchmark fails
+     */
+    public static void main(String[] args) throws Exception {
+        new BenchmarkHarness()
+            .sizes(52, 416, 4160)
+            .add("Deck.draw", DeckDraw.class)
+            .add("Deck.addCard", DeckAddCard.class)
+            .add("Deck.shuffle", DeckShuffle.class)
+            .add("Deck.new", NewDeck.class)
+            .add("Deck.standard", StandardShoe.class)
+            .add("DeckDefinitions.load", LoadDefinitions.class)
+            .add("Player.draw", PlayerDraw.class)
+            .add("Player.discardCard", PlayerDiscardCard.class)
+            .add("Player.returnCard", PlayerReturnCard.class)
+            .add("Player.playHighest", PlayerPlayHighest.class)
+            .add("Player.playHighest.ranked", RankedPlayHighest.class)
+            .add("DiscardPile.addCard", PileAddCard.class)
+            .add("DiscardPile.removeCard", PileRemoveCard.class)
+            .add("DiscardPile.removeAll", PileRemoveAll.class)
+            .add("DiscardPile.toString", PileToString.class)
+            .add("DiscardPile.appendTo", PileAppendTo.class)
+            .add("HighCardGame.game", HighCardGameRound.class)
+            .add("GameContext.games", ContextGames.class)
+            .add("TableStore.games", StoreGames.class)
+            .add("Branch.copy", BranchCopy.class)
+            .add("Branch.persistent", BranchPersistent.class)
+            .add("WinProbability.estimate", EstimateOdds.class)
+            .add("ExactOdds.solve", SolveOdds.class)
+            .add("Metrics.baseline", BareDeckCycle.class, "-Dcards.metrics=false")
+            .add("Metrics.off", DeckCycle.class, "-Dcards.metrics=false")
+            .add("Metrics.on", DeckCycle.class, "-Dcards.metrics=true")
+            .compare("Metrics.off", "Metrics.baseline")
+            .compare("Metrics.on", "Metrics.baseline")
+            .main(args);
+    }
+    
+    /**
+     * Builds a shuffled array of the given size from repeated standard decks
+     * @param size the number of cards
+     * @return the cards
+     */
+    static Card[] cards(int size) {
+        Card[] standard = new Deck().getCards();
+        Card[] cards = new Card[size];
+        for (int i = 0; i < size; i++) {
+            cards[i] = standard[i % standard.length];
+        }
+        Deck deck = new Deck(cards);
+        deck.shuffle();
+        return deck.getCards();
+    }
+    
+    /** Draws the top card of a deck */
+    public static class DeckDraw implements BenchmarkHarness.Benchmark {
+        private Card[] template;
+        private Deck deck;
+        
+        public void setup(int size) {
+            template = cards(size);
+            deck = new Deck(template);
+        }
+        
+        public long run() {
+            if (deck.size() == 0) {
+                deck = new Deck(template);
+            }
+            return deck.draw().getValue();
+        }
+    }
+    
+    /** Adds a card to the bottom of a deck, growing it to twice its starting size */
+    public static class DeckAddCard implements BenchmarkHarness.Benchmark {
+        private Card[] template;
+        private Deck deck;
+        private int next;
+        
+        public void setup(int size) {
+            template = cards(size);
+            deck = new Deck(template);
+        }
+        
+        public long run() {
+            if (deck.size() == 2 * template.length) {
+                deck = new Deck(template);
+            }
+            deck.addCard(template[next]);
+            next = next + 1 == template.length ? 0 : next + 1;
+            return deck.size();
+        }
+    }
+    
+    /** Shuffles a full deck */
+    public static class DeckShuffle implements BenchmarkHarness.Benchmark {
+        private Deck deck;
+        
+        public void setup(int size) {
+            deck = new Deck(cards(size));
+        }
+        
+        public long run() {
+            deck.shuffle();
+            return deck.size();
+        }
+    }
+    
+    /** Builds a new standard deck (the size parameter does not apply) */
+    public static class NewDeck implements BenchmarkHarness.Benchmark {
+        public void setup(int size) {
+        }
+        
+        public long run() {
+            return new Deck().size();
+        }
+    }
+    
+    /** Builds an unshuffled shoe of size / 52 standard decks */
+    public static class StandardShoe implements BenchmarkHarness.Benchmark {
+        private int copies;
+        
+        public void setup(int size) {
+            copies = Math.max(1, size / Card.STANDARD_COUNT);
+        }
+        
+        public long run() {
+            return Deck.standard(copies).size();
+        }
+    }
+    
+    /** Loads size / 52 deck definitions of 52 cards each from an in-memory file */
+    public static class LoadDefinitions implements BenchmarkHarness.Benchmark {
+        private ByteBuffer file;
+        
+        public void setup(int size) {
+            StringBuilder text = new StringBuilder();
+            for (int d = 0; d < Math.max(1, size / Card.STANDARD_COUNT); d++) {
+                text.append("deck Deck").append(d).append('\n');
+                text.append("suits Hearts Clubs Diamonds Suit").append(d).append('\n');
+                for (int rank = 0; rank < 13; rank++) {
+                    Card card = Card.byId(rank);
+                    text.append("card ").append(card.getName()).append(' ').append(card.getValue()).append('\n');
+                }
+            }
+            file = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        
+        public long run() {
+            try {
+                return new DeckDefinitions().load("bench", file).size();
+            } catch (CharacterCodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+    
+    /** Draws cards into a hand until the deck is empty */
+    public static class PlayerDraw implements BenchmarkHarness.Benchmark {
+        private Card[] template;
+        private Deck deck;
+        private Player player;
+        
+        public void setup(int size) {
+            template = cards(size);
+            deck = new Deck(template);
+            player = new Player("Bench", 20);
+        }
+        
+        public long run() {
+            if (deck.size() == 0) {
+                deck = new Deck(template);
+                player = new Player("Bench", 20);
+            }
+            player.draw(deck);
+            return player.size();
+        }
+    }
+    
+    /** Discards cards from a full hand, in random order, until it is empty */
+    public static class PlayerDiscardCard implements BenchmarkHarness.Benchmark {
+        private Card[] template;
+        private Card[] order;
+        private Player player;
+        private DiscardPile pile;
+        private int next;
+        
+        public void setup(int size) {
+            template = cards(size);
+            order = cards(size);
+            reset();
+        }
+        
+        private void reset() {
+            player = new Player("Bench", 20, template.clone());
+            pile = new DiscardPile();
+            next = 0;
+        }
+        
+        public long run() {
+            if (next == order.length) {
+                reset();
+            }
+            return player.discardCard(order[next++], pile) ? 1 : 0;
+        }
+    }
+    
+    /** Returns cards from a full hand to a deck, in random order, until the hand is empty */
+    public static class PlayerReturnCard implements BenchmarkHarness.Benchmark {
+        private Card[] template;
+        private Card[] order;
+        private Player player;
+        private Deck deck;
+        private int next;
+        
+        public void setup(int size) {
+            template = cards(size);
+            order = cards(size);
+            reset();
+        }
+        
+        private void reset() {
+            player = new Player("Bench", 20, template.clone());
+            deck = new Deck(new Card[0]);
+            next = 0;
+        }
+        
+        public long run() {
+            if (next == order.length) {
+                reset();
+            }
+            return player.returnCard(order[next++], deck) ? 1 : 0;
+        }
+    }
+    
+    /** Plays the highest card from a full array hand until it is empty */
+    public static class PlayerPlayHighest implements BenchmarkHarness.Benchmark {
+        private Card[] template;
+        Player player;
+        private DiscardPile pile;
+        
+        public void setup(int size) {
+            template = cards(size);
+            reset();
+        }
+        
+        void reset() {
+            player = new Player("Bench", 20, template.clone());
+            pile = new DiscardPile();
+        }
+        
+        public long run() {
+            if (player.size() == 0) {
+                reset();
+            }
+            return player.playHighest(pile).getValue();
+        }
+    }
+    
+    /** Plays the highest card from a full ranked hand until it is empty */
+    public static class RankedPlayHighest extends PlayerPlayHighest {
+        @Override
+        void reset() {
+            super.reset();
+            player.useRankedHand();
+        }
+    }
+    
+    /** Adds cards to a discard pile until it holds size cards */
+    public static class PileAddCard implements BenchmarkHarness.Benchmark {
+        private Card[] template;
+        private DiscardPile pile;
+        private int next;
+        
+        public void setup(int size) {
+            template = cards(size);
+            pile = new DiscardPile();
+        }
+        
+        public long run() {
+            if (next == template.length) {
+                pile = new DiscardPile();
+                next = 0;
+            }
+            pile.addCard(template[next++]);
+            return pile.size();
+        }
+    }
+    
+    /** Removes cards from a full discard pile, in random order, until it is empty */
+    public static class PileRemoveCard implements BenchmarkHarness.Benchmark {
+        private Card[] template;
+        private Card[] order;
+        private DiscardPile pile;
+        private int next;
+        
+        public void setup(int size) {
+            template = cards(size);
+            order = cards(size);
+            pile = new DiscardPile(template.clone());
+        }
+        
+        public long run() {
+            if (next == order.length) {
+                pile = new DiscardPile(template.clone());
+                next = 0;
+            }
+            Card removed = pile.removeCard(order[next++]);
+            return removed == null ? 0 : removed.getValue();
+        }
+    }
+    
+    /** Fills a discard pile with size cards and empties it with removeAll */
+    public static class PileRemoveAll implements BenchmarkHarness.Benchmark {
+        private Card[] template;
+        private DiscardPile pile;
+        
+        public void setup(int size) {
+            template = cards(size);
+            pile = new DiscardPile();
+        }
+        
+        public long run() {
+            for (Card card : template) {
+                pile.addCard(card);
+            }
+            return pile.removeAll().length;
+        }
+    }
+    
+    /** Renders a discard pile of size cards */
+    public static class PileToString implements BenchmarkHarness.Benchmark {
+        private DiscardPile pile;
+        
+        public void setup(int size) {
+            pile = new DiscardPile(cards(size));
+        }
+        
+        public long run() {
+            return pile.toString().length();
+        }
+    }
+    
+    /** Renders a discard pile of size cards into a reused StringBuilder */
+    public static class PileAppendTo implements BenchmarkHarness.Benchmark {
+        private DiscardPile pile;
+        private StringBuilder out = new StringBuilder();
+        
+        public void setup(int size) {
+            pile = new DiscardPile(cards(size));
+        }
+        
+        public long run() {
+            out.setLength(0);
+            return pile.appendTo(out).length();
+        }
+    }
+    
+    /** Plays a whole HighCardGame: build and shuffle the deck, deal 5 cards each, play 5 rounds */
+    public static class HighCardGameRound implements BenchmarkHarness.Benchmark {
+        public void setup(int size) {
+        }
+        
+        public long run() {
+            Player player1 = new Player("One", 20);
+            Player player2 = new Player("Two", 21);
+            Deck deck = new Deck();
+            deck.shuffle();
+            for (int i = 0; i < 5; i++) {
+                player1.draw(deck);
+                player2.draw(deck);
+            }
+            
+            DiscardPile discardPile = new DiscardPile();
+            long score = 0;
+            for (int round = 0; round < 5; round++) {
+                Card card1 = player1.getHighestCard();
+                Card card2 = player2.getHighestCard();
+                player1.discardCard(card1, discardPile);
+                player2.discardCard(card2, discardPile);
+                score += Integer.compare(card1.getValue(), card2.getValue());
+            }
+            return score;
+        }
+    }
+    
+    /** Plays size games back to back on one reused GameContext */
+    public static class ContextGames implements BenchmarkHarness.Benchmark {
+        private final GameContext context = new GameContext();
+        private final CardRandom random = CardRandom.seeded(1);
+        private int games;
+        
+        public void setup(int size) {
+            games = size;
+        }
+        
+        public long run() {
+            long wins = 0;
+            for (int i = 0; i < games; i++) {
+                context.reset(random);
+                wins += context.play();
+            }
+            return wins;
+        }
+    }
+    
+    /** Plays one game at each of size off-heap tables with the batch kernels */
+    public static class StoreGames implements BenchmarkHarness.Benchmark {
+        private final CardRandom random = CardRandom.seeded(1);
+        private TableStore store;
+        private SimulationResult result;
+        
+        public void setup(int size) {
+            store = new TableStore(size);
+            result = new SimulationResult(HighCardEngine.ROUNDS);
+        }
+        
+        public long run() {
+            int tables = store.getTableCount();
+            store.reset(0, tables);
+            store.shuffle(0, tables, random);
+            store.deal(0, tables, HighCardEngine.HAND_SIZE);
+            store.play(0, tables, result);
+            return result.getGames();
+        }
+    }
+    
+    /** Branches a game state of a size-card deck and pile by copying both, then draws and discards one card */
+    public static class BranchCopy implements BenchmarkHarness.Benchmark {
+        private Deck deck;
+        private DiscardPile pile;
+        
+        public void setup(int size) {
+            deck = new Deck(cards(size));
+            pile = new DiscardPile(cards(size));
+        }
+        
+        public long run() {
+            Deck branchDeck = new Deck(deck.getCards());
+            DiscardPile branchPile = new DiscardPile(pile.getCards());
+            branchPile.addCard(branchDeck.draw());
+            return branchPile.size();
+        }
+    }
+    
+    /** Branches the same state held in persistent structures, so nothing is copied */
+    public static class BranchPersistent implements BenchmarkHarness.Benchmark {
+        private PersistentDeck deck;
+        private PersistentDiscardPile pile;
+        
+        public void setup(int size) {
+            deck = PersistentDeck.of(cards(size));
+            pile = PersistentDiscardPile.of(new DiscardPile(cards(size)));
+        }
+        
+        public long run() {
+            PersistentDeck branchDeck = deck.draw();
+            PersistentDiscardPile branchPile = pile.addCard(deck.top());
+            return branchPile.size() + branchDeck.size();
+        }
+    }
+    
+    /** Estimates the odds of a fresh game to +/- 0.5% at 95% confidence (the size parameter does not apply) */
+    public static class EstimateOdds implements BenchmarkHarness.Benchmark {
+        private WinProbabilityEstimator estimator;
+        
+        public void setup(int size) {
+            estimator = new WinProbabilityEstimator(new Player("One", 20), new Player("Two", 21), new Deck(),
+                                                    HighCardEngine.ROUNDS, 0, 0);
+        }
+        
+        public long run() {
+            return estimator.estimate().getSamples();
+        }
+    }
+    
+    /** Solves the exact odds of a fresh game dealt from a shoe of size cards */
+    public static class SolveOdds implements BenchmarkHarness.Benchmark {
+        private Deck deck;
+        
+        public void setup(int size) {
+            deck = new Deck(cards(size));
+        }
+        
+        public long run() {
+            WinOdds odds = new ExactOddsSolver(new Player("One", 20), new Player("Two", 21), deck,
+                                               HighCardEngine.ROUNDS, 0, 0).solve();
+            return Math.round(odds.getTie() * 1e6);
+        }
+    }
+    
+    /**
+     * Draws the top card and puts it back on the bottom, the cheapest steady-state
+     * deck operations; run with metrics off and on, and compared with BareDeckCycle,
+     * to measure the instrumentation cost
+     */
+    public static class DeckCycle implements BenchmarkHarness.Benchmark {
+        private Deck deck;
+        
+        public void setup(int size) {
+            deck = new Deck(cards(size));
+        }
+        
+        public long run() {
+            Card card = deck.draw();
+            deck.addCard(card);
+            return card.getValue();
+        }
+    }
+    
+    /** The same cycle on the uninstrumented bodies of draw() and addCard(), the baseline for DeckCycle */
+    public static class BareDeckCycle implements BenchmarkHarness.Benchmark {
+        private Deck deck;
+        
+        public void setup(int size) {
+            deck = new Deck(cards(size));
+        }
+        
+        public long run() {
+            Card card = deck.drawTop();
+            deck.addToBottom(card);
+            return card.getValue();
+        }
+    }
+}
\ No newline at end of file
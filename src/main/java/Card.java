@@ -1,12 +1,39 @@
+import java.io.IOException;
+
 /**
  * Represents a playing card with a name, suit, and numeric value
  * @author Parusan
  * @version 1.0
  */
 public class Card {
-    private String name;
-    private String suit;
-    private int value;
+    /** Number of cards in a standard deck */
+    public static final int STANDARD_COUNT = 52;
+    
+    /** Id given to cards that are not part of the standard 52-card deck */
+    public static final int NO_ID = -1;
+    
+    private static final String[] SUITS = {"Hearts", "Clubs", "Diamonds", "Spades"};
+    private static final String[] NAMES = {"Ace", "2", "3", "4", "5", "6", "7", "8", "9", "10", "Jack", "Queen", "King"};
+    private static final int[] VALUES = {14, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13};
+    
+    // Canonical standard cards, indexed by id (same order as an unshuffled deck)
+    private static final Card[] STANDARD = new Card[STANDARD_COUNT];
+    
+    static {
+        for (int suit = 0; suit < SUITS.length; suit++) {
+            for (int rank = 0; rank < NAMES.length; rank++) {
+                int id = suit * NAMES.length + rank;
+                STANDARD[id] = new Card(NAMES[rank], SUITS[suit], VALUES[rank], id);
+            }
+        }
+    }
+    
+    private final String name;
+    private final String suit;
+    private final int value;
+    private final int id;
+    private final int hash;
+    private final String text; // "Name of Suit", built once so printing a card never allocates
      /**
      * Constructs a new Card with the specified attributes
      * @param name the name of the card (e.g., "Ace", "King", "2")
@@ -29,6 +56,128 @@ public class Card {
         this.name = name.trim();
         this.suit = suit.trim();
         this.value = value;
+        this.id = standardId(this.name, this.suit, value);
+        this.hash = computeHash();
+        this.text = this.name + " of " + this.suit;
+    }
+    
+    /**
+     * Constructs a canonical standard card (used only to fill the registry)
+     * @param name the name of the card
+     * @param suit the suit of the card
+     * @param value the numeric value of the card
+     * @param id the card's position in an unshuffled standard deck
+     */
+    private Card(String name, String suit, int value, int id) {
+        this.name = name;
+        this.suit = suit;
+        this.value = value;
+        this.id = id;
+        this.hash = computeHash();
+        this.text = name + " of " + suit;
+    }
+    
+    /**
+     * Returns the shared standard card with the given name and suit
+     * @param name the name of the card (e.g., "Ace", "King", "2")
+     * @param suit the suit of the card (e.g., "Hearts", "Spades")
+     * @return the canonical card instance
+     * @throws IllegalArgumentException if no standard card has that name and suit
+     */
+    public static Card of(String name, String suit) {
+        if (name == null || suit == null) {
+            throw new IllegalArgumentException("Card name and suit cannot be null");
+        }
+        
+        int suitIndex = suitIndex(suit.trim());
+        int rankIndex = rankIndex(name.trim());
+        if (suitIndex < 0 || rankIndex < 0) {
+            throw new IllegalArgumentException("Not a standard card: " + name + " of " + suit);
+        }
+        return STANDARD[suitIndex * NAMES.length + rankIndex];
+    }
+    
+    /**
+     * Returns the shared standard card with the given id
+     * @param id the card id, from 0 (Ace of Hearts) to 51 (King of Spades)
+     * @return the canonical card instance
+     * @throws IllegalArgumentException if the id is out of range
+     */
+    public static Card byId(int id) {
+        if (id < 0 || id >= STANDARD_COUNT) {
+            throw new IllegalArgumentException("Card id must be between 0 and " + (STANDARD_COUNT - 1));
+        }
+        return STANDARD[id];
+    }
+    
+    /**
+     * Returns the canonical instance for this card, so equal standard cards share one object
+     * @return the shared standard card, or this card if it is not a standard card
+     */
+    public Card canonical() {
+        return id == NO_ID ? this : STANDARD[id];
+    }
+    
+    /**
+     * Looks up the id of a standard card
+     * @param name the trimmed card name
+     * @param suit the trimmed card suit
+     * @param value the card value
+     * @return the id, or NO_ID if the attributes do not describe a standard card
+     */
+    private static int standardId(String name, String suit, int value) {
+        int suitIndex = suitIndex(suit);
+        int rankIndex = rankIndex(name);
+        if (suitIndex < 0 || rankIndex < 0 || VALUES[rankIndex] != value) {
+            return NO_ID;
+        }
+        return suitIndex * NAMES.length + rankIndex;
+    }
+    
+    /**
+     * Returns the position of a suit in the standard suit order
+     * @param suit the suit name
+     * @return the suit index, or -1 if it is not a standard suit
+     */
+    private static int suitIndex(String suit) {
+        switch (suit) {
+            case "Hearts": return 0;
+            case "Clubs": return 1;
+            case "Diamonds": return 2;
+            case "Spades": return 3;
+            default: return -1;
+        }
+    }
+    
+    /**
+     * Returns the position of a card name in the standard rank order (Ace first)
+     * @param name the card name
+     * @return the rank index, or -1 if it is not a standard name
+     */
+    private static int rankIndex(String name) {
+        switch (name) {
+            case "Ace": return 0;
+            case "Jack": return 10;
+            case "Queen": return 11;
+            case "King": return 12;
+            default:
+                // Number cards "2" to "10" sit at index (number - 1)
+                if (name.length() == 1 && name.charAt(0) >= '2' && name.charAt(0) <= '9') {
+                    return name.charAt(0) - '1';
+                }
+                return "10".equals(name) ? 9 : -1;
+        }
+    }
+    
+    /**
+     * Computes the hash code from the same fields that equals compares
+     * @return the hash code
+     */
+    private int computeHash() {
+        int result = name.hashCode();
+        result = 31 * result + suit.hashCode();
+        result = 31 * result + value;
+        return result;
     }
     
     /**
@@ -54,15 +203,49 @@ public class Card {
     public int getValue() {
         return value;
     }
+    
+    /**
+     * Returns the card's position in an unshuffled standard deck
+     * @return the id from 0 to 51, or NO_ID if this is not a standard card
+     */
+    public int getId() {
+        return id;
+    }
+    
+    /**
+     * Returns whether this card is one of the 52 standard playing cards
+     * @return true if the card has a standard id
+     */
+    public boolean isStandard() {
+        return id != NO_ID;
+    }
      /**
      * Returns a string representation of the card in "Name of Suit" format
      * @return the formatted card description
      */
-
-   
+    
+    
     @Override
     public String toString() {
-        return this.name + " of " + this.suit;
+        return text;
+    }
+    
+    /**
+     * Writes the card in "Name of Suit" format, the same text as toString()
+     * @param out the destination, such as a Writer
+     * @throws IOException if out cannot be written to
+     */
+    public void appendTo(Appendable out) throws IOException {
+        out.append(text);
+    }
+    
+    /**
+     * Writes the card in "Name of Suit" format, the same text as toString()
+     * @param out the builder to append to
+     * @return out
+     */
+    public StringBuilder appendTo(StringBuilder out) {
+        return out.append(text);
     }
     /**
      * Compares this card with another object for equality
@@ -76,8 +259,21 @@ public class Card {
         if (obj == null || getClass() != obj.getClass()) return false;
         
         Card otherCard = (Card)obj;
-        return this.name.equals(otherCard.name) && 
+        if (this.id != NO_ID || otherCard.id != NO_ID) {
+            return this.id == otherCard.id; // Standard cards are equal exactly when their ids match
+        }
+        return this.hash == otherCard.hash &&
+               this.name.equals(otherCard.name) && 
                this.suit.equals(otherCard.suit) && 
                this.value == otherCard.value;
     }
+    
+    /**
+     * Returns a hash code consistent with equals
+     * @return the hash code of the card's name, suit, and value
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
 }
\ No newline at end of file
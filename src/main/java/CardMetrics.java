@@ -0,0 +1,74 @@
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Optional instrumentation for Deck, Player and DiscardPile.
+ * Turned on by starting the JVM with -Dcards.metrics=true; each operation is then
+ * published as an MBean named cards:type=Operation,name=Deck.draw (and so on)
+ * and can be watched with jconsole or any other JMX client.
+ * While it is off, ENABLED is a constant false, so the JIT removes the
+ * instrumentation from the hot paths entirely.
+ * @author Parusan
+ * @version 1.0
+ */
+public final class CardMetrics {
+    /** True if the JVM was started with -Dcards.metrics=true */
+    public static final boolean ENABLED = Boolean.getBoolean("cards.metrics");
+    
+    // Each is null while metrics are off
+    static final OperationMetrics DECK_DRAW = create("Deck.draw");
+    static final OperationMetrics DECK_SHUFFLE = create("Deck.shuffle");
+    static final OperationMetrics DECK_ADD_CARD = create("Deck.addCard");
+    static final OperationMetrics PLAYER_DRAW = create("Player.draw");
+    static final OperationMetrics PLAYER_DISCARD_CARD = create("Player.discardCard");
+    static final OperationMetrics PLAYER_RETURN_CARD = create("Player.returnCard");
+    static final OperationMetrics PILE_ADD_CARD = create("DiscardPile.addCard");
+    static final OperationMetrics PILE_REMOVE_CARD = create("DiscardPile.removeCard");
+    static final OperationMetrics PILE_REMOVE_ALL = create("DiscardPile.removeAll");
+    
+    /**
+     * Not instantiable
+     */
+    private CardMetrics() {
+    }
+    
+    /**
+     * Creates and registers the metrics for one operation, if metrics are on
+     * @param name the operation name
+     * @return the metrics, or null if metrics are off
+     */
+    private static OperationMetrics create(String name) {
+        if (!ENABLED) {
+            return null;
+        }
+        
+        OperationMetrics metrics = new OperationMetrics(name);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("cards:type=Operation,name=" + name);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(metrics, objectName);
+            }
+        } catch (JMException e) {
+            // The metrics still work without JMX; they are just not published
+        }
+        return metrics;
+    }
+    
+    /**
+     * Returns the metrics of every instrumented operation
+     * @return the metrics, or an empty array if metrics are off
+     */
+    public static OperationMetrics[] all() {
+        if (!ENABLED) {
+            return new OperationMetrics[0];
+        }
+        return new OperationMetrics[] {
+            DECK_DRAW, DECK_SHUFFLE, DECK_ADD_CARD,
+            PLAYER_DRAW, PLAYER_DISCARD_CARD, PLAYER_RETURN_CARD,
+            PILE_ADD_CARD, PILE_REMOVE_CARD, PILE_REMOVE_ALL
+        };
+    }
+}
\ No newline at end of file
@@ -0,0 +1,79 @@
+import java.util.Random;
+
+/**
+ * A source of random numbers for shuffling, shaped like java.util.random.RandomGenerator
+ * (which needs Java 17) and limited to what shuffling needs.
+ * Generators can be seeded so the same seed always produces the same deck order,
+ * and split into independent generators for other threads.
+ * @author Parusan
+ * @version 1.0
+ */
+public interface CardRandom {
+    
+    /**
+     * Returns a random int from 0 (inclusive) to bound (exclusive)
+     * @param bound the upper bound, which must be positive
+     * @return the random number
+     */
+    int nextInt(int bound);
+    
+    /**
+     * Returns a random long
+     * @return the random number
+     */
+    long nextLong();
+    
+    /**
+     * Creates a new generator whose numbers are independent of this one's,
+     * for use on another thread. The result depends only on this generator's state,
+     * so splitting a seeded generator is reproducible too.
+     * @return the new generator
+     */
+    CardRandom split();
+    
+    /**
+     * Returns a fast generator with a fixed seed, so runs can be replayed exactly
+     * @param seed the seed
+     * @return a new xoroshiro128++ generator
+     */
+    static CardRandom seeded(long seed) {
+        return new XoroshiroCardRandom(seed);
+    }
+    
+    /**
+     * Returns this thread's default generator, creating it on first use.
+     * It must not be shared with other threads.
+     * @return the current thread's generator
+     */
+    static CardRandom current() {
+        return XoroshiroCardRandom.CURRENT.get();
+    }
+    
+    /**
+     * Adapts a java.util.Random to this interface
+     * @param random the generator to adapt
+     * @return a CardRandom drawing its numbers from random
+     * @throws IllegalArgumentException if random is null
+     */
+    static CardRandom wrap(final Random random) {
+        if (random == null) {
+            throw new IllegalArgumentException("Random cannot be null");
+        }
+        return new CardRandom() {
+            @Override
+            public int nextInt(int bound) {
+                return random.nextInt(bound);
+            }
+            
+            @Override
+            public long nextLong() {
+                return random.nextLong();
+            }
+            
+            @Override
+            public CardRandom split() {
+                return wrap(new Random(random.nextLong()));
+            }
+        };
+    }
+}
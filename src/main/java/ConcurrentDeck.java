@@ -0,0 +1,96 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A deck that many dealer threads can draw from at once without locks.
+ * The cards are shuffled once up front and never move again; each draw claims
+ * the next position with an atomic cursor, so no card is dealt twice or lost.
+ * Cards cannot be added back, since that would need the draw path to coordinate with writers.
+ * @author Parusan
+ * @version 1.0
+ */
+public class ConcurrentDeck {
+    private final Card[] cards;
+    private final AtomicInteger cursor = new AtomicInteger();
+    
+    /**
+     * Constructs a concurrent deck holding the cards of the given deck, in its current order
+     * @param deck the deck to copy, usually already shuffled
+     * @throws IllegalArgumentException if the deck is null
+     */
+    public ConcurrentDeck(Deck deck) {
+        if (deck == null) {
+            throw new IllegalArgumentException("Deck cannot be null");
+        }
+        this.cards = deck.getCards();
+    }
+    
+    /**
+     * Constructs a concurrent deck from the given cards, shuffled with the given generator
+     * @param cards the cards to deal, which are copied
+     * @param random the generator used for the one-time shuffle
+     * @throws IllegalArgumentException if cards or random is null
+     */
+    public ConcurrentDeck(Card[] cards, CardRandom random) {
+        if (cards == null) {
+            throw new IllegalArgumentException("Card array cannot be null");
+        }
+        Deck deck = new Deck(cards);
+        if (deck.size() > 0) {
+            deck.shuffle(random);
+        } else if (random == null) {
+            throw new IllegalArgumentException("Random cannot be null");
+        }
+        this.cards = deck.getCards();
+    }
+    
+    /**
+     * Returns the number of cards not yet drawn. Under contention the answer may
+     * already be stale when it is returned.
+     * @return the number of cards left
+     */
+    public int size() {
+        return Math.max(0, cards.length - cursor.get());
+    }
+    
+    /**
+     * Removes and returns the top card. Safe to call from any number of threads.
+     * @return the top card, or null if the deck is empty
+     */
+    public Card draw() {
+        // Claiming past the end is harmless: the cursor only grows, and an
+        // out-of-range claim just reports an empty deck
+        int position = cursor.getAndIncrement();
+        if (position >= cards.length) {
+            cursor.set(cards.length); // Keep the cursor from overflowing on repeated empty draws
+            return null;
+        }
+        return cards[position];
+    }
+    
+    /**
+     * Removes and returns up to count cards from the top, reserving them all with a single
+     * compare-and-set, so the cards are contiguous in the shuffled order
+     * @param count the number of cards wanted
+     * @return the drawn cards, fewer than count (possibly none) if the deck runs out
+     * @throws IllegalArgumentException if count is negative
+     */
+    public Card[] draw(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Count cannot be negative");
+        }
+        
+        int start;
+        int end;
+        do {
+            start = cursor.get();
+            if (start >= cards.length) {
+                return new Card[0];
+            }
+            end = start + Math.min(count, cards.length - start);
+        } while (!cursor.compareAndSet(start, end));
+        
+        Card[] drawn = new Card[end - start];
+        System.arraycopy(cards, start, drawn, 0, drawn.length);
+        return drawn;
+    }
+}
@@ -1,3 +1,4 @@
+import java.util.Arrays;
 import java.util.Random;
 
 /**
@@ -6,7 +7,17 @@ import java.util.Random;
  * @version 1.0
  */
 public class Deck {
+    private static final int MIN_CAPACITY = 8;
+    
+    // The unshuffled standard layout (Hearts, Clubs, Diamonds, Spades, each Ace to King),
+    // shared by every standard deck and never modified
+    private static final Card[] STANDARD_LAYOUT = generateFullDeck();
+    
+    // Circular buffer: the top card is cards[head], the bottom card is
+    // cards[(head + count - 1) % cards.length]
     private Card[] cards;
+    private int head;
+    private int count;
     
     /**
      * Constructs a deck from an existing array of cards
@@ -17,33 +28,67 @@ public class Deck {
         if (cards == null) {
             throw new IllegalArgumentException("Card array cannot be null");
         }
-        this.cards = cards;
+        this.cards = cards.clone(); // The deck reuses its slots, so it needs its own buffer
+        this.head = 0;
+        this.count = cards.length;
     }
     
     /**
      * Constructs a standard 52-card deck with all suits and ranks
      */
     public Deck() {
-        this.cards = generateFullDeck();
+        this(1);
+    }
+    
+    /**
+     * Constructs a deck of several standard decks laid out one after another
+     * @param copies the number of standard decks
+     */
+    private Deck(int copies) {
+        this.cards = standardCards(copies);
+        this.head = 0;
+        this.count = cards.length;
+    }
+    
+    /**
+     * Creates an unshuffled shoe of several standard decks, one after another,
+     * copied from the shared standard layout
+     * @param copies the number of standard decks
+     * @return the new deck
+     * @throws IllegalArgumentException if copies is less than 1
+     */
+    public static Deck standard(int copies) {
+        if (copies < 1) {
+            throw new IllegalArgumentException("A deck needs at least one standard deck");
+        }
+        return new Deck(copies);
+    }
+    
+    /**
+     * Returns a new array holding the standard layout repeated the given number of times.
+     * The copied region doubles with each copy, so a large shoe takes only a few array copies.
+     * @param copies the number of standard decks
+     * @return the cards, sharing the canonical Card instances
+     */
+    static Card[] standardCards(int copies) {
+        Card[] cards = new Card[copies * Card.STANDARD_COUNT];
+        System.arraycopy(STANDARD_LAYOUT, 0, cards, 0, Card.STANDARD_COUNT);
+        for (int filled = Card.STANDARD_COUNT; filled < cards.length; filled *= 2) {
+            System.arraycopy(cards, 0, cards, filled, Math.min(filled, cards.length - filled));
+        }
+        return cards;
     }
     
     /**
      * Generates a complete standard deck of 52 playing cards
-     * @return an array containing all 52 standard playing cards
+     * @return an array containing all 52 standard playing cards, sharing the canonical Card instances
      */
-    private Card[] generateFullDeck() {
-        Card[] fullDeck = new Card[52];
-        String[] suits = {"Hearts", "Clubs", "Diamonds", "Spades"};
-        String[] names = {"Ace", "2", "3", "4", "5", "6", "7", "8", "9", "10", "Jack", "Queen", "King"};
-        int[] values = {14, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13};
+    private static Card[] generateFullDeck() {
+        Card[] fullDeck = new Card[Card.STANDARD_COUNT];
         
-        int cardIndex = 0;
-        
-        for (String suit : suits) {
-            for (int i = 0; i < names.length; i++) {
-                fullDeck[cardIndex] = new Card(names[i], suit, values[i]);
-                cardIndex++;
-            }
+        // Card ids follow the unshuffled order: Ace through King of Hearts, Clubs, Diamonds, Spades
+        for (int id = 0; id < fullDeck.length; id++) {
+            fullDeck[id] = Card.byId(id);
         }
         
         return fullDeck;
@@ -54,7 +99,7 @@ public class Deck {
      * @return the size of the deck as an integer
      */
     public int size() {
-        return cards.length;
+        return count;
     }
     
     /**
@@ -62,44 +107,189 @@ public class Deck {
      * @return the top card, or null if the deck is empty
      */
     public Card draw() {
-        if (cards.length == 0) {
+        if (!CardMetrics.ENABLED) {
+            return drawTop();
+        }
+        long start = System.nanoTime();
+        Card result = drawTop();
+        CardMetrics.DECK_DRAW.record(start, count);
+        return result;
+    }
+    
+    /**
+     * The uninstrumented body of draw(), package-private so the benchmarks can time it as a baseline
+     * @return the top card, or null if the deck is empty
+     */
+    Card drawTop() {
+        if (count == 0) {
             return null; // No cards left
         }
         
-        // Get the top card (first element)
-        Card topCard = cards[0];
-        
-        // Create a new array without the top card
-        Card[] newDeck = new Card[cards.length - 1];
-        for (int i = 0; i < newDeck.length; i++) {
-            newDeck[i] = cards[i + 1]; // Shift all cards down
+        // Take the top card and advance the head past it
+        Card topCard = cards[head];
+        cards[head] = null; // Let the slot be reused without holding a stale reference
+        head++;
+        if (head == cards.length) {
+            head = 0;
         }
+        count--;
         
-        // Replace the old deck with the new smaller deck
-        cards = newDeck;
         return topCard;
     }
     
     /**
-     * Randomly shuffles the order of cards in the deck using Fisher-Yates algorithm
+     * Removes and returns up to count cards from the top of the deck with a single copy
+     * @param count the number of cards to draw
+     * @return the drawn cards from top to bottom, fewer than count if the deck runs out
+     * @throws IllegalArgumentException if count is negative
+     */
+    public Card[] draw(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Cannot draw a negative number of cards");
+        }
+        
+        int drawCount = Math.min(count, this.count);
+        Card[] drawn = new Card[drawCount];
+        
+        // The drawn cards may wrap around the end of the buffer, so copy (and clear) up to two runs
+        int firstPart = Math.min(drawCount, cards.length - head);
+        System.arraycopy(cards, head, drawn, 0, firstPart);
+        Arrays.fill(cards, head, head + firstPart, null);
+        System.arraycopy(cards, 0, drawn, firstPart, drawCount - firstPart);
+        Arrays.fill(cards, 0, drawCount - firstPart, null);
+        
+        head += drawCount;
+        if (head >= cards.length) {
+            head -= cards.length;
+        }
+        this.count -= drawCount;
+        return drawn;
+    }
+    
+    /**
+     * Deals cards one at a time to each player in turn, like a dealer around a table,
+     * taking all the cards off the deck with a single copy
+     * @param players the players to deal to, in dealing order
+     * @param cardsEach the number of cards each player should receive
+     * @throws IllegalArgumentException if players or any player is null, or cardsEach is negative
+     */
+    public void deal(Player[] players, int cardsEach) {
+        if (players == null) {
+            throw new IllegalArgumentException("Players cannot be null");
+        }
+        for (int i = 0; i < players.length; i++) {
+            if (players[i] == null) {
+                throw new IllegalArgumentException("Players cannot be null");
+            }
+        }
+        if (cardsEach < 0) {
+            throw new IllegalArgumentException("Cannot deal a negative number of cards");
+        }
+        if (players.length == 0) {
+            return;
+        }
+        
+        // Card i of the dealt run goes to player i % players.length
+        Card[] dealt = draw((int) Math.min((long) players.length * cardsEach, count));
+        for (int i = 0; i < players.length && i < dealt.length; i++) {
+            int received = (dealt.length - i + players.length - 1) / players.length;
+            players[i].addCards(dealt, i, players.length, received);
+        }
+    }
+    
+    /**
+     * Adds all of the given cards to the bottom of the deck with a single copy, then shuffles the deck
+     * @param cards the cards to add; null entries are skipped
+     * @throws IllegalArgumentException if the card array is null
+     */
+    public void reshuffle(Card[] cards) {
+        if (cards == null) {
+            throw new IllegalArgumentException("Card array cannot be null");
+        }
+        
+        ensureCapacity(count + cards.length);
+        
+        int tail = head + count;
+        if (tail >= this.cards.length) {
+            tail -= this.cards.length;
+        }
+        for (int i = 0; i < cards.length; i++) {
+            if (cards[i] != null) {
+                this.cards[tail] = cards[i];
+                tail++;
+                if (tail == this.cards.length) {
+                    tail = 0;
+                }
+                count++;
+            }
+        }
+        
+        if (count > 0) {
+            shuffle();
+        }
+    }
+    
+    /**
+     * Randomly shuffles the order of cards in the deck using Fisher-Yates algorithm,
+     * drawing numbers from the current thread's default generator
      * @throws IllegalStateException if attempting to shuffle an empty deck
      */
     public void shuffle() {
-        if (cards.length == 0) {
+        shuffle(CardRandom.current());
+    }
+    
+    /**
+     * Shuffles the deck with the given random number generator using Fisher-Yates algorithm
+     * @param random the source of randomness
+     * @throws IllegalArgumentException if random is null
+     * @throws IllegalStateException if attempting to shuffle an empty deck
+     */
+    public void shuffle(Random random) {
+        shuffle(CardRandom.wrap(random));
+    }
+    
+    /**
+     * Shuffles the deck with the given generator using Fisher-Yates algorithm.
+     * The same generator state always produces the same order, so a seeded
+     * generator (see CardRandom.seeded) replays a shuffle exactly.
+     * @param random the source of randomness
+     * @throws IllegalArgumentException if random is null
+     * @throws IllegalStateException if attempting to shuffle an empty deck
+     */
+    public void shuffle(CardRandom random) {
+        if (!CardMetrics.ENABLED) {
+            shuffleWith(random);
+            return;
+        }
+        long start = System.nanoTime();
+        shuffleWith(random);
+        CardMetrics.DECK_SHUFFLE.record(start, count);
+    }
+    
+    /**
+     * The uninstrumented body of shuffle(CardRandom)
+     * @param random the source of randomness
+     */
+    private void shuffleWith(CardRandom random) {
+        if (random == null) {
+            throw new IllegalArgumentException("Random cannot be null");
+        }
+        if (count == 0) {
             throw new IllegalStateException("Cannot shuffle an empty deck");
         }
         
-        Random random = new Random();
+        // Lay the cards out contiguously so the shuffle can work on plain indices
+        compact();
         
-        // Fisher-Yates shuffle algorithm
-        for (int i = cards.length - 1; i > 0; i--) {
+        // Fisher-Yates shuffle algorithm over cards[head .. head + count - 1]
+        for (int i = count - 1; i > 0; i--) {
             // Pick a random index from 0 to i
             int randomIndex = random.nextInt(i + 1);
             
-            // Swap cards[i] with cards[randomIndex]
-            Card temp = cards[i];
-            cards[i] = cards[randomIndex];
-            cards[randomIndex] = temp;
+            // Swap cards[head + i] with cards[head + randomIndex]
+            Card temp = cards[head + i];
+            cards[head + i] = cards[head + randomIndex];
+            cards[head + randomIndex] = temp;
         }
     }
     
@@ -109,30 +299,128 @@ public class Deck {
      * @throws IllegalArgumentException if the card is null
      */
     public void addCard(Card card) {
+        if (!CardMetrics.ENABLED) {
+            addToBottom(card);
+            return;
+        }
+        long start = System.nanoTime();
+        addToBottom(card);
+        CardMetrics.DECK_ADD_CARD.record(start, count);
+    }
+    
+    /**
+     * The uninstrumented body of addCard(Card), package-private so the benchmarks can time it as a baseline
+     * @param card the card to add
+     */
+    void addToBottom(Card card) {
         if (card == null) {
             throw new IllegalArgumentException("Cannot add null card to deck");
         }
         
-        // Create a new array that's one card larger
-        Card[] newDeck = new Card[cards.length + 1];
+        ensureCapacity(count + 1);
         
-        // Copy all existing cards
-        for (int i = 0; i < cards.length; i++) {
-            newDeck[i] = cards[i];
+        // Add the new card just past the current bottom card
+        int tail = head + count;
+        if (tail >= cards.length) {
+            tail -= cards.length;
+        }
+        cards[tail] = card;
+        count++;
+    }
+    
+    /**
+     * Returns the cards currently in the deck, from top to bottom
+     * @return a new array containing all cards in the deck
+     */
+    public Card[] getCards() {
+        Card[] result = new Card[count];
+        copyTo(result, 0);
+        return result;
+    }
+    
+    /**
+     * Replaces the deck's contents with the given cards, top first, reusing the
+     * deck's buffer when it is big enough so a reused deck allocates nothing
+     * @param template the cards to fill the deck with; the array itself is not kept
+     */
+    void refill(Card[] template) {
+        if (template.length > cards.length) {
+            cards = new Card[template.length];
+        } else {
+            Arrays.fill(cards, null); // Drop any cards left past the new contents
+        }
+        System.arraycopy(template, 0, cards, 0, template.length);
+        head = 0;
+        count = template.length;
+    }
+    
+    /**
+     * Returns a card by its position without removing it
+     * @param index the position, where 0 is the top card
+     * @return the card at that position
+     */
+    Card cardAt(int index) {
+        int slot = head + index;
+        if (slot >= cards.length) {
+            slot -= cards.length;
+        }
+        return cards[slot];
+    }
+    
+    /**
+     * Copies the cards from top to bottom into the destination array
+     * @param dest the array to copy into
+     * @param offset the position in dest of the top card
+     */
+    private void copyTo(Card[] dest, int offset) {
+        int firstPart = Math.min(count, cards.length - head);
+        System.arraycopy(cards, head, dest, offset, firstPart);
+        System.arraycopy(cards, 0, dest, offset + firstPart, count - firstPart);
+    }
+    
+    /**
+     * Grows the buffer (doubling it) if it cannot hold the requested number of cards
+     * @param required the number of cards the deck must be able to hold
+     */
+    private void ensureCapacity(int required) {
+        if (required <= cards.length) {
+            return;
         }
         
-        // Add the new card at the end
-        newDeck[cards.length] = card;
+        int newCapacity = Math.max(Math.max(cards.length * 2, required), MIN_CAPACITY);
+        Card[] newCards = new Card[newCapacity];
+        copyTo(newCards, 0);
+        cards = newCards;
+        head = 0;
+    }
+    
+    /**
+     * Moves the cards so they no longer wrap around the end of the buffer,
+     * rotating them in place so the buffer is kept
+     */
+    private void compact() {
+        if (head + count <= cards.length) {
+            return; // Already contiguous
+        }
         
-        // Replace the old deck with the new larger deck
-        cards = newDeck;
+        // Rotating the whole buffer left by head puts the top card in slot 0;
+        // the empty slots between the bottom and top cards end up past the bottom
+        reverse(0, head);
+        reverse(head, cards.length);
+        reverse(0, cards.length);
+        head = 0;
     }
     
     /**
-     * Returns the current array of cards in the deck
-     * @return an array containing all cards in the deck
+     * Reverses a run of the buffer in place
+     * @param from the first slot of the run
+     * @param to the slot after the last
      */
-    public Card[] getCards() {
-        return cards;
+    private void reverse(int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            Card temp = cards[i];
+            cards[i] = cards[j];
+            cards[j] = temp;
+        }
     }
-}
\ No newline at end of file
+}
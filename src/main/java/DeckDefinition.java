@@ -0,0 +1,62 @@
+/**
+ * A named custom deck loaded from a deck definition file (see DeckDefinitions).
+ * The definition is validated and its cards are generated once, into a template
+ * that every new deck is copied from, so instantiating a deck is a single array copy.
+ * @author Parusan
+ * @version 1.0
+ */
+public final class DeckDefinition {
+    private final String name;
+    private final Card[] template; // the unshuffled deck; never modified
+    
+    /**
+     * Constructs a definition from its generated template
+     * @param name the deck name
+     * @param template the cards in generation order, which the definition takes ownership of
+     */
+    DeckDefinition(String name, Card[] template) {
+        this.name = name;
+        this.template = template;
+    }
+    
+    /**
+     * Returns the deck name
+     * @return the name given on the definition's deck line
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Returns the number of cards in a deck built from this definition
+     * @return the deck size
+     */
+    public int size() {
+        return template.length;
+    }
+    
+    /**
+     * Returns the cards of the definition in generation order
+     * @return a new array of the cards
+     */
+    public Card[] getCards() {
+        return template.clone();
+    }
+    
+    /**
+     * Builds a new, unshuffled deck from the template
+     * @return the new deck
+     */
+    public Deck newDeck() {
+        return new Deck(template);
+    }
+    
+    /**
+     * Returns a short description of the definition
+     * @return the name and the number of cards
+     */
+    @Override
+    public String toString() {
+        return name + " (" + template.length + " cards)";
+    }
+}
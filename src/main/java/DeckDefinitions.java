@@ -0,0 +1,663 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Loads custom deck definitions from files and keeps one template per definition,
+ * so every later deck is just an array copy. A file holds any number of
+ * definitions, one line per directive; # starts a comment, and a word with
+ * spaces is written in double quotes:
+ * <pre>
+ * deck Uno                  starts a definition; names are unique across the registry
+ * order suits               optional, before the first suits line: "suits" (the default)
+ *                           lays out every card of a suit before the next suit, "ranks"
+ *                           lays out every suit of a card before the next card
+ * copies 2                  optional: the whole deck is repeated this many times
+ * suits Red Yellow Green Blue   starts a group of cards in these suits
+ * card 1 1                  a card name and value, made once in each suit of the group
+ * card "Draw Two" 20 x2     the card is made twice in each suit, one copy after the other
+ * suits Wild
+ * card Wild 50 x4
+ * </pre>
+ * Each file is read in one go, decoded once, and validated before any of its
+ * definitions is registered. Names and suits are interned, equal
+ * cards share one Card instance, and standard cards use the canonical instances,
+ * so loading hundreds of definitions makes few objects beyond the templates.
+ * A file interns into tables of its own, which join the shared tables only once
+ * the whole file has loaded, so a rejected file leaves nothing behind.
+ * Safe for concurrent use.
+ * @author Parusan
+ * @version 1.0
+ */
+public class DeckDefinitions {
+    /** The file extension loadDirectory() looks for */
+    public static final String EXTENSION = ".deck";
+    
+    // A single definition larger than this is almost certainly a mistake in its copies
+    private static final int MAX_CARDS = 1 << 20;
+    
+    private final ConcurrentHashMap<String, DeckDefinition> definitions = new ConcurrentHashMap<>();
+    
+    // Interned names and suits and shared cards of every file loaded so far
+    private final StringTable strings = new StringTable(256);
+    private final HashMap<Card, Card> cards = new HashMap<>();
+    
+    /**
+     * Loads every definition in a file
+     * @param file the definition file
+     * @return the definitions loaded, in file order
+     * @throws IOException if the file cannot be read or is not valid UTF-8
+     * @throws IllegalArgumentException if file is null, the file is malformed, or a deck
+     *         name is already registered; no definition from the file is registered then
+     */
+    public List<DeckDefinition> load(Path file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("File cannot be null");
+        }
+        return load(file.getFileName().toString(), ByteBuffer.wrap(Files.readAllBytes(file)));
+    }
+    
+    /**
+     * Loads every definition from UTF-8 bytes, such as a file already in memory
+     * @param source the name used in error messages
+     * @param bytes the definitions, from position to limit; the position is not changed
+     * @return the definitions loaded, in source order
+     * @throws CharacterCodingException if the bytes are not valid UTF-8
+     * @throws IllegalArgumentException if bytes is null, the text is malformed, or a deck
+     *         name is already registered; no definition from the source is registered then
+     */
+    public List<DeckDefinition> load(String source, ByteBuffer bytes) throws CharacterCodingException {
+        if (bytes == null) {
+            throw new IllegalArgumentException("Buffer cannot be null");
+        }
+        CharBuffer text = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT)
+            .decode(bytes.duplicate());
+        
+        synchronized (this) {
+            Parser parser = new Parser(source, text);
+            List<DeckDefinition> loaded = parser.parse();
+            for (DeckDefinition definition : loaded) {
+                definitions.put(definition.getName(), definition);
+            }
+            parser.commit();
+            return loaded;
+        }
+    }
+    
+    /**
+     * Loads every definition file with the EXTENSION in a directory
+     * @param directory the directory
+     * @return the definitions loaded
+     * @throws IOException if the directory or a file cannot be read
+     * @throws IllegalArgumentException if directory is null or a file is malformed;
+     *         files before the malformed one stay loaded
+     */
+    public List<DeckDefinition> loadDirectory(Path directory) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("Directory cannot be null");
+        }
+        List<DeckDefinition> loaded = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : files) {
+                loaded.addAll(load(file));
+            }
+        }
+        return loaded;
+    }
+    
+    /**
+     * Returns a loaded definition
+     * @param name the deck name
+     * @return the definition, or null if none has that name
+     */
+    public DeckDefinition get(String name) {
+        return name == null ? null : definitions.get(name);
+    }
+    
+    /**
+     * Builds a new, unshuffled deck from a loaded definition
+     * @param name the deck name
+     * @return the new deck
+     * @throws IllegalArgumentException if no definition has that name
+     */
+    public Deck newDeck(String name) {
+        DeckDefinition definition = get(name);
+        if (definition == null) {
+            throw new IllegalArgumentException("Unknown deck: " + name);
+        }
+        return definition.newDeck();
+    }
+    
+    /**
+     * Returns the number of loaded definitions
+     * @return the definition count
+     */
+    public int size() {
+        return definitions.size();
+    }
+    
+    /**
+     * Returns the number of names and suits interned by the files loaded so far
+     * @return the interned string count
+     */
+    synchronized int internedStrings() {
+        return strings.size();
+    }
+    
+    /**
+     * Returns the number of shared custom cards made by the files loaded so far
+     * @return the shared card count
+     */
+    synchronized int internedCards() {
+        return cards.size();
+    }
+    
+    /**
+     * Compares a string with a run of characters of the same length
+     * @param s the string
+     * @param chars the characters
+     * @param start the first character
+     * @return true if they are equal
+     */
+    private static boolean matches(String s, char[] chars, int start) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) != chars[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Hashes a run of characters the way String.hashCode() does
+     * @param chars the characters
+     * @param start the first character
+     * @param end the character after the last
+     * @return the hash
+     */
+    private static int hash(char[] chars, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        return hash;
+    }
+    
+    /**
+     * A set of interned strings: open addressing over the characters, so lookups need no String
+     */
+    private static final class StringTable {
+        private String[] strings;
+        private int count;
+        
+        /**
+         * Constructs an empty table
+         * @param capacity the initial number of slots, a power of two
+         */
+        StringTable(int capacity) {
+            strings = new String[capacity];
+        }
+        
+        /**
+         * Returns the number of strings in the table
+         * @return the string count
+         */
+        int size() {
+            return count;
+        }
+        
+        /**
+         * Finds the string with the given characters
+         * @param chars the characters
+         * @param start the first character
+         * @param end the character after the last
+         * @param hash the hash of the characters
+         * @return the string, or null if the table does not hold it
+         */
+        String find(char[] chars, int start, int end, int hash) {
+            int mask = strings.length - 1;
+            for (int slot = (hash ^ (hash >>> 16)) & mask; strings[slot] != null; slot = (slot + 1) & mask) {
+                String s = strings[slot];
+                if (s.hashCode() == hash && s.length() == end - start && matches(s, chars, start)) {
+                    return s;
+                }
+            }
+            return null;
+        }
+        
+        /**
+         * Adds a string the table does not hold yet
+         * @param s the string
+         */
+        void add(String s) {
+            put(strings, s);
+            count++;
+            if (count * 2 > strings.length) {
+                String[] old = strings;
+                strings = new String[old.length * 2];
+                for (String kept : old) {
+                    if (kept != null) {
+                        put(strings, kept);
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Adds every string of another table, none of which this table holds yet
+         * @param other the other table
+         */
+        void addAll(StringTable other) {
+            for (String s : other.strings) {
+                if (s != null) {
+                    add(s);
+                }
+            }
+        }
+        
+        /**
+         * Stores a string in the first free slot of its probe sequence
+         * @param table the slots
+         * @param s the string
+         */
+        private static void put(String[] table, String s) {
+            int mask = table.length - 1;
+            int hash = s.hashCode();
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (table[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = s;
+        }
+    }
+    
+    /**
+     * Parses one source into definitions. Lines are split into words in place,
+     * and only names and suits ever become Strings.
+     */
+    private final class Parser {
+        private final String source;
+        private final char[] chars;
+        private final int end;
+        private int position;
+        private int line;
+        
+        // The words of the current line
+        private int[] wordStarts = new int[16];
+        private int[] wordEnds = new int[16];
+        private int wordCount;
+        
+        // The definition being built
+        private String deckName;
+        private boolean bySuit;
+        private int copies;
+        private String[] suits;
+        private final List<String> groupSuits = new ArrayList<>();
+        private final List<Card> groupCards = new ArrayList<>();  // one per card line, in the group's first suit
+        private final List<Integer> groupCopies = new ArrayList<>();
+        private Card[] built;
+        private int size;
+        
+        // Strings and cards new to the registry, shared with it only by commit()
+        private final StringTable newStrings = new StringTable(16);
+        private final HashMap<Card, Card> newCards = new HashMap<>();
+        
+        /**
+         * Sets up a parser over decoded text
+         * @param source the name used in error messages
+         * @param text the text
+         */
+        Parser(String source, CharBuffer text) {
+            this.source = source;
+            this.chars = text.array();
+            this.position = text.arrayOffset() + text.position();
+            this.end = text.arrayOffset() + text.limit();
+        }
+        
+        /**
+         * Parses every definition in the source
+         * @return the definitions
+         * @throws IllegalArgumentException if the source is malformed or repeats a registered name
+         */
+        List<DeckDefinition> parse() {
+            List<DeckDefinition> parsed = new ArrayList<>();
+            HashMap<String, Boolean> names = new HashMap<>();
+            
+            while (nextLine()) {
+                if (wordCount == 0) {
+                    continue; // Blank or comment line
+                }
+                
+                if (is(0, "deck")) {
+                    if (deckName != null) {
+                        parsed.add(finish());
+                    }
+                    expectWords(2, "deck name");
+                    deckName = word(1);
+                    if (definitions.containsKey(deckName) || names.put(deckName, Boolean.TRUE) != null) {
+                        throw error("Duplicate deck name " + deckName);
+                    }
+                    bySuit = true;
+                    copies = 1;
+                    suits = null;
+                    built = new Card[64];
+                    size = 0;
+                } else if (deckName == null) {
+                    throw error("Expected a deck line first");
+                } else if (is(0, "order")) {
+                    expectWords(2, "suits or ranks");
+                    if (suits != null || size > 0) {
+                        throw error("order must come before the first suits line");
+                    }
+                    if (is(1, "suits")) {
+                        bySuit = true;
+                    } else if (is(1, "ranks")) {
+                        bySuit = false;
+                    } else {
+                        throw error("order must be suits or ranks");
+                    }
+                } else if (is(0, "copies")) {
+                    expectWords(2, "number of copies");
+                    copies = number(1);
+                } else if (is(0, "suits")) {
+                    if (wordCount < 2) {
+                        throw error("suits needs at least one suit");
+                    }
+                    flushGroup();
+                    suits = new String[wordCount - 1];
+                    for (int i = 1; i < wordCount; i++) {
+                        suits[i - 1] = word(i);
+                    }
+                } else if (is(0, "card")) {
+                    if (suits == null) {
+                        throw error("card needs a suits line first");
+                    }
+                    if (wordCount != 3 && wordCount != 4) {
+                        throw error("Expected card name value [xN]");
+                    }
+                    groupCards.add(new Card(word(1), suits[0], number(2)));
+                    groupCopies.add(wordCount == 4 ? times(3) : 1);
+                } else {
+                    throw error("Unknown directive " + word(0));
+                }
+            }
+            
+            if (deckName != null) {
+                parsed.add(finish());
+            }
+            return parsed;
+        }
+        
+        /**
+         * Generates the cards of the current suits group in the deck's order
+         */
+        private void flushGroup() {
+            if (suits == null) {
+                return;
+            }
+            if (groupCards.isEmpty()) {
+                throw error("suits " + String.join(" ", suits) + " has no cards");
+            }
+            
+            int outer = bySuit ? suits.length : groupCards.size();
+            int inner = bySuit ? groupCards.size() : suits.length;
+            for (int i = 0; i < outer; i++) {
+                for (int j = 0; j < inner; j++) {
+                    int suit = bySuit ? i : j;
+                    int rank = bySuit ? j : i;
+                    Card shape = groupCards.get(rank);
+                    Card card = card(shape.getName(), suits[suit], shape.getValue());
+                    for (int c = groupCopies.get(rank); c > 0; c--) {
+                        add(card);
+                    }
+                }
+            }
+            groupCards.clear();
+            groupCopies.clear();
+        }
+        
+        /**
+         * Returns the shared Card with the given attributes: the canonical instance
+         * for a standard card, otherwise one instance per distinct card
+         * @param name the interned name
+         * @param suit the interned suit
+         * @param value the value
+         * @return the shared card
+         */
+        private Card card(String name, String suit, int value) {
+            Card card = new Card(name, suit, value).canonical();
+            if (card.isStandard()) {
+                return card;
+            }
+            Card shared = cards.get(card);
+            if (shared == null) {
+                shared = newCards.putIfAbsent(card, card);
+            }
+            return shared == null ? card : shared;
+        }
+        
+        /**
+         * Shares the strings and cards made by a successful parse with the registry
+         */
+        void commit() {
+            strings.addAll(newStrings);
+            cards.putAll(newCards);
+        }
+        
+        /**
+         * Appends a card to the definition being built
+         * @param card the card
+         */
+        private void add(Card card) {
+            if (size == MAX_CARDS) {
+                throw error("Deck " + deckName + " has more than " + MAX_CARDS + " cards");
+            }
+            if (size == built.length) {
+                built = Arrays.copyOf(built, size * 2);
+            }
+            built[size++] = card;
+        }
+        
+        /**
+         * Completes the definition being built
+         * @return the definition
+         */
+        private DeckDefinition finish() {
+            flushGroup();
+            if (size == 0) {
+                throw error("Deck " + deckName + " has no cards");
+            }
+            if ((long) size * copies > MAX_CARDS) {
+                throw error("Deck " + deckName + " has more than " + MAX_CARDS + " cards");
+            }
+            
+            // Repeat the deck with doubling copies, as Deck.standard does
+            Card[] template = new Card[size * copies];
+            System.arraycopy(built, 0, template, 0, size);
+            for (int filled = size; filled < template.length; filled *= 2) {
+                System.arraycopy(template, 0, template, filled, Math.min(filled, template.length - filled));
+            }
+            DeckDefinition definition = new DeckDefinition(deckName, template);
+            deckName = null;
+            suits = null;
+            return definition;
+        }
+        
+        /**
+         * Splits the next line into words
+         * @return false at the end of the source
+         */
+        private boolean nextLine() {
+            if (position >= end) {
+                return false;
+            }
+            line++;
+            wordCount = 0;
+            while (position < end && chars[position] != '\n') {
+                char c = chars[position];
+                if (c == ' ' || c == '\t' || c == '\r') {
+                    position++;
+                } else if (c == '#') {
+                    while (position < end && chars[position] != '\n') {
+                        position++; // Comment to the end of the line
+                    }
+                } else if (c == '"') {
+                    int start = ++position;
+                    while (position < end && chars[position] != '"' && chars[position] != '\n') {
+                        position++;
+                    }
+                    if (position == end || chars[position] != '"') {
+                        throw error("Unclosed quote");
+                    }
+                    int stop = position;
+                    while (start < stop && chars[start] == ' ') {
+                        start++; // Cards trim their names and suits, so the words are trimmed too
+                    }
+                    while (stop > start && chars[stop - 1] == ' ') {
+                        stop--;
+                    }
+                    addWord(start, stop);
+                    position++;
+                } else {
+                    int start = position;
+                    while (position < end && " \t\r\n#\"".indexOf(chars[position]) < 0) {
+                        position++;
+                    }
+                    addWord(start, position);
+                }
+            }
+            position++; // Past the newline
+            return true;
+        }
+        
+        /**
+         * Records a word of the current line
+         * @param start the first character
+         * @param stop the character after the last
+         */
+        private void addWord(int start, int stop) {
+            if (start == stop) {
+                throw error("Empty quoted word");
+            }
+            if (wordCount == wordStarts.length) {
+                wordStarts = Arrays.copyOf(wordStarts, wordCount * 2);
+                wordEnds = Arrays.copyOf(wordEnds, wordCount * 2);
+            }
+            wordStarts[wordCount] = start;
+            wordEnds[wordCount] = stop;
+            wordCount++;
+        }
+        
+        /**
+         * Checks a word of the current line against a keyword
+         * @param index the word index
+         * @param keyword the keyword
+         * @return true if they are equal
+         */
+        private boolean is(int index, String keyword) {
+            return wordEnds[index] - wordStarts[index] == keyword.length() && matches(keyword, chars, wordStarts[index]);
+        }
+        
+        /**
+         * Returns a word of the current line, interned: the registry's String if it
+         * has one, otherwise this parse's, made on first use
+         * @param index the word index
+         * @return the word
+         */
+        private String word(int index) {
+            int start = wordStarts[index];
+            int stop = wordEnds[index];
+            int hash = hash(chars, start, stop);
+            String s = strings.find(chars, start, stop, hash);
+            if (s == null) {
+                s = newStrings.find(chars, start, stop, hash);
+            }
+            if (s == null) {
+                s = new String(chars, start, stop - start);
+                newStrings.add(s);
+            }
+            return s;
+        }
+        
+        /**
+         * Parses a word of the current line as a positive number
+         * @param index the word index
+         * @return the number
+         * @throws IllegalArgumentException if it is not a positive number
+         */
+        private int number(int index) {
+            return parsePositive(wordStarts[index], wordEnds[index]);
+        }
+        
+        /**
+         * Parses a copy count written as xN
+         * @param index the word index
+         * @return the count
+         * @throws IllegalArgumentException if the word is not x followed by a positive number
+         */
+        private int times(int index) {
+            if (chars[wordStarts[index]] != 'x') {
+                throw error("Expected a copy count like x2");
+            }
+            return parsePositive(wordStarts[index] + 1, wordEnds[index]);
+        }
+        
+        /**
+         * Parses a run of digits
+         * @param start the first character
+         * @param stop the character after the last
+         * @return the number
+         * @throws IllegalArgumentException if the run is not a positive number below 2^31
+         */
+        private int parsePositive(int start, int stop) {
+            if (start == stop || stop - start > 9) {
+                throw error("Expected a positive number");
+            }
+            int value = 0;
+            for (int i = start; i < stop; i++) {
+                if (chars[i] < '0' || chars[i] > '9') {
+                    throw error("Expected a positive number, not " + new String(chars, start, stop - start));
+                }
+                value = value * 10 + (chars[i] - '0');
+            }
+            if (value == 0) {
+                throw error("Expected a positive number");
+            }
+            return value;
+        }
+        
+        /**
+         * Checks the number of words on the current line
+         * @param count the expected count
+         * @param what what the words after the directive should be, for the error message
+         * @throws IllegalArgumentException if the count is wrong
+         */
+        private void expectWords(int count, String what) {
+            if (wordCount != count) {
+                throw error("Expected " + word(0) + " followed by the " + what);
+            }
+        }
+        
+        /**
+         * Builds an error pointing at the current line
+         * @param message what is wrong
+         * @return the exception to throw
+         */
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(source + ":" + line + ": " + message);
+        }
+    }
+}
@@ -1,32 +1,76 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
 /**
  * Represents a discard pile for card games where used cards are placed
  * @author Parusan
  * @version 1.0
  */
 public class DiscardPile {
+    private static final int MIN_CAPACITY = 8;
+    
+    // Cards in insertion order. Removed cards leave a null slot behind until the
+    // pile is compacted, so removing a card never shifts the others.
     private Card[] cards;
+    private int end;   // number of slots in use, including null slots
+    private int live;  // number of cards actually in the pile
+    
+    // Index from each card to its slots: a linked list through next[], oldest slot first.
+    // Standard cards use arrays indexed by card id; other cards use a hash map.
+    private int[] next;
+    private int[] firstById;
+    private int[] lastById;
+    private HashMap<Card, int[]> customSlots; // {first slot, last slot}
     
     /**
      * Constructs a discard pile from an existing array of cards
      * @param cards the array of cards to initialize the discard pile with
+     * @throws IllegalArgumentException if the card array is null
      */
     public DiscardPile(Card[] cards) {
-        this.cards = cards;
+        if (cards == null) {
+            throw new IllegalArgumentException("Card array cannot be null");
+        }
+        init(Math.max(cards.length, MIN_CAPACITY));
+        addAll(cards);
     }
     
     /**
      * Constructs an empty discard pile
      */
     public DiscardPile() {
-        this.cards = new Card[0]; // Empty array
+        init(MIN_CAPACITY);
+    }
+    
+    /**
+     * Sets up empty storage and index
+     * @param capacity the number of slots to start with
+     */
+    private void init(int capacity) {
+        this.cards = new Card[capacity];
+        this.next = new int[capacity];
+        this.firstById = new int[Card.STANDARD_COUNT];
+        this.lastById = new int[Card.STANDARD_COUNT];
+        this.customSlots = new HashMap<>();
+        Arrays.fill(firstById, -1);
+        Arrays.fill(lastById, -1);
     }
     
     /**
      * Returns the current array of cards in the discard pile
-     * @return an array containing all cards in the discard pile
+     * @return a new array containing all cards in the discard pile, oldest first
      */
     public Card[] getCards() {
-        return cards;
+        Card[] result = new Card[live];
+        int index = 0;
+        for (int i = 0; i < end; i++) {
+            if (cards[i] != null) {
+                result[index] = cards[i];
+                index++;
+            }
+        }
+        return result;
     }
     
     /**
@@ -34,7 +78,16 @@ public class DiscardPile {
      * @return the size of the discard pile as an integer
      */
     public int size() {
-        return cards.length;
+        return live;
+    }
+    
+    /**
+     * Returns the most recently discarded card without removing it
+     * @return the top card, or null if the pile is empty
+     */
+    public Card peekTop() {
+        // Trailing null slots are always trimmed, so the last slot in use holds the top card
+        return end == 0 ? null : cards[end - 1];
     }
     
     /**
@@ -42,65 +95,136 @@ public class DiscardPile {
      * @param card the card to add to the discard pile
      */
     public void addCard(Card card) {
+        if (!CardMetrics.ENABLED) {
+            addToTop(card);
+            return;
+        }
+        long start = System.nanoTime();
+        addToTop(card);
+        CardMetrics.PILE_ADD_CARD.record(start, live);
+    }
+    
+    /**
+     * The uninstrumented body of addCard(Card)
+     * @param card the card to add
+     */
+    private void addToTop(Card card) {
         if (card == null) {
             return; // Don't add null cards
         }
         
-        // Create a new array that's one card larger
-        Card[] newPile = new Card[cards.length + 1];
-        
-        // Copy all existing cards
-        for (int i = 0; i < cards.length; i++) {
-            newPile[i] = cards[i];
+        if (end == cards.length) {
+            grow(end + 1);
         }
         
-        // Add the new card at the end
-        newPile[cards.length] = card;
+        int slot = end;
+        cards[slot] = card;
+        next[slot] = -1;
+        end++;
+        live++;
         
-        // Replace the old pile with the new larger pile
-        cards = newPile;
+        // Link the new slot to the end of this card's list
+        if (card.isStandard()) {
+            int id = card.getId();
+            if (lastById[id] == -1) {
+                firstById[id] = slot;
+            } else {
+                next[lastById[id]] = slot;
+            }
+            lastById[id] = slot;
+        } else {
+            int[] ends = customSlots.get(card);
+            if (ends == null) {
+                customSlots.put(card, new int[] {slot, slot});
+            } else {
+                next[ends[1]] = slot;
+                ends[1] = slot;
+            }
+        }
+    }
+    
+    /**
+     * Adds all of the given cards to the discard pile in order, growing its storage at most once
+     * @param newCards the cards to add; null entries are skipped
+     * @throws IllegalArgumentException if the card array is null
+     */
+    public void addAll(Card[] newCards) {
+        if (newCards == null) {
+            throw new IllegalArgumentException("Card array cannot be null");
+        }
+        
+        if (end + newCards.length > cards.length) {
+            grow(end + newCards.length);
+        }
+        for (int i = 0; i < newCards.length; i++) {
+            addToTop(newCards[i]);
+        }
     }
     
     /**
      * Removes a specific card from the discard pile and returns it
      * @param card the card to remove from the discard pile
-     * @return the removed card, or null if the card was not found
+     * @return the removed card (the oldest matching one), or null if the card was not found
      */
     public Card removeCard(Card card) {
-        if (card == null || cards.length == 0) {
+        if (!CardMetrics.ENABLED) {
+            return removeOldest(card);
+        }
+        long start = System.nanoTime();
+        Card result = removeOldest(card);
+        CardMetrics.PILE_REMOVE_CARD.record(start, live);
+        return result;
+    }
+    
+    /**
+     * The uninstrumented body of removeCard(Card)
+     * @param card the card to remove
+     * @return the removed card, or null if the card was not found
+     */
+    private Card removeOldest(Card card) {
+        if (card == null || live == 0) {
             return null; // Nothing to remove
         }
         
-        // Find the card in the pile
-        int cardIndex = -1;
-        for (int i = 0; i < cards.length; i++) {
-            if (cards[i].equals(card)) {
-                cardIndex = i;
-                break;
+        // Unlink the oldest slot holding this card
+        int slot;
+        if (card.isStandard()) {
+            int id = card.getId();
+            slot = firstById[id];
+            if (slot == -1) {
+                return null; // Card not found
+            }
+            firstById[id] = next[slot];
+            if (next[slot] == -1) {
+                lastById[id] = -1;
+            }
+        } else {
+            int[] ends = customSlots.get(card);
+            if (ends == null) {
+                return null; // Card not found
+            }
+            slot = ends[0];
+            if (next[slot] == -1) {
+                customSlots.remove(card);
+            } else {
+                ends[0] = next[slot];
             }
         }
         
-        if (cardIndex == -1) {
-            return null; // Card not found
-        }
-        
-        // Store the card to return
-        Card removedCard = cards[cardIndex];
+        Card removedCard = cards[slot];
+        cards[slot] = null;
+        live--;
         
-        // Create a new array without the removed card
-        Card[] newPile = new Card[cards.length - 1];
+        // Keep the top card in the last slot in use
+        while (end > 0 && cards[end - 1] == null) {
+            end--;
+        }
         
-        // Copy all cards except the removed one
-        int newIndex = 0;
-        for (int i = 0; i < cards.length; i++) {
-            if (i != cardIndex) {
-                newPile[newIndex] = cards[i];
-                newIndex++;
-            }
+        // Compact once null slots outnumber cards, so the work stays amortized constant per removal
+        if (end - live > live && end > MIN_CAPACITY) {
+            compact();
         }
         
-        // Replace the old pile with the new smaller pile
-        cards = newPile;
         return removedCard;
     }
     
@@ -109,43 +233,139 @@ public class DiscardPile {
      * @return an array containing all cards that were in the discard pile
      */
     public Card[] removeAll() {
-        if (cards.length == 0) {
+        if (!CardMetrics.ENABLED) {
+            return clear();
+        }
+        long start = System.nanoTime();
+        int size = live; // clear() leaves live at 0
+        Card[] result = clear();
+        CardMetrics.PILE_REMOVE_ALL.record(start, size);
+        return result;
+    }
+    
+    /**
+     * The uninstrumented body of removeAll()
+     * @return the cards that were in the pile
+     */
+    private Card[] clear() {
+        if (live == 0) {
             return new Card[0]; // Return empty array
         }
         
         // Store all current cards to return
-        Card[] allCards = cards;
+        Card[] allCards = getCards();
         
         // Empty the discard pile
-        cards = new Card[0];
+        reset();
         
         return allCards;
     }
     
+    /**
+     * Empties the pile in place, keeping its storage, without copying the cards out like removeAll()
+     */
+    void reset() {
+        Arrays.fill(cards, 0, end, null);
+        end = 0;
+        live = 0;
+        Arrays.fill(firstById, -1);
+        Arrays.fill(lastById, -1);
+        if (!customSlots.isEmpty()) {
+            customSlots.clear();
+        }
+    }
+    
+    /**
+     * Returns the number of storage slots in use, including slots of removed cards
+     * @return the slot count
+     */
+    int slotCount() {
+        return end;
+    }
+    
+    /**
+     * Returns the card in a storage slot, oldest first
+     * @param slot the slot index, below slotCount()
+     * @return the card, or null if the card in that slot was removed
+     */
+    Card slotAt(int slot) {
+        return cards[slot];
+    }
+    
+    /**
+     * Grows the storage, at least doubling it
+     * @param required the number of slots needed
+     */
+    private void grow(int required) {
+        int newCapacity = Math.max(Math.max(cards.length * 2, required), MIN_CAPACITY);
+        cards = Arrays.copyOf(cards, newCapacity);
+        next = Arrays.copyOf(next, newCapacity);
+    }
+    
+    /**
+     * Moves the cards together to remove the null slots, then rebuilds the index
+     */
+    private void compact() {
+        Card[] liveCards = getCards();
+        reset();
+        addAll(liveCards);
+    }
+    
     /**
      * Returns a formatted string representation of all cards in the discard pile
      * @return a comma-separated list of cards with a period at the end
      */
     @Override
     public String toString() {
-        if (cards.length == 0) {
+        if (live == 0) {
             return "Empty discard pile";
         }
         
-        StringBuilder result = new StringBuilder();
+        // Most card names are under 16 characters, so this is usually the only buffer needed
+        return appendTo(new StringBuilder(live * 18)).toString();
+    }
+    
+    /**
+     * Writes the same text as toString() straight to the destination,
+     * one card at a time, without building the string first
+     * @param out the destination, such as a Writer
+     * @throws IOException if out cannot be written to
+     */
+    public void appendTo(Appendable out) throws IOException {
+        if (live == 0) {
+            out.append("Empty discard pile");
+            return;
+        }
         
-        // Add each card to the string
-        for (int i = 0; i < cards.length; i++) {
-            result.append(cards[i].toString()); // "Ace of Hearts" format
+        // Add each card to the output
+        int remaining = live;
+        for (int i = 0; i < end; i++) {
+            if (cards[i] == null) {
+                continue; // Removed card
+            }
+            cards[i].appendTo(out); // "Ace of Hearts" format
+            remaining--;
             
             // Add comma and space if not the last card
-            if (i < cards.length - 1) {
-                result.append(", ");
+            if (remaining > 0) {
+                out.append(", ");
             } else {
-                result.append("."); // Period at the end
+                out.append("."); // Period at the end
             }
         }
-        
-        return result.toString();
+    }
+    
+    /**
+     * Writes the same text as toString() to a StringBuilder
+     * @param out the builder to append to
+     * @return out
+     */
+    public StringBuilder appendTo(StringBuilder out) {
+        try {
+            appendTo((Appendable) out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // A StringBuilder never throws
+        }
+        return out;
     }
 }
\ No newline at end of file
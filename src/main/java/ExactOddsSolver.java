@@ -0,0 +1,164 @@
+/**
+ * Computes each player's exact chance of winning a High Card game from a position part
+ * way through it, over every way the rest of the deck could be dealt.
+ * Scoring depends only on card values, so deals are counted rather than listed: the
+ * solver walks the ranks from highest to lowest, choosing how many cards of each rank
+ * each player receives, weighted by the number of ways to pick them. Once the number
+ * of cards still to be dealt is known, the cards already placed above the current rank
+ * follow from it, so each subproblem is just (rank, cards left to deal to each player)
+ * and is solved once and cached.
+ * @author Parusan
+ * @version 1.0
+ */
+public class ExactOddsSolver {
+    private final GamePosition position;
+    private final int[] deckCounts;     // cards of each rank left in the deck
+    private final int[] deckBelow;      // cards left in the deck at or below each rank
+    private final int[] handAbove1;     // cards of each player's hand above each rank
+    private final int[] handAbove2;
+    private final double[] logFactorial;
+    
+    // memo[rank][left1][left2] is the distribution of player 1's round lead from that rank down
+    private final double[][][][] memo;
+    
+    /**
+     * Captures a position to solve. Each player is dealt cards from the deck until they
+     * hold one card per remaining round, then the remaining rounds are played with each
+     * player's highest card, as HighCardEngine does.
+     * @param player1 the first player, whose hand is known
+     * @param player2 the second player, whose hand is known
+     * @param deck the cards not yet dealt, in any order
+     * @param roundsRemaining the number of rounds still to play
+     * @param points1 the points player 1 has already won
+     * @param points2 the points player 2 has already won
+     * @throws IllegalArgumentException if a player or the deck is null, a count is negative,
+     *         or the deck cannot fill both hands
+     */
+    public ExactOddsSolver(Player player1, Player player2, Deck deck, int roundsRemaining, int points1, int points2) {
+        this.position = new GamePosition(player1, player2, deck, roundsRemaining, points1, points2);
+        
+        int ranks = position.rankCount();
+        this.deckCounts = position.deckCounts();
+        this.deckBelow = new int[ranks];
+        this.handAbove1 = new int[ranks];
+        this.handAbove2 = new int[ranks];
+        int below = 0;
+        for (int rank = 0; rank < ranks; rank++) {
+            below += deckCounts[rank];
+            deckBelow[rank] = below;
+        }
+        for (int rank = ranks - 2; rank >= 0; rank--) {
+            handAbove1[rank] = handAbove1[rank + 1] + position.hand1[rank + 1];
+            handAbove2[rank] = handAbove2[rank + 1] + position.hand2[rank + 1];
+        }
+        
+        this.logFactorial = new double[position.deckRanks.length + 1];
+        for (int n = 2; n < logFactorial.length; n++) {
+            logFactorial[n] = logFactorial[n - 1] + Math.log(n);
+        }
+        this.memo = new double[ranks][position.deal1 + 1][position.deal2 + 1][];
+    }
+    
+    /**
+     * Computes the exact odds
+     * @return the probability of each outcome
+     */
+    public WinOdds solve() {
+        int rounds = position.rounds;
+        double[] leads = position.rankCount() == 0 ? noCards() : solve(position.rankCount() - 1, position.deal1, position.deal2);
+        
+        double player1Win = 0;
+        double player2Win = 0;
+        double tie = 0;
+        for (int lead = -rounds; lead <= rounds; lead++) {
+            int finalLead = position.points1 - position.points2 + lead;
+            if (finalLead > 0) {
+                player1Win += leads[lead + rounds];
+            } else if (finalLead < 0) {
+                player2Win += leads[lead + rounds];
+            } else {
+                tie += leads[lead + rounds];
+            }
+        }
+        return new WinOdds(player1Win, player2Win, tie);
+    }
+    
+    /**
+     * Returns the lead distribution when no cards are in play, so no rounds can be won
+     * @return certainty of a lead of 0
+     */
+    private double[] noCards() {
+        double[] leads = new double[2 * position.rounds + 1];
+        leads[position.rounds] = 1;
+        return leads;
+    }
+    
+    /**
+     * Returns the distribution of player 1's round wins minus player 2's, counting only
+     * rounds decided at or below a rank, given how many cards are still to be dealt
+     * @param rank the highest rank not yet placed
+     * @param left1 the cards still to be dealt to player 1
+     * @param left2 the cards still to be dealt to player 2
+     * @return probabilities indexed by lead + rounds
+     */
+    private double[] solve(int rank, int left1, int left2) {
+        if (memo[rank][left1][left2] != null) {
+            return memo[rank][left1][left2];
+        }
+        
+        int rounds = position.rounds;
+        double[] leads = new double[2 * rounds + 1];
+        
+        // Each player's cards above this rank fill their highest positions
+        int above1 = Math.min(rounds, handAbove1[rank] + position.deal1 - left1);
+        int above2 = Math.min(rounds, handAbove2[rank] + position.deal2 - left2);
+        
+        int here = deckCounts[rank];
+        int rest = deckBelow[rank] - here; // Deck cards below this rank
+        double ways = logChoose(deckBelow[rank], left1) + logChoose(deckBelow[rank] - left1, left2);
+        
+        for (int take1 = 0; take1 <= Math.min(here, left1); take1++) {
+            for (int take2 = 0; take2 <= Math.min(here - take1, left2); take2++) {
+                int later1 = left1 - take1;
+                int later2 = left2 - take2;
+                if (later1 + later2 > rest) {
+                    continue; // Not enough lower cards left to finish the deal
+                }
+                
+                // Chance of this split among all ways to deal the remaining cards
+                double chance = Math.exp(logChoose(here, take1) + logChoose(here - take1, take2)
+                                         + logChoose(rest, later1) + logChoose(rest - later1, later2) - ways);
+                
+                // Positions where this rank meets a higher card of the other player are decided now;
+                // positions where it meets a lower card are decided when that card's rank is placed
+                int count1 = position.hand1[rank] + take1;
+                int count2 = position.hand2[rank] + take2;
+                int lost1 = Math.max(0, Math.min(Math.min(above1 + count1, above2), rounds) - above1);
+                int won1 = Math.max(0, Math.min(Math.min(above2 + count2, above1), rounds) - above2);
+                int shift = won1 - lost1;
+                
+                if (rank == 0) {
+                    leads[shift + rounds] += chance;
+                } else {
+                    double[] lower = solve(rank - 1, later1, later2);
+                    for (int lead = Math.max(-rounds, -rounds - shift); lead <= Math.min(rounds, rounds - shift); lead++) {
+                        leads[lead + shift + rounds] += chance * lower[lead + rounds];
+                    }
+                }
+            }
+        }
+        
+        memo[rank][left1][left2] = leads;
+        return leads;
+    }
+    
+    /**
+     * Returns the natural logarithm of a binomial coefficient
+     * @param n the number of items
+     * @param k the number chosen
+     * @return log(n choose k)
+     */
+    private double logChoose(int n, int k) {
+        return logFactorial[n] - logFactorial[k] - logFactorial[n - k];
+    }
+}
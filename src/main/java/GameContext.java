@@ -0,0 +1,152 @@
+/**
+ * A reusable table for playing High Card games back to back without allocating.
+ * The context owns a deck, two players with bitset hands, and a discard pile, and
+ * reset() puts them all back to the start of a game in place, so after the first
+ * few games the JIT has compiled, a game allocates nothing on the heap.
+ * Not thread-safe; give each thread its own context.
+ * @author Parusan
+ * @version 1.0
+ */
+public class GameContext {
+    private final Card[] fullDeck = Deck.standardCards(1);
+    private final Deck deck = new Deck();
+    private final Player player1;
+    private final Player player2;
+    private final DiscardPile discardPile = new DiscardPile();
+    private int points1;
+    private int points2;
+    
+    /**
+     * Constructs a context with two players named "Player 1" and "Player 2"
+     */
+    public GameContext() {
+        this("Player 1", "Player 2");
+    }
+    
+    /**
+     * Constructs a context with two named players
+     * @param name1 the first player's name
+     * @param name2 the second player's name
+     * @throws IllegalArgumentException if a name is null or empty
+     */
+    public GameContext(String name1, String name2) {
+        player1 = new Player(name1, 0);
+        player2 = new Player(name2, 0);
+        player1.useBitsetHand();
+        player2.useBitsetHand();
+    }
+    
+    /**
+     * Puts a full, unshuffled standard deck back, empties both hands and the
+     * discard pile, and clears the points, all without allocating
+     */
+    public void reset() {
+        deck.refill(fullDeck);
+        player1.clearHand();
+        player2.clearHand();
+        discardPile.reset();
+        points1 = 0;
+        points2 = 0;
+    }
+    
+    /**
+     * Resets the context and shuffles the deck, ready to play
+     * @param random the source of randomness for the shuffle
+     * @throws IllegalArgumentException if random is null
+     */
+    public void reset(CardRandom random) {
+        reset();
+        deck.shuffle(random);
+    }
+    
+    /**
+     * Deals HAND_SIZE cards to each player in turn and plays ROUNDS rounds,
+     * exactly as HighCardEngine.playGame does
+     * @return 1 or 2 for the player who won the game, or 0 for a tie
+     * @throws IllegalStateException if the deck runs out before every round is played
+     */
+    public int play() {
+        deal();
+        return playRounds();
+    }
+    
+    /**
+     * Deals HAND_SIZE cards to each player in turn, the first half of play()
+     */
+    public void deal() {
+        for (int i = 0; i < HighCardEngine.HAND_SIZE; i++) {
+            player1.draw(deck);
+            player2.draw(deck);
+        }
+    }
+    
+    /**
+     * Plays ROUNDS rounds from the dealt hands, the second half of play()
+     * @return 1 or 2 for the player who won the game, or 0 for a tie
+     * @throws IllegalStateException if a hand runs out before every round is played
+     */
+    public int playRounds() {
+        for (int round = 1; round <= HighCardEngine.ROUNDS; round++) {
+            int value1 = player1.playHighest(discardPile).getValue();
+            int value2 = player2.playHighest(discardPile).getValue();
+            if (value1 > value2) {
+                points1++;
+            } else if (value2 > value1) {
+                points2++;
+            }
+        }
+        
+        if (points1 == points2) {
+            return 0;
+        }
+        return points1 > points2 ? 1 : 2;
+    }
+    
+    /**
+     * Returns player 1's points in the current game
+     * @return the points
+     */
+    public int getPoints1() {
+        return points1;
+    }
+    
+    /**
+     * Returns player 2's points in the current game
+     * @return the points
+     */
+    public int getPoints2() {
+        return points2;
+    }
+    
+    /**
+     * Returns the context's deck
+     * @return the deck
+     */
+    public Deck getDeck() {
+        return deck;
+    }
+    
+    /**
+     * Returns the first player
+     * @return player 1
+     */
+    public Player getPlayer1() {
+        return player1;
+    }
+    
+    /**
+     * Returns the second player
+     * @return player 2
+     */
+    public Player getPlayer2() {
+        return player2;
+    }
+    
+    /**
+     * Returns the context's discard pile
+     * @return the discard pile
+     */
+    public DiscardPile getDiscardPile() {
+        return discardPile;
+    }
+}
@@ -0,0 +1,361 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An append-only audit log of game events, written as fixed-size binary records
+ * straight into memory-mapped segment files, so no event is copied through an
+ * intermediate buffer. Segments roll over when full. Writes reach the operating
+ * system immediately and are forced to disk in batches, every flushInterval records
+ * and on flush() or close(). Reopening a log directory continues after the last record,
+ * keeping the segment size the log was created with, and GameEventReplayer rebuilds
+ * game state from it. A new game and its seats, and a deck order and its continuations,
+ * are several records that a crash can cut short; the replayer skips such a torn group.
+ *
+ * Record layout (RECORD_SIZE bytes): byte type, byte player, byte card id, byte payload
+ * length, int argument, then a payload of up to PAYLOAD_SIZE bytes.
+ * @author Parusan
+ * @version 1.0
+ */
+public class GameEventLog implements HighCardEngine.GameListener, AutoCloseable {
+    /** Size of every record in bytes */
+    public static final int RECORD_SIZE = 64;
+    
+    /** Bytes of payload available in one record */
+    public static final int PAYLOAD_SIZE = RECORD_SIZE - 8;
+    
+    /** Marks an unused record; segment files are zero-filled, so this ends the log */
+    static final byte EMPTY = 0;
+    /** A new game; argument = number of players */
+    static final byte NEW_GAME = 1;
+    /** A player's seat; argument = age, payload = name as UTF-16 chars */
+    static final byte PLAYER = 2;
+    /** A new deck order, for example after a shuffle; argument = deck size, payload = card ids */
+    static final byte DECK = 3;
+    /** More card ids following a DECK record that did not fit */
+    static final byte DECK_MORE = 4;
+    /** A player drew the top card of the deck; card = the card drawn */
+    static final byte DRAW = 5;
+    /** A player discarded a card to the discard pile */
+    static final byte DISCARD = 6;
+    /** A player returned a card to the deck */
+    static final byte RETURN = 7;
+    /** A round ended; argument = round number, player = winner or NO_PLAYER for a tie */
+    static final byte ROUND = 8;
+    
+    /** Player byte for events that do not belong to a player */
+    static final int NO_PLAYER = 0xFF;
+    
+    /** The most cards a logged deck may hold, so a replayer can reject a corrupt deck size before allocating */
+    static final int MAX_DECK_SIZE = 1 << 20;
+    
+    private static final int DEFAULT_SEGMENT_RECORDS = 1 << 16;
+    private static final int DEFAULT_FLUSH_INTERVAL = 1024;
+    
+    private final Path directory;
+    private final int segmentRecords;
+    private final int flushInterval;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int segmentIndex;
+    private long events;
+    private int unflushed;
+    
+    /**
+     * Opens a log in the given directory with default segment size and flush interval
+     * @param directory the directory holding the segment files, created if missing
+     * @throws IOException if the directory or a segment cannot be opened
+     */
+    public GameEventLog(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_RECORDS, DEFAULT_FLUSH_INTERVAL);
+    }
+    
+    /**
+     * Opens a log in the given directory, continuing after any records already there.
+     * An existing log keeps its own segment size, read from the length of its first
+     * segment file, since every segment is created at full size.
+     * @param directory the directory holding the segment files, created if missing
+     * @param segmentRecords the number of records in each segment file of a new log
+     * @param flushInterval the number of records written between forces to disk
+     * @throws IOException if the directory or a segment cannot be opened, or an existing
+     *         segment is not a whole number of records
+     * @throws IllegalArgumentException if directory is null or a size is not positive
+     */
+    public GameEventLog(Path directory, int segmentRecords, int flushInterval) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("Directory cannot be null");
+        }
+        if (segmentRecords < 1 || flushInterval < 1) {
+            throw new IllegalArgumentException("Segment size and flush interval must be positive");
+        }
+        this.directory = directory;
+        this.flushInterval = flushInterval;
+        
+        Files.createDirectories(directory);
+        
+        Path first = segmentPath(directory, 0);
+        if (Files.exists(first)) {
+            long length = Files.size(first);
+            if (length == 0 || length % RECORD_SIZE != 0 || length / RECORD_SIZE > Integer.MAX_VALUE / RECORD_SIZE) {
+                throw new IOException("Segment " + first + " is not a whole number of records");
+            }
+            segmentRecords = (int) (length / RECORD_SIZE);
+        }
+        this.segmentRecords = segmentRecords;
+        
+        // Continue in the last existing segment, after its last record
+        int last = 0;
+        while (Files.exists(segmentPath(directory, last + 1))) {
+            last++;
+        }
+        openSegment(last);
+        long base = (long) last * segmentRecords;
+        int used = 0;
+        while (used < segmentRecords && segment.get(used * RECORD_SIZE) != EMPTY) {
+            used++;
+        }
+        segment.position(used * RECORD_SIZE);
+        events = base + used;
+    }
+    
+    /**
+     * Returns the path of a segment file
+     * @param directory the log directory
+     * @param index the segment number
+     * @return the segment's path
+     */
+    static Path segmentPath(Path directory, int index) {
+        return directory.resolve(String.format("events-%08d.log", index));
+    }
+    
+    /**
+     * Returns the number of records in each segment file
+     * @return the segment size in records
+     */
+    public int getSegmentRecords() {
+        return segmentRecords;
+    }
+    
+    /**
+     * Returns the number of events in the log, which is also the offset of the next event
+     * @return the event count
+     */
+    public long getEventCount() {
+        return events;
+    }
+    
+    /**
+     * Records the start of a game and the players' seats
+     * @param players the players, at most 255, with names of at most PAYLOAD_SIZE / 2 characters
+     * @throws IllegalArgumentException if players is null, has more than 255 players, or a name is too long
+     */
+    public void logNewGame(Player[] players) {
+        if (players == null || players.length > 255) {
+            throw new IllegalArgumentException("A game needs between 0 and 255 players");
+        }
+        // Check every name first, so a rejected game writes nothing
+        for (int p = 0; p < players.length; p++) {
+            if (players[p].getName().length() > PAYLOAD_SIZE / 2) {
+                throw new IllegalArgumentException("Player names longer than " + PAYLOAD_SIZE / 2
+                                                   + " characters cannot be logged: " + players[p].getName());
+            }
+        }
+        
+        endRecord(beginRecord(NO_PLAYER, null, players.length), NEW_GAME);
+        for (int p = 0; p < players.length; p++) {
+            String name = players[p].getName();
+            int length = name.length();
+            int start = beginRecord(p, null, players[p].getAge());
+            segment.put(start + 3, (byte) length);
+            for (int c = 0; c < length; c++) {
+                segment.putChar(start + 8 + 2 * c, name.charAt(c));
+            }
+            endRecord(start, PLAYER);
+        }
+    }
+    
+    /**
+     * Records the current order of the deck, for example right after a shuffle
+     * @param deck the deck, which may hold only standard cards, at most MAX_DECK_SIZE of them
+     * @throws IllegalArgumentException if deck is null, holds a non-standard card, or is too big
+     */
+    public void logShuffle(Deck deck) {
+        if (deck == null) {
+            throw new IllegalArgumentException("Deck cannot be null");
+        }
+        int size = deck.size();
+        if (size > MAX_DECK_SIZE) {
+            throw new IllegalArgumentException("Decks of more than " + MAX_DECK_SIZE + " cards cannot be logged");
+        }
+        
+        int written = 0;
+        byte type = DECK;
+        do {
+            int count = Math.min(PAYLOAD_SIZE, size - written);
+            int start = beginRecord(NO_PLAYER, null, size);
+            segment.put(start + 3, (byte) count);
+            for (int i = 0; i < count; i++) {
+                segment.put(start + 8 + i, (byte) standardId(deck.cardAt(written + i)));
+            }
+            endRecord(start, type);
+            written += count;
+            type = DECK_MORE;
+        } while (written < size);
+    }
+    
+    /**
+     * Records a player drawing the top card of the deck
+     * @param player the player's seat, from 0
+     * @param card the card drawn
+     */
+    public void logDraw(int player, Card card) {
+        endRecord(beginRecord(player, card, 0), DRAW);
+    }
+    
+    /**
+     * Records a player discarding a card to the discard pile
+     * @param player the player's seat, from 0
+     * @param card the card discarded
+     */
+    public void logDiscard(int player, Card card) {
+        endRecord(beginRecord(player, card, 0), DISCARD);
+    }
+    
+    /**
+     * Records a player returning a card to the deck
+     * @param player the player's seat, from 0
+     * @param card the card returned
+     */
+    public void logReturn(int player, Card card) {
+        endRecord(beginRecord(player, card, 0), RETURN);
+    }
+    
+    /**
+     * Records the outcome of a round
+     * @param round the round number
+     * @param winner the winning player's seat from 0, or -1 for a tie
+     */
+    public void logRound(int round, int winner) {
+        endRecord(beginRecord(winner < 0 ? NO_PLAYER : winner, null, round), ROUND);
+    }
+    
+    @Override
+    public void gameStarted(Player player1, Player player2, Deck deck) {
+        logNewGame(new Player[] {player1, player2});
+        logShuffle(deck);
+    }
+    
+    @Override
+    public void cardDealt(int player, Card card) {
+        logDraw(player - 1, card);
+    }
+    
+    @Override
+    public void roundPlayed(int round, Card card1, Card card2, int winner) {
+        logDiscard(0, card1);
+        logDiscard(1, card2);
+        logRound(round, winner - 1);
+    }
+    
+    /**
+     * Forces every record written so far to disk
+     */
+    public void flush() {
+        segment.force();
+        unflushed = 0;
+    }
+    
+    /**
+     * Flushes and closes the log
+     * @throws IOException if the segment file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+    
+    /**
+     * Writes the fixed part of a new record, rolling to a new segment if the current one is full.
+     * The caller fills in the payload at the returned offset + 8 and then calls endRecord.
+     * @param player the player's seat, or NO_PLAYER
+     * @param card the card, or null
+     * @param argument the event's argument
+     * @return the offset of the record in the current segment
+     * @throws IllegalArgumentException if the seat is out of range or the card is not standard
+     */
+    private int beginRecord(int player, Card card, int argument) {
+        if (player < 0 || player > NO_PLAYER) {
+            throw new IllegalArgumentException("Invalid player seat " + player);
+        }
+        int cardByte = card == null ? 0xFF : standardId(card);
+        
+        if (!segment.hasRemaining()) {
+            rollSegment();
+        }
+        
+        int start = segment.position();
+        segment.put(start + 1, (byte) player);
+        segment.put(start + 2, (byte) cardByte);
+        segment.put(start + 3, (byte) 0);
+        segment.putInt(start + 4, argument);
+        return start;
+    }
+    
+    /**
+     * Completes a record by writing its type byte last, so a record only counts
+     * as written once all of it is in place
+     * @param start the offset returned by beginRecord
+     * @param type the event type
+     */
+    private void endRecord(int start, byte type) {
+        segment.put(start, type);
+        segment.position(start + RECORD_SIZE);
+        
+        events++;
+        unflushed++;
+        if (unflushed >= flushInterval) {
+            flush();
+        }
+    }
+    
+    /**
+     * Returns a card's id, rejecting cards the log cannot store
+     * @param card the card
+     * @return the card's id
+     */
+    private static int standardId(Card card) {
+        if (!card.isStandard()) {
+            throw new IllegalArgumentException("Only standard cards can be logged: " + card);
+        }
+        return card.getId();
+    }
+    
+    /**
+     * Forces the full segment to disk and maps the next one
+     */
+    private void rollSegment() {
+        try {
+            flush();
+            channel.close();
+            openSegment(segmentIndex + 1);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot roll event log segment", e);
+        }
+    }
+    
+    /**
+     * Opens and maps a segment file, creating it at full size if needed
+     * @param index the segment number
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    private void openSegment(int index) throws IOException {
+        channel = FileChannel.open(segmentPath(directory, index),
+                                   StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) segmentRecords * RECORD_SIZE);
+        segmentIndex = index;
+    }
+}
@@ -0,0 +1,278 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Rebuilds game state from a GameEventLog by applying its events in order to
+ * real Deck, Player and DiscardPile objects. The segment files are read through
+ * read-only memory maps, so replay runs at the speed of the game objects themselves.
+ * A new game and its seats, and a deck order and its continuations, take effect
+ * only once the whole group has been read. A group cut short, by a crash while it
+ * was being written or by the end of a partial replay, is skipped, and the records
+ * after it apply to the state from before it.
+ * @author Parusan
+ * @version 1.0
+ */
+public class GameEventReplayer {
+    private final Path directory;
+    
+    // State of the game being rebuilt
+    private Deck deck;
+    private Player[] players;
+    private DiscardPile discardPile;
+    private int[] points;
+    private long replayed;
+    
+    // A new game whose seats are being read from the PLAYER records after its NEW_GAME record
+    private Player[] pendingPlayers;
+    private int pendingSeated;
+    
+    // A deck order being read from a DECK record and the DECK_MORE records after it
+    private Card[] pendingDeck;
+    private int pendingCount;
+    
+    /**
+     * Constructs a replayer for the log in the given directory
+     * @param directory the directory holding the segment files
+     * @throws IllegalArgumentException if directory is null
+     */
+    public GameEventReplayer(Path directory) {
+        if (directory == null) {
+            throw new IllegalArgumentException("Directory cannot be null");
+        }
+        this.directory = directory;
+    }
+    
+    /**
+     * Replays every event in the log
+     * @return the state after the last event
+     * @throws IOException if a segment cannot be read
+     */
+    public GameSnapshot replay() throws IOException {
+        return replay(Long.MAX_VALUE);
+    }
+    
+    /**
+     * Replays the first eventCount events of the log, so the state is as it was
+     * when the event at offset eventCount was about to be written. If that offset
+     * falls inside a group of records, the state is as it was before the group.
+     * @param eventCount the number of events to read
+     * @return the state of the most recent game after those events
+     * @throws IOException if a segment cannot be read
+     * @throws IllegalArgumentException if eventCount is negative
+     * @throws IllegalStateException if the log does not describe a valid sequence of moves
+     */
+    public GameSnapshot replay(long eventCount) throws IOException {
+        if (eventCount < 0) {
+            throw new IllegalArgumentException("Event count cannot be negative");
+        }
+        
+        startGame(new Player[0]);
+        pendingPlayers = null;
+        replayed = 0;
+        
+        for (int index = 0; replayed < eventCount && Files.exists(GameEventLog.segmentPath(directory, index)); index++) {
+            try (FileChannel channel = FileChannel.open(GameEventLog.segmentPath(directory, index), StandardOpenOption.READ)) {
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                for (int start = 0; start + GameEventLog.RECORD_SIZE <= segment.limit() && replayed < eventCount;
+                     start += GameEventLog.RECORD_SIZE) {
+                    byte type = segment.get(start);
+                    if (type == GameEventLog.EMPTY) {
+                        return snapshot(); // End of the log
+                    }
+                    apply(segment, start, type);
+                    replayed++;
+                }
+            }
+        }
+        return snapshot();
+    }
+    
+    /**
+     * Returns the number of events read by the last replay, including any torn group that was skipped
+     * @return the event count
+     */
+    public long getReplayedEvents() {
+        return replayed;
+    }
+    
+    /**
+     * Returns the points each player had scored after the last replay
+     * @return the points, indexed by seat
+     */
+    public int[] getPoints() {
+        return points.clone();
+    }
+    
+    /**
+     * Applies one record to the game state
+     * @param segment the mapped segment
+     * @param start the offset of the record
+     * @param type the record's type
+     */
+    private void apply(MappedByteBuffer segment, int start, byte type) {
+        int player = segment.get(start + 1) & 0xFF;
+        int cardId = segment.get(start + 2) & 0xFF;
+        int length = segment.get(start + 3) & 0xFF;
+        int argument = segment.getInt(start + 4);
+        
+        // Any other record after an unfinished group means the group was torn
+        if (pendingPlayers != null && type != GameEventLog.PLAYER) {
+            pendingPlayers = null;
+        }
+        if (pendingDeck != null && type != GameEventLog.DECK_MORE) {
+            pendingDeck = null;
+        }
+        
+        switch (type) {
+            case GameEventLog.NEW_GAME:
+                if (argument < 0 || argument > 255) {
+                    throw new IllegalStateException("Invalid player count " + argument + " at event " + replayed);
+                }
+                pendingPlayers = new Player[argument];
+                pendingSeated = 0;
+                startIfSeated();
+                break;
+            case GameEventLog.PLAYER:
+                if (pendingPlayers == null) {
+                    throw new IllegalStateException("Player seat without a new game at event " + replayed);
+                }
+                if (player >= pendingPlayers.length || pendingPlayers[player] != null || length > GameEventLog.PAYLOAD_SIZE / 2) {
+                    throw new IllegalStateException("Invalid player seat " + player + " at event " + replayed);
+                }
+                char[] name = new char[length];
+                for (int c = 0; c < length; c++) {
+                    name[c] = segment.getChar(start + 8 + 2 * c);
+                }
+                pendingPlayers[player] = new Player(new String(name), argument);
+                pendingSeated++;
+                startIfSeated();
+                break;
+            case GameEventLog.DECK:
+                if (argument < 0 || argument > GameEventLog.MAX_DECK_SIZE) {
+                    throw new IllegalStateException("Invalid deck size " + argument + " at event " + replayed);
+                }
+                pendingDeck = new Card[argument];
+                pendingCount = 0;
+                readDeckIds(segment, start, length);
+                break;
+            case GameEventLog.DECK_MORE:
+                if (pendingDeck == null) {
+                    throw new IllegalStateException("Deck continuation without a deck at event " + replayed);
+                }
+                readDeckIds(segment, start, length);
+                break;
+            case GameEventLog.DRAW:
+                if (deck.size() == 0 || deck.cardAt(0) != card(cardId)) {
+                    throw new IllegalStateException("Draw does not match the deck at event " + replayed);
+                }
+                seatedPlayer(player).draw(deck);
+                break;
+            case GameEventLog.DISCARD:
+                if (!seatedPlayer(player).discardCard(card(cardId), discardPile)) {
+                    throw new IllegalStateException("Discarded card not in hand at event " + replayed);
+                }
+                break;
+            case GameEventLog.RETURN:
+                if (!seatedPlayer(player).returnCard(card(cardId), deck)) {
+                    throw new IllegalStateException("Returned card not in hand at event " + replayed);
+                }
+                break;
+            case GameEventLog.ROUND:
+                if (player != GameEventLog.NO_PLAYER) {
+                    seat(player);
+                    points[player]++;
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown event type " + type + " at event " + replayed);
+        }
+    }
+    
+    /**
+     * Makes the pending game current once every one of its seats is filled
+     */
+    private void startIfSeated() {
+        if (pendingSeated == pendingPlayers.length) {
+            startGame(pendingPlayers);
+            pendingPlayers = null;
+        }
+    }
+    
+    /**
+     * Resets the state for a new game
+     * @param seated the players, one per seat
+     */
+    private void startGame(Player[] seated) {
+        deck = new Deck(new Card[0]);
+        players = seated;
+        discardPile = new DiscardPile();
+        points = new int[seated.length];
+        pendingDeck = null;
+    }
+    
+    /**
+     * Reads the card ids in a DECK or DECK_MORE record, replacing the deck once all have arrived
+     * @param segment the mapped segment
+     * @param start the offset of the record
+     * @param length the number of ids in the record
+     */
+    private void readDeckIds(MappedByteBuffer segment, int start, int length) {
+        if (pendingCount + length > pendingDeck.length) {
+            throw new IllegalStateException("Deck record too long at event " + replayed);
+        }
+        for (int i = 0; i < length; i++) {
+            pendingDeck[pendingCount] = card(segment.get(start + 8 + i) & 0xFF);
+            pendingCount++;
+        }
+        if (pendingCount == pendingDeck.length) {
+            deck = new Deck(pendingDeck);
+            pendingDeck = null;
+        }
+    }
+    
+    /**
+     * Returns the standard card with a logged id
+     * @param id the id read from a record
+     * @return the card
+     * @throws IllegalStateException if the id is not a standard card's
+     */
+    private Card card(int id) {
+        if (id >= Card.STANDARD_COUNT) {
+            throw new IllegalStateException("Invalid card id " + id + " at event " + replayed);
+        }
+        return Card.byId(id);
+    }
+    
+    /**
+     * Checks that a seat exists in the current game
+     * @param player the seat
+     * @return the players array
+     */
+    private Player[] seat(int player) {
+        if (player >= players.length) {
+            throw new IllegalStateException("No seat " + player + " at event " + replayed);
+        }
+        return players;
+    }
+    
+    /**
+     * Returns the player in a seat of the current game
+     * @param player the seat
+     * @return the player
+     */
+    private Player seatedPlayer(int player) {
+        return seat(player)[player];
+    }
+    
+    /**
+     * Packages the current state. A game is only current once every seat is filled.
+     * @return the snapshot
+     */
+    private GameSnapshot snapshot() {
+        return new GameSnapshot(deck, players, discardPile);
+    }
+}
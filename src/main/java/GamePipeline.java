@@ -0,0 +1,696 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays High Card games on a pipeline of four stages: PREPARE resets a table and
+ * shuffles its deck, DEAL deals the hands, PLAY plays the rounds, and SCORE records
+ * the points and hands the table back to PREPARE. Each stage runs on one or more
+ * worker threads. Every worker of a stage is linked to every worker of the next
+ * stage by its own bounded single-producer, single-consumer ring (SpscRing), so no
+ * ring is ever shared between two producers or two consumers. A producer deals its
+ * batches out to the next stage's workers in turn, and a consumer takes from its
+ * input rings in turn. A worker whose output rings are all full waits, so a slow
+ * stage holds back the ones before it instead of letting work pile up. The tables
+ * come from a fixed pool that circulates through the stages, so no games allocate
+ * once the pipeline is running.
+ * <p>
+ * Every run records per-stage statistics: throughput, the share of the time the
+ * stage's workers were busy, starved by empty inputs or blocked by full outputs,
+ * and how full their input rings were on average. The stage with the highest
+ * utilization is the bottleneck; give it more workers, or a larger batch. PREPARE's
+ * workers take turns with the one seeded generator, a batch at a time, so its
+ * shuffling does not spread over more workers the way the other stages' work does.
+ * A pipeline runs one simulation at a time.
+ * @author Parusan
+ * @version 1.0
+ */
+public class GamePipeline {
+    /**
+     * The stages in pipeline order
+     */
+    public enum Stage { PREPARE, DEAL, PLAY, SCORE }
+    
+    private static final Stage[] STAGES = Stage.values();
+    
+    // Every pair of neighbouring workers has a ring, so the worker counts are kept modest
+    private static final int MAX_WORKERS = 64;
+    
+    // Waiting stages yield this many times before they start parking
+    private static final int SPINS = 64;
+    private static final long PARK_NANOS = 20000;
+    
+    private final int[] capacities = {1024, 256, 256, 256};
+    private final int[] batchSizes = {32, 32, 32, 32};
+    private final int[] workerCounts = {1, 1, 1, 1};
+    private StageStats[] stats = new StageStats[0];
+    
+    /**
+     * Sets the capacity of each ring a stage's workers take their tables from. For
+     * PREPARE, those rings return free tables from SCORE, and the capacity is the
+     * number of tables in the pool, which is the number of games in flight.
+     * @param stage the stage
+     * @param capacity the capacity; rounded up to a power of two
+     * @return this pipeline
+     * @throws IllegalArgumentException if stage is null or capacity is less than 1 or more than 2^30
+     */
+    public synchronized GamePipeline queueCapacity(Stage stage, int capacity) {
+        if (stage == null) {
+            throw new IllegalArgumentException("Stage cannot be null");
+        }
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Queue capacity must be between 1 and 2^30");
+        }
+        capacities[stage.ordinal()] = capacity;
+        return this;
+    }
+    
+    /**
+     * Sets the most tables a stage's workers take from an input ring at once
+     * @param stage the stage
+     * @param batchSize the batch size
+     * @return this pipeline
+     * @throws IllegalArgumentException if stage is null or batchSize is less than 1
+     */
+    public synchronized GamePipeline batchSize(Stage stage, int batchSize) {
+        if (stage == null) {
+            throw new IllegalArgumentException("Stage cannot be null");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        batchSizes[stage.ordinal()] = batchSize;
+        return this;
+    }
+    
+    /**
+     * Sets the number of worker threads a stage runs on, such as more for the bottleneck
+     * @param stage the stage
+     * @param workers the number of workers, 1 by default
+     * @return this pipeline
+     * @throws IllegalArgumentException if stage is null or workers is less than 1 or more than 64
+     */
+    public synchronized GamePipeline workers(Stage stage, int workers) {
+        if (stage == null) {
+            throw new IllegalArgumentException("Stage cannot be null");
+        }
+        if (workers < 1 || workers > MAX_WORKERS) {
+            throw new IllegalArgumentException("A stage needs between 1 and " + MAX_WORKERS + " workers");
+        }
+        workerCounts[stage.ordinal()] = workers;
+        return this;
+    }
+    
+    /**
+     * Plays the given number of games with a random seed
+     * @param games the number of games to play
+     * @return the aggregated results
+     * @throws IllegalArgumentException if games is negative
+     * @throws IllegalStateException if a stage fails or the calling thread is interrupted
+     */
+    public SimulationResult run(long games) {
+        return run(games, CardRandom.current().nextLong());
+    }
+    
+    /**
+     * Plays the given number of games. Decks are shuffled in turn from one generator
+     * seeded with seed, so whatever the worker counts, the results are exactly those
+     * of playing the same games one after another on a GameContext with CardRandom.seeded(seed).
+     * @param games the number of games to play
+     * @param seed the seed for all shuffles
+     * @return the aggregated results
+     * @throws IllegalArgumentException if games is negative
+     * @throws IllegalStateException if a stage fails or the calling thread is interrupted;
+     *         the stages have stopped by then, and getStats() describes the partial run
+     */
+    public synchronized SimulationResult run(long games, long seed) {
+        if (games < 0) {
+            throw new IllegalArgumentException("Number of games cannot be negative");
+        }
+        
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Source source = new Source(games, CardRandom.seeded(seed));
+        Worker[][] workers = new Worker[STAGES.length][];
+        for (int i = 0; i < STAGES.length; i++) {
+            int before = workerCounts[(i + STAGES.length - 1) % STAGES.length];
+            int after = workerCounts[(i + 1) % STAGES.length];
+            workers[i] = new Worker[workerCounts[i]];
+            for (int w = 0; w < workers[i].length; w++) {
+                workers[i][w] = new Worker(STAGES[i], before, after, batchSizes[i], failure);
+            }
+        }
+        for (Worker preparer : workers[0]) {
+            preparer.source = source;
+        }
+        for (Worker scorer : workers[STAGES.length - 1]) {
+            scorer.result = new SimulationResult(HighCardEngine.ROUNDS);
+        }
+        
+        // One ring from each worker to each worker of the next stage. The rings back to
+        // PREPARE can each hold the whole pool, so SCORE can always hand a table back.
+        int poolSize = new SpscRing<GameContext>(capacities[0]).capacity();
+        for (int i = 0; i < STAGES.length; i++) {
+            int next = (i + 1) % STAGES.length;
+            for (int p = 0; p < workers[i].length; p++) {
+                for (int c = 0; c < workers[next].length; c++) {
+                    SpscRing<GameContext> ring = new SpscRing<>(next == 0 ? poolSize : capacities[next]);
+                    workers[i][p].out[c] = ring;
+                    workers[next][c].in[p] = ring;
+                }
+            }
+        }
+        GameContext[] table = new GameContext[1];
+        for (int t = 0; t < poolSize; t++) {
+            table[0] = new GameContext();
+            Worker preparer = workers[0][t % workers[0].length];
+            preparer.in[t / workers[0].length % preparer.in.length].offer(table, 0, 1);
+        }
+        
+        long start = System.nanoTime();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < STAGES.length; i++) {
+            for (int w = 0; w < workers[i].length; w++) {
+                Thread thread = new Thread(workers[i][w], "GamePipeline-" + STAGES[i].name().toLowerCase() + "-" + w);
+                thread.setDaemon(true);
+                thread.start();
+                threads.add(thread);
+            }
+        }
+        
+        // Every worker is joined even after an interrupt, so the statistics are only read once they are final
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    failure.compareAndSet(null, e); // Makes the stages give up
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        
+        SimulationResult result = new SimulationResult(HighCardEngine.ROUNDS);
+        for (Worker scorer : workers[STAGES.length - 1]) {
+            result.merge(scorer.result);
+        }
+        result.setElapsedNanos(System.nanoTime() - start);
+        
+        StageStats[] newStats = new StageStats[STAGES.length];
+        for (int i = 0; i < STAGES.length; i++) {
+            newStats[i] = stageStats(workers[i]);
+        }
+        stats = newStats;
+        
+        if (failure.get() != null) {
+            throw new IllegalStateException("Pipeline stopped", failure.get());
+        }
+        return result;
+    }
+    
+    /**
+     * Adds up the finished workers of one stage
+     * @param workers the stage's workers
+     * @return the stage's statistics
+     */
+    private static StageStats stageStats(Worker[] workers) {
+        long items = 0;
+        long batches = 0;
+        long busyNanos = 0;
+        long starvedNanos = 0;
+        long blockedNanos = 0;
+        long occupancySum = 0;
+        long samples = 0;
+        long workerNanos = 0;
+        long elapsedNanos = 0;
+        for (Worker worker : workers) {
+            items += worker.items;
+            batches += worker.batches;
+            busyNanos += worker.busyNanos;
+            starvedNanos += worker.starvedNanos;
+            blockedNanos += worker.blockedNanos;
+            occupancySum += worker.occupancySum;
+            samples += worker.samples;
+            workerNanos += worker.elapsedNanos;
+            elapsedNanos = Math.max(elapsedNanos, worker.elapsedNanos);
+        }
+        Worker first = workers[0];
+        int capacity = first.in[0].capacity();
+        double occupancy = samples == 0 ? 0 : (double) occupancySum / samples / ((long) capacity * first.in.length);
+        return new StageStats(first.stage, workers.length, capacity, first.batchSize, items, batches,
+            busyNanos, starvedNanos, blockedNanos, occupancy, workerNanos, elapsedNanos);
+    }
+    
+    /**
+     * Returns the statistics of the last run, one per stage in pipeline order
+     * @return a new array of the statistics, empty before the first run
+     */
+    public synchronized StageStats[] getStats() {
+        return stats.clone();
+    }
+    
+    /**
+     * Returns the stage whose workers were busy for the largest share of the last run
+     * @return its statistics, or null before the first run
+     */
+    public synchronized StageStats getBottleneck() {
+        StageStats bottleneck = null;
+        for (StageStats stage : stats) {
+            if (bottleneck == null || stage.getUtilization() > bottleneck.getUtilization()) {
+                bottleneck = stage;
+            }
+        }
+        return bottleneck;
+    }
+    
+    /**
+     * The games still to start and the generator that shuffles them, shared by PREPARE's workers
+     */
+    private static final class Source {
+        private final CardRandom random;
+        private long remaining;             // guarded by this
+        private volatile boolean exhausted; // set once remaining reaches 0, for workers waiting on tables
+        
+        /**
+         * Constructs a source of games
+         * @param games the number of games to play
+         * @param random the generator for every shuffle
+         */
+        Source(long games, CardRandom random) {
+            this.remaining = games;
+            this.random = random;
+            this.exhausted = games == 0;
+        }
+        
+        /**
+         * Shuffles the decks of as many reset tables as there are games left to start
+         * @param batch the tables, already reset
+         * @param n the number of tables in the batch
+         * @return the number of tables shuffled, from the front of the batch
+         */
+        synchronized int shuffle(GameContext[] batch, int n) {
+            int started = (int) Math.min(n, remaining);
+            for (int i = 0; i < started; i++) {
+                batch[i].getDeck().shuffle(random);
+            }
+            remaining -= started;
+            if (remaining == 0) {
+                exhausted = true;
+            }
+            return started;
+        }
+        
+        /**
+         * Checks whether every game has been started
+         * @return true once no game is left to start
+         */
+        boolean isExhausted() {
+            return exhausted;
+        }
+    }
+    
+    /**
+     * One worker thread of a stage: takes a batch of tables, works on each, and passes the batch on
+     */
+    private static final class Worker implements Runnable {
+        private final Stage stage;
+        private final SpscRing<GameContext>[] in;   // one from each worker of the stage before
+        private final SpscRing<GameContext>[] out;  // one to each worker of the stage after
+        private final int batchSize;
+        private final AtomicReference<Throwable> failure;
+        Source source;                  // PREPARE only
+        SimulationResult result;        // SCORE only
+        private int nextIn;             // the input ring to try first
+        private int nextOut;            // the output ring the next batch goes to
+        
+        // Written by this worker's thread only, and read after it has been joined
+        private long items;
+        private long batches;
+        private long busyNanos;
+        private long starvedNanos;
+        private long blockedNanos;
+        private long occupancySum;
+        private long samples;
+        private long elapsedNanos;
+        
+        /**
+         * Constructs a stage worker; run() fills in its rings
+         * @param stage the stage
+         * @param inputs the number of workers in the stage before
+         * @param outputs the number of workers in the stage after
+         * @param batchSize the most tables to take at once
+         * @param failure the first failure of any worker, shared by all of them
+         */
+        @SuppressWarnings("unchecked")
+        Worker(Stage stage, int inputs, int outputs, int batchSize, AtomicReference<Throwable> failure) {
+            this.stage = stage;
+            this.in = (SpscRing<GameContext>[]) new SpscRing<?>[inputs];
+            this.out = (SpscRing<GameContext>[]) new SpscRing<?>[outputs];
+            this.batchSize = batchSize;
+            this.failure = failure;
+        }
+        
+        /**
+         * Runs the worker until its inputs are drained, every game has started, or another worker fails
+         */
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                GameContext[] batch = new GameContext[batchSize];
+                while (true) {
+                    int n = awaitInput(batch, batchSize);
+                    if (n == 0) {
+                        break; // The stage before has finished
+                    }
+                    long busyStart = System.nanoTime();
+                    n = process(batch, n);
+                    busyNanos += System.nanoTime() - busyStart;
+                    if (n == 0) {
+                        break; // Every game has started; the tables taken are not needed
+                    }
+                    items += n;
+                    batches++;
+                    awaitOutput(batch, n);
+                }
+                for (SpscRing<GameContext> ring : out) {
+                    ring.close();
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+            elapsedNanos = System.nanoTime() - start;
+        }
+        
+        /**
+         * Does this stage's work on a batch of tables
+         * @param batch the tables
+         * @param n the number of tables in the batch
+         * @return the number of tables to pass on, fewer than n only once PREPARE runs out of games
+         */
+        private int process(GameContext[] batch, int n) {
+            switch (stage) {
+                case PREPARE:
+                    // Only the shuffles need the shared generator
+                    for (int i = 0; i < n; i++) {
+                        batch[i].reset();
+                    }
+                    return source.shuffle(batch, n);
+                case DEAL:
+                    for (int i = 0; i < n; i++) {
+                        batch[i].deal();
+                    }
+                    return n;
+                case PLAY:
+                    for (int i = 0; i < n; i++) {
+                        batch[i].playRounds();
+                    }
+                    return n;
+                default:
+                    for (int i = 0; i < n; i++) {
+                        result.record(batch[i].getPoints1(), batch[i].getPoints2());
+                    }
+                    return n;
+            }
+        }
+        
+        /**
+         * Takes the next batch from the input rings in turn, waiting while they are all empty
+         * @param batch the array to take the tables into
+         * @param max the most tables to take
+         * @return the number taken, or 0 if the inputs are drained or every game has started
+         */
+        private int awaitInput(GameContext[] batch, int max) {
+            long waitStart = 0;
+            for (int attempt = 0; ; attempt++) {
+                if (attempt == 0) {
+                    for (SpscRing<GameContext> ring : in) {
+                        occupancySum += ring.available(); // One sample per batch, empty or not
+                    }
+                    samples++;
+                }
+                for (int k = 0; k < in.length; k++) {
+                    SpscRing<GameContext> ring = in[nextIn];
+                    nextIn = nextIn + 1 == in.length ? 0 : nextIn + 1;
+                    int available = ring.available();
+                    if (available > 0) {
+                        if (attempt > 0) {
+                            starvedNanos += System.nanoTime() - waitStart;
+                        }
+                        int n = Math.min(available, max);
+                        ring.take(batch, n);
+                        return n;
+                    }
+                }
+                if (isFinished()) {
+                    return 0;
+                }
+                if (attempt == 0) {
+                    waitStart = System.nanoTime();
+                }
+                idle(attempt);
+            }
+        }
+        
+        /**
+         * Checks whether no more work will arrive: for PREPARE, every game has
+         * started; for the other stages, every input ring is closed and empty
+         * @return true if the worker can stop
+         */
+        private boolean isFinished() {
+            if (source != null) {
+                return source.isExhausted();
+            }
+            for (SpscRing<GameContext> ring : in) {
+                if (!ring.isDrained()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        /**
+         * Passes a batch to the next worker in turn, spilling into the others while
+         * its ring is full, and waiting while every output ring is full
+         * @param batch the tables
+         * @param n the number of tables in the batch
+         */
+        private void awaitOutput(GameContext[] batch, int n) {
+            int first = nextOut;
+            nextOut = nextOut + 1 == out.length ? 0 : nextOut + 1;
+            int sent = 0;
+            long waitStart = 0;
+            for (int attempt = 0; ; attempt++) {
+                for (int k = 0; k < out.length && sent < n; k++) {
+                    sent += out[(first + k) % out.length].offer(batch, sent, n - sent);
+                }
+                if (sent == n) {
+                    if (attempt > 0) {
+                        blockedNanos += System.nanoTime() - waitStart;
+                    }
+                    return;
+                }
+                if (attempt == 0) {
+                    waitStart = System.nanoTime();
+                }
+                idle(attempt);
+            }
+        }
+        
+        /**
+         * Backs off while waiting for the next or previous stage: yields at first, then parks
+         * @param attempt the number of times the worker has already waited for this batch
+         * @throws IllegalStateException if another worker has failed
+         */
+        private void idle(int attempt) {
+            if (failure.get() != null) {
+                throw new IllegalStateException("Another stage failed");
+            }
+            if (attempt < SPINS) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+    }
+    
+    /**
+     * What one stage did during a run
+     */
+    public static final class StageStats {
+        private final Stage stage;
+        private final int workers;
+        private final int queueCapacity;
+        private final int batchSize;
+        private final long items;
+        private final long batches;
+        private final long busyNanos;
+        private final long starvedNanos;
+        private final long blockedNanos;
+        private final double averageOccupancy;
+        private final long workerNanos;
+        private final long elapsedNanos;
+        
+        /**
+         * Constructs the statistics of one stage
+         * @param stage the stage
+         * @param workers the number of workers the stage ran on
+         * @param queueCapacity the capacity of each of the stage's input rings
+         * @param batchSize the stage's batch size
+         * @param items the number of tables the stage worked on
+         * @param batches the number of batches it took them in
+         * @param busyNanos the time spent working on tables, summed over the workers
+         * @param starvedNanos the time spent waiting for empty input rings, summed over the workers
+         * @param blockedNanos the time spent waiting for full output rings, summed over the workers
+         * @param averageOccupancy the input rings' average fill, from 0 to 1
+         * @param workerNanos the time the workers ran for, summed over the workers
+         * @param elapsedNanos the time the longest-running worker ran for
+         */
+        StageStats(Stage stage, int workers, int queueCapacity, int batchSize, long items, long batches,
+                   long busyNanos, long starvedNanos, long blockedNanos, double averageOccupancy,
+                   long workerNanos, long elapsedNanos) {
+            this.stage = stage;
+            this.workers = workers;
+            this.queueCapacity = queueCapacity;
+            this.batchSize = batchSize;
+            this.items = items;
+            this.batches = batches;
+            this.busyNanos = busyNanos;
+            this.starvedNanos = starvedNanos;
+            this.blockedNanos = blockedNanos;
+            this.averageOccupancy = averageOccupancy;
+            this.workerNanos = workerNanos;
+            this.elapsedNanos = elapsedNanos;
+        }
+        
+        /**
+         * Returns the stage
+         * @return the stage
+         */
+        public Stage getStage() {
+            return stage;
+        }
+        
+        /**
+         * Returns the number of workers the stage ran on
+         * @return the worker count
+         */
+        public int getWorkers() {
+            return workers;
+        }
+        
+        /**
+         * Returns the capacity of each of the stage's input rings
+         * @return the capacity, after rounding up to a power of two
+         */
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+        
+        /**
+         * Returns the stage's batch size
+         * @return the most tables the stage takes at once
+         */
+        public int getBatchSize() {
+            return batchSize;
+        }
+        
+        /**
+         * Returns the number of tables the stage worked on
+         * @return the table count, one per game
+         */
+        public long getItems() {
+            return items;
+        }
+        
+        /**
+         * Returns the average number of tables the stage took at once
+         * @return the average batch, or 0 if the stage took none
+         */
+        public double getAverageBatch() {
+            return batches == 0 ? 0 : (double) items / batches;
+        }
+        
+        /**
+         * Returns the stage's throughput
+         * @return tables per second until the stage's last worker stopped
+         */
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : items * 1e9 / elapsedNanos;
+        }
+        
+        /**
+         * Returns the share of the run the stage's workers spent working on tables
+         * @return the busy fraction, from 0 to 1
+         */
+        public double getUtilization() {
+            return fraction(busyNanos);
+        }
+        
+        /**
+         * Returns the share of the run the stage's workers spent waiting for work. For PREPARE
+         * this means every table was in flight, so the stages after it were behind.
+         * @return the starved fraction, from 0 to 1
+         */
+        public double getStarvedFraction() {
+            return fraction(starvedNanos);
+        }
+        
+        /**
+         * Returns the share of the run the stage's workers spent waiting for room in the next stage's rings
+         * @return the blocked fraction, from 0 to 1
+         */
+        public double getBlockedFraction() {
+            return fraction(blockedNanos);
+        }
+        
+        /**
+         * Returns how full the stage's input rings were, sampled once per batch
+         * @return the average fill, from 0 to 1
+         */
+        public double getAverageOccupancy() {
+            return averageOccupancy;
+        }
+        
+        /**
+         * Converts a time summed over the workers to a share of the time they ran
+         * @param nanos the time
+         * @return the fraction, from 0 to 1
+         */
+        private double fraction(long nanos) {
+            return workerNanos == 0 ? 0 : (double) nanos / workerNanos;
+        }
+        
+        /**
+         * Returns a one-line summary of the stage
+         * @return the workers, throughput, time shares, input fill and average batch
+         */
+        @Override
+        public String toString() {
+            return String.format("%-7s x%d %,d games, %,.0f/s, busy %.0f%%, starved %.0f%%, blocked %.0f%%, "
+                    + "input %.0f%% full of %d, batch %.1f of %d",
+                stage, workers, items, getThroughput(), getUtilization() * 100, getStarvedFraction() * 100,
+                getBlockedFraction() * 100, averageOccupancy * 100, queueCapacity, getAverageBatch(), batchSize);
+        }
+    }
+    
+    /**
+     * Runs a pipelined simulation and prints the results and the per-stage statistics
+     * @param args optionally the number of games to play (default 1,000,000) and a seed
+     */
+    public static void main(String[] args) {
+        long games = args.length > 0 ? Long.parseLong(args[0]) : 1000000L;
+        GamePipeline pipeline = new GamePipeline();
+        SimulationResult result = args.length > 1 ? pipeline.run(games, Long.parseLong(args[1])) : pipeline.run(games);
+        System.out.println(result);
+        for (StageStats stage : pipeline.getStats()) {
+            System.out.println(stage);
+        }
+        System.out.println("Bottleneck: " + pipeline.getBottleneck().getStage());
+    }
+}
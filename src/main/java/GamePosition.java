@@ -0,0 +1,119 @@
+import java.util.Arrays;
+
+/**
+ * A High Card position part way through a game, reduced to what decides the rest of it:
+ * card values are replaced by ranks (0 for the lowest distinct value in play), since
+ * only their order matters, and suits are dropped.
+ * Shared by WinProbabilityEstimator and ExactOddsSolver.
+ * @author Parusan
+ * @version 1.0
+ */
+class GamePosition {
+    final int rounds;
+    final int points1;
+    final int points2;
+    final int deal1;        // cards still to be dealt to each player
+    final int deal2;
+    final int[] hand1;      // count of each rank already in each hand
+    final int[] hand2;
+    final int[] deckRanks;  // rank of each card left in the deck
+    
+    /**
+     * Captures a position. Each player is dealt cards from the deck until they hold
+     * one card per remaining round, then the remaining rounds are played.
+     * @param player1 the first player, whose hand is known
+     * @param player2 the second player, whose hand is known
+     * @param deck the cards not yet dealt, in any order
+     * @param roundsRemaining the number of rounds still to play
+     * @param points1 the points player 1 has already won
+     * @param points2 the points player 2 has already won
+     * @throws IllegalArgumentException if a player or the deck is null, a count is negative,
+     *         or the deck cannot fill both hands
+     */
+    GamePosition(Player player1, Player player2, Deck deck, int roundsRemaining, int points1, int points2) {
+        if (player1 == null || player2 == null) {
+            throw new IllegalArgumentException("Players cannot be null");
+        }
+        if (deck == null) {
+            throw new IllegalArgumentException("Deck cannot be null");
+        }
+        if (roundsRemaining < 0 || points1 < 0 || points2 < 0) {
+            throw new IllegalArgumentException("Rounds and points cannot be negative");
+        }
+        
+        Card[] cards1 = player1.getHand();
+        Card[] cards2 = player2.getHand();
+        Card[] deckCards = deck.getCards();
+        this.rounds = roundsRemaining;
+        this.points1 = points1;
+        this.points2 = points2;
+        this.deal1 = Math.max(0, roundsRemaining - cards1.length);
+        this.deal2 = Math.max(0, roundsRemaining - cards2.length);
+        if (deal1 + deal2 > deckCards.length) {
+            throw new IllegalArgumentException("Deck does not have enough cards to finish the game");
+        }
+        
+        // Only the order of values matters, so number the distinct values from lowest to highest
+        int[] values = new int[cards1.length + cards2.length + deckCards.length];
+        int index = 0;
+        for (Card card : cards1) {
+            values[index++] = card.getValue();
+        }
+        for (Card card : cards2) {
+            values[index++] = card.getValue();
+        }
+        for (Card card : deckCards) {
+            values[index++] = card.getValue();
+        }
+        int[] distinct = distinctSorted(values);
+        
+        this.hand1 = new int[distinct.length];
+        this.hand2 = new int[distinct.length];
+        for (Card card : cards1) {
+            hand1[Arrays.binarySearch(distinct, card.getValue())]++;
+        }
+        for (Card card : cards2) {
+            hand2[Arrays.binarySearch(distinct, card.getValue())]++;
+        }
+        this.deckRanks = new int[deckCards.length];
+        for (int i = 0; i < deckCards.length; i++) {
+            deckRanks[i] = Arrays.binarySearch(distinct, deckCards[i].getValue());
+        }
+    }
+    
+    /**
+     * Returns the number of distinct ranks in play
+     * @return the rank count
+     */
+    int rankCount() {
+        return hand1.length;
+    }
+    
+    /**
+     * Returns how many cards of each rank are left in the deck
+     * @return the counts, indexed by rank
+     */
+    int[] deckCounts() {
+        int[] counts = new int[rankCount()];
+        for (int rank : deckRanks) {
+            counts[rank]++;
+        }
+        return counts;
+    }
+    
+    /**
+     * Returns the distinct values of an array in increasing order
+     * @param values the values, which are sorted in place
+     * @return the distinct values
+     */
+    private static int[] distinctSorted(int[] values) {
+        Arrays.sort(values);
+        int count = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (count == 0 || values[i] != values[count - 1]) {
+                values[count++] = values[i];
+            }
+        }
+        return Arrays.copyOf(values, count);
+    }
+}
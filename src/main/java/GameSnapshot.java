@@ -0,0 +1,408 @@
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A checkpoint of a whole game (deck, players and discard pile) with a compact binary encoding.
+ *
+ * Layout, all numbers big-endian:
+ *   int magic "HCGS", byte version,
+ *   short string count, then each string as short length + UTF-16 chars,
+ *   the deck as a card list,
+ *   byte player count, then each player as short name string, int age, and a hand:
+ *     a byte for the hand's mode (0 array, 1 bitset, 2 ranked) followed by its cards as a card list,
+ *     in getHand() order, so a decoded player has the same mode and lists the same hand,
+ *   the discard pile as a card list.
+ * A card list is an int count followed by the cards. A standard card is its id in one byte;
+ * any other card is byte 0xFF, short name string, short suit string and int value.
+ * String indexes and lengths are unsigned shorts, so a snapshot holds at most 65535
+ * distinct strings of at most 65535 chars each.
+ * @author Parusan
+ * @version 1.0
+ */
+public class GameSnapshot {
+    /** The four bytes every snapshot starts with, "HCGS" */
+    public static final int MAGIC = 0x48434753;
+    
+    /** The format version written by encode */
+    public static final byte VERSION = 1;
+    
+    private static final byte CUSTOM_CARD = (byte) 0xFF;
+    private static final byte ARRAY_HAND = 0;
+    private static final byte BITSET_HAND = 1;
+    private static final byte RANKED_HAND = 2;
+    private static final int MAX_STRINGS = 0xFFFF;
+    private static final int MAX_STRING_LENGTH = 0xFFFF;
+    
+    private final Deck deck;
+    private final Player[] players;
+    private final DiscardPile discardPile;
+    
+    /**
+     * Constructs a snapshot of the given game objects. The objects are not copied;
+     * encode writes their state at the moment it is called.
+     * @param deck the deck
+     * @param players the players, at most 255
+     * @param discardPile the discard pile
+     * @throws IllegalArgumentException if any argument or player is null, or there are too many players
+     */
+    public GameSnapshot(Deck deck, Player[] players, DiscardPile discardPile) {
+        if (deck == null) {
+            throw new IllegalArgumentException("Deck cannot be null");
+        }
+        if (players == null) {
+            throw new IllegalArgumentException("Players cannot be null");
+        }
+        if (players.length > 255) {
+            throw new IllegalArgumentException("A snapshot holds at most 255 players");
+        }
+        for (int i = 0; i < players.length; i++) {
+            if (players[i] == null) {
+                throw new IllegalArgumentException("Players cannot be null");
+            }
+        }
+        if (discardPile == null) {
+            throw new IllegalArgumentException("Discard pile cannot be null");
+        }
+        this.deck = deck;
+        this.players = players;
+        this.discardPile = discardPile;
+    }
+    
+    /**
+     * Returns the deck
+     * @return the deck
+     */
+    public Deck getDeck() {
+        return deck;
+    }
+    
+    /**
+     * Returns the players
+     * @return the players, in seat order
+     */
+    public Player[] getPlayers() {
+        return players;
+    }
+    
+    /**
+     * Returns the discard pile
+     * @return the discard pile
+     */
+    public DiscardPile getDiscardPile() {
+        return discardPile;
+    }
+    
+    /**
+     * Returns the number of bytes encode will write for the current state
+     * @return the encoded size in bytes
+     * @throws IllegalArgumentException if the game has too many distinct strings, or one is too long
+     */
+    public int encodedSize() {
+        ArrayList<String> strings = new ArrayList<>();
+        collectStrings(strings);
+        return encodedSize(strings);
+    }
+    
+    /**
+     * Returns the number of bytes the current state takes with the given string table
+     * @param strings the string table, in order of first use
+     * @return the encoded size in bytes
+     */
+    private int encodedSize(ArrayList<String> strings) {
+        int size = 4 + 1 + 2;
+        for (int i = 0; i < strings.size(); i++) {
+            size += 2 + 2 * strings.get(i).length();
+        }
+        
+        size += 4;
+        for (int i = 0; i < deck.size(); i++) {
+            size += cardSize(deck.cardAt(i));
+        }
+        
+        size += 1;
+        for (int p = 0; p < players.length; p++) {
+            Card[] hand = players[p].getHand();
+            size += 2 + 4 + 1 + 4;
+            for (int i = 0; i < hand.length; i++) {
+                size += cardSize(hand[i]);
+            }
+        }
+        
+        size += 4;
+        for (int slot = 0; slot < discardPile.slotCount(); slot++) {
+            Card card = discardPile.slotAt(slot);
+            if (card != null) {
+                size += cardSize(card);
+            }
+        }
+        return size;
+    }
+    
+    /**
+     * Writes the snapshot at the buffer's position and advances the position past it
+     * @param buffer the buffer to write to, with at least encodedSize() bytes remaining
+     * @throws IllegalArgumentException if buffer is null, the game has more than 65535 distinct strings,
+     *         or a name or suit is longer than 65535 chars
+     * @throws java.nio.BufferOverflowException if the buffer is too small
+     */
+    public void encode(ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("Buffer cannot be null");
+        }
+        ArrayList<String> strings = new ArrayList<>();
+        HashMap<String, Integer> indexes = collectStrings(strings);
+        encode(buffer, strings, indexes);
+    }
+    
+    /**
+     * Writes the snapshot with an already collected string table
+     * @param buffer the buffer to write to
+     * @param strings the string table, in order of first use
+     * @param indexes each string's index in the table
+     */
+    private void encode(ByteBuffer buffer, ArrayList<String> strings, HashMap<String, Integer> indexes) {
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+        buffer.putShort((short) strings.size());
+        for (int i = 0; i < strings.size(); i++) {
+            String string = strings.get(i);
+            buffer.putShort((short) string.length());
+            for (int c = 0; c < string.length(); c++) {
+                buffer.putChar(string.charAt(c));
+            }
+        }
+        
+        buffer.putInt(deck.size());
+        for (int i = 0; i < deck.size(); i++) {
+            putCard(buffer, deck.cardAt(i), indexes);
+        }
+        
+        buffer.put((byte) players.length);
+        for (int p = 0; p < players.length; p++) {
+            Player player = players[p];
+            buffer.putShort((short) (int) indexes.get(player.getName()));
+            buffer.putInt(player.getAge());
+            if (player.isBitsetHand()) {
+                buffer.put(BITSET_HAND);
+            } else if (player.isRankedHand()) {
+                buffer.put(RANKED_HAND);
+            } else {
+                buffer.put(ARRAY_HAND);
+            }
+            Card[] hand = player.getHand();
+            buffer.putInt(hand.length);
+            for (int i = 0; i < hand.length; i++) {
+                putCard(buffer, hand[i], indexes);
+            }
+        }
+        
+        buffer.putInt(discardPile.size());
+        for (int slot = 0; slot < discardPile.slotCount(); slot++) {
+            Card card = discardPile.slotAt(slot);
+            if (card != null) {
+                putCard(buffer, card, indexes);
+            }
+        }
+    }
+    
+    /**
+     * Encodes the snapshot into a new buffer of exactly the right size
+     * @return the encoded snapshot, positioned at 0
+     */
+    public ByteBuffer encode() {
+        // Collect the string table once for both the size and the contents
+        ArrayList<String> strings = new ArrayList<>();
+        HashMap<String, Integer> indexes = collectStrings(strings);
+        ByteBuffer buffer = ByteBuffer.allocate(encodedSize(strings));
+        encode(buffer, strings, indexes);
+        buffer.flip();
+        return buffer;
+    }
+    
+    /**
+     * Reads a snapshot at the buffer's position and advances the position past it
+     * @param buffer the buffer to read from
+     * @return a snapshot holding newly built Deck, Player and DiscardPile objects
+     * @throws IllegalArgumentException if the buffer is null, truncated, or does not hold a valid snapshot
+     */
+    public static GameSnapshot decode(ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("Buffer cannot be null");
+        }
+        
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a game snapshot");
+            }
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported snapshot version " + version);
+            }
+            
+            String[] strings = new String[buffer.getShort() & 0xFFFF];
+            for (int i = 0; i < strings.length; i++) {
+                char[] chars = new char[buffer.getShort() & 0xFFFF];
+                for (int c = 0; c < chars.length; c++) {
+                    chars[c] = buffer.getChar();
+                }
+                strings[i] = new String(chars);
+            }
+            
+            Deck deck = new Deck(getCards(buffer, strings));
+            
+            Player[] players = new Player[buffer.get() & 0xFF];
+            for (int p = 0; p < players.length; p++) {
+                String name = string(strings, buffer.getShort());
+                int age = buffer.getInt();
+                byte handMode = buffer.get();
+                if (handMode != ARRAY_HAND && handMode != BITSET_HAND && handMode != RANKED_HAND) {
+                    throw new IllegalArgumentException("Unknown hand mode " + handMode);
+                }
+                players[p] = new Player(name, age, getCards(buffer, strings));
+                if (handMode == BITSET_HAND && !players[p].useBitsetHand()) {
+                    throw new IllegalArgumentException("Bitset hand holds non-standard or duplicate cards");
+                } else if (handMode == RANKED_HAND) {
+                    players[p].useRankedHand();
+                }
+            }
+            
+            DiscardPile discardPile = new DiscardPile(getCards(buffer, strings));
+            return new GameSnapshot(deck, players, discardPile);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Snapshot is truncated");
+        }
+    }
+    
+    /**
+     * Lists every distinct player name, and the names and suits of every non-standard card
+     * @param strings the list to fill with the string table, in order of first use
+     * @return each string's index in the table
+     * @throws IllegalArgumentException if there are more than 65535 strings, or one is longer than 65535 chars
+     */
+    private HashMap<String, Integer> collectStrings(ArrayList<String> strings) {
+        HashMap<String, Integer> indexes = new HashMap<>();
+        for (int p = 0; p < players.length; p++) {
+            addString(strings, indexes, players[p].getName());
+        }
+        for (int i = 0; i < deck.size(); i++) {
+            addCardStrings(strings, indexes, deck.cardAt(i));
+        }
+        for (int p = 0; p < players.length; p++) {
+            if (!players[p].isBitsetHand()) {
+                Card[] hand = players[p].getHand();
+                for (int i = 0; i < hand.length; i++) {
+                    addCardStrings(strings, indexes, hand[i]);
+                }
+            }
+        }
+        for (int slot = 0; slot < discardPile.slotCount(); slot++) {
+            Card card = discardPile.slotAt(slot);
+            if (card != null) {
+                addCardStrings(strings, indexes, card);
+            }
+        }
+        return indexes;
+    }
+    
+    /**
+     * Adds the name and suit of a non-standard card to the string table
+     * @param strings the string table
+     * @param indexes each string's index in the table
+     * @param card the card
+     */
+    private static void addCardStrings(ArrayList<String> strings, HashMap<String, Integer> indexes, Card card) {
+        if (!card.isStandard()) {
+            addString(strings, indexes, card.getName());
+            addString(strings, indexes, card.getSuit());
+        }
+    }
+    
+    /**
+     * Adds a string to the string table unless it is already there
+     * @param strings the string table
+     * @param indexes each string's index in the table
+     * @param string the string to add
+     * @throws IllegalArgumentException if the string is too long, or the table is full
+     */
+    private static void addString(ArrayList<String> strings, HashMap<String, Integer> indexes, String string) {
+        if (indexes.containsKey(string)) {
+            return;
+        }
+        if (string.length() > MAX_STRING_LENGTH) {
+            throw new IllegalArgumentException("Names longer than " + MAX_STRING_LENGTH + " chars cannot be encoded");
+        }
+        if (strings.size() == MAX_STRINGS) {
+            throw new IllegalArgumentException("Too many distinct names to encode");
+        }
+        indexes.put(string, strings.size());
+        strings.add(string);
+    }
+    
+    /**
+     * Returns the number of bytes a card takes in a card list
+     * @param card the card
+     * @return 1 for a standard card, 9 for any other card
+     */
+    private static int cardSize(Card card) {
+        return card.isStandard() ? 1 : 1 + 2 + 2 + 4;
+    }
+    
+    /**
+     * Writes one card of a card list
+     * @param buffer the buffer to write to
+     * @param card the card
+     * @param indexes each string's index in the table, which must contain the names of non-standard cards
+     */
+    private static void putCard(ByteBuffer buffer, Card card, HashMap<String, Integer> indexes) {
+        if (card.isStandard()) {
+            buffer.put((byte) card.getId());
+        } else {
+            buffer.put(CUSTOM_CARD);
+            buffer.putShort((short) (int) indexes.get(card.getName()));
+            buffer.putShort((short) (int) indexes.get(card.getSuit()));
+            buffer.putInt(card.getValue());
+        }
+    }
+    
+    /**
+     * Reads a card list
+     * @param buffer the buffer to read from
+     * @param strings the decoded string table
+     * @return the cards
+     */
+    private static Card[] getCards(ByteBuffer buffer, String[] strings) {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid card count " + count);
+        }
+        
+        Card[] cards = new Card[count];
+        for (int i = 0; i < count; i++) {
+            byte code = buffer.get();
+            if (code == CUSTOM_CARD) {
+                String name = string(strings, buffer.getShort());
+                String suit = string(strings, buffer.getShort());
+                cards[i] = new Card(name, suit, buffer.getInt());
+            } else {
+                cards[i] = Card.byId(code);
+            }
+        }
+        return cards;
+    }
+    
+    /**
+     * Looks up an entry of the decoded string table
+     * @param strings the decoded string table
+     * @param index the entry's index, read as an unsigned short
+     * @return the string
+     */
+    private static String string(String[] strings, short index) {
+        int i = index & 0xFFFF;
+        if (i >= strings.length) {
+            throw new IllegalArgumentException("Invalid string index " + i);
+        }
+        return strings[i];
+    }
+}
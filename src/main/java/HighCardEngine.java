@@ -0,0 +1,213 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays High Card games without any console input or output, and runs large
+ * batches of games in parallel across all cores
+ * @author Parusan
+ * @version 1.0
+ */
+public class HighCardEngine {
+    /** Number of cards dealt to each player */
+    public static final int HAND_SIZE = 5;
+    
+    /** Number of rounds in a game */
+    public static final int ROUNDS = 5;
+    
+    // Games per fork-join leaf task; large enough that splitting costs nothing noticeable
+    private static final int MIN_GAMES_PER_TASK = 1024;
+    
+    /**
+     * Receives each round of a game as it is played
+     */
+    public interface GameListener {
+        /**
+         * Called before any cards are dealt
+         * @param player1 the first player
+         * @param player2 the second player
+         * @param deck the shuffled deck the game will deal from
+         */
+        default void gameStarted(Player player1, Player player2, Deck deck) {
+        }
+        
+        /**
+         * Called for each card dealt, in dealing order
+         * @param player 1 or 2 for the player receiving the card
+         * @param card the card dealt
+         */
+        default void cardDealt(int player, Card card) {
+        }
+        
+        /**
+         * Called after both players have played a card
+         * @param round the round number, starting at 1
+         * @param card1 the card player 1 played
+         * @param card2 the card player 2 played
+         * @param winner 1 or 2 for the player who won the round, or 0 for a tie
+         */
+        void roundPlayed(int round, Card card1, Card card2, int winner);
+    }
+    
+    /**
+     * Deals HAND_SIZE cards to each player and plays ROUNDS rounds, where each
+     * player plays their highest card and the higher value wins a point
+     * @param player1 the first player
+     * @param player2 the second player
+     * @param deck the deck to deal from, already shuffled
+     * @param discardPile the pile played cards go to
+     * @param listener receives every round, or null
+     * @return the final points as {player 1, player 2}
+     * @throws IllegalArgumentException if a player, the deck, or the discard pile is null
+     * @throws IllegalStateException if the deck runs out before every round is played
+     */
+    public static int[] playGame(Player player1, Player player2, Deck deck, DiscardPile discardPile, GameListener listener) {
+        if (player1 == null || player2 == null) {
+            throw new IllegalArgumentException("Players cannot be null");
+        }
+        if (discardPile == null) {
+            throw new IllegalArgumentException("Discard pile cannot be null");
+        }
+        
+        if (deck == null) {
+            throw new IllegalArgumentException("Deck cannot be null");
+        }
+        
+        if (listener != null) {
+            listener.gameStarted(player1, player2, deck);
+            
+            // Card i of the dealt run goes to player i % 2, so the deal can be reported up front
+            int dealt = Math.min(2 * HAND_SIZE, deck.size());
+            for (int i = 0; i < dealt; i++) {
+                listener.cardDealt(i % 2 + 1, deck.cardAt(i));
+            }
+        }
+        
+        // Deal the cards one at a time, alternating between the players
+        deck.deal(new Player[] {player1, player2}, HAND_SIZE);
+        
+        int[] points = new int[2];
+        for (int round = 1; round <= ROUNDS; round++) {
+            // Each player finds and discards their highest card in one step
+            Card card1 = player1.playHighest(discardPile);
+            Card card2 = player2.playHighest(discardPile);
+            
+            int winner = 0;
+            if (card1.getValue() > card2.getValue()) {
+                points[0]++;
+                winner = 1;
+            } else if (card2.getValue() > card1.getValue()) {
+                points[1]++;
+                winner = 2;
+            }
+            
+            if (listener != null) {
+                listener.roundPlayed(round, card1, card2, winner);
+            }
+        }
+        
+        return points;
+    }
+    
+    /**
+     * Plays the given number of games on all cores of the common fork-join pool
+     * @param games the number of games to play
+     * @return the aggregated results
+     * @throws IllegalArgumentException if games is negative
+     */
+    public static SimulationResult simulate(long games) {
+        return simulate(games, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Plays the given number of games on the given fork-join pool with a random seed
+     * @param games the number of games to play
+     * @param pool the pool to run on; its parallelism sets the number of cores used
+     * @return the aggregated results
+     * @throws IllegalArgumentException if games is negative or pool is null
+     */
+    public static SimulationResult simulate(long games, ForkJoinPool pool) {
+        return simulate(games, CardRandom.current().nextLong(), pool);
+    }
+    
+    /**
+     * Plays the given number of games on the given fork-join pool.
+     * Each task uses its own GameContext and random number generator, so
+     * the worker threads share nothing until their results are merged.
+     * Task generators are split from one seeded generator in a fixed order, so the
+     * same seed on a pool of the same parallelism gives exactly the same results.
+     * @param games the number of games to play
+     * @param seed the seed for all shuffles
+     * @param pool the pool to run on; its parallelism sets the number of cores used
+     * @return the aggregated results
+     * @throws IllegalArgumentException if games is negative or pool is null
+     */
+    public static SimulationResult simulate(long games, long seed, ForkJoinPool pool) {
+        if (games < 0) {
+            throw new IllegalArgumentException("Number of games cannot be negative");
+        }
+        if (pool == null) {
+            throw new IllegalArgumentException("Pool cannot be null");
+        }
+        
+        // Aim for several tasks per worker so uneven workers still balance out
+        long gamesPerTask = Math.max(MIN_GAMES_PER_TASK, games / (pool.getParallelism() * 8L));
+        
+        long start = System.nanoTime();
+        SimulationResult result = pool.invoke(new SimulationTask(games, gamesPerTask, CardRandom.seeded(seed)));
+        result.setElapsedNanos(System.nanoTime() - start);
+        return result;
+    }
+    
+    /**
+     * Fork-join task that splits a batch of games in half until it is small enough to play directly
+     */
+    private static class SimulationTask extends RecursiveTask<SimulationResult> {
+        private static final long serialVersionUID = 1L;
+        
+        private final long games;
+        private final long gamesPerTask;
+        private final CardRandom random;
+        
+        SimulationTask(long games, long gamesPerTask, CardRandom random) {
+            this.games = games;
+            this.gamesPerTask = gamesPerTask;
+            this.random = random;
+        }
+        
+        @Override
+        protected SimulationResult compute() {
+            if (games <= gamesPerTask) {
+                // One reusable table per leaf, so the games themselves allocate nothing
+                SimulationResult result = new SimulationResult(ROUNDS);
+                GameContext context = new GameContext();
+                for (long i = 0; i < games; i++) {
+                    context.reset(random);
+                    context.play();
+                    result.record(context.getPoints1(), context.getPoints2());
+                }
+                return result;
+            }
+            
+            // Split before forking so each half's stream depends only on its place in the task tree
+            SimulationTask left = new SimulationTask(games / 2, gamesPerTask, random.split());
+            SimulationTask right = new SimulationTask(games - games / 2, gamesPerTask, random);
+            left.fork();
+            SimulationResult result = right.compute();
+            result.merge(left.join());
+            return result;
+        }
+    }
+    
+    /**
+     * Runs a headless simulation and prints the aggregated results
+     * @param args optionally the number of games to play (default 1,000,000) and a seed
+     */
+    public static void main(String[] args) {
+        long games = args.length > 0 ? Long.parseLong(args[0]) : 1000000L;
+        if (args.length > 1) {
+            System.out.println(simulate(games, Long.parseLong(args[1]), ForkJoinPool.commonPool()));
+        } else {
+            System.out.println(simulate(games));
+        }
+    }
+}
\ No newline at end of file
@@ -1,7 +1,10 @@
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Scanner;
 
 /**
- * A simple High Card game where two players compete by playing their highest cards
+ * A simple High Card game where two players compete by playing their highest cards.
+ * This is the console front end; the game itself is played by HighCardEngine
  * @author Parusan
  * @version 1.0
  */
@@ -9,12 +12,18 @@ public class HighCardGame {
     
     /**
      * Main method that runs the High Card game
-     * @param args command line arguments (not used)
+     * @param args optionally a directory to write the game's event log to
      */
     public static void main(String[] args) {
         Scanner scanner = new Scanner(System.in);
+        GameEventLog log = null;
         
         try {
+            if (args.length > 0) {
+                log = new GameEventLog(Paths.get(args[0]));
+            }
+            final GameEventLog eventLog = log;
+            
             // Get player names and ages
             System.out.println("=== HIGH CARD GAME ===");
             System.out.print("Enter Player 1 name: ");
@@ -37,44 +46,47 @@ public class HighCardGame {
             System.out.println("\nShuffling deck...");
             deck.shuffle();
             
-            // Deal 5 cards to each player using draw method
+            // Deal 5 cards to each player and play 5 rounds in the engine
             System.out.println("Dealing cards...");
-            for (int i = 0; i < 5; i++) {
-                player1.draw(deck);
-                player2.draw(deck);
-            }
-            
-            // Play 5 rounds
             System.out.println("\n=== STARTING GAME ===");
-            int player1Points = 0;
-            int player2Points = 0;
             
-            for (int round = 1; round <= 5; round++) {
-                System.out.println("\n--- Round " + round + " ---");
-                
-                // Players play their highest cards (we need to implement this logic)
-                Card card1 = getHighestCard(player1.getHand());
-                Card card2 = getHighestCard(player2.getHand());
-                
-                // Remove the played cards from hands using discardCard with a temporary discard pile
-                DiscardPile tempDiscard = new DiscardPile();
-                removeCardFromHand(player1, card1);
-                removeCardFromHand(player2, card2);
+            int[] points = HighCardEngine.playGame(player1, player2, deck, new DiscardPile(), new HighCardEngine.GameListener() {
+                @Override
+                public void gameStarted(Player first, Player second, Deck shuffled) {
+                    if (eventLog != null) {
+                        eventLog.gameStarted(first, second, shuffled);
+                    }
+                }
                 
-                System.out.println(player1.getName() + " plays: " + card1 + " (Value: " + card1.getValue() + ")");
-                System.out.println(player2.getName() + " plays: " + card2 + " (Value: " + card2.getValue() + ")");
+                @Override
+                public void cardDealt(int player, Card card) {
+                    if (eventLog != null) {
+                        eventLog.cardDealt(player, card);
+                    }
+                }
                 
-                // Determine round winner
-                if (card1.getValue() > card2.getValue()) {
-                    player1Points++;
-                    System.out.println("🎉 " + player1.getName() + " wins the round!");
-                } else if (card2.getValue() > card1.getValue()) {
-                    player2Points++;
-                    System.out.println("🎉 " + player2.getName() + " wins the round!");
-                } else {
-                    System.out.println("🤝 It's a tie! No points awarded.");
+                @Override
+                public void roundPlayed(int round, Card card1, Card card2, int winner) {
+                    if (eventLog != null) {
+                        eventLog.roundPlayed(round, card1, card2, winner);
+                    }
+                    
+                    System.out.println("\n--- Round " + round + " ---");
+                    System.out.println(player1.getName() + " plays: " + card1 + " (Value: " + card1.getValue() + ")");
+                    System.out.println(player2.getName() + " plays: " + card2 + " (Value: " + card2.getValue() + ")");
+                    
+                    // Announce round winner
+                    if (winner == 1) {
+                        System.out.println("🎉 " + player1.getName() + " wins the round!");
+                    } else if (winner == 2) {
+                        System.out.println("🎉 " + player2.getName() + " wins the round!");
+                    } else {
+                        System.out.println("🤝 It's a tie! No points awarded.");
+                    }
                 }
-            }
+            });
+            int player1Points = points[0];
+            int player2Points = points[1];
             
             // Determine game winner
             System.out.println("\n=== GAME OVER ===");
@@ -94,38 +106,17 @@ public class HighCardGame {
             System.out.println("Error: " + e.getMessage());
         } catch (IllegalStateException e) {
             System.out.println("Game error: " + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("Event log error: " + e.getMessage());
         } finally {
             scanner.close();
-        }
-    }
-    
-    /**
-     * Helper method to find the highest value card in a hand
-     * @param hand the hand of cards to search
-     * @return the highest value card in the hand
-     */
-    private static Card getHighestCard(Card[] hand) {
-        if (hand.length == 0) {
-            throw new IllegalStateException("Cannot get highest card from empty hand");
-        }
-        
-        Card highestCard = hand[0];
-        for (int i = 1; i < hand.length; i++) {
-            if (hand[i].getValue() > highestCard.getValue()) {
-                highestCard = hand[i];
+            if (log != null) {
+                try {
+                    log.close();
+                } catch (IOException e) {
+                    System.out.println("Event log error: " + e.getMessage());
+                }
             }
         }
-        return highestCard;
-    }
-    
-    /**
-     * Helper method to remove a specific card from a player's hand
-     * @param player the player to remove the card from
-     * @param card the card to remove
-     */
-    private static void removeCardFromHand(Player player, Card card) {
-        // Create a temporary discard pile to use the discardCard method
-        DiscardPile tempDiscard = new DiscardPile();
-        player.discardCard(card, tempDiscard);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,301 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A non-blocking socket with buffered line input and output, shared by the table
+ * server and its load generator. Lines are ASCII words separated by single spaces
+ * and ended by '\n'. Incoming lines are split into words in place in the read
+ * buffer, so reading a command allocates nothing.
+ * Not thread-safe; a channel belongs to the one event loop that selects it.
+ * @author Parusan
+ * @version 1.0
+ */
+class LineChannel {
+    /** The longest line either side accepts, including the '\n' */
+    static final int MAX_LINE = 256;
+    
+    // Output beyond this means the peer has stopped reading, and the channel is dropped
+    private static final int MAX_PENDING = 64 * 1024;
+    private static final int MAX_WORDS = 16;
+    
+    private final SocketChannel channel;
+    private final ByteBuffer in = ByteBuffer.allocate(MAX_LINE);
+    private ByteBuffer out = ByteBuffer.allocate(MAX_LINE);
+    private int readStart;                           // first unconsumed byte in the read buffer
+    private final int[] wordStarts = new int[MAX_WORDS];
+    private final int[] wordEnds = new int[MAX_WORDS];
+    private int wordCount;
+    private boolean queued;                          // whether the owner has this channel in its flush list
+    
+    /**
+     * Wraps a connected socket channel
+     * @param channel the channel, already in non-blocking mode
+     */
+    LineChannel(SocketChannel channel) {
+        this.channel = channel;
+    }
+    
+    /**
+     * Returns the underlying socket channel
+     * @return the channel
+     */
+    SocketChannel channel() {
+        return channel;
+    }
+    
+    /**
+     * Reads whatever the socket has available into the read buffer
+     * @return the number of bytes read, or -1 if the peer closed the connection
+     * @throws IOException if the read fails
+     */
+    int read() throws IOException {
+        return channel.read(in);
+    }
+    
+    /**
+     * Splits the next complete line in the read buffer into words
+     * @return true if a line was found, false if more input is needed
+     * @throws IOException if the line is longer than MAX_LINE
+     */
+    boolean nextLine() throws IOException {
+        byte[] bytes = in.array();
+        int limit = in.position();
+        int end = readStart;
+        while (end < limit && bytes[end] != '\n') {
+            end++;
+        }
+        
+        if (end == limit) {
+            // No full line yet: move the partial line to the front to make room for the rest
+            if (readStart > 0) {
+                System.arraycopy(bytes, readStart, bytes, 0, limit - readStart);
+                in.position(limit - readStart);
+                readStart = 0;
+            }
+            if (!in.hasRemaining()) {
+                throw new IOException("Line too long");
+            }
+            return false;
+        }
+        
+        int lineEnd = end > readStart && bytes[end - 1] == '\r' ? end - 1 : end;
+        wordCount = 0;
+        int i = readStart;
+        while (i < lineEnd && wordCount < MAX_WORDS) {
+            if (bytes[i] == ' ') {
+                i++;
+                continue;
+            }
+            wordStarts[wordCount] = i;
+            while (i < lineEnd && bytes[i] != ' ') {
+                i++;
+            }
+            wordEnds[wordCount] = i;
+            wordCount++;
+        }
+        
+        readStart = end + 1;
+        if (readStart == limit) {
+            // Everything read has been consumed, so the buffer can start over
+            in.clear();
+            readStart = 0;
+        }
+        return true;
+    }
+    
+    /**
+     * Returns the number of words in the current line
+     * @return the word count, 0 for a blank line
+     */
+    int wordCount() {
+        return wordCount;
+    }
+    
+    /**
+     * Checks a word of the current line against an expected ASCII word
+     * @param index the word index
+     * @param word the expected word
+     * @return true if the word is present and equal
+     */
+    boolean wordIs(int index, byte[] word) {
+        if (index >= wordCount || wordEnds[index] - wordStarts[index] != word.length) {
+            return false;
+        }
+        byte[] bytes = in.array();
+        int start = wordStarts[index];
+        for (int i = 0; i < word.length; i++) {
+            if (bytes[start + i] != word[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Parses a word of the current line as a non-negative decimal number
+     * @param index the word index
+     * @return the number, or -1 if the word is missing or not a number
+     */
+    int wordAsInt(int index) {
+        if (index >= wordCount) {
+            return -1;
+        }
+        byte[] bytes = in.array();
+        int start = wordStarts[index];
+        int end = wordEnds[index];
+        if (end - start > 9) {
+            return -1; // Too long to be a card, table or point count
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            if (bytes[i] < '0' || bytes[i] > '9') {
+                return -1;
+            }
+            value = value * 10 + (bytes[i] - '0');
+        }
+        return value;
+    }
+    
+    /**
+     * Returns a word of the current line as a string
+     * @param index the word index
+     * @return the word, or null if it is missing
+     */
+    String wordAsString(int index) {
+        if (index >= wordCount) {
+            return null;
+        }
+        return new String(in.array(), wordStarts[index], wordEnds[index] - wordStarts[index], StandardCharsets.US_ASCII);
+    }
+    
+    /**
+     * Appends ASCII text to the output; other characters are written as '?'
+     * @param text the text
+     * @return this channel
+     */
+    LineChannel append(String text) {
+        ensureRoom(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            out.put(c < 128 ? (byte) c : (byte) '?');
+        }
+        return this;
+    }
+    
+    /**
+     * Appends ASCII text that is already encoded
+     * @param word the bytes
+     * @return this channel
+     */
+    LineChannel append(byte[] word) {
+        ensureRoom(word.length);
+        out.put(word);
+        return this;
+    }
+    
+    /**
+     * Appends a space and then a non-negative number in decimal
+     * @param value the number
+     * @return this channel
+     */
+    LineChannel appendNumber(int value) {
+        ensureRoom(11);
+        out.put((byte) ' ');
+        if (value == 0) {
+            out.put((byte) '0');
+            return this;
+        }
+        int digits = 0;
+        for (int v = value; v > 0; v /= 10) {
+            digits++;
+        }
+        int end = out.position() + digits;
+        for (int i = end - 1; i >= out.position(); i--) {
+            out.put(i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        out.position(end);
+        return this;
+    }
+    
+    /**
+     * Ends the current output line
+     */
+    void endLine() {
+        ensureRoom(1);
+        out.put((byte) '\n');
+    }
+    
+    /**
+     * Makes room in the output buffer, doubling it as needed
+     * @param bytes the number of bytes about to be written
+     */
+    private void ensureRoom(int bytes) {
+        if (out.remaining() >= bytes) {
+            return;
+        }
+        int capacity = out.capacity();
+        while (capacity - out.position() < bytes) {
+            capacity *= 2;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+        out.flip();
+        grown.put(out);
+        out = grown;
+    }
+    
+    /**
+     * Writes as much pending output as the socket will take
+     * @return true if all output was written, false if some is still pending
+     * @throws IOException if the write fails or the peer has stopped reading
+     */
+    boolean flush() throws IOException {
+        out.flip();
+        channel.write(out);
+        out.compact();
+        if (out.position() > MAX_PENDING) {
+            throw new IOException("Peer is not reading");
+        }
+        return out.position() == 0;
+    }
+    
+    /**
+     * Returns whether there is output waiting to be flushed
+     * @return true if output is pending
+     */
+    boolean hasOutput() {
+        return out.position() > 0;
+    }
+    
+    /**
+     * Marks the channel as queued for flushing, so the owner queues it only once per pass
+     * @return true if it was not already queued
+     */
+    boolean markQueued() {
+        if (queued) {
+            return false;
+        }
+        queued = true;
+        return true;
+    }
+    
+    /**
+     * Clears the queued mark after the owner has flushed the channel
+     */
+    void clearQueued() {
+        queued = false;
+    }
+    
+    /**
+     * Closes the socket, ignoring errors
+     */
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Already closed or reset; nothing left to release
+        }
+    }
+}
@@ -0,0 +1,181 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call count, latency histogram and last size for one operation.
+ * Every counter is a striped LongAdder, so threads recording at the same time
+ * do not contend on one cache line. The histogram is log-linear like an HDR
+ * histogram: each power of two is split into 8 buckets, so any recorded
+ * latency is reported within 12.5% of its true value.
+ * @author Parusan
+ * @version 1.0
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    
+    // Latencies of 2^40 ns (about 18 minutes) or more all land in the last bucket
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    
+    private final String name;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final AtomicInteger lastSize = new AtomicInteger();
+    
+    /**
+     * Constructs empty metrics for an operation
+     * @param name the operation name, such as "Deck.draw"
+     */
+    public OperationMetrics(String name) {
+        this.name = name;
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+    
+    /**
+     * Returns the operation name
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Records one call that started at the given time and has just finished
+     * @param startNanos the System.nanoTime() value taken when the call started
+     * @param size the size of the deck, hand, or pile after the call
+     */
+    public void record(long startNanos, int size) {
+        long nanos = Math.max(0, System.nanoTime() - startNanos);
+        count.increment();
+        totalNanos.add(nanos);
+        buckets[bucketOf(nanos)].increment();
+        if (nanos > maxNanos.get()) {
+            maxNanos.accumulate(nanos);
+        }
+        lastSize.lazySet(size); // A gauge; readers only need an eventually visible value
+    }
+    
+    /**
+     * Returns the histogram bucket for a latency
+     * @param nanos the latency in nanoseconds
+     * @return the bucket index
+     */
+    static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos; // Small values get one bucket each
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+    
+    /**
+     * Returns the highest latency that falls in a bucket
+     * @param bucket the bucket index
+     * @return the bucket's upper bound in nanoseconds
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long lower = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+    
+    /**
+     * Returns the latency below which the given fraction of calls fall
+     * @param fraction the fraction, from 0 to 1
+     * @return the percentile in nanoseconds, or 0 if nothing has been recorded
+     */
+    public long getPercentileNanos(double fraction) {
+        // Sum the buckets once so a concurrent record cannot push the target past the total
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        
+        long target = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                // The last bucket is open-ended, so only the maximum bounds it
+                return i == BUCKETS - 1 ? getMaxNanos() : Math.min(upperBoundOf(i), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+    
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+    
+    @Override
+    public double getMeanNanos() {
+        long calls = count.sum();
+        return calls == 0 ? 0 : (double) totalNanos.sum() / calls;
+    }
+    
+    @Override
+    public long getP50Nanos() {
+        return getPercentileNanos(0.5);
+    }
+    
+    @Override
+    public long getP99Nanos() {
+        return getPercentileNanos(0.99);
+    }
+    
+    @Override
+    public long getP999Nanos() {
+        return getPercentileNanos(0.999);
+    }
+    
+    @Override
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+    
+    @Override
+    public int getLastSize() {
+        return lastSize.get();
+    }
+    
+    @Override
+    public void reset() {
+        count.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+    }
+    
+    /**
+     * Returns a one-line summary of the metrics
+     * @return the name, count, and latency percentiles
+     */
+    @Override
+    public String toString() {
+        return String.format("%s: count=%d mean=%.1fns p50=%dns p99=%dns p99.9=%dns max=%dns size=%d",
+                             name, getCount(), getMeanNanos(), getP50Nanos(), getP99Nanos(),
+                             getP999Nanos(), getMaxNanos(), getLastSize());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,53 @@
+/**
+ * The JMX view of one instrumented operation, published by CardMetrics
+ * @author Parusan
+ * @version 1.0
+ */
+public interface OperationMetricsMBean {
+    /**
+     * Returns how many times the operation has run
+     * @return the call count
+     */
+    long getCount();
+    
+    /**
+     * Returns the mean latency
+     * @return the mean time per call in nanoseconds
+     */
+    double getMeanNanos();
+    
+    /**
+     * Returns the median latency
+     * @return the 50th percentile in nanoseconds
+     */
+    long getP50Nanos();
+    
+    /**
+     * Returns the 99th percentile latency
+     * @return the 99th percentile in nanoseconds
+     */
+    long getP99Nanos();
+    
+    /**
+     * Returns the 99.9th percentile latency
+     * @return the 99.9th percentile in nanoseconds
+     */
+    long getP999Nanos();
+    
+    /**
+     * Returns the slowest call recorded
+     * @return the maximum latency in nanoseconds
+     */
+    long getMaxNanos();
+    
+    /**
+     * Returns the size of the deck, hand, or pile after the most recent call
+     * @return the last recorded size
+     */
+    int getLastSize();
+    
+    /**
+     * Clears the counters and the histogram
+     */
+    void reset();
+}
\ No newline at end of file
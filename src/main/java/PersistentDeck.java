@@ -0,0 +1,186 @@
+/**
+ * An immutable deck for game-tree search and what-if analysis. draw() and
+ * addCard() return a new deck in O(log n) time, sharing almost all of its
+ * structure with the old one, so branching a game state never copies the
+ * cards, and keeping a snapshot is just keeping a reference.
+ * Drawing only moves the start of the deck forward, and the deck is rebuilt
+ * without the cards drawn once they outnumber the cards left, so a deck that is
+ * drawn from and added to forever stays within a small multiple of its size.
+ * That rebuild makes a draw O(n) in the worst case, and since versions are shared,
+ * every branch that draws from the same version at that point pays it again.
+ * @author Parusan
+ * @version 1.0
+ */
+public final class PersistentDeck {
+    private static final PersistentDeck EMPTY = new PersistentDeck(PersistentVector.<Card>empty(), 0);
+    
+    // Cards drawn that are kept before a draw rebuilds the deck, so short decks never rebuild
+    private static final int MIN_TRIM = 32;
+    
+    private final PersistentVector<Card> cards;
+    private final int start;  // index of the top card in cards
+    
+    /**
+     * Constructs a deck from its parts
+     * @param cards the cards, the top card at start
+     * @param start the index of the top card
+     */
+    private PersistentDeck(PersistentVector<Card> cards, int start) {
+        this.cards = cards;
+        this.start = start;
+    }
+    
+    /**
+     * Returns the empty deck
+     * @return the shared empty deck
+     */
+    public static PersistentDeck empty() {
+        return EMPTY;
+    }
+    
+    /**
+     * Returns a deck holding the given cards, top card first
+     * @param cards the cards
+     * @return the new deck
+     * @throws IllegalArgumentException if the array or any card is null
+     */
+    public static PersistentDeck of(Card[] cards) {
+        if (cards == null) {
+            throw new IllegalArgumentException("Card array cannot be null");
+        }
+        for (Card card : cards) {
+            if (card == null) {
+                throw new IllegalArgumentException("Cards cannot be null");
+            }
+        }
+        return new PersistentDeck(PersistentVector.of(cards, 0, cards.length), 0);
+    }
+    
+    /**
+     * Returns a deck holding the same cards as a mutable deck, in the same order
+     * @param deck the deck to copy
+     * @return the new deck
+     * @throws IllegalArgumentException if deck is null
+     */
+    public static PersistentDeck of(Deck deck) {
+        if (deck == null) {
+            throw new IllegalArgumentException("Deck cannot be null");
+        }
+        return of(deck.getCards());
+    }
+    
+    /**
+     * Returns an unshuffled standard 52-card deck
+     * @return the new deck
+     */
+    public static PersistentDeck standard() {
+        return of(Deck.standardCards(1));
+    }
+    
+    /**
+     * Returns the number of cards in the deck
+     * @return the size of the deck
+     */
+    public int size() {
+        return cards.size() - start;
+    }
+    
+    /**
+     * Returns the number of cards stored, including the cards drawn that have not been trimmed yet
+     * @return the slot count
+     */
+    int slotCount() {
+        return cards.size();
+    }
+    
+    /**
+     * Returns the top card without drawing it
+     * @return the top card, or null if the deck is empty
+     */
+    public Card top() {
+        return size() == 0 ? null : cards.get(start);
+    }
+    
+    /**
+     * Returns the card at a position
+     * @param index the position, where 0 is the top card
+     * @return the card
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public Card cardAt(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of range for size " + size());
+        }
+        return cards.get(start + index);
+    }
+    
+    /**
+     * Returns the deck without its top card; use top() to see the card drawn. This is O(1),
+     * except that once the cards drawn outnumber the cards left, the new deck is rebuilt
+     * from the cards left in O(n) time. A chain of draws pays for each rebuild with the
+     * draws before it, but each branch drawn from a version at that point rebuilds again.
+     * @return the new deck, or this deck if it is empty
+     */
+    public PersistentDeck draw() {
+        if (size() == 0) {
+            return this;
+        }
+        if (size() == 1) {
+            return EMPTY;
+        }
+        int next = start + 1;
+        if (next >= MIN_TRIM && next > cards.size() - next) {
+            // Along one chain of draws, each rebuild copies fewer cards than were drawn since the last one
+            Card[] left = new Card[cards.size() - next];
+            cards.copyTo(next, left, 0, left.length);
+            return new PersistentDeck(PersistentVector.of(left, 0, left.length), 0);
+        }
+        return new PersistentDeck(cards, next);
+    }
+    
+    /**
+     * Returns the deck with a card added to the bottom, in O(log n) time
+     * @param card the card to add
+     * @return the new deck
+     * @throws IllegalArgumentException if the card is null
+     */
+    public PersistentDeck addCard(Card card) {
+        if (card == null) {
+            throw new IllegalArgumentException("Card cannot be null");
+        }
+        return new PersistentDeck(cards.append(card), start);
+    }
+    
+    /**
+     * Returns a shuffled copy of the deck. Shuffling touches every card, so the
+     * new deck is rebuilt rather than shared; it drops the cards drawn before.
+     * A generator in a given state gives the same order as Deck.shuffle(CardRandom).
+     * @param random the source of randomness
+     * @return the new deck
+     * @throws IllegalArgumentException if random is null
+     * @throws IllegalStateException if the deck is empty
+     */
+    public PersistentDeck shuffle(CardRandom random) {
+        Deck deck = toDeck();
+        deck.shuffle(random);
+        return of(deck.getCards());
+    }
+    
+    /**
+     * Returns the cards in the deck
+     * @return a new array of the cards, top card first
+     */
+    public Card[] getCards() {
+        Card[] result = new Card[size()];
+        cards.copyTo(start, result, 0, result.length);
+        return result;
+    }
+    
+    /**
+     * Builds a mutable deck holding the same cards
+     * @return the new deck
+     */
+    public Deck toDeck() {
+        return new Deck(getCards());
+    }
+}
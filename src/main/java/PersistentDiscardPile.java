@@ -0,0 +1,316 @@
+import java.util.Arrays;
+
+/**
+ * An immutable discard pile for game-tree search and what-if analysis.
+ * addCard() and removeCard() return a new pile in O(log n) time that shares
+ * the rest of the pile with the old one, so a snapshot is just a reference.
+ * <p>
+ * Like DiscardPile, removing a card leaves an empty slot behind rather than
+ * shifting the cards after it, and each standard card's slots are linked oldest
+ * first, with the first and last slot of each card kept in a small two-level
+ * table, so the oldest copy is found without a search. Custom cards are found
+ * by scanning the pile. Once empty slots outnumber the cards, removeCard() rebuilds
+ * the pile without them, as DiscardPile compacts; that removal costs O(n), and it
+ * is paid again by every branch that removes from the same version.
+ * @author Parusan
+ * @version 1.0
+ */
+public final class PersistentDiscardPile {
+    // The per-card table is split into blocks so an update copies one block, not all 52 entries
+    private static final int BLOCK = 8;
+    private static final int BLOCKS = (Card.STANDARD_COUNT + BLOCK - 1) / BLOCK;
+    private static final int[][] NO_SLOTS = new int[BLOCKS][];
+    
+    // Empty slots a pile may keep before a removal compacts it, so small piles never compact
+    private static final int MIN_COMPACT = 16;
+    
+    static {
+        int[] none = new int[BLOCK];
+        Arrays.fill(none, -1);
+        for (int i = 0; i < BLOCKS; i++) {
+            NO_SLOTS[i] = none; // Blocks are never modified in place, so they can be shared
+        }
+    }
+    
+    private static final PersistentDiscardPile EMPTY =
+        new PersistentDiscardPile(PersistentVector.<Slot>empty(), 0, NO_SLOTS, NO_SLOTS);
+    
+    /**
+     * One card in the pile and the next slot holding the same standard card
+     */
+    private static final class Slot {
+        final Card card;
+        final int next;  // -1 if this is the newest copy, or the card is not standard
+        
+        /**
+         * Constructs a slot
+         * @param card the card
+         * @param next the next slot holding the same standard card, or -1
+         */
+        Slot(Card card, int next) {
+            this.card = card;
+            this.next = next;
+        }
+    }
+    
+    private final PersistentVector<Slot> slots;  // null where a card was removed; never ends in null
+    private final int live;                      // number of cards actually in the pile
+    private final int[][] firstById;
+    private final int[][] lastById;
+    
+    /**
+     * Constructs a pile from its parts
+     * @param slots the slots, oldest first
+     * @param live the number of cards
+     * @param firstById the oldest slot of each standard card, or -1
+     * @param lastById the newest slot of each standard card, or -1
+     */
+    private PersistentDiscardPile(PersistentVector<Slot> slots, int live, int[][] firstById, int[][] lastById) {
+        this.slots = slots;
+        this.live = live;
+        this.firstById = firstById;
+        this.lastById = lastById;
+    }
+    
+    /**
+     * Returns the empty discard pile
+     * @return the shared empty pile
+     */
+    public static PersistentDiscardPile empty() {
+        return EMPTY;
+    }
+    
+    /**
+     * Returns a pile holding the same cards as a mutable discard pile, in the same order
+     * @param discardPile the pile to copy
+     * @return the new pile
+     * @throws IllegalArgumentException if discardPile is null
+     */
+    public static PersistentDiscardPile of(DiscardPile discardPile) {
+        if (discardPile == null) {
+            throw new IllegalArgumentException("Discard pile cannot be null");
+        }
+        return build(discardPile.getCards());
+    }
+    
+    /**
+     * Builds a pile from its cards in one pass, linking each standard card's slots
+     * @param cards the cards, oldest first, none null
+     * @return the new pile
+     */
+    private static PersistentDiscardPile build(Card[] cards) {
+        if (cards.length == 0) {
+            return EMPTY;
+        }
+        int[] first = new int[BLOCKS * BLOCK];
+        int[] last = new int[BLOCKS * BLOCK];
+        Arrays.fill(first, -1);
+        Arrays.fill(last, -1);
+        
+        // Walking from the newest card back, each card's first slot so far is the next slot for the one before it
+        Slot[] built = new Slot[cards.length];
+        for (int i = cards.length - 1; i >= 0; i--) {
+            Card card = cards[i];
+            if (!card.isStandard()) {
+                built[i] = new Slot(card, -1);
+                continue;
+            }
+            int id = card.getId();
+            built[i] = new Slot(card, first[id]);
+            if (last[id] == -1) {
+                last[id] = i;
+            }
+            first[id] = i;
+        }
+        return new PersistentDiscardPile(PersistentVector.of(built, 0, built.length), cards.length,
+                                         blocks(first), blocks(last));
+    }
+    
+    /**
+     * Splits a flat per-card table into blocks, sharing the empty block where it can
+     * @param table the entries, BLOCKS * BLOCK of them
+     * @return the blocked table
+     */
+    private static int[][] blocks(int[] table) {
+        int[][] result = new int[BLOCKS][];
+        for (int b = 0; b < BLOCKS; b++) {
+            int[] block = Arrays.copyOfRange(table, b * BLOCK, (b + 1) * BLOCK);
+            result[b] = Arrays.equals(block, NO_SLOTS[b]) ? NO_SLOTS[b] : block;
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the number of cards in the discard pile
+     * @return the size of the discard pile as an integer
+     */
+    public int size() {
+        return live;
+    }
+    
+    /**
+     * Returns the number of slots in use, including slots of removed cards
+     * @return the slot count
+     */
+    int slotCount() {
+        return slots.size();
+    }
+    
+    /**
+     * Returns the most recently discarded card
+     * @return the top card, or null if the pile is empty
+     */
+    public Card peekTop() {
+        return live == 0 ? null : slots.get(slots.size() - 1).card;
+    }
+    
+    /**
+     * Returns the pile with a card added to the top
+     * @param card the card to add
+     * @return the new pile, or this pile if the card is null
+     */
+    public PersistentDiscardPile addCard(Card card) {
+        if (card == null) {
+            return this; // Don't add null cards
+        }
+        
+        int slot = slots.size();
+        PersistentVector<Slot> newSlots = slots.append(new Slot(card, -1));
+        if (!card.isStandard()) {
+            return new PersistentDiscardPile(newSlots, live + 1, firstById, lastById);
+        }
+        
+        // Link the new slot to the end of this card's list
+        int id = card.getId();
+        int last = entry(lastById, id);
+        int[][] newFirst = firstById;
+        if (last == -1) {
+            newFirst = withEntry(firstById, id, slot);
+        } else {
+            newSlots = newSlots.set(last, new Slot(slots.get(last).card, slot));
+        }
+        return new PersistentDiscardPile(newSlots, live + 1, newFirst, withEntry(lastById, id, slot));
+    }
+    
+    /**
+     * Returns the pile without the oldest copy of a card
+     * @param card the card to remove
+     * @return the new pile, or this pile if the card is null or not in the pile
+     */
+    public PersistentDiscardPile removeCard(Card card) {
+        if (card == null || live == 0) {
+            return this; // Nothing to remove
+        }
+        
+        int slot;
+        int[][] newFirst = firstById;
+        int[][] newLast = lastById;
+        if (card.isStandard()) {
+            int id = card.getId();
+            slot = entry(firstById, id);
+            if (slot == -1) {
+                return this; // Card not found
+            }
+            int next = slots.get(slot).next;
+            newFirst = withEntry(firstById, id, next);
+            if (next == -1) {
+                newLast = withEntry(lastById, id, -1);
+            }
+        } else {
+            slot = indexOfCustom(card);
+            if (slot == -1) {
+                return this; // Card not found
+            }
+        }
+        
+        PersistentVector<Slot> newSlots = slots.set(slot, null);
+        // Keep the top card in the last slot
+        while (newSlots.size() > 0 && newSlots.get(newSlots.size() - 1) == null) {
+            newSlots = newSlots.pop();
+        }
+        if (live == 1) {
+            return EMPTY;
+        }
+        PersistentDiscardPile pile = new PersistentDiscardPile(newSlots, live - 1, newFirst, newLast);
+        
+        // Compact once empty slots outnumber cards, so the pile stays within twice its size
+        if (newSlots.size() - pile.live > pile.live && newSlots.size() > MIN_COMPACT) {
+            return build(pile.getCards());
+        }
+        return pile;
+    }
+    
+    /**
+     * Finds the oldest slot holding a custom card
+     * @param card the card, which is not standard
+     * @return the slot, or -1 if the card is not in the pile
+     */
+    private int indexOfCustom(Card card) {
+        for (int i = 0; i < slots.size(); i++) {
+            Slot slot = slots.get(i);
+            if (slot != null && slot.card.equals(card)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Reads a per-card table entry
+     * @param table the table
+     * @param id the standard card id
+     * @return the entry
+     */
+    private static int entry(int[][] table, int id) {
+        return table[id / BLOCK][id % BLOCK];
+    }
+    
+    /**
+     * Returns a copy of a per-card table with one entry changed, sharing every other block
+     * @param table the table
+     * @param id the standard card id
+     * @param value the new entry
+     * @return the new table
+     */
+    private static int[][] withEntry(int[][] table, int id, int value) {
+        int[][] result = table.clone();
+        int[] block = table[id / BLOCK].clone();
+        block[id % BLOCK] = value;
+        result[id / BLOCK] = block;
+        return result;
+    }
+    
+    /**
+     * Returns the cards in the discard pile
+     * @return a new array containing all cards in the discard pile, oldest first
+     */
+    public Card[] getCards() {
+        Card[] result = new Card[live];
+        int index = 0;
+        for (int i = 0; i < slots.size(); i++) {
+            Slot slot = slots.get(i);
+            if (slot != null) {
+                result[index] = slot.card;
+                index++;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Builds a mutable discard pile holding the same cards
+     * @return the new pile
+     */
+    public DiscardPile toDiscardPile() {
+        return new DiscardPile(getCards());
+    }
+    
+    /**
+     * Returns a formatted string representation of all cards in the discard pile
+     * @return the same text as DiscardPile.toString() for the same cards
+     */
+    @Override
+    public String toString() {
+        return toDiscardPile().toString();
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * An immutable player for game-tree search and what-if analysis. Every change
+ * to the hand returns a new player in O(log n) time that shares the rest of the
+ * hand with the old one, so a snapshot is just a reference.
+ * Moves between structures return each new version from its own class; to
+ * discard, for example, take player.discardCard(card) and pile.addCard(card).
+ * @author Parusan
+ * @version 1.0
+ */
+public final class PersistentPlayer {
+    private final String name;
+    private final int age;
+    private final PersistentVector<Card> hand;
+    
+    /**
+     * Constructs a player with an empty hand
+     * @param name the player's name
+     * @param age the player's age
+     * @throws IllegalArgumentException if name is null/empty or age is negative
+     */
+    public PersistentPlayer(String name, int age) {
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("Player name cannot be null or empty");
+        }
+        if (age < 0) {
+            throw new IllegalArgumentException("Age cannot be negative");
+        }
+        this.name = name.trim();
+        this.age = age;
+        this.hand = PersistentVector.empty();
+    }
+    
+    /**
+     * Constructs a player with a new hand, keeping the name and age
+     * @param player the player to copy the name and age from
+     * @param hand the new hand
+     */
+    private PersistentPlayer(PersistentPlayer player, PersistentVector<Card> hand) {
+        this.name = player.name;
+        this.age = player.age;
+        this.hand = hand;
+    }
+    
+    /**
+     * Returns a player with the same name, age and hand as a mutable player
+     * @param player the player to copy
+     * @return the new player
+     * @throws IllegalArgumentException if player is null
+     */
+    public static PersistentPlayer of(Player player) {
+        if (player == null) {
+            throw new IllegalArgumentException("Player cannot be null");
+        }
+        Card[] cards = player.getHand();
+        PersistentPlayer empty = new PersistentPlayer(player.getName(), player.getAge());
+        return new PersistentPlayer(empty, PersistentVector.of(cards, 0, cards.length));
+    }
+    
+    /**
+     * Returns the player's name
+     * @return the player's name as a String
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Returns the player's age
+     * @return the player's age as an integer
+     */
+    public int getAge() {
+        return age;
+    }
+    
+    /**
+     * Returns the number of cards in the player's hand
+     * @return the size of the hand as an integer
+     */
+    public int size() {
+        return hand.size();
+    }
+    
+    /**
+     * Returns the cards in the player's hand
+     * @return a new array of the cards in the hand
+     */
+    public Card[] getHand() {
+        Card[] result = new Card[hand.size()];
+        hand.copyTo(0, result, 0, result.length);
+        return result;
+    }
+    
+    /**
+     * Checks if the player has a specific card in hand
+     * @param card the card to check for
+     * @return true if the card is in hand, false otherwise
+     */
+    public boolean hasCard(Card card) {
+        return card != null && indexOf(card) != -1;
+    }
+    
+    /**
+     * Returns the highest value card in the hand
+     * @return the first highest card found, or null if the hand is empty
+     */
+    public Card getHighestCard() {
+        Card highest = null;
+        for (int i = 0; i < hand.size(); i++) {
+            Card card = hand.get(i);
+            if (highest == null || card.getValue() > highest.getValue()) {
+                highest = card;
+            }
+        }
+        return highest;
+    }
+    
+    /**
+     * Returns the player with a card added to the hand
+     * @param card the card to add
+     * @return the new player
+     * @throws IllegalArgumentException if the card is null
+     */
+    public PersistentPlayer addCard(Card card) {
+        if (card == null) {
+            throw new IllegalArgumentException("Card cannot be null");
+        }
+        return new PersistentPlayer(this, hand.append(card));
+    }
+    
+    /**
+     * Returns the player with the deck's top card added to the hand; take deck.draw() for the new deck
+     * @param deck the deck to draw from
+     * @return the new player, or this player if the deck is empty
+     * @throws IllegalArgumentException if deck is null
+     */
+    public PersistentPlayer draw(PersistentDeck deck) {
+        if (deck == null) {
+            throw new IllegalArgumentException("Deck cannot be null");
+        }
+        Card top = deck.top();
+        return top == null ? this : addCard(top);
+    }
+    
+    /**
+     * Returns the player without a card. The last card in the hand takes the
+     * removed card's place, so the rest of the hand is shared rather than shifted.
+     * Add the card to a discard pile with pile.addCard(card).
+     * @param card the card to discard
+     * @return the new player, or this player if the card is not in the hand
+     * @throws IllegalArgumentException if the card is null
+     */
+    public PersistentPlayer discardCard(Card card) {
+        if (card == null) {
+            throw new IllegalArgumentException("Card cannot be null");
+        }
+        int index = indexOf(card);
+        if (index == -1) {
+            return this; // Card not in hand
+        }
+        
+        int last = hand.size() - 1;
+        PersistentVector<Card> newHand = index == last ? hand : hand.set(index, hand.get(last));
+        return new PersistentPlayer(this, newHand.pop());
+    }
+    
+    /**
+     * Finds a card in the hand
+     * @param card the card to find
+     * @return the index of the first equal card, or -1 if it is not in the hand
+     */
+    private int indexOf(Card card) {
+        for (int i = 0; i < hand.size(); i++) {
+            if (hand.get(i).equals(card)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Builds a mutable player with the same name, age and hand
+     * @return the new player
+     */
+    public Player toPlayer() {
+        return new Player(name, age, getHand());
+    }
+    
+    /**
+     * Returns a string representation of the player
+     * @return the same text as Player.toString() for the same hand
+     */
+    @Override
+    public String toString() {
+        return toPlayer().toString();
+    }
+}
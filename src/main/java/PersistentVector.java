@@ -0,0 +1,292 @@
+/**
+ * An immutable indexed sequence stored as a 32-way trie with a separate tail
+ * block, the structure behind the persistent Deck, Player and DiscardPile variants.
+ * Every update returns a new vector that shares all but the changed path with
+ * the old one, so appending, replacing or removing the last element copies at
+ * most one 32-slot node per trie level (a handful of levels for any realistic
+ * size), and the old vector stays valid and unchanged.
+ * @author Parusan
+ * @version 1.0
+ * @param <E> the element type
+ */
+final class PersistentVector<E> {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    
+    private static final Object[] EMPTY_NODE = new Object[WIDTH];
+    private static final PersistentVector<Object> EMPTY =
+        new PersistentVector<>(0, BITS, EMPTY_NODE, new Object[0]);
+    
+    private final int count;
+    private final int shift;      // bits consumed by the levels above the leaves
+    private final Object[] root;  // holds every element before the tail
+    private final Object[] tail;  // the last 1 to 32 elements, exactly sized
+    
+    /**
+     * Constructs a vector from its parts
+     * @param count the number of elements
+     * @param shift the root's level times BITS
+     * @param root the trie root
+     * @param tail the tail block
+     */
+    private PersistentVector(int count, int shift, Object[] root, Object[] tail) {
+        this.count = count;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+    
+    /**
+     * Returns the empty vector
+     * @param <E> the element type
+     * @return the shared empty vector
+     */
+    @SuppressWarnings("unchecked")
+    static <E> PersistentVector<E> empty() {
+        return (PersistentVector<E>) EMPTY;
+    }
+    
+    /**
+     * Returns a vector holding the given elements in order
+     * @param <E> the element type
+     * @param elements the elements
+     * @param from the index of the first element to take
+     * @param to the index after the last element to take
+     * @return the new vector
+     */
+    static <E> PersistentVector<E> of(E[] elements, int from, int to) {
+        PersistentVector<E> vector = empty();
+        for (int i = from; i < to; i++) {
+            vector = vector.append(elements[i]);
+        }
+        return vector;
+    }
+    
+    /**
+     * Returns the number of elements
+     * @return the size
+     */
+    int size() {
+        return count;
+    }
+    
+    /**
+     * Returns the index of the first element in the tail block
+     * @return the tail offset
+     */
+    private int tailOffset() {
+        return count < WIDTH ? 0 : ((count - 1) >>> BITS) << BITS;
+    }
+    
+    /**
+     * Returns the 32-slot block holding an element
+     * @param index the element index
+     * @return the leaf node or the tail
+     */
+    private Object[] blockFor(int index) {
+        if (index >= tailOffset()) {
+            return tail;
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+        return node;
+    }
+    
+    /**
+     * Returns an element
+     * @param index the element index
+     * @return the element
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    @SuppressWarnings("unchecked")
+    E get(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of range for size " + count);
+        }
+        return (E) blockFor(index)[index & MASK];
+    }
+    
+    /**
+     * Copies a run of elements into an array
+     * @param from the index of the first element
+     * @param dest the destination array
+     * @param destPos the index in dest to copy to
+     * @param length the number of elements
+     */
+    void copyTo(int from, Object[] dest, int destPos, int length) {
+        int index = from;
+        int end = from + length;
+        while (index < end) {
+            // Copy the rest of the current block in one go
+            Object[] block = blockFor(index);
+            int offset = index & MASK;
+            int run = Math.min(end - index, block.length - offset);
+            System.arraycopy(block, offset, dest, destPos + index - from, run);
+            index += run;
+        }
+    }
+    
+    /**
+     * Returns a vector with an element added at the end
+     * @param element the element
+     * @return the new vector
+     */
+    PersistentVector<E> append(E element) {
+        // Room in the tail: copy just the tail
+        if (count - tailOffset() < WIDTH) {
+            Object[] newTail = new Object[tail.length + 1];
+            System.arraycopy(tail, 0, newTail, 0, tail.length);
+            newTail[tail.length] = element;
+            return new PersistentVector<>(count + 1, shift, root, newTail);
+        }
+        
+        // The tail is full: push it into the trie and start a new one
+        Object[] newRoot;
+        int newShift = shift;
+        if ((count >>> BITS) > (1 << shift)) {
+            // The trie is full at this height, so it grows a level
+            newRoot = new Object[WIDTH];
+            newRoot[0] = root;
+            newRoot[1] = newPath(shift, tail);
+            newShift += BITS;
+        } else {
+            newRoot = pushTail(shift, root, tail);
+        }
+        return new PersistentVector<>(count + 1, newShift, newRoot, new Object[] {element});
+    }
+    
+    /**
+     * Copies the path to the last leaf and hangs a full tail block under it
+     * @param level the level of parent
+     * @param parent the node to copy
+     * @param tailNode the block to insert
+     * @return the copied node
+     */
+    private Object[] pushTail(int level, Object[] parent, Object[] tailNode) {
+        int index = ((count - 1) >>> level) & MASK;
+        Object[] result = parent.clone();
+        Object[] inserted;
+        if (level == BITS) {
+            inserted = tailNode;
+        } else {
+            Object[] child = (Object[]) parent[index];
+            inserted = child != null ? pushTail(level - BITS, child, tailNode) : newPath(level - BITS, tailNode);
+        }
+        result[index] = inserted;
+        return result;
+    }
+    
+    /**
+     * Builds a chain of new nodes down to a leaf
+     * @param level the level of the top node of the chain
+     * @param node the leaf
+     * @return the top node
+     */
+    private static Object[] newPath(int level, Object[] node) {
+        if (level == 0) {
+            return node;
+        }
+        Object[] result = new Object[WIDTH];
+        result[0] = newPath(level - BITS, node);
+        return result;
+    }
+    
+    /**
+     * Returns a vector with one element replaced
+     * @param index the element index
+     * @param element the new element
+     * @return the new vector
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    PersistentVector<E> set(int index, E element) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of range for size " + count);
+        }
+        if (index >= tailOffset()) {
+            Object[] newTail = tail.clone();
+            newTail[index & MASK] = element;
+            return new PersistentVector<>(count, shift, root, newTail);
+        }
+        return new PersistentVector<>(count, shift, setInNode(shift, root, index, element), tail);
+    }
+    
+    /**
+     * Copies the path to an element and replaces it
+     * @param level the level of node
+     * @param node the node to copy
+     * @param index the element index
+     * @param element the new element
+     * @return the copied node
+     */
+    private static Object[] setInNode(int level, Object[] node, int index, Object element) {
+        Object[] result = node.clone();
+        if (level == 0) {
+            result[index & MASK] = element;
+        } else {
+            int child = (index >>> level) & MASK;
+            result[child] = setInNode(level - BITS, (Object[]) node[child], index, element);
+        }
+        return result;
+    }
+    
+    /**
+     * Returns a vector without its last element
+     * @return the new vector
+     * @throws IllegalStateException if the vector is empty
+     */
+    PersistentVector<E> pop() {
+        if (count == 0) {
+            throw new IllegalStateException("Cannot pop an empty vector");
+        }
+        if (count == 1) {
+            return empty();
+        }
+        if (count - tailOffset() > 1) {
+            Object[] newTail = new Object[tail.length - 1];
+            System.arraycopy(tail, 0, newTail, 0, newTail.length);
+            return new PersistentVector<>(count - 1, shift, root, newTail);
+        }
+        
+        // The tail empties: the last leaf of the trie becomes the new tail
+        Object[] newTail = blockFor(count - 2);
+        Object[] newRoot = popTail(shift, root);
+        int newShift = shift;
+        if (newRoot == null) {
+            newRoot = EMPTY_NODE;
+        }
+        if (shift > BITS && newRoot[1] == null) {
+            // Only one child left at the top, so the trie shrinks a level
+            newRoot = (Object[]) newRoot[0];
+            newShift -= BITS;
+        }
+        return new PersistentVector<>(count - 1, newShift, newRoot, newTail);
+    }
+    
+    /**
+     * Copies the path to the last leaf and removes the leaf
+     * @param level the level of node
+     * @param node the node to copy
+     * @return the copied node, or null if it is left empty
+     */
+    private Object[] popTail(int level, Object[] node) {
+        int index = ((count - 2) >>> level) & MASK;
+        if (level > BITS) {
+            Object[] child = popTail(level - BITS, (Object[]) node[index]);
+            if (child == null && index == 0) {
+                return null;
+            }
+            Object[] result = node.clone();
+            result[index] = child;
+            return result;
+        }
+        if (index == 0) {
+            return null;
+        }
+        Object[] result = node.clone();
+        result[index] = null;
+        return result;
+    }
+}
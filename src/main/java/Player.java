@@ -1,3 +1,5 @@
+import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * Represents a player in a card game with a hand of cards
@@ -5,9 +7,38 @@
  * @version 1.0
  */
 public class Player {
+    // Bitset hands use bit (value - 2) * 4 + suit for each standard card, so
+    // higher bits always hold higher values
+    private static final int[] BIT_OF_ID = new int[Card.STANDARD_COUNT];
+    private static final int[] ID_OF_BIT = new int[Card.STANDARD_COUNT];
+    
+    static {
+        for (int id = 0; id < Card.STANDARD_COUNT; id++) {
+            int bit = (Card.byId(id).getValue() - 2) * 4 + id / 13;
+            BIT_OF_ID[id] = bit;
+            ID_OF_BIT[bit] = id;
+        }
+    }
+    
+    private static final Card[] EMPTY_HAND = new Card[0];
+    
     private String name;
     private int age;
-    private Card[] hand;
+    private Card[] hand;       // used while the hand is not a bitset
+    private long handBits;     // used while the hand is a bitset
+    private long[] addedAt;    // when each bit's card was added, so getHand() can list the cards in order
+    private long nextAdded;
+    private boolean bitsetHand;
+    
+    // Ranked hands keep one bucket per value, so the highest and lowest cards are
+    // found from a bitmask of non-empty buckets. Bucket value - 1 holds values 1 to 14
+    // in the order they were added; the overflow bucket holds every value above 14, sorted by value.
+    private static final int OVERFLOW_BUCKET = 14;
+    private Card[][] buckets;    // used while the hand is ranked
+    private int[] bucketSizes;
+    private int bucketMask;      // bit b is set when bucket b is not empty
+    private int rankedSize;
+    private boolean rankedHand;
     
     /**
      * Constructs a player with name, age, and initial hand of cards
@@ -38,7 +69,7 @@ public class Player {
      * @throws IllegalArgumentException if name is null/empty or age is negative
      */
     public Player(String name, int age) {
-        this(name, age, new Card[0]);
+        this(name, age, EMPTY_HAND);
     }
     
     /**
@@ -62,6 +93,12 @@ public class Player {
      * @return an array of cards in the player's hand
      */
     public Card[] getHand() {
+        if (bitsetHand) {
+            return orderedCards();
+        }
+        if (rankedHand) {
+            return rankedCards();
+        }
         return hand;
     }
     
@@ -70,15 +107,237 @@ public class Player {
      * @return the size of the hand as an integer
      */
     public int size() {
+        if (bitsetHand) {
+            return Long.bitCount(handBits);
+        }
+        if (rankedHand) {
+            return rankedSize;
+        }
         return hand.length;
     }
     
+    /**
+     * Switches the hand to a bitset of standard cards, where adding and removing
+     * are single bit operations and finding the highest card looks at one value's
+     * suits. Each card's position in the order the cards were added is stamped
+     * alongside the bits, so getHand() and toString() list the hand exactly as an
+     * array hand would, and ties are broken the same way. The hand switches back on
+     * its own if a non-standard or duplicate card is added.
+     * @return true if the hand is now a bitset, false if it holds cards a bitset cannot represent
+     */
+    public boolean useBitsetHand() {
+        if (bitsetHand) {
+            return true;
+        }
+        
+        Card[] cards = rankedHand ? rankedCards() : hand;
+        long bits = 0L;
+        for (int i = 0; i < cards.length; i++) {
+            if (!cards[i].isStandard()) {
+                return false;
+            }
+            long bit = 1L << BIT_OF_ID[cards[i].getId()];
+            if ((bits & bit) != 0) {
+                return false; // Duplicate card
+            }
+            bits |= bit;
+        }
+        
+        addedAt = new long[Card.STANDARD_COUNT];
+        for (int i = 0; i < cards.length; i++) {
+            addedAt[BIT_OF_ID[cards[i].getId()]] = i;
+        }
+        nextAdded = cards.length;
+        handBits = bits;
+        hand = null;
+        buckets = null;
+        bucketSizes = null;
+        rankedHand = false;
+        bitsetHand = true;
+        return true;
+    }
+    
+    /**
+     * Switches the hand to value buckets, where finding the highest or lowest card
+     * takes constant time and removing a card only shifts cards of the same value.
+     * Unlike a bitset hand, a ranked hand can hold any cards, including duplicates
+     * from multi-deck shoes. In this mode getHand() lists the cards from lowest to
+     * highest value, and cards of equal value in the order they were added.
+     */
+    public void useRankedHand() {
+        if (rankedHand) {
+            return;
+        }
+        
+        Card[] cards = getHand();
+        buckets = new Card[OVERFLOW_BUCKET + 1][];
+        bucketSizes = new int[OVERFLOW_BUCKET + 1];
+        bucketMask = 0;
+        rankedSize = 0;
+        hand = null;
+        addedAt = null;
+        bitsetHand = false;
+        rankedHand = true;
+        for (int i = 0; i < cards.length; i++) {
+            addToBucket(cards[i]);
+        }
+    }
+    
+    /**
+     * Returns whether the hand is currently stored in value buckets
+     * @return true if the hand is ranked
+     */
+    public boolean isRankedHand() {
+        return rankedHand;
+    }
+    
+    /**
+     * Returns whether the hand is currently stored as a bitset
+     * @return true if the hand is a bitset
+     */
+    public boolean isBitsetHand() {
+        return bitsetHand;
+    }
+    
+    /**
+     * Returns a snapshot of a bitset hand, one bit per standard card
+     * @return the hand's bitmask
+     * @throws IllegalStateException if the hand is not a bitset
+     */
+    public long getHandBits() {
+        if (!bitsetHand) {
+            throw new IllegalStateException("Hand is not a bitset");
+        }
+        return handBits;
+    }
+    
+    /**
+     * Replaces a bitset hand with the given bitmask. Cards that stay in the hand
+     * keep their order, and new cards follow them from lowest to highest value.
+     * @param bits the new hand, one bit per standard card
+     * @throws IllegalStateException if the hand is not a bitset
+     * @throws IllegalArgumentException if bits has bits set that are not standard cards
+     */
+    void setHandBits(long bits) {
+        if (!bitsetHand) {
+            throw new IllegalStateException("Hand is not a bitset");
+        }
+        if ((bits >>> Card.STANDARD_COUNT) != 0) {
+            throw new IllegalArgumentException("Invalid hand bits");
+        }
+        
+        for (long added = bits & ~handBits; added != 0L; added &= added - 1) {
+            addedAt[Long.numberOfTrailingZeros(added)] = nextAdded++;
+        }
+        handBits = bits;
+    }
+    
+    /**
+     * Empties the hand, keeping its mode and, for a ranked hand, its buckets
+     */
+    void clearHand() {
+        if (bitsetHand) {
+            handBits = 0L;
+            nextAdded = 0;
+        } else if (rankedHand) {
+            for (int bucket = 0; bucket <= OVERFLOW_BUCKET; bucket++) {
+                if (bucketSizes[bucket] > 0) {
+                    Arrays.fill(buckets[bucket], 0, bucketSizes[bucket], null);
+                    bucketSizes[bucket] = 0;
+                }
+            }
+            bucketMask = 0;
+            rankedSize = 0;
+        } else {
+            hand = EMPTY_HAND;
+        }
+    }
+    
+    /**
+     * Returns whether the given card is in the player's hand
+     * @param card the card to look for
+     * @return true if the hand contains the card
+     */
+    public boolean hasCard(Card card) {
+        if (card == null) {
+            return false;
+        }
+        if (bitsetHand) {
+            return card.isStandard() && (handBits & (1L << BIT_OF_ID[card.getId()])) != 0;
+        }
+        if (rankedHand) {
+            return indexInBucket(card) != -1;
+        }
+        return indexInHand(card) != -1;
+    }
+    
+    /**
+     * Returns the highest value card in the player's hand without removing it
+     * @return the highest card (the first one in getHand() order on a tie), or null if the hand is empty
+     */
+    public Card getHighestCard() {
+        if (bitsetHand) {
+            if (handBits == 0L) {
+                return null;
+            }
+            return Card.byId(ID_OF_BIT[extremeBit(true)]);
+        }
+        if (rankedHand) {
+            if (bucketMask == 0) {
+                return null;
+            }
+            int bucket = 31 - Integer.numberOfLeadingZeros(bucketMask);
+            return buckets[bucket][extremeInBucket(bucket, true)];
+        }
+        
+        int index = extremeInHand(true);
+        return index == -1 ? null : hand[index];
+    }
+    
+    /**
+     * Plays the highest value card in the hand: removes it and adds it to the discard pile,
+     * finding and removing the card in one step
+     * @param discardPile the discard pile to add the card to
+     * @return the card played (the first one in the order the cards were added on a tie)
+     * @throws IllegalArgumentException if discardPile is null
+     * @throws IllegalStateException if the hand is empty
+     */
+    public Card playHighest(DiscardPile discardPile) {
+        return playExtreme(discardPile, true);
+    }
+    
+    /**
+     * Plays the lowest value card in the hand: removes it and adds it to the discard pile,
+     * finding and removing the card in one step
+     * @param discardPile the discard pile to add the card to
+     * @return the card played (the first one in the order the cards were added on a tie)
+     * @throws IllegalArgumentException if discardPile is null
+     * @throws IllegalStateException if the hand is empty
+     */
+    public Card playLowest(DiscardPile discardPile) {
+        return playExtreme(discardPile, false);
+    }
+    
     /**
      * Draws a card from the deck and adds it to the player's hand
      * @param deck the deck to draw from
      * @throws IllegalArgumentException if deck is null
      */
     public void draw(Deck deck) {
+        if (!CardMetrics.ENABLED) {
+            drawFrom(deck);
+            return;
+        }
+        long start = System.nanoTime();
+        drawFrom(deck);
+        CardMetrics.PLAYER_DRAW.record(start, size());
+    }
+    
+    /**
+     * The uninstrumented body of draw(Deck)
+     * @param deck the deck to draw from
+     */
+    private void drawFrom(Deck deck) {
         if (deck == null) {
             throw new IllegalArgumentException("Deck cannot be null");
         }
@@ -89,6 +348,24 @@ public class Player {
         }
     }
     
+    /**
+     * Draws several cards from the deck at once and adds them to the player's hand,
+     * with one copy out of the deck and one into the hand
+     * @param deck the deck to draw from
+     * @param count the number of cards to draw
+     * @return the number of cards drawn, less than count if the deck ran out
+     * @throws IllegalArgumentException if deck is null or count is negative
+     */
+    public int drawMany(Deck deck, int count) {
+        if (deck == null) {
+            throw new IllegalArgumentException("Deck cannot be null");
+        }
+        
+        Card[] drawnCards = deck.draw(count);
+        addCards(drawnCards, 0, 1, drawnCards.length);
+        return drawnCards.length;
+    }
+    
     /**
      * Discards a card from hand to the discard pile
      * @param card the card to discard
@@ -97,6 +374,22 @@ public class Player {
      * @throws IllegalArgumentException if card or discardPile is null
      */
     public boolean discardCard(Card card, DiscardPile discardPile) {
+        if (!CardMetrics.ENABLED) {
+            return discardFromHand(card, discardPile);
+        }
+        long start = System.nanoTime();
+        boolean result = discardFromHand(card, discardPile);
+        CardMetrics.PLAYER_DISCARD_CARD.record(start, size());
+        return result;
+    }
+    
+    /**
+     * The uninstrumented body of discardCard(Card, DiscardPile)
+     * @param card the card to discard
+     * @param discardPile the discard pile to add to
+     * @return true if card was discarded, false if it was not in hand
+     */
+    private boolean discardFromHand(Card card, DiscardPile discardPile) {
         if (card == null) {
             throw new IllegalArgumentException("Card cannot be null");
         }
@@ -104,30 +397,10 @@ public class Player {
             throw new IllegalArgumentException("Discard pile cannot be null");
         }
         
-        // Find and remove the card from hand
-        int cardIndex = -1;
-        for (int i = 0; i < hand.length; i++) {
-            if (hand[i].equals(card)) {
-                cardIndex = i;
-                break;
-            }
-        }
-        
-        if (cardIndex == -1) {
+        if (!removeFromHand(card)) {
             return false; // Card not in hand
         }
         
-        // Remove card from hand
-        Card[] newHand = new Card[hand.length - 1];
-        int newIndex = 0;
-        for (int i = 0; i < hand.length; i++) {
-            if (i != cardIndex) {
-                newHand[newIndex] = hand[i];
-                newIndex++;
-            }
-        }
-        hand = newHand;
-        
         // Add card to discard pile
         discardPile.addCard(card);
         return true;
@@ -141,6 +414,22 @@ public class Player {
      * @throws IllegalArgumentException if card or deck is null
      */
     public boolean returnCard(Card card, Deck deck) {
+        if (!CardMetrics.ENABLED) {
+            return returnToDeck(card, deck);
+        }
+        long start = System.nanoTime();
+        boolean result = returnToDeck(card, deck);
+        CardMetrics.PLAYER_RETURN_CARD.record(start, size());
+        return result;
+    }
+    
+    /**
+     * The uninstrumented body of returnCard(Card, Deck)
+     * @param card the card to return
+     * @param deck the deck to add the card to
+     * @return true if card was returned, false if it was not in hand
+     */
+    private boolean returnToDeck(Card card, Deck deck) {
         if (card == null) {
             throw new IllegalArgumentException("Card cannot be null");
         }
@@ -148,30 +437,10 @@ public class Player {
             throw new IllegalArgumentException("Deck cannot be null");
         }
         
-        // Find and remove the card from hand
-        int cardIndex = -1;
-        for (int i = 0; i < hand.length; i++) {
-            if (hand[i].equals(card)) {
-                cardIndex = i;
-                break;
-            }
-        }
-        
-        if (cardIndex == -1) {
+        if (!removeFromHand(card)) {
             return false; // Card not in hand
         }
         
-        // Remove card from hand
-        Card[] newHand = new Card[hand.length - 1];
-        int newIndex = 0;
-        for (int i = 0; i < hand.length; i++) {
-            if (i != cardIndex) {
-                newHand[newIndex] = hand[i];
-                newIndex++;
-            }
-        }
-        hand = newHand;
-        
         // Add card to deck
         deck.addCard(card);
         return true;
@@ -182,6 +451,25 @@ public class Player {
      * @param card the card to add
      */
     private void addCardToHand(Card card) {
+        if (rankedHand) {
+            addToBucket(card);
+            return;
+        }
+        if (bitsetHand) {
+            if (card.isStandard()) {
+                long bit = 1L << BIT_OF_ID[card.getId()];
+                if ((handBits & bit) == 0) {
+                    handBits |= bit;
+                    addedAt[BIT_OF_ID[card.getId()]] = nextAdded++;
+                    return;
+                }
+            }
+            // A bitset cannot hold this card, so go back to an array hand
+            hand = orderedCards();
+            addedAt = null;
+            bitsetHand = false;
+        }
+        
         Card[] newHand = new Card[hand.length + 1];
         for (int i = 0; i < hand.length; i++) {
             newHand[i] = hand[i];
@@ -190,29 +478,368 @@ public class Player {
         hand = newHand;
     }
     
+    /**
+     * Adds every stride-th card of an array to the hand, growing an array hand only once
+     * @param source the array holding the cards
+     * @param start the index of the first card to add
+     * @param stride the distance between cards to add
+     * @param count the number of cards to add
+     */
+    void addCards(Card[] source, int start, int stride, int count) {
+        if (bitsetHand || rankedHand) {
+            for (int i = 0; i < count; i++) {
+                addCardToHand(source[start + i * stride]);
+            }
+            return;
+        }
+        
+        Card[] newHand = new Card[hand.length + count];
+        System.arraycopy(hand, 0, newHand, 0, hand.length);
+        if (stride == 1) {
+            System.arraycopy(source, start, newHand, hand.length, count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                newHand[hand.length + i] = source[start + i * stride];
+            }
+        }
+        hand = newHand;
+    }
+    
+    /**
+     * Helper method to remove a card from hand
+     * @param card the card to remove
+     * @return true if the card was in the hand and has been removed
+     */
+    private boolean removeFromHand(Card card) {
+        if (bitsetHand) {
+            if (!card.isStandard()) {
+                return false;
+            }
+            long bit = 1L << BIT_OF_ID[card.getId()];
+            if ((handBits & bit) == 0) {
+                return false;
+            }
+            handBits &= ~bit;
+            return true;
+        }
+        if (rankedHand) {
+            int index = indexInBucket(card);
+            if (index == -1) {
+                return false;
+            }
+            removeFromBucket(bucketOf(card.getValue()), index);
+            return true;
+        }
+        
+        int cardIndex = indexInHand(card);
+        if (cardIndex == -1) {
+            return false;
+        }
+        removeAt(cardIndex);
+        return true;
+    }
+    
+    /**
+     * Helper method to find a card in an array hand
+     * @param card the card to find
+     * @return the index of the first matching card, or -1 if it is not in the hand
+     */
+    private int indexInHand(Card card) {
+        for (int i = 0; i < hand.length; i++) {
+            if (hand[i].equals(card)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Helper method to remove the highest or lowest card and discard it
+     * @param discardPile the discard pile to add the card to
+     * @param highest true for the highest card, false for the lowest
+     * @return the card played
+     */
+    private Card playExtreme(DiscardPile discardPile, boolean highest) {
+        if (discardPile == null) {
+            throw new IllegalArgumentException("Discard pile cannot be null");
+        }
+        
+        Card card;
+        if (bitsetHand) {
+            if (handBits == 0L) {
+                throw new IllegalStateException("Cannot play a card from an empty hand");
+            }
+            int bit = extremeBit(highest);
+            handBits &= ~(1L << bit);
+            card = Card.byId(ID_OF_BIT[bit]);
+        } else if (rankedHand) {
+            if (bucketMask == 0) {
+                throw new IllegalStateException("Cannot play a card from an empty hand");
+            }
+            int bucket = highest ? 31 - Integer.numberOfLeadingZeros(bucketMask) : Integer.numberOfTrailingZeros(bucketMask);
+            int index = extremeInBucket(bucket, highest);
+            card = buckets[bucket][index];
+            removeFromBucket(bucket, index);
+        } else {
+            int index = extremeInHand(highest);
+            if (index == -1) {
+                throw new IllegalStateException("Cannot play a card from an empty hand");
+            }
+            card = hand[index];
+            removeAt(index);
+        }
+        
+        discardPile.addCard(card);
+        return card;
+    }
+    
+    /**
+     * Helper method to find the highest or lowest card of a non-empty bitset hand.
+     * The four suits of a value sit in adjacent bits, so a tie is settled among
+     * at most four cards, by which was added first, as in an array hand.
+     * @param highest true for the highest card, false for the lowest
+     * @return the bit of the first such card added
+     */
+    private int extremeBit(boolean highest) {
+        int edge = highest ? 63 - Long.numberOfLeadingZeros(handBits) : Long.numberOfTrailingZeros(handBits);
+        int base = edge & ~3;
+        int best = edge;
+        for (long tied = (handBits >>> base) & 0xF; tied != 0L; tied &= tied - 1) {
+            int bit = base + Long.numberOfTrailingZeros(tied);
+            if (addedAt[bit] < addedAt[best]) {
+                best = bit;
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Helper method to find the highest or lowest card of an array hand
+     * @param highest true for the highest card, false for the lowest
+     * @return the index of the first such card, or -1 if the hand is empty
+     */
+    private int extremeInHand(boolean highest) {
+        if (hand.length == 0) {
+            return -1;
+        }
+        int best = 0;
+        for (int i = 1; i < hand.length; i++) {
+            int value = hand[i].getValue();
+            if (highest ? value > hand[best].getValue() : value < hand[best].getValue()) {
+                best = i;
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Helper method to remove a card from an array hand by position
+     * @param index the position of the card to remove
+     */
+    private void removeAt(int index) {
+        Card[] newHand = new Card[hand.length - 1];
+        System.arraycopy(hand, 0, newHand, 0, index);
+        System.arraycopy(hand, index + 1, newHand, index, hand.length - index - 1);
+        hand = newHand;
+    }
+    
+    /**
+     * Helper method to find the bucket of a ranked hand that holds a value
+     * @param value the card value
+     * @return the bucket index
+     */
+    private static int bucketOf(int value) {
+        return Math.min(value, OVERFLOW_BUCKET + 1) - 1;
+    }
+    
+    /**
+     * Helper method to add a card to a ranked hand, after the other cards of its value.
+     * The overflow bucket is kept sorted by value, so the hand still lists in value order.
+     * @param card the card to add
+     */
+    private void addToBucket(Card card) {
+        int bucket = bucketOf(card.getValue());
+        Card[] cards = buckets[bucket];
+        if (cards == null) {
+            cards = new Card[4]; // One per suit covers a single deck
+            buckets[bucket] = cards;
+        } else if (bucketSizes[bucket] == cards.length) {
+            cards = Arrays.copyOf(cards, cards.length * 2);
+            buckets[bucket] = cards;
+        }
+        int index = bucketSizes[bucket];
+        if (bucket == OVERFLOW_BUCKET) {
+            while (index > 0 && cards[index - 1].getValue() > card.getValue()) {
+                index--;
+            }
+            System.arraycopy(cards, index, cards, index + 1, bucketSizes[bucket] - index);
+        }
+        cards[index] = card;
+        bucketSizes[bucket]++;
+        bucketMask |= 1 << bucket;
+        rankedSize++;
+    }
+    
+    /**
+     * Helper method to remove a card from a bucket of a ranked hand by position
+     * @param bucket the bucket index
+     * @param index the card's position in the bucket
+     */
+    private void removeFromBucket(int bucket, int index) {
+        Card[] cards = buckets[bucket];
+        int size = bucketSizes[bucket] - 1;
+        System.arraycopy(cards, index + 1, cards, index, size - index);
+        cards[size] = null;
+        bucketSizes[bucket] = size;
+        if (size == 0) {
+            bucketMask &= ~(1 << bucket);
+        }
+        rankedSize--;
+    }
+    
+    /**
+     * Helper method to find a card in a ranked hand
+     * @param card the card to find
+     * @return the card's position in its value's bucket, or -1 if it is not in the hand
+     */
+    private int indexInBucket(Card card) {
+        int bucket = bucketOf(card.getValue());
+        Card[] cards = buckets[bucket];
+        for (int i = 0; i < bucketSizes[bucket]; i++) {
+            if (cards[i].equals(card)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Helper method to find the highest or lowest card in a non-empty bucket
+     * @param bucket the bucket index
+     * @param highest true for the highest card, false for the lowest
+     * @return the position of the first such card in the bucket
+     */
+    private int extremeInBucket(int bucket, boolean highest) {
+        if (bucket != OVERFLOW_BUCKET || !highest) {
+            return 0; // Every card in the bucket has the same value, or the bucket is sorted
+        }
+        // The first of the highest-valued cards at the end of the sorted overflow bucket
+        Card[] cards = buckets[bucket];
+        int best = bucketSizes[bucket] - 1;
+        while (best > 0 && cards[best - 1].getValue() == cards[best].getValue()) {
+            best--;
+        }
+        return best;
+    }
+    
+    /**
+     * Helper method to list the cards of a ranked hand
+     * @return the cards from lowest to highest bucket
+     */
+    private Card[] rankedCards() {
+        Card[] cards = new Card[rankedSize];
+        int index = 0;
+        for (int bucket = 0; bucket <= OVERFLOW_BUCKET; bucket++) {
+            if (bucketSizes[bucket] > 0) {
+                System.arraycopy(buckets[bucket], 0, cards, index, bucketSizes[bucket]);
+                index += bucketSizes[bucket];
+            }
+        }
+        return cards;
+    }
+    
+    /**
+     * Helper method to list the cards of a bitset hand. Sorting by the stamps
+     * happens here rather than on every removal, which stays a single bit operation.
+     * @return the cards in the order they were added
+     */
+    private Card[] orderedCards() {
+        // Each key is a card's stamp with its bit below, so sorting the keys sorts the cards
+        long[] keys = new long[Long.bitCount(handBits)];
+        int count = 0;
+        for (long bits = handBits; bits != 0L; bits &= bits - 1) {
+            int bit = Long.numberOfTrailingZeros(bits);
+            keys[count++] = addedAt[bit] << 6 | bit;
+        }
+        Arrays.sort(keys);
+        
+        Card[] cards = new Card[count];
+        for (int i = 0; i < count; i++) {
+            cards[i] = Card.byId(ID_OF_BIT[(int) (keys[i] & 63)]);
+        }
+        return cards;
+    }
+    
     /**
      * Returns a string representation of the player
      * @return formatted player information with name, age, and hand
      */
     @Override
     public String toString() {
-        StringBuilder result = new StringBuilder();
-        result.append(name).append(", ").append(age);
+        return appendTo(new StringBuilder()).toString();
+    }
+    
+    /**
+     * Writes the same text as toString() straight to the destination,
+     * without building the string first. Array and ranked hands are not
+     * copied; a bitset hand is put in order once.
+     * @param out the destination, such as a Writer
+     * @throws IOException if out cannot be written to
+     */
+    public void appendTo(Appendable out) throws IOException {
+        out.append(name).append(", ").append(Integer.toString(age));
         
-        if (hand.length > 0) {
-            result.append(", ");
-            for (int i = 0; i < hand.length; i++) {
-                result.append(hand[i].toString());
-                if (i < hand.length - 1) {
-                    result.append(", ");
-                } else {
-                    result.append(".");
+        int remaining = size();
+        if (remaining == 0) {
+            out.append(".");
+            return;
+        }
+        out.append(", ");
+        
+        // Walk the hand in the same order getHand() lists it
+        if (bitsetHand) {
+            for (Card card : orderedCards()) {
+                remaining = appendCard(out, card, remaining);
+            }
+        } else if (rankedHand) {
+            for (int bucket = 0; bucket <= OVERFLOW_BUCKET; bucket++) {
+                for (int i = 0; i < bucketSizes[bucket]; i++) {
+                    remaining = appendCard(out, buckets[bucket][i], remaining);
                 }
             }
         } else {
-            result.append(".");
+            for (int i = 0; i < hand.length; i++) {
+                remaining = appendCard(out, hand[i], remaining);
+            }
         }
-        
-        return result.toString();
+    }
+    
+    /**
+     * Writes the same text as toString() to a StringBuilder
+     * @param out the builder to append to
+     * @return out
+     */
+    public StringBuilder appendTo(StringBuilder out) {
+        try {
+            appendTo((Appendable) out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // A StringBuilder never throws
+        }
+        return out;
+    }
+    
+    /**
+     * Helper method to write one card of the hand and the punctuation after it
+     * @param out the destination
+     * @param card the card to write
+     * @param remaining the number of cards still to write, including this one
+     * @return the number of cards still to write after this one
+     * @throws IOException if out cannot be written to
+     */
+    private static int appendCard(Appendable out, Card card, int remaining) throws IOException {
+        card.appendTo(out);
+        remaining--;
+        out.append(remaining > 0 ? ", " : ".");
+        return remaining;
     }
 }
\ No newline at end of file
@@ -0,0 +1,249 @@
+/**
+ * One two-player High Card table hosted by a TableServer. The table reuses one
+ * deck, discard pile and pair of players from game to game, and writes every
+ * reply straight into its players' connections; it never touches a socket itself.
+ * A table belongs to one event loop and is only ever used from that loop's thread.
+ * @author Parusan
+ * @version 1.0
+ */
+class ServerTable {
+    // The unshuffled standard deck each game is refilled from; never modified
+    private static final Card[] STANDARD = Deck.standardCards(1);
+    
+    private static final byte[] WAITING = TableServer.ascii("WAITING");
+    private static final byte[] SEATED = TableServer.ascii("SEATED");
+    private static final byte[] PLAYING = TableServer.ascii("PLAYING");
+    
+    private final int id;
+    private final CardRandom random;
+    private final Deck deck = new Deck();
+    private final DiscardPile discardPile = new DiscardPile();
+    private final TableServer.Connection[] seats = new TableServer.Connection[2];
+    private final Player[] players = new Player[2];
+    private final boolean[] ready = new boolean[2];
+    private final Card[] played = new Card[2];   // the cards played so far in the current round
+    private boolean playing;
+    private int round;                           // rounds finished in the current game
+    private int points1;
+    private int points2;
+    
+    /**
+     * Constructs an empty table
+     * @param id the table number reported to the players
+     * @param random the event loop's generator, used for the shuffles
+     */
+    ServerTable(int id, CardRandom random) {
+        this.id = id;
+        this.random = random;
+    }
+    
+    /**
+     * Returns whether both seats are taken
+     * @return true if the table is full
+     */
+    boolean isFull() {
+        return seats[0] != null && seats[1] != null;
+    }
+    
+    /**
+     * Returns whether both seats are free
+     * @return true if no one sits at the table
+     */
+    boolean isEmpty() {
+        return seats[0] == null && seats[1] == null;
+    }
+    
+    /**
+     * Seats a player in the first free seat and tells them where they sit.
+     * Once both seats are taken, each player is told the other's name.
+     * @param connection the player's connection
+     * @param player the player
+     * @return the seat index, 0 or 1
+     * @throws IllegalStateException if the table is full
+     */
+    int seat(TableServer.Connection connection, Player player) {
+        int seat = seats[0] == null ? 0 : 1;
+        if (seats[seat] != null) {
+            throw new IllegalStateException("Table is full");
+        }
+        seats[seat] = connection;
+        players[seat] = player;
+        ready[seat] = false;
+        
+        connection.lines.append(TableServer.SEATED).appendNumber(id).appendNumber(seat + 1).endLine();
+        connection.send();
+        
+        if (isFull()) {
+            for (int i = 0; i < 2; i++) {
+                seats[i].lines.append(TableServer.OPPONENT).append(" ").append(players[1 - i].getName()).endLine();
+                seats[i].send();
+            }
+        }
+        return seat;
+    }
+    
+    /**
+     * Marks a player ready, and deals a new game once both players are ready
+     * @param seat the player's seat
+     */
+    void ready(int seat) {
+        if (playing) {
+            error(seat, "Game in progress");
+            return;
+        }
+        ready[seat] = true;
+        if (isFull() && ready[0] && ready[1]) {
+            deal();
+        }
+    }
+    
+    /**
+     * Refills and shuffles the deck, deals both hands, and sends each player their hand
+     */
+    private void deal() {
+        deck.refill(STANDARD);
+        deck.shuffle(random);
+        discardPile.reset();
+        players[0].clearHand();
+        players[1].clearHand();
+        deck.deal(players, HighCardEngine.HAND_SIZE);
+        
+        playing = true;
+        round = 0;
+        points1 = 0;
+        points2 = 0;
+        played[0] = null;
+        played[1] = null;
+        
+        for (int i = 0; i < 2; i++) {
+            TableServer.Connection connection = seats[i];
+            connection.lines.append(TableServer.HAND);
+            for (Card card : players[i].getHand()) {
+                connection.lines.appendNumber(card.getId());
+            }
+            connection.lines.endLine();
+            connection.send();
+        }
+    }
+    
+    /**
+     * Plays a card from a player's hand. The player is told at once that the move
+     * was accepted; once both players have played, both are told the round's result.
+     * @param seat the player's seat
+     * @param cardId the standard id of the card to play
+     */
+    void play(int seat, int cardId) {
+        if (!playing) {
+            error(seat, "No game in progress");
+            return;
+        }
+        if (played[seat] != null) {
+            error(seat, "Already played this round");
+            return;
+        }
+        if (cardId < 0 || cardId >= Card.STANDARD_COUNT) {
+            error(seat, "Unknown card");
+            return;
+        }
+        Card card = Card.byId(cardId);
+        if (!players[seat].discardCard(card, discardPile)) {
+            error(seat, "Card not in hand");
+            return;
+        }
+        
+        played[seat] = card;
+        seats[seat].lines.append(TableServer.PLAYED).appendNumber(cardId).endLine();
+        seats[seat].send();
+        
+        if (played[1 - seat] != null) {
+            finishRound();
+        }
+    }
+    
+    /**
+     * Scores the round both players have played and reports it, ending the game after the last round
+     */
+    private void finishRound() {
+        int value1 = played[0].getValue();
+        int value2 = played[1].getValue();
+        int winner = 0;
+        if (value1 > value2) {
+            points1++;
+            winner = 1;
+        } else if (value2 > value1) {
+            points2++;
+            winner = 2;
+        }
+        round++;
+        
+        int gameWinner = points1 == points2 ? 0 : (points1 > points2 ? 1 : 2);
+        boolean over = round == HighCardEngine.ROUNDS;
+        for (int i = 0; i < 2; i++) {
+            TableServer.Connection connection = seats[i];
+            connection.lines.append(TableServer.ROUND).appendNumber(round)
+                .appendNumber(played[0].getId()).appendNumber(played[1].getId()).appendNumber(winner).endLine();
+            if (over) {
+                connection.lines.append(TableServer.OVER).appendNumber(points1).appendNumber(points2)
+                    .appendNumber(gameWinner).endLine();
+            }
+            connection.send();
+        }
+        
+        played[0] = null;
+        played[1] = null;
+        if (over) {
+            // Both players must send READY again for the next game
+            playing = false;
+            ready[0] = false;
+            ready[1] = false;
+        }
+    }
+    
+    /**
+     * Sends a player the table's current state
+     * @param seat the player's seat
+     */
+    void state(int seat) {
+        TableServer.Connection connection = seats[seat];
+        byte[] phase = playing ? PLAYING : (isFull() ? SEATED : WAITING);
+        connection.lines.append(TableServer.STATE).append(" ").append(phase).appendNumber(seat + 1)
+            .appendNumber(round).appendNumber(points1).appendNumber(points2);
+        if (playing) {
+            for (Card card : players[seat].getHand()) {
+                connection.lines.appendNumber(card.getId());
+            }
+        }
+        connection.lines.endLine();
+        connection.send();
+    }
+    
+    /**
+     * Removes a player from the table. Any game in progress is abandoned, and
+     * the other player is told and unseated so they can join another table.
+     * @param seat the leaving player's seat
+     */
+    void leave(int seat) {
+        seats[seat].table = null;
+        seats[seat] = null;
+        players[seat] = null;
+        playing = false;
+        
+        TableServer.Connection other = seats[1 - seat];
+        if (other != null) {
+            other.lines.append(TableServer.LEFT).endLine();
+            other.send();
+            other.table = null;
+            seats[1 - seat] = null;
+            players[1 - seat] = null;
+        }
+    }
+    
+    /**
+     * Sends a player an error reply
+     * @param seat the player's seat
+     * @param message the reason the command was refused
+     */
+    private void error(int seat, String message) {
+        TableServer.error(seats[seat], message);
+    }
+}
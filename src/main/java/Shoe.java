@@ -0,0 +1,110 @@
+/**
+ * A dealing shoe holding several standard decks, with a cut card and lazy shuffling.
+ * Instead of permuting every card up front, each draw performs one Fisher-Yates step:
+ * it picks a random card from those not yet dealt. The result is the same uniform
+ * shuffle, but the cost is only paid for the cards actually dealt before the cut card.
+ * @author Parusan
+ * @version 1.0
+ */
+public class Shoe {
+    private final Card[] cards;     // cards[0 .. position - 1] have been dealt
+    private final int decks;
+    private final int cutIndex;
+    private final CardRandom random;
+    private int position;
+    
+    /**
+     * Constructs a shoe using the current thread's default generator
+     * @param decks the number of standard decks to combine (for example 6 or 8)
+     * @param penetration the fraction of the shoe dealt before the cut card comes out, from 0 to 1
+     * @throws IllegalArgumentException if decks is not positive or penetration is outside (0, 1]
+     */
+    public Shoe(int decks, double penetration) {
+        this(decks, penetration, CardRandom.current().split());
+    }
+    
+    /**
+     * Constructs a shoe that shuffles with the given generator
+     * @param decks the number of standard decks to combine (for example 6 or 8)
+     * @param penetration the fraction of the shoe dealt before the cut card comes out, from 0 to 1
+     * @param random the generator used for shuffling
+     * @throws IllegalArgumentException if decks is not positive, penetration is outside (0, 1], or random is null
+     */
+    public Shoe(int decks, double penetration, CardRandom random) {
+        if (decks < 1) {
+            throw new IllegalArgumentException("A shoe needs at least one deck");
+        }
+        if (!(penetration > 0 && penetration <= 1)) {
+            throw new IllegalArgumentException("Penetration must be greater than 0 and at most 1");
+        }
+        if (random == null) {
+            throw new IllegalArgumentException("Random cannot be null");
+        }
+        
+        // Lay the decks out one after another in the unshuffled order
+        this.cards = Deck.standardCards(decks);
+        
+        this.decks = decks;
+        this.cutIndex = Math.max(1, (int) Math.round(penetration * cards.length));
+        this.random = random;
+    }
+    
+    /**
+     * Returns the number of decks in the shoe
+     * @return the deck count
+     */
+    public int getDecks() {
+        return decks;
+    }
+    
+    /**
+     * Returns the number of cards not yet dealt
+     * @return the size of the shoe as an integer
+     */
+    public int size() {
+        return cards.length - position;
+    }
+    
+    /**
+     * Returns the number of cards dealt since the last reshuffle
+     * @return the dealt card count
+     */
+    public int dealt() {
+        return position;
+    }
+    
+    /**
+     * Returns whether the cut card has come out, meaning the shoe should be reshuffled
+     * once the current hand is finished
+     * @return true if the dealt cards have reached the cut card
+     */
+    public boolean isCutCardReached() {
+        return position >= cutIndex;
+    }
+    
+    /**
+     * Removes and returns a random card from those not yet dealt
+     * @return the drawn card, or null if the shoe is empty
+     */
+    public Card draw() {
+        if (position == cards.length) {
+            return null;
+        }
+        
+        // One Fisher-Yates step: swap a random undealt card into the next position
+        int randomIndex = position + random.nextInt(cards.length - position);
+        Card card = cards[randomIndex];
+        cards[randomIndex] = cards[position];
+        cards[position] = card;
+        position++;
+        return card;
+    }
+    
+    /**
+     * Collects every card back into the shoe. Nothing is permuted here; since each
+     * draw picks uniformly from the undealt cards, the next round is a fresh shuffle.
+     */
+    public void reshuffle() {
+        position = 0;
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Aggregated results of many simulated High Card games
+ * @author Parusan
+ * @version 1.0
+ */
+public class SimulationResult {
+    private long games;
+    private long player1Wins;
+    private long player2Wins;
+    private long ties;
+    private long[] player1Points;
+    private long[] player2Points;
+    private long elapsedNanos;
+    
+    /**
+     * Constructs an empty result that can hold scores from 0 to maxPoints
+     * @param maxPoints the highest score a player can reach in one game
+     */
+    public SimulationResult(int maxPoints) {
+        this.player1Points = new long[maxPoints + 1];
+        this.player2Points = new long[maxPoints + 1];
+    }
+    
+    /**
+     * Records the final score of one game
+     * @param points1 player 1's points
+     * @param points2 player 2's points
+     */
+    public void record(int points1, int points2) {
+        games++;
+        if (points1 > points2) {
+            player1Wins++;
+        } else if (points2 > points1) {
+            player2Wins++;
+        } else {
+            ties++;
+        }
+        player1Points[points1]++;
+        player2Points[points2]++;
+    }
+    
+    /**
+     * Adds the games recorded in another result to this one
+     * @param other the result to merge in
+     */
+    public void merge(SimulationResult other) {
+        games += other.games;
+        player1Wins += other.player1Wins;
+        player2Wins += other.player2Wins;
+        ties += other.ties;
+        for (int i = 0; i < player1Points.length; i++) {
+            player1Points[i] += other.player1Points[i];
+            player2Points[i] += other.player2Points[i];
+        }
+    }
+    
+    /**
+     * Sets the wall-clock time the simulation took
+     * @param elapsedNanos the elapsed time in nanoseconds
+     */
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+    
+    /**
+     * Returns the number of games played
+     * @return the game count
+     */
+    public long getGames() {
+        return games;
+    }
+    
+    /**
+     * Returns the number of games player 1 won
+     * @return player 1's wins
+     */
+    public long getPlayer1Wins() {
+        return player1Wins;
+    }
+    
+    /**
+     * Returns the number of games player 2 won
+     * @return player 2's wins
+     */
+    public long getPlayer2Wins() {
+        return player2Wins;
+    }
+    
+    /**
+     * Returns the number of tied games
+     * @return the tie count
+     */
+    public long getTies() {
+        return ties;
+    }
+    
+    /**
+     * Returns how many games player 1 finished with each score
+     * @return counts indexed by points
+     */
+    public long[] getPlayer1Points() {
+        return player1Points.clone();
+    }
+    
+    /**
+     * Returns how many games player 2 finished with each score
+     * @return counts indexed by points
+     */
+    public long[] getPlayer2Points() {
+        return player2Points.clone();
+    }
+    
+    /**
+     * Returns the wall-clock time the simulation took
+     * @return the elapsed time in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+    
+    /**
+     * Returns the simulation throughput
+     * @return games played per second of wall-clock time
+     */
+    public double getGamesPerSecond() {
+        if (elapsedNanos == 0) {
+            return 0;
+        }
+        return games * 1e9 / elapsedNanos;
+    }
+    
+    /**
+     * Returns a summary of the results
+     * @return the win, tie and point counts and the throughput
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append("Games: ").append(games);
+        result.append(", Player 1 wins: ").append(player1Wins);
+        result.append(", Player 2 wins: ").append(player2Wins);
+        result.append(", Ties: ").append(ties);
+        result.append("\nPlayer 1 points: ").append(java.util.Arrays.toString(player1Points));
+        result.append("\nPlayer 2 points: ").append(java.util.Arrays.toString(player2Points));
+        result.append("\nGames per second: ").append(String.format("%.0f", getGamesPerSecond()));
+        return result.toString();
+    }
+}
@@ -0,0 +1,47 @@
+import java.util.SplittableRandom;
+
+/**
+ * A CardRandom backed by java.util.SplittableRandom, whose split() is designed
+ * to give statistically independent streams to fork-join subtasks.
+ * Not thread-safe; give each thread its own instance with split().
+ * @author Parusan
+ * @version 1.0
+ */
+public class SplittableCardRandom implements CardRandom {
+    private final SplittableRandom random;
+    
+    /**
+     * Constructs a generator from a seed
+     * @param seed the seed
+     */
+    public SplittableCardRandom(long seed) {
+        this(new SplittableRandom(seed));
+    }
+    
+    /**
+     * Constructs a generator around an existing SplittableRandom
+     * @param random the generator to use
+     * @throws IllegalArgumentException if random is null
+     */
+    public SplittableCardRandom(SplittableRandom random) {
+        if (random == null) {
+            throw new IllegalArgumentException("Random cannot be null");
+        }
+        this.random = random;
+    }
+    
+    @Override
+    public int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+    
+    @Override
+    public long nextLong() {
+        return random.nextLong();
+    }
+    
+    @Override
+    public CardRandom split() {
+        return new SplittableCardRandom(random.split());
+    }
+}
@@ -0,0 +1,120 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded queue between exactly one producer thread and one consumer thread,
+ * the link between two GamePipeline stages. Elements live in a power-of-two ring
+ * indexed by two ever-increasing sequences: the producer owns tail and the
+ * consumer owns head, so neither side ever writes the other's field and no lock
+ * or compare-and-swap is needed. Each side publishes a whole batch with one
+ * ordered store (lazySet), and the producer only rereads head when its cached
+ * copy says the ring is full, so in the steady state the two threads touch each
+ * other's cache lines about once per batch rather than once per element.
+ * @author Parusan
+ * @version 1.0
+ * @param <E> the element type
+ */
+final class SpscRing<E> {
+    /**
+     * A sequence padded out to its own cache line, so the producer's and the
+     * consumer's writes never invalidate each other
+     */
+    @SuppressWarnings("serial")
+    static final class Sequence extends AtomicLong {
+        long cached;                  // the other side's sequence, as last read by the owner
+        long p1, p2, p3, p4, p5, p6;  // padding
+    }
+    
+    private final Object[] slots;
+    private final int mask;
+    private final Sequence head = new Sequence();  // next slot to take; written by the consumer
+    private final Sequence tail = new Sequence();  // next slot to fill; written by the producer
+    private volatile boolean closed;
+    
+    /**
+     * Constructs an empty ring
+     * @param capacity the minimum number of elements the ring holds; rounded up to a power of two
+     * @throws IllegalArgumentException if capacity is less than 1 or more than 2^30
+     */
+    SpscRing(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Ring capacity must be between 1 and 2^30");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        slots = new Object[size];
+        mask = size - 1;
+    }
+    
+    /**
+     * Returns the number of elements the ring holds when full
+     * @return the capacity
+     */
+    int capacity() {
+        return slots.length;
+    }
+    
+    /**
+     * Adds as many elements as fit, publishing them all at once. Producer only.
+     * @param elements the elements to add
+     * @param from the index of the first element to add
+     * @param count the number of elements to add
+     * @return the number added, from 0 if the ring is full to count
+     */
+    int offer(E[] elements, int from, int count) {
+        long t = tail.get();
+        long free = slots.length - (t - tail.cached);
+        if (free < count) {
+            tail.cached = head.get(); // Only look at the consumer's line when the cached view is full
+            free = slots.length - (t - tail.cached);
+        }
+        int n = (int) Math.min(free, count);
+        for (int i = 0; i < n; i++) {
+            slots[(int) (t + i) & mask] = elements[from + i];
+        }
+        if (n > 0) {
+            tail.lazySet(t + n);
+        }
+        return n;
+    }
+    
+    /**
+     * Returns the number of elements ready to take. Consumer only.
+     * @return the number of published elements not yet taken
+     */
+    int available() {
+        return (int) (tail.get() - head.get());
+    }
+    
+    /**
+     * Takes elements from the front of the ring, freeing their slots all at once. Consumer only.
+     * @param into the array to take the elements into, from index 0
+     * @param count the number to take, at most the last value of available()
+     */
+    @SuppressWarnings("unchecked")
+    void take(E[] into, int count) {
+        long h = head.get();
+        for (int i = 0; i < count; i++) {
+            int slot = (int) (h + i) & mask;
+            into[i] = (E) slots[slot];
+            slots[slot] = null;
+        }
+        head.lazySet(h + count);
+    }
+    
+    /**
+     * Marks the end of the stream; the producer adds nothing after this. Producer only.
+     */
+    void close() {
+        closed = true;
+    }
+    
+    /**
+     * Checks whether the producer has closed the ring and every element has been taken. Consumer only.
+     * @return true if no element will ever be available again
+     */
+    boolean isDrained() {
+        return closed && tail.get() == head.get(); // Reading closed first makes every earlier offer visible
+    }
+}
@@ -0,0 +1,334 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load generator for a TableServer. It opens many connections from a few selector
+ * threads, and behind each one a bot joins a table, plays every game card by card
+ * as fast as the server answers, and readies up for the next game.
+ * Move latency is the time from sending PLAY to receiving PLAYED, recorded in an
+ * OperationMetrics histogram once every connection is open.
+ * @author Parusan
+ * @version 1.0
+ */
+public class TableLoadGenerator {
+    // New connections each client thread starts per pass, so connecting does not starve playing
+    private static final int CONNECTS_PER_PASS = 256;
+    
+    private final InetSocketAddress address;
+    private final int connections;
+    private final int threads;
+    private final OperationMetrics moves = new OperationMetrics("TableServer.move");
+    private final AtomicInteger connected = new AtomicInteger();
+    private final LongAdder games = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private volatile boolean running;
+    
+    /**
+     * Constructs a load generator
+     * @param address the server's address
+     * @param connections the number of connections, two per table
+     * @param threads the number of client selector threads
+     * @throws IllegalArgumentException if address is null, or connections or threads is less than 1
+     */
+    public TableLoadGenerator(InetSocketAddress address, int connections, int threads) {
+        if (address == null) {
+            throw new IllegalArgumentException("Address cannot be null");
+        }
+        if (connections < 1 || threads < 1) {
+            throw new IllegalArgumentException("Need at least one connection and one thread");
+        }
+        this.address = address;
+        this.connections = connections;
+        this.threads = Math.min(threads, connections);
+    }
+    
+    /**
+     * Opens every connection, then plays for the given time and stops
+     * @param durationMillis how long to measure for once every connection is open
+     * @return the move latencies measured
+     * @throws IOException if a client selector cannot be opened
+     * @throws InterruptedException if interrupted while running
+     * @throws IllegalStateException if the connections are not all open within a minute
+     */
+    public OperationMetrics run(long durationMillis) throws IOException, InterruptedException {
+        running = true;
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            // Spread the connections as evenly as possible over the threads
+            int count = connections / threads + (i < connections % threads ? 1 : 0);
+            workers[i] = new Thread(new ClientLoop(count, i), "table-client-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        
+        long deadline = System.nanoTime() + 60_000_000_000L;
+        while (connected.get() < connections) {
+            if (System.nanoTime() > deadline) {
+                running = false;
+                throw new IllegalStateException("Only " + connected.get() + " of " + connections + " connections opened");
+            }
+            Thread.sleep(10);
+        }
+        
+        // Measure the steady state only, not the ramp-up
+        moves.reset();
+        games.reset();
+        errors.reset();
+        Thread.sleep(durationMillis);
+        running = false;
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return moves;
+    }
+    
+    /**
+     * Returns the number of games finished during the measured period
+     * @return the game count
+     */
+    public long getGames() {
+        return games.sum();
+    }
+    
+    /**
+     * Returns the number of ERR replies received during the measured period
+     * @return the error count
+     */
+    public long getErrors() {
+        return errors.sum();
+    }
+    
+    /**
+     * One client thread driving its share of the connections
+     */
+    private final class ClientLoop implements Runnable {
+        private final int count;
+        private final int index;
+        private final Selector selector;
+        private int opened;
+        
+        /**
+         * Opens the thread's selector
+         * @param count the number of connections this thread opens
+         * @param index the thread number, used in the bots' names
+         * @throws IOException if the selector cannot be opened
+         */
+        ClientLoop(int count, int index) throws IOException {
+            this.count = count;
+            this.index = index;
+            this.selector = Selector.open();
+        }
+        
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    openMore();
+                    selector.select(10);
+                    
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Bot bot = (Bot) key.attachment();
+                        try {
+                            if (key.isConnectable()) {
+                                bot.lines.channel().finishConnect();
+                                key.interestOps(SelectionKey.OP_READ);
+                                connected.incrementAndGet();
+                                bot.start();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                bot.flush();
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                bot.read();
+                            }
+                        } catch (IOException e) {
+                            key.cancel();
+                            bot.lines.close();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Client loop failed", e);
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    ((Bot) key.attachment()).lines.close();
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // Shutting down anyway
+                }
+            }
+        }
+        
+        /**
+         * Starts connecting the next batch of this thread's connections
+         * @throws IOException if a socket cannot be opened
+         */
+        private void openMore() throws IOException {
+            int end = Math.min(count, opened + CONNECTS_PER_PASS);
+            for (; opened < end; opened++) {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Bot bot = new Bot(new LineChannel(channel), "bot-" + index + "-" + opened);
+                if (channel.connect(address)) {
+                    bot.key = channel.register(selector, SelectionKey.OP_READ, bot);
+                    connected.incrementAndGet();
+                    bot.start();
+                } else {
+                    bot.key = channel.register(selector, SelectionKey.OP_CONNECT, bot);
+                }
+            }
+        }
+    }
+    
+    /**
+     * A player that always plays the cards of its hand in the order they were dealt
+     */
+    private final class Bot {
+        final LineChannel lines;
+        private final String name;
+        private final int[] hand = new int[HighCardEngine.HAND_SIZE];
+        private int handSize;
+        private long sentAt;
+        private SelectionKey key;
+        
+        /**
+         * Constructs a bot
+         * @param lines the bot's connection
+         * @param name the name it joins with
+         */
+        Bot(LineChannel lines, String name) {
+            this.lines = lines;
+            this.name = name;
+        }
+        
+        /**
+         * Joins a table and readies up for the first game
+         * @throws IOException if the write fails
+         */
+        void start() throws IOException {
+            join();
+            flush();
+        }
+        
+        /**
+         * Reads from the server and answers every complete line
+         * @throws IOException if the read fails or the server closed the connection
+         */
+        void read() throws IOException {
+            if (lines.read() < 0) {
+                throw new IOException("Server closed the connection");
+            }
+            while (lines.nextLine()) {
+                handle();
+            }
+            if (lines.hasOutput()) {
+                flush();
+            }
+        }
+        
+        /**
+         * Answers one line from the server
+         */
+        private void handle() {
+            if (lines.wordIs(0, TableServer.PLAYED)) {
+                moves.record(sentAt, 0);
+            } else if (lines.wordIs(0, TableServer.HAND)) {
+                handSize = Math.min(lines.wordCount() - 1, hand.length);
+                for (int i = 0; i < handSize; i++) {
+                    hand[i] = lines.wordAsInt(i + 1);
+                }
+                play();
+            } else if (lines.wordIs(0, TableServer.ROUND)) {
+                if (handSize > 0) {
+                    play();
+                }
+            } else if (lines.wordIs(0, TableServer.OVER)) {
+                games.increment();
+                lines.append(TableServer.READY).endLine();
+            } else if (lines.wordIs(0, TableServer.LEFT)) {
+                handSize = 0;
+                join();
+            } else if (lines.wordIs(0, TableServer.ERR)) {
+                errors.increment();
+            }
+        }
+        
+        /**
+         * Queues a JOIN and a READY, for the first table or after the opponent left
+         */
+        private void join() {
+            lines.append(TableServer.JOIN).append(" ").append(name).endLine();
+            lines.append(TableServer.READY).endLine();
+        }
+        
+        /**
+         * Queues a PLAY for the next card in the hand and notes the time it was sent
+         */
+        private void play() {
+            handSize--;
+            lines.append(TableServer.PLAY).appendNumber(hand[handSize]).endLine();
+            sentAt = System.nanoTime();
+        }
+        
+        /**
+         * Writes pending output, watching for writability if the socket is full
+         * @throws IOException if the write fails
+         */
+        void flush() throws IOException {
+            boolean done = lines.flush();
+            key.interestOps(done ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+    
+    /**
+     * Runs the load generator and prints the move latency percentiles.
+     * With no host and port, it starts a TableServer on a free loopback port first.
+     * @param args [host port] [connections (default 10000)] [seconds (default 10)] [client threads (default 2)]
+     * @throws Exception if the server or the connections fail
+     */
+    public static void main(String[] args) throws Exception {
+        TableServer server = null;
+        InetSocketAddress address;
+        int next = 0;
+        if (args.length >= 2 && !args[0].matches("\\d+")) {
+            address = new InetSocketAddress(args[0], Integer.parseInt(args[1]));
+            next = 2;
+        } else {
+            server = new TableServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                                     Math.min(4, Runtime.getRuntime().availableProcessors()));
+            server.start();
+            address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+        }
+        int connections = args.length > next ? Integer.parseInt(args[next]) : 10000;
+        long seconds = args.length > next + 1 ? Long.parseLong(args[next + 1]) : 10;
+        int threads = args.length > next + 2 ? Integer.parseInt(args[next + 2]) : 2;
+        
+        TableLoadGenerator generator = new TableLoadGenerator(address, connections, threads);
+        OperationMetrics moves = generator.run(seconds * 1000);
+        
+        System.out.println("Connections: " + connections + " to " + address);
+        System.out.println(String.format("Moves: %d (%.0f per second), games: %d, errors: %d",
+                                         moves.getCount(), moves.getCount() / (double) seconds,
+                                         generator.getGames(), generator.getErrors()));
+        System.out.println(String.format("Move latency: p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                                         moves.getP50Nanos() / 1e3, moves.getP99Nanos() / 1e3,
+                                         moves.getP999Nanos() / 1e3, moves.getMaxNanos() / 1e3));
+        if (server != null) {
+            server.close();
+        }
+    }
+}
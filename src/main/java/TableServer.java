@@ -0,0 +1,588 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hosts High Card tables for remote players over TCP. A few event-loop threads
+ * each multiplex thousands of connections with a NIO selector; a table and both
+ * of its players always live on the same loop, so game state needs no locking.
+ * Connections are spread over the loops as they are accepted, but matchmaking is
+ * server-wide: one table waits for a second player at a time, and a player who
+ * joins from another loop has their connection moved to the waiting table's loop.
+ * The protocol is one ASCII line per message, words separated by spaces, cards
+ * sent as their standard ids (0 to 51):
+ * <pre>
+ * client                 server
+ * JOIN name              SEATED table seat          (seat is 1 or 2)
+ *                        OPPONENT name              (to both, once the table is full)
+ * READY                  HAND id id id id id        (to both, once both are ready)
+ * PLAY id                PLAYED id                  (to the mover, at once)
+ *                        ROUND n id1 id2 winner     (to both, once both have played)
+ *                        OVER points1 points2 winner (after the last round; send READY to play again)
+ * STATE                  STATE phase seat round points1 points2 [hand ids]
+ * QUIT                   (connection closed)
+ *                        LEFT                       (the opponent left; JOIN again)
+ *                        ERR message                (the command was refused)
+ * </pre>
+ * A winner of 0 means a tie.
+ * @author Parusan
+ * @version 1.0
+ */
+public class TableServer implements AutoCloseable {
+    /** The port used when none is given */
+    public static final int DEFAULT_PORT = 7777;
+    
+    // Client commands
+    static final byte[] JOIN = ascii("JOIN");
+    static final byte[] READY = ascii("READY");
+    static final byte[] PLAY = ascii("PLAY");
+    static final byte[] STATE = ascii("STATE");
+    static final byte[] QUIT = ascii("QUIT");
+    
+    // Server replies
+    static final byte[] SEATED = ascii("SEATED");
+    static final byte[] OPPONENT = ascii("OPPONENT");
+    static final byte[] HAND = ascii("HAND");
+    static final byte[] PLAYED = ascii("PLAYED");
+    static final byte[] ROUND = ascii("ROUND");
+    static final byte[] OVER = ascii("OVER");
+    static final byte[] LEFT = ascii("LEFT");
+    static final byte[] ERR = ascii("ERR");
+    
+    private static final int BACKLOG = 1024;
+    
+    private final InetSocketAddress address;
+    private final EventLoop[] loops;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger tableIds = new AtomicInteger();
+    private final Object matchLock = new Object();
+    private ServerTable waiting;      // the table with one player, where the next player to join sits
+    private EventLoop waitingLoop;    // the loop that owns the waiting table
+    private ServerSocketChannel serverChannel;
+    private Thread acceptor;
+    private volatile boolean running;
+    
+    /**
+     * Constructs a server on all interfaces with one event loop per core, up to four
+     * @param port the port to listen on, or 0 for any free port
+     */
+    public TableServer(int port) {
+        this(new InetSocketAddress(port), Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+    
+    /**
+     * Constructs a server
+     * @param address the address to listen on; port 0 picks any free port
+     * @param eventLoops the number of event-loop threads
+     * @throws IllegalArgumentException if address is null or eventLoops is less than 1
+     */
+    public TableServer(InetSocketAddress address, int eventLoops) {
+        if (address == null) {
+            throw new IllegalArgumentException("Address cannot be null");
+        }
+        if (eventLoops < 1) {
+            throw new IllegalArgumentException("A server needs at least one event loop");
+        }
+        this.address = address;
+        this.loops = new EventLoop[eventLoops];
+    }
+    
+    /**
+     * Encodes a protocol word
+     * @param word the word
+     * @return its ASCII bytes
+     */
+    static byte[] ascii(String word) {
+        return word.getBytes(StandardCharsets.US_ASCII);
+    }
+    
+    /**
+     * Binds the port and starts the acceptor and event-loop threads
+     * @throws IOException if the port cannot be bound
+     * @throws IllegalStateException if the server was already started
+     */
+    public synchronized void start() throws IOException {
+        if (serverChannel != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(address, BACKLOG);
+        running = true;
+        
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(CardRandom.seeded(CardRandom.current().nextLong()));
+            Thread thread = new Thread(loops[i], "table-loop-" + i);
+            thread.setDaemon(true);
+            loops[i].thread = thread;
+            thread.start();
+        }
+        
+        acceptor = new Thread(this::acceptLoop, "table-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+    
+    /**
+     * Accepts connections and hands them to the event loops in turn
+     */
+    private void acceptLoop() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                connections.incrementAndGet();
+                loops[next].register(channel);
+                next = next + 1 == loops.length ? 0 : next + 1;
+            } catch (IOException e) {
+                if (!running) {
+                    return; // The server channel was closed by close()
+                }
+                // A connection that failed during accept; keep accepting the others
+            }
+        }
+    }
+    
+    /**
+     * Returns the port the server is listening on
+     * @return the port
+     * @throws IllegalStateException if the server has not been started
+     */
+    public int getPort() {
+        if (serverChannel == null) {
+            throw new IllegalStateException("Server not started");
+        }
+        return serverChannel.socket().getLocalPort();
+    }
+    
+    /**
+     * Returns the number of open client connections
+     * @return the connection count
+     */
+    public int getConnectionCount() {
+        return connections.get();
+    }
+    
+    /**
+     * Returns the number of tables opened since the server started
+     * @return the table count
+     */
+    public int getTablesOpened() {
+        return tableIds.get();
+    }
+    
+    /**
+     * Stops accepting, closes every connection, and waits for the threads to finish
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+        for (EventLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+        try {
+            acceptor.join();
+            for (EventLoop loop : loops) {
+                loop.thread.join();
+            }
+            // Only now can nothing more be handed to a loop
+            for (EventLoop loop : loops) {
+                loop.closePending();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Sends an error reply
+     * @param connection the connection to reply to
+     * @param message the reason the command was refused
+     */
+    static void error(Connection connection, String message) {
+        connection.lines.append(ERR).append(" ").append(message).endLine();
+        connection.send();
+    }
+    
+    /**
+     * One client connection and the seat it holds, if any
+     */
+    static final class Connection {
+        final LineChannel lines;
+        private EventLoop loop;      // changes only while the connection moves between loops
+        private SelectionKey key;
+        ServerTable table;  // null until the player joins a table
+        int seat;
+        private ServerTable claimed; // while moving, the waiting table it will sit at
+        private Player joining;      // while moving, the player to seat there
+        
+        /**
+         * Wraps an accepted channel
+         * @param channel the channel
+         * @param loop the event loop that owns it
+         */
+        Connection(SocketChannel channel, EventLoop loop) {
+            this.lines = new LineChannel(channel);
+            this.loop = loop;
+        }
+        
+        /**
+         * Queues the connection's pending output to be written at the end of the loop's current pass
+         */
+        void send() {
+            if (lines.markQueued()) {
+                loop.flushes.add(this);
+            }
+        }
+    }
+    
+    /**
+     * An event-loop thread: one selector, its connections, and the tables they sit at
+     */
+    private final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final ConcurrentLinkedQueue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+        private final ConcurrentLinkedQueue<Connection> arrived = new ConcurrentLinkedQueue<>();
+        private final ArrayDeque<Connection> flushes = new ArrayDeque<>();
+        private final CardRandom random;
+        private Thread thread;
+        
+        /**
+         * Opens the loop's selector
+         * @param random the generator for this loop's shuffles
+         * @throws IOException if the selector cannot be opened
+         */
+        EventLoop(CardRandom random) throws IOException {
+            this.selector = Selector.open();
+            this.random = random;
+        }
+        
+        /**
+         * Hands an accepted channel to this loop; called from the acceptor thread
+         * @param channel the channel
+         */
+        void register(SocketChannel channel) {
+            accepted.add(channel);
+            selector.wakeup();
+        }
+        
+        /**
+         * Hands a joining connection from another loop to this one; called from that loop's thread
+         * @param connection the connection, with the table it claimed and the player to seat
+         */
+        void transfer(Connection connection) {
+            arrived.add(connection);
+            selector.wakeup();
+        }
+        
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    registerAccepted();
+                    registerArrived();
+                    
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isWritable()) {
+                                flush(connection);
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                read(connection);
+                            }
+                        } catch (IOException e) {
+                            drop(connection);
+                        }
+                    }
+                    
+                    // Write each connection's replies from this pass in one go
+                    Connection connection;
+                    while ((connection = flushes.poll()) != null) {
+                        connection.lines.clearQueued();
+                        if (connection.key.isValid()) {
+                            try {
+                                flush(connection);
+                            } catch (IOException e) {
+                                drop(connection);
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Event loop failed", e);
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    // A cancelled key is a connection already dropped or moved to another loop
+                    if (key.isValid()) {
+                        ((Connection) key.attachment()).lines.close();
+                        connections.decrementAndGet();
+                    }
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // Shutting down anyway
+                }
+            }
+        }
+        
+        /**
+         * Closes the channels and connections handed to this loop that it never
+         * registered; called once every thread of the server has finished
+         */
+        void closePending() {
+            SocketChannel channel;
+            while ((channel = accepted.poll()) != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // Closing anyway
+                }
+                connections.decrementAndGet();
+            }
+            Connection connection;
+            while ((connection = arrived.poll()) != null) {
+                connection.lines.close();
+                connections.decrementAndGet();
+            }
+        }
+        
+        /**
+         * Registers the channels the acceptor has handed over since the last pass
+         * @throws IOException if a channel cannot be registered
+         */
+        private void registerAccepted() throws IOException {
+            SocketChannel channel;
+            while ((channel = accepted.poll()) != null) {
+                Connection connection = new Connection(channel, this);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            }
+        }
+        
+        /**
+         * Registers the connections other loops have moved here, seats each at the table
+         * it claimed, and handles any commands that arrived after its JOIN
+         * @throws IOException if a channel cannot be registered
+         */
+        private void registerArrived() throws IOException {
+            Connection connection;
+            while ((connection = arrived.poll()) != null) {
+                connection.loop = this;
+                connection.key = connection.lines.channel().register(selector, SelectionKey.OP_READ, connection);
+                ServerTable table = connection.claimed;
+                Player player = connection.joining;
+                connection.claimed = null;
+                connection.joining = null;
+                if (table.isEmpty()) {
+                    match(connection, player); // The waiting player left while this one was moving
+                } else {
+                    connection.table = table;
+                    connection.seat = table.seat(connection, player);
+                }
+                try {
+                    handleLines(connection);
+                } catch (IOException e) {
+                    drop(connection);
+                }
+            }
+        }
+        
+        /**
+         * Reads from a connection and handles every complete command
+         * @param connection the connection
+         * @throws IOException if the read fails or a line is too long
+         */
+        private void read(Connection connection) throws IOException {
+            if (connection.lines.read() < 0) {
+                drop(connection);
+                return;
+            }
+            handleLines(connection);
+        }
+        
+        /**
+         * Handles every complete command in a connection's read buffer, stopping
+         * if the connection is dropped or moves to another loop
+         * @param connection the connection
+         * @throws IOException if a line is too long
+         */
+        private void handleLines(Connection connection) throws IOException {
+            SelectionKey key = connection.key; // Once moved, the connection's key belongs to the other loop
+            while (key.isValid() && connection.lines.nextLine()) {
+                handle(connection);
+            }
+        }
+        
+        /**
+         * Handles one command line
+         * @param connection the connection it came from
+         */
+        private void handle(Connection connection) {
+            LineChannel lines = connection.lines;
+            if (lines.wordCount() == 0) {
+                return; // Blank lines are ignored
+            }
+            
+            if (lines.wordIs(0, PLAY)) {
+                int cardId = lines.wordAsInt(1);
+                if (connection.table == null) {
+                    error(connection, "Not seated");
+                } else if (cardId < 0) {
+                    error(connection, "PLAY needs a card id");
+                } else {
+                    connection.table.play(connection.seat, cardId);
+                }
+            } else if (lines.wordIs(0, READY)) {
+                if (connection.table == null) {
+                    error(connection, "Not seated");
+                } else {
+                    connection.table.ready(connection.seat);
+                }
+            } else if (lines.wordIs(0, JOIN)) {
+                join(connection, lines.wordAsString(1));
+            } else if (lines.wordIs(0, STATE)) {
+                if (connection.table == null) {
+                    error(connection, "Not seated");
+                } else {
+                    connection.table.state(connection.seat);
+                }
+            } else if (lines.wordIs(0, QUIT)) {
+                drop(connection);
+            } else {
+                error(connection, "Unknown command");
+            }
+        }
+        
+        /**
+         * Seats a connection at the server's waiting table, opening a new table if none is waiting
+         * @param connection the connection
+         * @param name the player's name, or null if none was given
+         */
+        private void join(Connection connection, String name) {
+            if (connection.table != null) {
+                error(connection, "Already seated");
+                return;
+            }
+            if (name == null) {
+                error(connection, "JOIN needs a name");
+                return;
+            }
+            
+            Player player = new Player(name, 0);
+            player.useBitsetHand();
+            match(connection, player);
+        }
+        
+        /**
+         * Claims the waiting table for a player, or opens a new waiting table on this loop.
+         * A table on another loop is claimed under the lock, so no one else can take the
+         * seat, and the connection then moves to that loop to sit down.
+         * @param connection the connection
+         * @param player the player to seat
+         */
+        private void match(Connection connection, Player player) {
+            ServerTable table;
+            EventLoop owner;
+            synchronized (matchLock) {
+                if (waiting == null) {
+                    waiting = new ServerTable(tableIds.incrementAndGet(), random);
+                    waitingLoop = this;
+                    table = waiting;
+                    owner = this;
+                } else {
+                    table = waiting;
+                    owner = waitingLoop;
+                    waiting = null;
+                    waitingLoop = null;
+                }
+            }
+            
+            if (owner == this) {
+                connection.table = table;
+                connection.seat = table.seat(connection, player);
+                return;
+            }
+            
+            // Leave this loop for good: nothing here may touch the connection once it is handed over
+            connection.key.cancel();
+            flushes.remove(connection);
+            connection.lines.clearQueued();
+            connection.claimed = table;
+            connection.joining = player;
+            owner.transfer(connection);
+        }
+        
+        /**
+         * Writes a connection's pending output, watching for writability if the socket is full
+         * @param connection the connection
+         * @throws IOException if the write fails
+         */
+        private void flush(Connection connection) throws IOException {
+            boolean done = connection.lines.flush();
+            connection.key.interestOps(done ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+        
+        /**
+         * Closes a connection and gives up its seat
+         * @param connection the connection
+         */
+        private void drop(Connection connection) {
+            if (!connection.key.isValid()) {
+                return; // Already dropped
+            }
+            ServerTable table = connection.table;
+            if (table != null) {
+                table.leave(connection.seat);
+                synchronized (matchLock) {
+                    if (table == waiting) {
+                        waiting = null;
+                        waitingLoop = null;
+                    }
+                }
+            }
+            connection.key.cancel();
+            connection.lines.close();
+            connections.decrementAndGet();
+        }
+    }
+    
+    /**
+     * Runs a table server until the process is stopped
+     * @param args optionally the port (default 7777) and the number of event loops
+     * @throws IOException if the port cannot be bound
+     * @throws InterruptedException if interrupted while serving
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int eventLoops = args.length > 1 ? Integer.parseInt(args[1])
+                                         : Math.min(4, Runtime.getRuntime().availableProcessors());
+        TableServer server = new TableServer(new InetSocketAddress(port), eventLoops);
+        server.start();
+        System.out.println("Serving High Card tables on port " + server.getPort() + " with " + eventLoops + " event loops");
+        server.acceptor.join();
+    }
+}
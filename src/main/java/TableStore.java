@@ -0,0 +1,504 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Packs the decks, hands and discard piles of many two-player tables into one
+ * off-heap buffer, so millions of live tables cost a few bytes each and no
+ * objects at all for the garbage collector to trace.
+ * Cards are stored as their one-byte standard ids. The buffer is laid out as
+ * columns: every table's deck, then every table's first hand, second hand and
+ * discard pile, then one column each for the deck heads and the five lengths.
+ * A table's region in a column starts at table * (region size), so no offsets need storing.
+ * <p>
+ * The batch kernels shuffle, deal and play ranges of tables in one pass. They
+ * never move the shared buffer's position, so different threads may work on
+ * disjoint ranges of tables at once. Deck, Player and DiscardPile views are built on demand from a
+ * table's bytes, and save() writes changed objects back.
+ * Only the 52 standard cards can be stored.
+ * @author Parusan
+ * @version 1.0
+ */
+public class TableStore {
+    private static final int DECK_BYTES = Card.STANDARD_COUNT;
+    
+    // Card value by standard id, so the kernels never touch Card objects
+    private static final byte[] VALUE_OF_ID = new byte[Card.STANDARD_COUNT];
+    
+    // One table's unshuffled deck, repeated so reset() can write many tables per bulk put
+    private static final byte[] STANDARD_BLOCK = new byte[DECK_BYTES * 64];
+    
+    static {
+        Card[] standard = Deck.standardCards(1);
+        for (int i = 0; i < Card.STANDARD_COUNT; i++) {
+            VALUE_OF_ID[i] = (byte) Card.byId(i).getValue();
+        }
+        for (int i = 0; i < STANDARD_BLOCK.length; i++) {
+            STANDARD_BLOCK[i] = (byte) standard[i % DECK_BYTES].getId();
+        }
+    }
+    
+    private final int tables;
+    private final int handCapacity;
+    private final ByteBuffer data;
+    
+    // Start of each column in the buffer
+    private final int hand1Base;
+    private final int hand2Base;
+    private final int discardBase;
+    private final int deckHeadBase;   // index of each deck's top card within its region
+    private final int deckCountBase;
+    private final int hand1CountBase;
+    private final int hand2CountBase;
+    private final int discardCountBase;
+    
+    /**
+     * Constructs a store of empty tables whose hands hold up to HighCardEngine.HAND_SIZE cards
+     * @param tables the number of tables
+     * @throws IllegalArgumentException if tables is not positive or the store would not fit in one buffer
+     */
+    public TableStore(int tables) {
+        this(tables, HighCardEngine.HAND_SIZE);
+    }
+    
+    /**
+     * Constructs a store of empty tables: empty decks, hands and discard piles.
+     * Call reset() to give the tables their standard decks.
+     * @param tables the number of tables
+     * @param handCapacity the most cards a hand can hold, up to 52
+     * @throws IllegalArgumentException if tables or handCapacity is not positive,
+     *         handCapacity is over 52, or the store would not fit in one buffer
+     */
+    public TableStore(int tables, int handCapacity) {
+        if (tables < 1) {
+            throw new IllegalArgumentException("A store needs at least one table");
+        }
+        if (handCapacity < 1 || handCapacity > Card.STANDARD_COUNT) {
+            throw new IllegalArgumentException("Hand capacity must be between 1 and " + Card.STANDARD_COUNT);
+        }
+        long bytesPerTable = 2L * DECK_BYTES + 2L * handCapacity + 5;
+        if (bytesPerTable * tables > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many tables for one buffer: " + tables);
+        }
+        
+        this.tables = tables;
+        this.handCapacity = handCapacity;
+        this.hand1Base = tables * DECK_BYTES;
+        this.hand2Base = hand1Base + tables * handCapacity;
+        this.discardBase = hand2Base + tables * handCapacity;
+        this.deckHeadBase = discardBase + tables * DECK_BYTES;
+        this.deckCountBase = deckHeadBase + tables;
+        this.hand1CountBase = deckCountBase + tables;
+        this.hand2CountBase = hand1CountBase + tables;
+        this.discardCountBase = hand2CountBase + tables;
+        this.data = ByteBuffer.allocateDirect(discardCountBase + tables); // zeroed, so every table starts empty
+    }
+    
+    /**
+     * Returns the number of tables
+     * @return the table count
+     */
+    public int getTableCount() {
+        return tables;
+    }
+    
+    /**
+     * Returns the most cards a hand can hold
+     * @return the hand capacity
+     */
+    public int getHandCapacity() {
+        return handCapacity;
+    }
+    
+    /**
+     * Returns the number of off-heap bytes the store uses
+     * @return the buffer size
+     */
+    public long getMemoryBytes() {
+        return data.capacity();
+    }
+    
+    /**
+     * Returns the number of cards left in a table's deck
+     * @param table the table index
+     * @return the deck size
+     * @throws IllegalArgumentException if the table index is out of range
+     */
+    public int deckSize(int table) {
+        checkTable(table);
+        return data.get(deckCountBase + table);
+    }
+    
+    /**
+     * Returns the number of cards in a player's hand
+     * @param table the table index
+     * @param seat 1 or 2
+     * @return the hand size
+     * @throws IllegalArgumentException if the table index or seat is out of range
+     */
+    public int handSize(int table, int seat) {
+        checkTable(table);
+        return data.get(handCountIndex(table, seat));
+    }
+    
+    /**
+     * Returns the number of cards in a table's discard pile
+     * @param table the table index
+     * @return the discard pile size
+     * @throws IllegalArgumentException if the table index is out of range
+     */
+    public int discardSize(int table) {
+        checkTable(table);
+        return data.get(discardCountBase + table);
+    }
+    
+    /**
+     * Gives each table in a range a full, unshuffled standard deck and empties its hands and discard pile
+     * @param from the first table, inclusive
+     * @param to the last table, exclusive
+     * @throws IllegalArgumentException if the range is out of bounds
+     */
+    public void reset(int from, int to) {
+        checkRange(from, to);
+        
+        // The deck column is contiguous, so whole blocks of tables are written at once
+        ByteBuffer decks = data.duplicate();
+        decks.position(from * DECK_BYTES);
+        int remaining = (to - from) * DECK_BYTES;
+        while (remaining > 0) {
+            int chunk = Math.min(remaining, STANDARD_BLOCK.length);
+            decks.put(STANDARD_BLOCK, 0, chunk);
+            remaining -= chunk;
+        }
+        
+        for (int table = from; table < to; table++) {
+            data.put(deckHeadBase + table, (byte) 0);
+            data.put(deckCountBase + table, (byte) DECK_BYTES);
+            data.put(hand1CountBase + table, (byte) 0);
+            data.put(hand2CountBase + table, (byte) 0);
+            data.put(discardCountBase + table, (byte) 0);
+        }
+    }
+    
+    /**
+     * Shuffles the deck of each table in a range with a Fisher-Yates shuffle.
+     * A table shuffled with a generator in a given state ends up in the same
+     * order as a Deck with the same cards shuffled by a generator in that state.
+     * @param from the first table, inclusive
+     * @param to the last table, exclusive
+     * @param random the source of randomness, used for the tables in order
+     * @throws IllegalArgumentException if the range is out of bounds or random is null
+     */
+    public void shuffle(int from, int to, CardRandom random) {
+        checkRange(from, to);
+        if (random == null) {
+            throw new IllegalArgumentException("Random cannot be null");
+        }
+        
+        // Each deck is copied into a scratch array, shuffled there, and copied back in bulk
+        ByteBuffer decks = data.duplicate();
+        byte[] deck = new byte[DECK_BYTES];
+        for (int table = from; table < to; table++) {
+            int start = table * DECK_BYTES + data.get(deckHeadBase + table);
+            int count = data.get(deckCountBase + table);
+            decks.position(start);
+            decks.get(deck, 0, count);
+            for (int i = count - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                byte temp = deck[i];
+                deck[i] = deck[j];
+                deck[j] = temp;
+            }
+            decks.position(start);
+            decks.put(deck, 0, count);
+        }
+    }
+    
+    /**
+     * Deals cards from the top of each table's deck, one at a time, alternating
+     * between the two players, like Deck.deal. A deck that runs out deals what it has.
+     * @param from the first table, inclusive
+     * @param to the last table, exclusive
+     * @param cardsEach the number of cards for each player
+     * @throws IllegalArgumentException if the range is out of bounds or cardsEach is negative
+     * @throws IllegalStateException if a hand would go over its capacity; no table is changed
+     */
+    public void deal(int from, int to, int cardsEach) {
+        checkRange(from, to);
+        if (cardsEach < 0) {
+            throw new IllegalArgumentException("Cannot deal a negative number of cards");
+        }
+        for (int table = from; table < to; table++) {
+            if (data.get(hand1CountBase + table) + cardsEach > handCapacity
+                || data.get(hand2CountBase + table) + cardsEach > handCapacity) {
+                throw new IllegalStateException("Hand is full at table " + table);
+            }
+        }
+        
+        for (int table = from; table < to; table++) {
+            int head = data.get(deckHeadBase + table);
+            int count = data.get(deckCountBase + table);
+            int dealt = Math.min(2 * cardsEach, count);
+            int deck = table * DECK_BYTES + head;
+            int hand1 = hand1Base + table * handCapacity;
+            int hand2 = hand2Base + table * handCapacity;
+            int size1 = data.get(hand1CountBase + table);
+            int size2 = data.get(hand2CountBase + table);
+            
+            for (int i = 0; i < dealt; i++) {
+                byte card = data.get(deck + i);
+                if ((i & 1) == 0) {
+                    data.put(hand1 + size1++, card);
+                } else {
+                    data.put(hand2 + size2++, card);
+                }
+            }
+            
+            data.put(deckHeadBase + table, (byte) (head + dealt));
+            data.put(deckCountBase + table, (byte) (count - dealt));
+            data.put(hand1CountBase + table, (byte) size1);
+            data.put(hand2CountBase + table, (byte) size2);
+        }
+    }
+    
+    /**
+     * Plays every table in a range to the end of its hands: each round both
+     * players discard their highest card and the higher value wins a point, as in
+     * HighCardEngine.playGame. Each table's final score is recorded in the result.
+     * @param from the first table, inclusive
+     * @param to the last table, exclusive
+     * @param result receives one game per table
+     * @throws IllegalArgumentException if the range is out of bounds or result is null
+     */
+    public void play(int from, int to, SimulationResult result) {
+        checkRange(from, to);
+        if (result == null) {
+            throw new IllegalArgumentException("Result cannot be null");
+        }
+        
+        for (int table = from; table < to; table++) {
+            int points1 = 0;
+            int points2 = 0;
+            int rounds = Math.min(data.get(hand1CountBase + table), data.get(hand2CountBase + table));
+            for (int round = 0; round < rounds; round++) {
+                int value1 = VALUE_OF_ID[playHighest(table, 1)];
+                int value2 = VALUE_OF_ID[playHighest(table, 2)];
+                if (value1 > value2) {
+                    points1++;
+                } else if (value2 > value1) {
+                    points2++;
+                }
+            }
+            result.record(points1, points2);
+        }
+    }
+    
+    /**
+     * Moves the highest card in a hand to the top of the table's discard pile
+     * @param table the table index
+     * @param seat 1 or 2
+     * @return the standard id of the card played
+     */
+    private int playHighest(int table, int seat) {
+        int hand = (seat == 1 ? hand1Base : hand2Base) + table * handCapacity;
+        int countIndex = (seat == 1 ? hand1CountBase : hand2CountBase) + table;
+        int size = data.get(countIndex);
+        
+        int best = 0;
+        int bestValue = -1;
+        for (int i = 0; i < size; i++) {
+            int value = VALUE_OF_ID[data.get(hand + i)];
+            if (value > bestValue) {
+                best = i;
+                bestValue = value;
+            }
+        }
+        
+        // Fill the gap with the last card; hand order does not matter to the game
+        byte card = data.get(hand + best);
+        data.put(hand + best, data.get(hand + size - 1));
+        data.put(countIndex, (byte) (size - 1));
+        
+        int discarded = data.get(discardCountBase + table);
+        data.put(discardBase + table * DECK_BYTES + discarded, card);
+        data.put(discardCountBase + table, (byte) (discarded + 1));
+        return card;
+    }
+    
+    /**
+     * Draws the top card of a table's deck
+     * @param table the table index
+     * @return the top card, or null if the deck is empty
+     * @throws IllegalArgumentException if the table index is out of range
+     */
+    public Card draw(int table) {
+        checkTable(table);
+        int count = data.get(deckCountBase + table);
+        if (count == 0) {
+            return null;
+        }
+        int head = data.get(deckHeadBase + table);
+        data.put(deckHeadBase + table, (byte) (head + 1));
+        data.put(deckCountBase + table, (byte) (count - 1));
+        return Card.byId(data.get(table * DECK_BYTES + head));
+    }
+    
+    /**
+     * Builds a Deck holding a copy of a table's deck, top card first.
+     * Changes to the Deck reach the store only through save().
+     * @param table the table index
+     * @return the new deck
+     * @throws IllegalArgumentException if the table index is out of range
+     */
+    public Deck deckOf(int table) {
+        checkTable(table);
+        return new Deck(cards(table * DECK_BYTES + data.get(deckHeadBase + table), data.get(deckCountBase + table)));
+    }
+    
+    /**
+     * Builds a Player holding a copy of one of a table's hands.
+     * Changes to the Player reach the store only through save().
+     * @param table the table index
+     * @param seat 1 or 2
+     * @param name the player's name
+     * @return the new player, aged 0
+     * @throws IllegalArgumentException if the table index or seat is out of range, or name is null or empty
+     */
+    public Player playerOf(int table, int seat, String name) {
+        checkTable(table);
+        int hand = (seat == 1 ? hand1Base : hand2Base) + table * handCapacity;
+        return new Player(name, 0, cards(hand, data.get(handCountIndex(table, seat))));
+    }
+    
+    /**
+     * Builds a DiscardPile holding a copy of a table's discard pile, oldest card first.
+     * Changes to the DiscardPile reach the store only through save().
+     * @param table the table index
+     * @return the new discard pile
+     * @throws IllegalArgumentException if the table index is out of range
+     */
+    public DiscardPile discardPileOf(int table) {
+        checkTable(table);
+        return new DiscardPile(cards(discardBase + table * DECK_BYTES, data.get(discardCountBase + table)));
+    }
+    
+    /**
+     * Writes a table's deck, hands and discard pile back from objects, such as
+     * views changed by existing game code
+     * @param table the table index
+     * @param deck the deck
+     * @param player1 the first player
+     * @param player2 the second player
+     * @param discardPile the discard pile
+     * @throws IllegalArgumentException if the table index is out of range, an argument is null,
+     *         a hand is over the store's capacity, the table would hold more than 52 cards,
+     *         or any card is not a standard card;
+     *         the table is not changed
+     */
+    public void save(int table, Deck deck, Player player1, Player player2, DiscardPile discardPile) {
+        checkTable(table);
+        if (deck == null || player1 == null || player2 == null || discardPile == null) {
+            throw new IllegalArgumentException("Deck, players and discard pile cannot be null");
+        }
+        
+        Card[] deckCards = deck.getCards();
+        Card[] hand1 = player1.getHand();
+        Card[] hand2 = player2.getHand();
+        Card[] discarded = discardPile.getCards();
+        if (hand1.length > handCapacity || hand2.length > handCapacity) {
+            throw new IllegalArgumentException("Hand is over the store's capacity of " + handCapacity);
+        }
+        // The kernels only move cards between regions, so a table that starts within one deck's
+        // worth of cards can never overflow its deck or discard region
+        if (deckCards.length + hand1.length + hand2.length + discarded.length > DECK_BYTES) {
+            throw new IllegalArgumentException("A table holds at most " + DECK_BYTES + " cards in its deck, hands and discard pile");
+        }
+        checkStandard(deckCards);
+        checkStandard(hand1);
+        checkStandard(hand2);
+        checkStandard(discarded);
+        
+        putCards(table * DECK_BYTES, deckCards);
+        putCards(hand1Base + table * handCapacity, hand1);
+        putCards(hand2Base + table * handCapacity, hand2);
+        putCards(discardBase + table * DECK_BYTES, discarded);
+        data.put(deckHeadBase + table, (byte) 0);
+        data.put(deckCountBase + table, (byte) deckCards.length);
+        data.put(hand1CountBase + table, (byte) hand1.length);
+        data.put(hand2CountBase + table, (byte) hand2.length);
+        data.put(discardCountBase + table, (byte) discarded.length);
+    }
+    
+    /**
+     * Reads stored card ids into canonical Card instances
+     * @param index the buffer index of the first card
+     * @param count the number of cards
+     * @return the cards
+     */
+    private Card[] cards(int index, int count) {
+        Card[] cards = new Card[count];
+        for (int i = 0; i < count; i++) {
+            cards[i] = Card.byId(data.get(index + i));
+        }
+        return cards;
+    }
+    
+    /**
+     * Writes cards as their standard ids
+     * @param index the buffer index of the first card
+     * @param cards the cards, all standard
+     */
+    private void putCards(int index, Card[] cards) {
+        for (int i = 0; i < cards.length; i++) {
+            data.put(index + i, (byte) cards[i].getId());
+        }
+    }
+    
+    /**
+     * Checks that every card can be stored as a standard id
+     * @param cards the cards
+     * @throws IllegalArgumentException if a card is not a standard card
+     */
+    private static void checkStandard(Card[] cards) {
+        for (Card card : cards) {
+            if (!card.isStandard()) {
+                throw new IllegalArgumentException("Only standard cards can be stored: " + card);
+            }
+        }
+    }
+    
+    /**
+     * Returns the buffer index of a hand's length
+     * @param table the table index
+     * @param seat 1 or 2
+     * @return the index
+     * @throws IllegalArgumentException if the seat is not 1 or 2
+     */
+    private int handCountIndex(int table, int seat) {
+        if (seat != 1 && seat != 2) {
+            throw new IllegalArgumentException("Seat must be 1 or 2");
+        }
+        return (seat == 1 ? hand1CountBase : hand2CountBase) + table;
+    }
+    
+    /**
+     * Checks a table index
+     * @param table the table index
+     * @throws IllegalArgumentException if it is out of range
+     */
+    private void checkTable(int table) {
+        if (table < 0 || table >= tables) {
+            throw new IllegalArgumentException("Table index out of range: " + table);
+        }
+    }
+    
+    /**
+     * Checks a range of tables
+     * @param from the first table, inclusive
+     * @param to the last table, exclusive
+     * @throws IllegalArgumentException if the range is out of bounds
+     */
+    private void checkRange(int from, int to) {
+        if (from < 0 || to > tables || from > to) {
+            throw new IllegalArgumentException("Table range out of bounds: " + from + " to " + to);
+        }
+    }
+}
@@ -0,0 +1,572 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A High Card tournament for any number of registered players. Each round pairs the
+ * players into two-player tables and plays every table at once; players take a random
+ * think time over each move, and a player who goes past the move deadline has their
+ * lowest card played for them.
+ * Tables are state machines driven by a small shared scheduler (see TournamentTable),
+ * so hundreds of thousands of tables can be waiting on their players at the same time
+ * without a thread each.
+ * The pairings, shuffles and think times all come from one seed, so the same seed
+ * and settings always give the same standings.
+ * @author Parusan
+ * @version 1.0
+ */
+public class Tournament {
+
+    /**
+     * How players are paired from round to round
+     */
+    public enum Format {
+        /** Every player plays every round, against a player on a similar score they have not met yet */
+        SWISS,
+        /** Single elimination: winners advance until one player is left; tied games are replayed */
+        KNOCKOUT
+    }
+    
+    /**
+     * One player's record in the tournament
+     */
+    public static class Standing {
+        private final Player player;
+        private final int seed;        // registration order, the final tie-break
+        private int[] opponents = new int[4];
+        private int opponentCount;
+        
+        // Updated only by the one table the player sits at in the current round
+        int wins;
+        int losses;
+        int ties;
+        int byes;
+        int roundPoints;
+        int timeouts;
+        
+        /**
+         * Constructs an empty record
+         * @param player the player
+         * @param seed the player's registration number
+         */
+        Standing(Player player, int seed) {
+            this.player = player;
+            this.seed = seed;
+        }
+        
+        /**
+         * Records that the player has met an opponent
+         * @param opponent the opponent's standing
+         */
+        void opponentPlayed(Standing opponent) {
+            if (opponentCount == opponents.length) {
+                opponents = Arrays.copyOf(opponents, opponents.length * 2);
+            }
+            opponents[opponentCount] = opponent.seed;
+            opponentCount++;
+        }
+        
+        /**
+         * Returns whether the player has already met an opponent
+         * @param opponent the opponent's standing
+         * @return true if they have played each other
+         */
+        boolean hasPlayed(Standing opponent) {
+            for (int i = 0; i < opponentCount; i++) {
+                if (opponents[i] == opponent.seed) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        /**
+         * Returns the score used for ranking, counting a win (or bye) as 2 and a tie as 1
+         * @return the score in half points
+         */
+        int halfPoints() {
+            return 2 * wins + ties;
+        }
+        
+        /**
+         * Returns the player
+         * @return the player
+         */
+        public Player getPlayer() {
+            return player;
+        }
+        
+        /**
+         * Returns the number of games won, including byes
+         * @return the win count
+         */
+        public int getWins() {
+            return wins;
+        }
+        
+        /**
+         * Returns the number of games lost
+         * @return the loss count
+         */
+        public int getLosses() {
+            return losses;
+        }
+        
+        /**
+         * Returns the number of tied games
+         * @return the tie count
+         */
+        public int getTies() {
+            return ties;
+        }
+        
+        /**
+         * Returns the number of rounds the player sat out with a free win
+         * @return the bye count
+         */
+        public int getByes() {
+            return byes;
+        }
+        
+        /**
+         * Returns the tournament score: 1 for each win and 0.5 for each tie
+         * @return the score
+         */
+        public double getScore() {
+            return halfPoints() / 2.0;
+        }
+        
+        /**
+         * Returns the total of the player's round points over all their games
+         * @return the round points
+         */
+        public int getRoundPoints() {
+            return roundPoints;
+        }
+        
+        /**
+         * Returns how many moves were played for the player because they ran out of time
+         * @return the timeout count
+         */
+        public int getTimeouts() {
+            return timeouts;
+        }
+        
+        /**
+         * Returns a one-line summary of the record
+         * @return the player's name, wins, losses, ties and round points
+         */
+        @Override
+        public String toString() {
+            return player.getName() + ": " + wins + "-" + losses + "-" + ties
+                   + ", " + roundPoints + " round points, " + timeouts + " timeouts";
+        }
+    }
+    
+    // Ranks by score, then round points, then registration order
+    private static final Comparator<Standing> RANKING = new Comparator<Standing>() {
+        @Override
+        public int compare(Standing a, Standing b) {
+            if (a.halfPoints() != b.halfPoints()) {
+                return Integer.compare(b.halfPoints(), a.halfPoints());
+            }
+            if (a.roundPoints != b.roundPoints) {
+                return Integer.compare(b.roundPoints, a.roundPoints);
+            }
+            return Integer.compare(a.seed, b.seed);
+        }
+    };
+    
+    private final Format format;
+    private final long seed;
+    private final List<Standing> standings = new ArrayList<>();
+    private final Set<Player> registered = Collections.newSetFromMap(new IdentityHashMap<Player, Boolean>());
+    private int rounds;
+    private long minThinkNanos;
+    private long maxThinkNanos;
+    private long moveTimeoutNanos = TimeUnit.SECONDS.toNanos(1);
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean started;
+    
+    // State of the round being played
+    private ScheduledExecutorService scheduler;
+    private CountDownLatch tablesLeft;
+    private volatile RuntimeException failure;
+    private long tablesPlayed;
+    private long elapsedNanos;
+    
+    /**
+     * Constructs an empty tournament
+     * @param format how players are paired
+     * @param seed the seed for the pairings, shuffles and think times
+     * @throws IllegalArgumentException if format is null
+     */
+    public Tournament(Format format, long seed) {
+        if (format == null) {
+            throw new IllegalArgumentException("Format cannot be null");
+        }
+        this.format = format;
+        this.seed = seed;
+    }
+    
+    /**
+     * Registers a player
+     * @param player the player, who must have an empty hand
+     * @throws IllegalArgumentException if player is null, already registered, or holding cards
+     * @throws IllegalStateException if the tournament has already been run
+     */
+    public void register(Player player) {
+        if (player == null) {
+            throw new IllegalArgumentException("Player cannot be null");
+        }
+        if (player.size() != 0) {
+            throw new IllegalArgumentException("Player must start with an empty hand");
+        }
+        if (started) {
+            throw new IllegalStateException("Tournament has already been run");
+        }
+        if (!registered.add(player)) {
+            throw new IllegalArgumentException("Player is already registered");
+        }
+        standings.add(new Standing(player, standings.size()));
+    }
+    
+    /**
+     * Returns the number of registered players
+     * @return the player count
+     */
+    public int size() {
+        return standings.size();
+    }
+    
+    /**
+     * Sets the number of Swiss rounds; knockouts always run until one player is left
+     * @param rounds the number of rounds, or 0 for enough rounds to separate the players
+     *        (the base 2 logarithm of the player count, rounded up)
+     * @throws IllegalArgumentException if rounds is negative
+     */
+    public void setRounds(int rounds) {
+        if (rounds < 0) {
+            throw new IllegalArgumentException("Rounds cannot be negative");
+        }
+        this.rounds = rounds;
+    }
+    
+    /**
+     * Sets how long players think over each move; each move takes a random time in this range
+     * @param min the shortest think time
+     * @param max the longest think time
+     * @param unit the unit of min and max
+     * @throws IllegalArgumentException if min is negative, max is below min, or unit is null
+     */
+    public void setThinkTime(long min, long max, TimeUnit unit) {
+        if (unit == null) {
+            throw new IllegalArgumentException("Unit cannot be null");
+        }
+        if (min < 0 || max < min) {
+            throw new IllegalArgumentException("Invalid think time range");
+        }
+        this.minThinkNanos = unit.toNanos(min);
+        this.maxThinkNanos = unit.toNanos(max);
+    }
+    
+    /**
+     * Sets the move deadline; a player still thinking when it passes has their lowest card played
+     * @param timeout the deadline
+     * @param unit the unit of timeout
+     * @throws IllegalArgumentException if timeout is negative or unit is null
+     */
+    public void setMoveTimeout(long timeout, TimeUnit unit) {
+        if (unit == null) {
+            throw new IllegalArgumentException("Unit cannot be null");
+        }
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Timeout cannot be negative");
+        }
+        this.moveTimeoutNanos = unit.toNanos(timeout);
+    }
+    
+    /**
+     * Sets the number of scheduler threads that play the tables
+     * @param threads the thread count
+     * @throws IllegalArgumentException if threads is not positive
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive");
+        }
+        this.threads = threads;
+    }
+    
+    /**
+     * Plays the whole tournament
+     * @return every player's standing, best first
+     * @throws IllegalStateException if fewer than two players are registered, the tournament
+     *         has already been run, or a table fails
+     * @throws InterruptedException if the calling thread is interrupted while waiting for a round
+     */
+    public List<Standing> run() throws InterruptedException {
+        if (standings.size() < 2) {
+            throw new IllegalStateException("A tournament needs at least two players");
+        }
+        if (started) {
+            throw new IllegalStateException("Tournament has already been run");
+        }
+        started = true;
+        
+        CardRandom random = CardRandom.seeded(seed);
+        List<Standing> order = new ArrayList<>(standings);
+        shuffle(order, random); // Random first-round seating
+        
+        long start = System.nanoTime();
+        scheduler = Executors.newScheduledThreadPool(threads);
+        try {
+            if (format == Format.SWISS) {
+                int swissRounds = rounds > 0 ? rounds : 32 - Integer.numberOfLeadingZeros(order.size() - 1);
+                for (int round = 0; round < swissRounds; round++) {
+                    if (round > 0) {
+                        Collections.sort(order, RANKING);
+                    }
+                    playRound(swissPairs(order), random, false);
+                }
+            } else {
+                List<Standing> alive = order;
+                while (alive.size() > 1) {
+                    alive = playKnockoutRound(alive, random);
+                }
+            }
+        } finally {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        elapsedNanos = System.nanoTime() - start;
+        
+        List<Standing> result = new ArrayList<>(standings);
+        Collections.sort(result, RANKING);
+        return result;
+    }
+    
+    /**
+     * Pairs players for a Swiss round. The lowest-ranked of the players with the fewest byes
+     * sits out if the count is odd, so byes go round the field evenly; everyone else is paired with the next player down the
+     * ranking they have not met yet, or simply the next player if they have met everyone close by.
+     * @param ranked the players, best first
+     * @return the pairs
+     */
+    private List<Standing[]> swissPairs(List<Standing> ranked) {
+        List<Standing> waiting = new ArrayList<>(ranked);
+        if (waiting.size() % 2 == 1) {
+            int bye = waiting.size() - 1;
+            for (int i = bye - 1; i >= 0 && waiting.get(bye).byes > 0; i--) {
+                if (waiting.get(i).byes < waiting.get(bye).byes) {
+                    bye = i;
+                }
+            }
+            giveBye(waiting.remove(bye));
+        }
+        
+        List<Standing[]> pairs = new ArrayList<>(waiting.size() / 2);
+        boolean[] paired = new boolean[waiting.size()];
+        for (int i = 0; i < waiting.size(); i++) {
+            if (paired[i]) {
+                continue;
+            }
+            Standing player = waiting.get(i);
+            int match = -1;
+            for (int j = i + 1; j < waiting.size(); j++) {
+                if (!paired[j]) {
+                    if (match == -1) {
+                        match = j; // Fallback: a rematch with the closest free player
+                    }
+                    if (!player.hasPlayed(waiting.get(j))) {
+                        match = j;
+                        break;
+                    }
+                }
+            }
+            paired[i] = true;
+            paired[match] = true;
+            pairs.add(new Standing[] {player, waiting.get(match)});
+        }
+        return pairs;
+    }
+    
+    /**
+     * Plays one knockout round, pairing neighbours in the bracket
+     * @param alive the players still in, in bracket order
+     * @param random the tournament's generator
+     * @return the players who advance, in bracket order
+     * @throws InterruptedException if interrupted while waiting for the round
+     */
+    private List<Standing> playKnockoutRound(List<Standing> alive, CardRandom random) throws InterruptedException {
+        List<Standing[]> pairs = new ArrayList<>(alive.size() / 2);
+        for (int i = 0; i + 1 < alive.size(); i += 2) {
+            pairs.add(new Standing[] {alive.get(i), alive.get(i + 1)});
+        }
+        List<TournamentTable> tables = playRound(pairs, random, true);
+        
+        List<Standing> winners = new ArrayList<>(alive.size() / 2 + 1);
+        for (TournamentTable table : tables) {
+            winners.add(table.getWinner());
+        }
+        if (alive.size() % 2 == 1) {
+            Standing last = alive.get(alive.size() - 1);
+            giveBye(last);
+            winners.add(last);
+        }
+        return winners;
+    }
+    
+    /**
+     * Gives a player a free win for sitting out a round
+     * @param standing the player's standing
+     */
+    private static void giveBye(Standing standing) {
+        standing.wins++;
+        standing.byes++;
+    }
+    
+    /**
+     * Seats every pair at its own table, starts all the tables, and waits for them to finish
+     * @param pairs the players to seat together
+     * @param random the tournament's generator; each table gets a generator split from it
+     * @param mustDecide true if tied games must be replayed
+     * @return the tables, in the order of pairs
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private List<TournamentTable> playRound(List<Standing[]> pairs, CardRandom random, boolean mustDecide) throws InterruptedException {
+        List<TournamentTable> tables = new ArrayList<>(pairs.size());
+        for (Standing[] pair : pairs) {
+            // Split in seating order, so each table's play depends only on the seed
+            tables.add(new TournamentTable(this, pair[0], pair[1], random.split(), mustDecide));
+        }
+        
+        tablesLeft = new CountDownLatch(tables.size());
+        for (final TournamentTable table : tables) {
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        table.start();
+                    } catch (RuntimeException e) {
+                        tableFailed(e);
+                    }
+                }
+            });
+        }
+        tablesLeft.await();
+        
+        if (failure != null) {
+            throw new IllegalStateException("A table failed", failure);
+        }
+        tablesPlayed += tables.size();
+        return tables;
+    }
+    
+    /**
+     * Shuffles a list with Fisher-Yates
+     * @param list the list to shuffle
+     * @param random the source of randomness
+     */
+    private static void shuffle(List<Standing> list, CardRandom random) {
+        for (int i = list.size() - 1; i > 0; i--) {
+            Collections.swap(list, i, random.nextInt(i + 1));
+        }
+    }
+    
+    /**
+     * Picks a think time for one move
+     * @param random the table's generator
+     * @return the think time in nanoseconds
+     */
+    long thinkNanos(CardRandom random) {
+        if (maxThinkNanos == minThinkNanos) {
+            return minThinkNanos;
+        }
+        return minThinkNanos + (random.nextLong() >>> 1) % (maxThinkNanos - minThinkNanos + 1);
+    }
+    
+    /**
+     * Returns the move deadline
+     * @return the deadline in nanoseconds
+     */
+    long getMoveTimeoutNanos() {
+        return moveTimeoutNanos;
+    }
+    
+    /**
+     * Returns the scheduler that drives the tables
+     * @return the scheduler
+     */
+    ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+    
+    /**
+     * Called by a table when its game is over
+     */
+    void tableFinished() {
+        tablesLeft.countDown();
+    }
+    
+    /**
+     * Called by a table that could not finish its game
+     * @param e the cause
+     */
+    void tableFailed(RuntimeException e) {
+        failure = e;
+        tablesLeft.countDown();
+    }
+    
+    /**
+     * Returns the number of tables played so far
+     * @return the table count
+     */
+    public long getTablesPlayed() {
+        return tablesPlayed;
+    }
+    
+    /**
+     * Returns the wall-clock time the tournament took
+     * @return the elapsed time in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+    
+    /**
+     * Runs a tournament of generated players and prints the leaders
+     * @param args optionally the number of players (default 10,000), the format
+     *        (swiss or knockout), the longest think time in milliseconds (default 0),
+     *        and the move deadline in milliseconds (default 1000)
+     * @throws InterruptedException if interrupted while waiting for the tournament
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        Format format = args.length > 1 ? Format.valueOf(args[1].toUpperCase()) : Format.SWISS;
+        long maxThink = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        long timeout = args.length > 3 ? Long.parseLong(args[3]) : 1000;
+        
+        Tournament tournament = new Tournament(format, CardRandom.current().nextLong());
+        tournament.setThinkTime(0, maxThink, TimeUnit.MILLISECONDS);
+        tournament.setMoveTimeout(timeout, TimeUnit.MILLISECONDS);
+        for (int i = 1; i <= players; i++) {
+            tournament.register(new Player("Player " + i, 20));
+        }
+        
+        List<Standing> standings = tournament.run();
+        for (int i = 0; i < Math.min(10, standings.size()); i++) {
+            System.out.println((i + 1) + ". " + standings.get(i));
+        }
+        System.out.println("Tables played: " + tournament.getTablesPlayed() + " in "
+                           + tournament.getElapsedNanos() / 1000000 + " ms");
+    }
+}
\ No newline at end of file
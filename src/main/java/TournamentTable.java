@@ -0,0 +1,166 @@
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One two-player High Card game at a tournament table, run as a small state machine.
+ * Instead of a thread that sleeps while the players think, each step schedules the
+ * next one on the tournament's shared scheduler, so a waiting table costs one queued
+ * task and a few hundred bytes rather than a thread and its stack.
+ * @author Parusan
+ * @version 1.0
+ */
+class TournamentTable implements Runnable {
+    // A knockout game still tied after this many replays is decided by a coin flip
+    private static final int MAX_REPLAYS = 10;
+    
+    private final Tournament tournament;
+    private final Tournament.Standing seat1;
+    private final Tournament.Standing seat2;
+    private final CardRandom random;
+    private final boolean mustDecide;
+    
+    private Deck deck;
+    private DiscardPile discardPile;
+    private int round;          // rounds played in the current game
+    private int points1;
+    private int points2;
+    private int replays;
+    private boolean timedOut1;  // whether each player ran out of time in the current round
+    private boolean timedOut2;
+    
+    /**
+     * Seats two players at a new table
+     * @param tournament the tournament the table reports to
+     * @param seat1 the first player's standing
+     * @param seat2 the second player's standing
+     * @param random the table's own generator, for the shuffles and think times
+     * @param mustDecide true if a tied game must be replayed until someone wins
+     */
+    TournamentTable(Tournament tournament, Tournament.Standing seat1, Tournament.Standing seat2,
+                    CardRandom random, boolean mustDecide) {
+        this.tournament = tournament;
+        this.seat1 = seat1;
+        this.seat2 = seat2;
+        this.random = random;
+        this.mustDecide = mustDecide;
+    }
+    
+    /**
+     * Starts the table's first game
+     */
+    void start() {
+        deal();
+        scheduleRound();
+    }
+    
+    /**
+     * Shuffles a fresh deck and deals both hands
+     */
+    private void deal() {
+        deck = new Deck();
+        deck.shuffle(random);
+        discardPile = new DiscardPile();
+        round = 0;
+        points1 = 0;
+        points2 = 0;
+        deck.deal(new Player[] {seat1.getPlayer(), seat2.getPlayer()}, HighCardEngine.HAND_SIZE);
+    }
+    
+    /**
+     * Draws both players' think times and schedules the round to be played once
+     * both have moved or the move deadline has passed, whichever comes first
+     */
+    private void scheduleRound() {
+        long think1 = tournament.thinkNanos(random);
+        long think2 = tournament.thinkNanos(random);
+        long timeout = tournament.getMoveTimeoutNanos();
+        timedOut1 = think1 > timeout;
+        timedOut2 = think2 > timeout;
+        
+        long delay = Math.min(Math.max(think1, think2), timeout);
+        tournament.getScheduler().schedule(this, delay, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Plays one round: each player plays their highest card, except that a player
+     * who ran out of time has their lowest card played for them
+     */
+    @Override
+    public void run() {
+        try {
+            Player player1 = seat1.getPlayer();
+            Player player2 = seat2.getPlayer();
+            Card card1 = timedOut1 ? player1.playLowest(discardPile) : player1.playHighest(discardPile);
+            Card card2 = timedOut2 ? player2.playLowest(discardPile) : player2.playHighest(discardPile);
+            if (timedOut1) {
+                seat1.timeouts++;
+            }
+            if (timedOut2) {
+                seat2.timeouts++;
+            }
+            
+            if (card1.getValue() > card2.getValue()) {
+                points1++;
+            } else if (card2.getValue() > card1.getValue()) {
+                points2++;
+            }
+            round++;
+            
+            if (round < HighCardEngine.ROUNDS) {
+                scheduleRound();
+            } else {
+                finishGame();
+            }
+        } catch (RuntimeException e) {
+            tournament.tableFailed(e);
+        }
+    }
+    
+    /**
+     * Records the finished game, or replays it if a knockout game ended in a tie
+     */
+    private void finishGame() {
+        seat1.roundPoints += points1;
+        seat2.roundPoints += points2;
+        
+        if (points1 == points2 && mustDecide) {
+            replays++;
+            if (replays <= MAX_REPLAYS) {
+                deal();
+                scheduleRound();
+                return;
+            }
+            // Still level: decide it with the table's generator so the result stays reproducible
+            if (random.nextInt(2) == 0) {
+                points1++;
+            } else {
+                points2++;
+            }
+        }
+        
+        seat1.opponentPlayed(seat2);
+        seat2.opponentPlayed(seat1);
+        if (points1 > points2) {
+            seat1.wins++;
+            seat2.losses++;
+        } else if (points2 > points1) {
+            seat2.wins++;
+            seat1.losses++;
+        } else {
+            seat1.ties++;
+            seat2.ties++;
+        }
+        tournament.tableFinished();
+    }
+    
+    /**
+     * Returns the player who won the table's game, once it has finished
+     * @return the winner's standing, or null for a tie
+     */
+    Tournament.Standing getWinner() {
+        if (points1 == points2) {
+            return null;
+        }
+        return points1 > points2 ? seat1 : seat2;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,97 @@
+/**
+ * Chances of each outcome of a High Card game, either estimated from samples
+ * (with their accuracy) or computed exactly
+ * @author Parusan
+ * @version 1.0
+ */
+public class WinOdds {
+    private final long samples;
+    private final double player1Win;
+    private final double player2Win;
+    private final double tie;
+    private final double halfWidth;
+    
+    /**
+     * Constructs odds from sampled outcome counts
+     * @param player1Wins the samples player 1 won
+     * @param player2Wins the samples player 2 won
+     * @param ties the tied samples
+     * @param halfWidth the half-width of the 95% confidence interval of the least certain outcome
+     */
+    WinOdds(long player1Wins, long player2Wins, long ties, double halfWidth) {
+        this.samples = player1Wins + player2Wins + ties;
+        this.player1Win = samples == 0 ? 0 : (double) player1Wins / samples;
+        this.player2Win = samples == 0 ? 0 : (double) player2Wins / samples;
+        this.tie = samples == 0 ? 0 : (double) ties / samples;
+        this.halfWidth = halfWidth;
+    }
+    
+    /**
+     * Constructs exact odds
+     * @param player1Win the probability that player 1 wins
+     * @param player2Win the probability that player 2 wins
+     * @param tie the probability of a tie
+     */
+    WinOdds(double player1Win, double player2Win, double tie) {
+        this.samples = 0;
+        this.player1Win = player1Win;
+        this.player2Win = player2Win;
+        this.tie = tie;
+        this.halfWidth = 0;
+    }
+    
+    /**
+     * Returns the chance that player 1 wins
+     * @return a probability from 0 to 1
+     */
+    public double getPlayer1Win() {
+        return player1Win;
+    }
+    
+    /**
+     * Returns the chance that player 2 wins
+     * @return a probability from 0 to 1
+     */
+    public double getPlayer2Win() {
+        return player2Win;
+    }
+    
+    /**
+     * Returns the chance of a tie
+     * @return a probability from 0 to 1
+     */
+    public double getTie() {
+        return tie;
+    }
+    
+    /**
+     * Returns how far each probability may be from the true value, at 95% confidence
+     * @return the half-width of the widest of the three confidence intervals, or 0 for exact odds
+     */
+    public double getHalfWidth() {
+        return halfWidth;
+    }
+    
+    /**
+     * Returns the number of random completions the odds are based on
+     * @return the sample count, or 0 for exact odds
+     */
+    public long getSamples() {
+        return samples;
+    }
+    
+    /**
+     * Returns the odds as percentages
+     * @return the three probabilities, and the interval half-width and sample count if estimated
+     */
+    @Override
+    public String toString() {
+        if (samples == 0) {
+            return String.format("Player 1: %.2f%%, Player 2: %.2f%%, Tie: %.2f%% (exact)",
+                                 100 * player1Win, 100 * player2Win, 100 * tie);
+        }
+        return String.format("Player 1: %.2f%%, Player 2: %.2f%%, Tie: %.2f%% (+/- %.2f%%, %d samples)",
+                             100 * player1Win, 100 * player2Win, 100 * tie,
+                             100 * halfWidth, samples);
+    }
+}
@@ -0,0 +1,84 @@
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The xoroshiro128++ generator: 128 bits of state, a period of 2^128 - 1,
+ * and no allocation or synchronization when generating numbers.
+ * Not thread-safe; give each thread its own instance with split().
+ * @author Parusan
+ * @version 1.0
+ */
+public class XoroshiroCardRandom implements CardRandom {
+    // Per-thread defaults, seeded from ThreadLocalRandom so threads get different streams
+    static final ThreadLocal<CardRandom> CURRENT = new ThreadLocal<CardRandom>() {
+        @Override
+        protected CardRandom initialValue() {
+            return new XoroshiroCardRandom(ThreadLocalRandom.current().nextLong());
+        }
+    };
+    
+    private long s0;
+    private long s1;
+    
+    /**
+     * Constructs a generator from a seed. Every seed, including 0, gives a usable state.
+     * @param seed the seed
+     */
+    public XoroshiroCardRandom(long seed) {
+        // Spread the seed over both state words with SplitMix64, as the algorithm's authors recommend
+        long x = seed;
+        x += 0x9E3779B97F4A7C15L;
+        s0 = mix(x);
+        x += 0x9E3779B97F4A7C15L;
+        s1 = mix(x);
+        if ((s0 | s1) == 0) {
+            s1 = 1; // The all-zero state would only ever produce zeros
+        }
+    }
+    
+    /**
+     * SplitMix64 output function
+     * @param z the value to mix
+     * @return the mixed value
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+    
+    @Override
+    public long nextLong() {
+        long a = s0;
+        long b = s1;
+        long result = Long.rotateLeft(a + b, 17) + a;
+        
+        b ^= a;
+        s0 = Long.rotateLeft(a, 49) ^ b ^ (b << 21);
+        s1 = Long.rotateLeft(b, 28);
+        return result;
+    }
+    
+    @Override
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("Bound must be positive");
+        }
+        
+        // Lemire's multiply-and-shift method, rejecting the few values that would bias the result
+        long m = (nextLong() >>> 32) * bound;
+        long low = m & 0xFFFFFFFFL;
+        if (low < bound) {
+            long threshold = (0x100000000L - bound) % bound;
+            while (low < threshold) {
+                m = (nextLong() >>> 32) * bound;
+                low = m & 0xFFFFFFFFL;
+            }
+        }
+        return (int) (m >>> 32);
+    }
+    
+    @Override
+    public CardRandom split() {
+        return new XoroshiroCardRandom(nextLong());
+    }
+}
@@ -2,6 +2,30 @@
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.*;
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.io.TempDir;
 
 public class ProblemSetTest {
 
@@ -18,4 +42,2043 @@ public class ProblemSetTest {
       assertEquals("whiskers", cat.getName());
    }
    */
+
+   @Test
+   public void deckCopiesItsInputAndOutputArrays()
+   {
+      // Since the circular buffer, Deck no longer aliases the arrays passed in or handed out
+      Card[] cards = shoe(1);
+      Deck deck = new Deck(cards);
+      cards[0] = null;
+      assertEquals(Card.byId(0), deck.draw());
+
+      Card[] copy = deck.getCards();
+      assertEquals(51, copy.length);
+      copy[0] = null;
+      assertEquals(Card.byId(1), deck.getCards()[0]);
+      assertNotSame(deck.getCards(), deck.getCards());
+   }
+
+   @Test
+   public void deckDrawsAndDealsInTopToBottomOrder()
+   {
+      Deck deck = new Deck(shoe(1));
+      Card[] drawn = deck.draw(5);
+      for (int i = 0; i < 5; i++)
+      {
+         assertSame(Card.byId(i), drawn[i]);
+      }
+      assertThrows(IllegalArgumentException.class, () -> deck.draw(-1));
+
+      Player[] players = { new Player("A", 20), new Player("B", 21), new Player("C", 22) };
+      deck.deal(players, 4);
+      assertEquals(52 - 5 - 12, deck.size());
+      for (int p = 0; p < players.length; p++)
+      {
+         Card[] hand = players[p].getHand();
+         assertEquals(4, hand.length);
+         for (int i = 0; i < 4; i++)
+         {
+            assertSame(Card.byId(5 + p + 3 * i), hand[i], "player " + p + " card " + i);
+         }
+      }
+
+      // Asking for more than is left takes what remains
+      assertEquals(35, deck.draw(100).length);
+      assertEquals(0, deck.size());
+      assertNull(deck.draw());
+   }
+
+   /**
+    * Builds a deck whose cards wrap around the end of its buffer
+    * @return a 52-card deck holding ids 10 to 51 followed by ids 0 to 9
+    */
+   private static Deck wrappedDeck()
+   {
+      Deck deck = new Deck(shoe(1));
+      Card[] top = deck.draw(10);
+      for (Card card : top)
+      {
+         deck.addCard(card);
+      }
+      return deck;
+   }
+
+   @Test
+   public void deckKeepsOrderAcrossTheWrapPointAndGrows()
+   {
+      Deck deck = wrappedDeck();
+      Card[] cards = deck.getCards();
+      for (int i = 0; i < 52; i++)
+      {
+         assertSame(Card.byId((i + 10) % 52), cards[i]);
+         assertSame(cards[i], deck.cardAt(i));
+      }
+
+      // Growing from a wrapped buffer keeps the order, then appends
+      deck.addCard(Card.byId(0));
+      assertEquals(53, deck.size());
+      assertSame(Card.byId(10), deck.draw());
+      assertSame(Card.byId(0), deck.cardAt(51));
+      Card[] drawn = deck.draw(52);
+      assertSame(Card.byId(9), drawn[50]);
+      assertSame(Card.byId(0), drawn[51]);
+   }
+
+   @Test
+   public void deckReshufflesAndShufflesAcrossTheWrapPoint()
+   {
+      Deck deck = wrappedDeck();
+      deck.draw(40);
+      deck.reshuffle(new Card[] { Card.byId(20), null, Card.byId(21) });
+      assertEquals(14, deck.size());
+
+      int[] counts = new int[Card.STANDARD_COUNT];
+      for (Card card : deck.getCards())
+      {
+         counts[card.getId()]++;
+      }
+      for (int id = 0; id < Card.STANDARD_COUNT; id++)
+      {
+         boolean expected = (id >= 0 && id < 10) || id == 50 || id == 51 || id == 20 || id == 21;
+         assertEquals(expected ? 1 : 0, counts[id], "card " + id);
+      }
+
+      // Shuffling a wrapped deck rotates it in place rather than copying the buffer
+      Deck wrapped = wrappedDeck();
+      CardRandom random = CardRandom.seeded(3);
+      for (int i = 0; i < 1000; i++)
+      {
+         wrapped.shuffle(random);
+      }
+      long before = allocatedBytes();
+      for (int i = 0; i < 1000; i++)
+      {
+         wrapped.addCard(wrapped.draw()); // Keeps the cards wrapping as the head moves round
+         wrapped.shuffle(random);
+      }
+      assertTrue(allocatedBytes() - before < 4096, "shuffling a wrapped deck allocated");
+      assertEquals(52, wrapped.size());
+   }
+
+   @Test
+   public void standardCardsComeFromOneRegistry()
+   {
+      String[] suits = { "Hearts", "Clubs", "Diamonds", "Spades" };
+      String[] names = { "Ace", "2", "3", "4", "5", "6", "7", "8", "9", "10", "Jack", "Queen", "King" };
+      for (int id = 0; id < Card.STANDARD_COUNT; id++)
+      {
+         Card card = Card.byId(id);
+         assertEquals(id, card.getId());
+         assertTrue(card.isStandard());
+         assertEquals(names[id % 13], card.getName());
+         assertEquals(suits[id / 13], card.getSuit());
+         assertSame(card, Card.of(names[id % 13], suits[id / 13]));
+         assertSame(card, Card.of(" " + names[id % 13] + " ", suits[id / 13]));
+
+         // A card built the old way still gets its id and maps to the shared instance
+         Card built = new Card(card.getName(), card.getSuit(), card.getValue());
+         assertNotSame(card, built);
+         assertEquals(id, built.getId());
+         assertSame(card, built.canonical());
+      }
+      assertEquals(14, Card.of("Ace", "Spades").getValue());
+      assertEquals(10, Card.of("10", "Clubs").getValue());
+
+      // Same name and suit with another value, or another suit, is a custom card
+      Card custom = new Card("Ace", "Hearts", 1);
+      assertEquals(Card.NO_ID, custom.getId());
+      assertSame(custom, custom.canonical());
+      assertEquals(Card.NO_ID, new Card("Ace", "Stars", 14).getId());
+
+      assertThrows(IllegalArgumentException.class, () -> Card.byId(-1));
+      assertThrows(IllegalArgumentException.class, () -> Card.byId(Card.STANDARD_COUNT));
+      assertThrows(IllegalArgumentException.class, () -> Card.of("1", "Hearts"));
+      assertThrows(IllegalArgumentException.class, () -> Card.of("Ace", null));
+
+      // Every standard deck shares the registry's instances
+      Card[] deck = new Deck().getCards();
+      for (int id = 0; id < Card.STANDARD_COUNT; id++)
+      {
+         assertSame(Card.byId(id), deck[id]);
+      }
+   }
+
+   @Test
+   public void bitsetHandKeepsTheArrayHandsOrder()
+   {
+      Random random = new Random(5);
+      for (int run = 0; run < 200; run++)
+      {
+         Player array = new Player("Ann", 30);
+         Player bitset = new Player("Ann", 30);
+         Player ranked = new Player("Ann", 30);
+         assertTrue(bitset.useBitsetHand());
+         ranked.useRankedHand();
+         DiscardPile pile = new DiscardPile();
+         Deck deck = new Deck();
+         deck.shuffle(CardRandom.seeded(run));
+
+         for (int step = 0; step < 60 && deck.size() > 0; step++)
+         {
+            int op = random.nextInt(4);
+            if (op == 0 || array.size() == 0)
+            {
+               Card[] card = { deck.draw() };
+               array.addCards(card, 0, 1, 1);
+               bitset.addCards(card, 0, 1, 1);
+               ranked.addCards(card, 0, 1, 1);
+            }
+            else if (op == 1)
+            {
+               Card card = array.getHand()[random.nextInt(array.size())];
+               assertTrue(array.discardCard(card, pile));
+               assertTrue(bitset.discardCard(card, pile));
+               assertTrue(ranked.discardCard(card, pile));
+            }
+            else
+            {
+               // Every mode breaks a tie the same way, by the card added first
+               boolean highest = op == 2;
+               assertSame(array.getHighestCard(), bitset.getHighestCard());
+               assertSame(array.getHighestCard(), ranked.getHighestCard());
+               Card played = highest ? array.playHighest(pile) : array.playLowest(pile);
+               assertSame(played, highest ? bitset.playHighest(pile) : bitset.playLowest(pile));
+               assertSame(played, highest ? ranked.playHighest(pile) : ranked.playLowest(pile));
+            }
+            assertArrayEquals(array.getHand(), bitset.getHand());
+            assertEquals(array.toString(), bitset.toString());
+         }
+      }
+
+      // Going back to an array hand keeps the order too
+      Player player = new Player("Bo", 40, new Card[] { Card.byId(12), Card.byId(0), Card.byId(30) });
+      assertTrue(player.useBitsetHand());
+      player.addCards(new Card[] { Card.byId(5) }, 0, 1, 1);
+      assertEquals("Bo, 40, King of Hearts, Ace of Hearts, 5 of Diamonds, 6 of Hearts.", player.toString());
+      assertSame(Card.byId(0), player.getHighestCard());
+      player.addCards(new Card[] { new Card("Joker", "Red", 50) }, 0, 1, 1);
+      assertFalse(player.isBitsetHand());
+      assertEquals("Bo, 40, King of Hearts, Ace of Hearts, 5 of Diamonds, 6 of Hearts, Joker of Red.", player.toString());
+      player.clearHand();
+      assertEquals(0, player.getHand().length);
+      assertEquals("Bo, 40.", player.toString());
+   }
+
+   @Test
+   public void discardPileMatchesAListModel()
+   {
+      Random random = new Random(9);
+      Card[] customs = { new Card("Joker", "Red", 50), new Card("Joker", "Black", 50), new Card("Ace", "Hearts", 1) };
+      for (int run = 0; run < 100; run++)
+      {
+         DiscardPile pile = new DiscardPile();
+         List<Card> model = new ArrayList<>();
+         for (int step = 0; step < 400; step++)
+         {
+            // A few distinct cards, so duplicates and removals of older copies are common
+            Card card = random.nextInt(5) == 0 ? customs[random.nextInt(customs.length)]
+                                               : Card.byId(random.nextInt(8));
+            if (random.nextInt(3) == 0)
+            {
+               pile.addCard(card);
+               model.add(card);
+            }
+            else
+            {
+               int index = model.indexOf(card);
+               Card removed = pile.removeCard(new Card(card.getName(), card.getSuit(), card.getValue()));
+               if (index == -1)
+               {
+                  assertNull(removed);
+               }
+               else
+               {
+                  assertSame(model.remove(index), removed, "the oldest copy is removed");
+               }
+            }
+            assertEquals(model.size(), pile.size());
+            assertEquals(model.isEmpty() ? null : model.get(model.size() - 1), pile.peekTop());
+
+            // Removed slots are compacted away once they outnumber the cards
+            int emptySlots = pile.slotCount() - pile.size();
+            assertTrue(emptySlots <= Math.max(8, pile.size()), emptySlots + " empty slots for " + pile.size() + " cards");
+         }
+         assertArrayEquals(model.toArray(new Card[0]), pile.getCards());
+         assertArrayEquals(model.toArray(new Card[0]), pile.removeAll());
+         assertEquals(0, pile.size());
+         assertNull(pile.removeCard(Card.byId(0)));
+      }
+
+      DiscardPile pile = new DiscardPile(new Card[] { Card.byId(0), null, customs[0], Card.byId(0) });
+      assertEquals(3, pile.size());
+      assertSame(Card.byId(0), pile.removeCard(Card.byId(0)));
+      assertEquals("Joker of Red, Ace of Hearts.", pile.toString());
+      pile.removeAll();
+      assertEquals("Empty discard pile", pile.toString());
+   }
+
+   @Test
+   public void shoeDealsEveryCardOncePerPassAndHonoursTheCut()
+   {
+      Shoe shoe = new Shoe(6, 0.75, CardRandom.seeded(4));
+      assertEquals(312, shoe.size());
+      int[] firstCards = new int[Card.STANDARD_COUNT];
+      Card[] firstPass = new Card[312];
+      for (int pass = 0; pass < 300; pass++)
+      {
+         int[] counts = new int[Card.STANDARD_COUNT];
+         for (int i = 0; i < 312; i++)
+         {
+            assertEquals(i >= 234, shoe.isCutCardReached(), "cut card at " + i);
+            Card card = shoe.draw();
+            counts[card.getId()]++;
+            if (pass == 0)
+            {
+               firstPass[i] = card;
+            }
+            if (i == 0)
+            {
+               firstCards[card.getId()]++;
+            }
+         }
+         assertNull(shoe.draw());
+         assertEquals(0, shoe.size());
+         assertEquals(312, shoe.dealt());
+         for (int id = 0; id < Card.STANDARD_COUNT; id++)
+         {
+            assertEquals(6, counts[id], "card " + id + " in pass " + pass);
+         }
+         shoe.reshuffle();
+         assertEquals(0, shoe.dealt());
+         assertFalse(shoe.isCutCardReached());
+      }
+
+      // Every card should lead a pass about 300 / 52 times; a stuck shuffle would pile up on a few
+      for (int id = 0; id < Card.STANDARD_COUNT; id++)
+      {
+         assertTrue(firstCards[id] < 25, "card " + id + " led " + firstCards[id] + " passes");
+      }
+
+      // The same seed deals the same cards
+      Shoe again = new Shoe(6, 0.75, CardRandom.seeded(4));
+      for (int i = 0; i < 312; i++)
+      {
+         assertSame(firstPass[i], again.draw());
+      }
+
+      assertThrows(IllegalArgumentException.class, () -> new Shoe(0, 0.5));
+      assertThrows(IllegalArgumentException.class, () -> new Shoe(1, 0));
+      assertThrows(IllegalArgumentException.class, () -> new Shoe(1, 1.5));
+      assertThrows(IllegalArgumentException.class, () -> new Shoe(1, 0.5, null));
+   }
+
+   /**
+    * Checks a generator's nextInt stays in range and spreads evenly over a small bound
+    * @param random the generator
+    */
+   private static void assertUniform(CardRandom random)
+   {
+      int[] counts = new int[7];
+      for (int i = 0; i < 70000; i++)
+      {
+         counts[random.nextInt(7)]++;
+      }
+      double chiSquare = 0;
+      for (int count : counts)
+      {
+         chiSquare += (count - 10000.0) * (count - 10000.0) / 10000.0;
+      }
+      // 6 degrees of freedom: 22.46 is the 0.1% critical value
+      assertTrue(chiSquare < 22.46, "chi-square " + chiSquare);
+      for (int bound = 1; bound < 200; bound++)
+      {
+         int value = random.nextInt(bound);
+         assertTrue(value >= 0 && value < bound);
+      }
+   }
+
+   @Test
+   public void seededGeneratorsAreReproducibleAndUniform()
+   {
+      CardRandom[][] pairs = {
+         { CardRandom.seeded(42), CardRandom.seeded(42) },
+         { new SplittableCardRandom(42), new SplittableCardRandom(42) },
+         { CardRandom.wrap(new Random(42)), CardRandom.wrap(new Random(42)) },
+      };
+      for (CardRandom[] pair : pairs)
+      {
+         for (int i = 0; i < 1000; i++)
+         {
+            assertEquals(pair[0].nextLong(), pair[1].nextLong());
+            assertEquals(pair[0].nextInt(52), pair[1].nextInt(52));
+         }
+
+         // Splitting is reproducible too, and the child's stream is not the parent's
+         CardRandom child0 = pair[0].split();
+         CardRandom child1 = pair[1].split();
+         long parent = pair[0].nextLong();
+         pair[1].nextLong();
+         long child = child0.nextLong();
+         assertEquals(child, child1.nextLong());
+         assertNotEquals(parent, child);
+         assertUniform(pair[0]);
+         assertUniform(child0);
+      }
+
+      assertNotEquals(CardRandom.seeded(1).nextLong(), CardRandom.seeded(2).nextLong());
+      CardRandom zero = CardRandom.seeded(0);
+      assertTrue(zero.nextLong() != 0 || zero.nextLong() != 0, "seed 0 must still give a usable state");
+      assertThrows(IllegalArgumentException.class, () -> CardRandom.seeded(1).nextInt(0));
+      assertThrows(IllegalArgumentException.class, () -> CardRandom.wrap(null));
+
+      // The same seed shuffles a deck the same way, through either overload
+      Deck deck1 = new Deck();
+      Deck deck2 = new Deck();
+      deck1.shuffle(CardRandom.seeded(8));
+      deck2.shuffle(CardRandom.seeded(8));
+      assertArrayEquals(deck1.getCards(), deck2.getCards());
+      deck1.shuffle(new Random(3));
+      deck2.shuffle(CardRandom.wrap(new Random(3)));
+      assertArrayEquals(deck1.getCards(), deck2.getCards());
+      assertThrows(IllegalArgumentException.class, () -> deck1.shuffle((CardRandom) null));
+
+      // Seeded simulations repeat exactly on a pool of the same size
+      ForkJoinPool pool = new ForkJoinPool(3);
+      try
+      {
+         SimulationResult first = HighCardEngine.simulate(20000, 99, pool);
+         SimulationResult second = HighCardEngine.simulate(20000, 99, pool);
+         assertEquals(20000, first.getGames());
+         assertEquals(first.getPlayer1Wins(), second.getPlayer1Wins());
+         assertArrayEquals(first.getPlayer1Points(), second.getPlayer1Points());
+         assertArrayEquals(first.getPlayer2Points(), second.getPlayer2Points());
+      }
+      finally
+      {
+         pool.shutdown();
+      }
+   }
+
+   @Test
+   public void batchOperationsMatchOneCardAtATime()
+   {
+      for (int mode = 0; mode < 3; mode++)
+      {
+         Deck bulkDeck = new Deck();
+         Deck singleDeck = new Deck();
+         bulkDeck.shuffle(CardRandom.seeded(mode));
+         singleDeck.shuffle(CardRandom.seeded(mode));
+         Player[] bulk = { new Player("A", 1), new Player("B", 2), new Player("C", 3) };
+         Player[] single = { new Player("A", 1), new Player("B", 2), new Player("C", 3) };
+         for (int p = 0; p < 3; p++)
+         {
+            if (mode == 1)
+            {
+               bulk[p].useBitsetHand();
+            }
+            else if (mode == 2)
+            {
+               bulk[p].useRankedHand();
+               single[p].useRankedHand();
+            }
+         }
+
+         // Dealing is round-robin, the same as each player drawing in turn
+         bulkDeck.deal(bulk, 5);
+         for (int i = 0; i < 5; i++)
+         {
+            for (Player player : single)
+            {
+               player.draw(singleDeck);
+            }
+         }
+         assertEquals(singleDeck.size(), bulkDeck.size());
+
+         assertEquals(7, bulk[0].drawMany(bulkDeck, 7));
+         for (int i = 0; i < 7; i++)
+         {
+            single[0].draw(singleDeck);
+         }
+         for (int p = 0; p < 3; p++)
+         {
+            assertEquals(single[p].toString(), bulk[p].toString(), "mode " + mode);
+         }
+         assertArrayEquals(singleDeck.getCards(), bulkDeck.getCards());
+
+         // Running out deals the rest in order: 30 cards over 4 players of 10 each
+         bulkDeck.draw(bulkDeck.size() - 30);
+         Player[] more = { new Player("W", 1), new Player("X", 1), new Player("Y", 1), new Player("Z", 1) };
+         Card[] rest = bulkDeck.getCards();
+         bulkDeck.deal(more, 10);
+         assertEquals(0, bulkDeck.size());
+         for (int p = 0; p < 4; p++)
+         {
+            Card[] hand = more[p].getHand();
+            assertEquals(p < 2 ? 8 : 7, hand.length);
+            for (int i = 0; i < hand.length; i++)
+            {
+               assertSame(rest[p + 4 * i], hand[i]);
+            }
+         }
+         assertEquals(0, more[0].drawMany(bulkDeck, 3));
+      }
+
+      DiscardPile pile = new DiscardPile();
+      pile.addAll(new Card[] { Card.byId(1), null, Card.byId(2) });
+      pile.addAll(shoe(1));
+      assertEquals(54, pile.size());
+      assertSame(Card.byId(51), pile.peekTop());
+
+      Deck deck = new Deck();
+      assertThrows(IllegalArgumentException.class, () -> deck.deal(null, 1));
+      assertThrows(IllegalArgumentException.class, () -> deck.deal(new Player[] { null }, 1));
+      assertThrows(IllegalArgumentException.class, () -> deck.deal(new Player[0], -1));
+      assertThrows(IllegalArgumentException.class, () -> new Player("A", 1).drawMany(null, 1));
+      assertThrows(IllegalArgumentException.class, () -> pile.addAll(null));
+      assertThrows(IllegalArgumentException.class, () -> deck.reshuffle(null));
+      deck.deal(new Player[0], 5);
+      assertEquals(52, deck.size());
+   }
+
+   @Test
+   public void gameSnapshotRoundTripsEveryHandMode()
+   {
+      Random random = new Random(11);
+      for (int trial = 0; trial < 200; trial++)
+      {
+         Deck deck = new Deck(shoe(2));
+         deck.shuffle(CardRandom.seeded(trial));
+         if (trial % 2 == 0)
+         {
+            deck.addCard(new Card("Joker", "Wild", 15));
+         }
+         // The bitset hand gets distinct standard cards in a random order; the others may repeat
+         Card[] distinct = shoe(1);
+         Collections.shuffle(Arrays.asList(distinct), random);
+         Player[] players = {
+            new Player("Array", 30, new Card[] { new Card("Knight", "Cups", 12) }),
+            new Player("Bitset", 31, Arrays.copyOf(distinct, random.nextInt(14))),
+            new Player("Ranked", 32) };
+         assertTrue(players[1].useBitsetHand());
+         players[2].useRankedHand();
+         DiscardPile pile = new DiscardPile();
+         for (int i = 0; i < 20; i++)
+         {
+            players[random.nextInt(3) == 0 ? 0 : 2].draw(deck);
+            if (random.nextInt(4) == 0)
+            {
+               pile.addCard(deck.draw());
+            }
+         }
+         pile.addCard(new Card("Joker", "Wild", 15));
+
+         GameSnapshot snapshot = new GameSnapshot(deck, players, pile);
+         ByteBuffer encoded = snapshot.encode();
+         assertEquals(snapshot.encodedSize(), encoded.remaining());
+         GameSnapshot decoded = GameSnapshot.decode(encoded);
+         assertEquals(0, encoded.remaining());
+
+         assertArrayEquals(deck.getCards(), decoded.getDeck().getCards());
+         assertArrayEquals(pile.getCards(), decoded.getDiscardPile().getCards());
+         for (int p = 0; p < 3; p++)
+         {
+            Player player = decoded.getPlayers()[p];
+            assertEquals(players[p].getName(), player.getName());
+            assertEquals(players[p].getAge(), player.getAge());
+            assertEquals(players[p].isBitsetHand(), player.isBitsetHand());
+            assertEquals(players[p].isRankedHand(), player.isRankedHand());
+            assertArrayEquals(players[p].getHand(), player.getHand());
+            assertEquals(players[p].toString(), player.toString());
+         }
+         assertArrayEquals(snapshot.encode().array(), decoded.encode().array());
+      }
+
+      // Names that do not fit the unsigned short lengths are rejected rather than cut short
+      char[] longName = new char[0x10000];
+      Arrays.fill(longName, 'n');
+      Player longNamed = new Player(new String(longName), 1);
+      GameSnapshot tooLong = new GameSnapshot(new Deck(), new Player[] { longNamed }, new DiscardPile());
+      assertThrows(IllegalArgumentException.class, () -> tooLong.encodedSize());
+      assertThrows(IllegalArgumentException.class, () -> tooLong.encode());
+      longName[0xFFFF] = ' ';
+      Player longest = new Player(new String(longName, 0, 0xFFFF), 1);
+      GameSnapshot fits = new GameSnapshot(new Deck(), new Player[] { longest }, new DiscardPile());
+      assertEquals(longest.getName(), GameSnapshot.decode(fits.encode()).getPlayers()[0].getName());
+
+      // More distinct strings than a short index can address are rejected too
+      Deck custom = new Deck(new Card[0]);
+      for (int i = 0; i < 0x8000; i++)
+      {
+         custom.addCard(new Card("N" + i, "S" + i, i + 1));
+      }
+      assertThrows(IllegalArgumentException.class,
+            () -> new GameSnapshot(custom, new Player[0], new DiscardPile()).encode());
+
+      ByteBuffer truncated = new GameSnapshot(new Deck(), new Player[0], new DiscardPile()).encode();
+      truncated.limit(truncated.limit() - 1);
+      assertThrows(IllegalArgumentException.class, () -> GameSnapshot.decode(truncated));
+   }
+
+   @Test
+   public void gameEventLogReopensAndReplaysPastTornGroups(@TempDir Path directory) throws IOException
+   {
+      // 29 records a game over 16-record segments, so games straddle segment files
+      GameEventLog log = new GameEventLog(directory, 16, 4);
+      byte[] expected = null;
+      int[] points = null;
+      for (int game = 0; game < 3; game++)
+      {
+         if (game == 2)
+         {
+            // Reopening with another segment size keeps the size the log was created with
+            log.close();
+            log = new GameEventLog(directory, 7, 4);
+            assertEquals(16, log.getSegmentRecords());
+            assertEquals(58, log.getEventCount());
+         }
+         Player[] players = { new Player("Ann " + game, 20 + game), new Player("Bob " + game, 30 + game) };
+         Deck deck = new Deck();
+         deck.shuffle(CardRandom.seeded(game));
+         DiscardPile pile = new DiscardPile();
+         points = HighCardEngine.playGame(players[0], players[1], deck, pile, log);
+         assertEquals(29L * (game + 1), log.getEventCount());
+         expected = new GameSnapshot(deck, players, pile).encode().array();
+
+         GameEventReplayer replayer = new GameEventReplayer(directory);
+         assertArrayEquals(expected, replayer.replay().encode().array());
+         assertArrayEquals(points, replayer.getPoints());
+         assertEquals(log.getEventCount(), replayer.getReplayedEvents());
+      }
+
+      // Names the record cannot hold are rejected before anything is written
+      String longest = "abcdefghijklmnopqrstuvwxyzAB";
+      Player[] tooLong = { new Player(longest, 1), new Player(longest + "C", 2) };
+      final GameEventLog reopened = log;
+      assertThrows(IllegalArgumentException.class, () -> reopened.logNewGame(tooLong));
+      assertEquals(87, log.getEventCount());
+
+      // A game cut short inside its seats or its deck leaves the previous game current
+      Player[] next = { new Player(longest, 1), new Player("Cy", 2) };
+      log.logNewGame(next);
+      log.logShuffle(new Deck(shoe(2)));
+      assertEquals(92, log.getEventCount());
+      GameEventReplayer replayer = new GameEventReplayer(directory);
+      assertArrayEquals(expected, replayer.replay(89).encode().array());
+      assertArrayEquals(points, replayer.getPoints());
+      GameSnapshot seated = replayer.replay(91);
+      assertEquals(longest, seated.getPlayers()[0].getName());
+      assertEquals(0, seated.getDeck().size());
+      assertEquals(104, replayer.replay().getDeck().size());
+      log.close();
+
+      // Tear the deck's continuation record, then the second seat, as a crash would
+      tearRecord(directory, 91);
+      assertEquals(0, replayer.replay().getDeck().size());
+      assertEquals(2, replayer.replay().getPlayers().length);
+      tearRecord(directory, 89);
+      assertArrayEquals(expected, replayer.replay().encode().array());
+      assertEquals(89, replayer.getReplayedEvents());
+
+      // Writing resumes over the torn tail, and replay skips what is left of the torn game
+      log = new GameEventLog(directory);
+      assertEquals(89, log.getEventCount());
+      Player[] last = { new Player("Dee", 40), new Player("Eve", 41) };
+      Deck deck = new Deck();
+      deck.shuffle(CardRandom.seeded(3));
+      DiscardPile pile = new DiscardPile();
+      points = HighCardEngine.playGame(last[0], last[1], deck, pile, log);
+      log.close();
+      assertArrayEquals(new GameSnapshot(deck, last, pile).encode().array(), replayer.replay().encode().array());
+      assertArrayEquals(points, replayer.getPoints());
+   }
+
+   /**
+    * Clears the type byte of one record of a log made of 16-record segments
+    * @param directory the log directory
+    * @param event the record's offset in the log
+    * @throws IOException if the segment cannot be written
+    */
+   private static void tearRecord(Path directory, int event) throws IOException
+   {
+      patchRecord(directory, event, 0, new byte[1]);
+   }
+
+   /**
+    * Overwrites bytes of one record of a log made of 16-record segments
+    * @param directory the log directory
+    * @param event the record's offset in the log
+    * @param offset the offset of the first byte within the record
+    * @param bytes the new bytes
+    * @throws IOException if the segment cannot be written
+    */
+   private static void patchRecord(Path directory, int event, int offset, byte[] bytes) throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(
+            GameEventLog.segmentPath(directory, event / 16), StandardOpenOption.WRITE))
+      {
+         channel.write(ByteBuffer.wrap(bytes), (long) (event % 16) * GameEventLog.RECORD_SIZE + offset);
+      }
+   }
+
+   @Test
+   public void gameEventReplayRejectsCorruptRecords(@TempDir Path directory) throws IOException
+   {
+      // One game is 29 records: a new game, two seats, a deck, ten draws, then a discard, discard and round per round
+      byte[] hugeDeck = ByteBuffer.allocate(4).putInt(Integer.MAX_VALUE).array();
+      byte[] negativeDeck = ByteBuffer.allocate(4).putInt(-1).array();
+      int[][] patches = {
+         { 3, 4 },    // deck size
+         { 3, 4 },
+         { 3, 8 },    // a card id in the deck's payload
+         { 4, 2 },    // the card drawn
+         { 14, 2 },   // the card discarded
+         { 5, 0 },    // the record type
+         { 5, 1 }     // the seat drawing
+      };
+      byte[][] values = { hugeDeck, negativeDeck, { (byte) 52 }, { (byte) 0xFE }, { (byte) 200 }, { 99 }, { 7 } };
+
+      for (int i = 0; i < patches.length; i++)
+      {
+         Path log = directory.resolve("log" + i);
+         try (GameEventLog writer = new GameEventLog(log, 16, 4))
+         {
+            Deck deck = new Deck();
+            deck.shuffle(CardRandom.seeded(i));
+            HighCardEngine.playGame(new Player("Ann", 20), new Player("Bob", 30), deck, new DiscardPile(), writer);
+         }
+         GameEventReplayer replayer = new GameEventReplayer(log);
+         assertEquals(52 - 2 * HighCardEngine.HAND_SIZE, replayer.replay().getDeck().size());
+
+         patchRecord(log, patches[i][0], patches[i][1], values[i]);
+         assertThrows(IllegalStateException.class, replayer::replay, "patch " + i);
+      }
+
+      GameEventLog writer = new GameEventLog(directory.resolve("big"), 16, 4);
+      assertThrows(IllegalArgumentException.class, () -> writer.logShuffle(new Deck(shoe(GameEventLog.MAX_DECK_SIZE / 52 + 1))));
+      assertEquals(0, writer.getEventCount());
+      writer.close();
+   }
+
+   @Test
+   public void operationMetricsBucketsAreContiguousAndWithinAnEighth()
+   {
+      // Every latency lands in a bucket whose bounds hold it, and the buckets tile the range in order
+      Random random = new Random(13);
+      for (int i = 0; i < 100000; i++)
+      {
+         long nanos = i < 5000 ? i : random.nextLong() >>> (1 + random.nextInt(63));
+         int bucket = OperationMetrics.bucketOf(nanos);
+         long lower = bucket == 0 ? 0 : OperationMetrics.upperBoundOf(bucket - 1) + 1;
+         assertTrue(lower <= nanos, "latency " + nanos);
+         assertTrue(OperationMetrics.bucketOf(nanos + 1) >= bucket);
+         if (nanos < 1L << 40)
+         {
+            long upper = OperationMetrics.upperBoundOf(bucket);
+            assertTrue(nanos <= upper, "latency " + nanos);
+            assertTrue(upper - lower <= lower / 8, "latency " + nanos);
+         }
+      }
+      for (int bucket = 0; bucket < OperationMetrics.bucketOf(Long.MAX_VALUE); bucket++)
+      {
+         long upper = OperationMetrics.upperBoundOf(bucket);
+         assertEquals(bucket, OperationMetrics.bucketOf(upper));
+         assertEquals(bucket + 1, OperationMetrics.bucketOf(upper + 1));
+      }
+      assertEquals(OperationMetrics.bucketOf(1L << 40), OperationMetrics.bucketOf((1L << 40) - 1));
+      assertEquals(OperationMetrics.bucketOf(1L << 40), OperationMetrics.bucketOf(Long.MAX_VALUE));
+
+      // Two slow calls in a thousand show up in p99.9 but not in p50 or p99
+      OperationMetrics metrics = new OperationMetrics("Test.op");
+      assertEquals(0, metrics.getP50Nanos());
+      for (int i = 0; i < 998; i++)
+      {
+         metrics.record(System.nanoTime(), i);
+      }
+      metrics.record(System.nanoTime() - 1000000000L, 6);
+      metrics.record(System.nanoTime() - 1000000000L, 7);
+      assertEquals(1000, metrics.getCount());
+      assertEquals(7, metrics.getLastSize());
+      assertTrue(metrics.getMaxNanos() >= 1000000000L);
+      assertTrue(metrics.getP99Nanos() < 1000000000L);
+      assertTrue(metrics.getP50Nanos() <= metrics.getP99Nanos());
+      assertEquals(metrics.getMaxNanos(), metrics.getPercentileNanos(1.0));
+      assertTrue(metrics.getP999Nanos() >= 1000000000L && metrics.getP999Nanos() <= metrics.getMaxNanos());
+      assertTrue(metrics.getMeanNanos() >= 1000000.0);
+      metrics.reset();
+      assertEquals(0, metrics.getCount());
+      assertEquals(0, metrics.getMaxNanos());
+      assertEquals(0, metrics.getP999Nanos());
+   }
+
+   @Test
+   public void rankedHandMatchesAnArrayHand()
+   {
+      Random random = new Random(14);
+      Card[] shoe = shoe(3);
+      Card[] cards = Arrays.copyOf(shoe, shoe.length + 6);
+      cards[shoe.length] = new Card("Knight", "Cups", 15);
+      cards[shoe.length + 1] = new Card("Knight", "Cups", 15);
+      cards[shoe.length + 2] = new Card("Queen", "Cups", 20);
+      cards[shoe.length + 3] = new Card("King", "Cups", 20);
+      cards[shoe.length + 4] = new Card("Fool", "Trumps", 1);
+      cards[shoe.length + 5] = new Card("World", "Trumps", 99);
+      for (int trial = 0; trial < 50; trial++)
+      {
+         Deck arrayDeck = new Deck(cards);
+         arrayDeck.shuffle(CardRandom.seeded(trial));
+         Deck rankedDeck = new Deck(arrayDeck.getCards());
+         DiscardPile arrayPile = new DiscardPile();
+         DiscardPile rankedPile = new DiscardPile();
+         Player array = new Player("Array", 1);
+         Player ranked = new Player("Ranked", 1);
+         ranked.useRankedHand();
+         assertTrue(ranked.isRankedHand());
+         assertNull(ranked.getHighestCard());
+         assertThrows(IllegalStateException.class, () -> ranked.playLowest(rankedPile));
+
+         for (int step = 0; step < 400; step++)
+         {
+            int op = random.nextInt(10);
+            if (op < 4 || array.size() == 0)
+            {
+               int count = 1 + random.nextInt(8);
+               assertEquals(array.drawMany(arrayDeck, count), ranked.drawMany(rankedDeck, count));
+            }
+            else if (op == 4)
+            {
+               assertSame(array.playHighest(arrayPile), ranked.playHighest(rankedPile));
+            }
+            else if (op == 5)
+            {
+               assertSame(array.playLowest(arrayPile), ranked.playLowest(rankedPile));
+            }
+            else
+            {
+               // Equal cards are interchangeable, so pick by value from a fresh copy
+               Card[] hand = array.getHand();
+               Card card = hand[random.nextInt(hand.length)];
+               Card copy = new Card(card.getName(), card.getSuit(), card.getValue());
+               if (op < 8)
+               {
+                  assertEquals(array.discardCard(copy, arrayPile), ranked.discardCard(copy, rankedPile));
+               }
+               else
+               {
+                  assertEquals(array.returnCard(copy, arrayDeck), ranked.returnCard(copy, rankedDeck));
+               }
+               Card absent = new Card("Absent", "Cups", 3);
+               assertFalse(ranked.hasCard(absent));
+               assertFalse(ranked.discardCard(absent, rankedPile));
+            }
+
+            // The ranked hand lists the array hand sorted by value, equal values in the order added
+            Card[] expected = array.getHand().clone();
+            Arrays.sort(expected, Comparator.comparingInt(Card::getValue));
+            Card[] actual = ranked.getHand();
+            assertEquals(expected.length, actual.length);
+            for (int i = 0; i < expected.length; i++)
+            {
+               assertSame(expected[i], actual[i], "trial " + trial + " step " + step);
+               assertTrue(ranked.hasCard(expected[i]));
+            }
+            assertEquals(array.size(), ranked.size());
+            assertSame(array.getHighestCard(), ranked.getHighestCard());
+            assertArrayEquals(arrayDeck.getCards(), rankedDeck.getCards());
+            assertArrayEquals(arrayPile.getCards(), rankedPile.getCards());
+         }
+
+         // Switching modes keeps the cards, and a cleared ranked hand stays ranked
+         Card[] before = ranked.getHand();
+         if (ranked.useBitsetHand())
+         {
+            ranked.useRankedHand();
+         }
+         assertArrayEquals(before, ranked.getHand());
+         ranked.clearHand();
+         assertTrue(ranked.isRankedHand());
+         assertEquals(0, ranked.size());
+         assertEquals(0, ranked.getHand().length);
+      }
+   }
+
+   @Test
+   public void swissByesGoRoundAnOddField() throws InterruptedException
+   {
+      // Twelve rounds over five players: every player sits out twice before anyone sits out a third time
+      Tournament tournament = new Tournament(Tournament.Format.SWISS, 15);
+      tournament.setRounds(12);
+      for (int i = 0; i < 5; i++)
+      {
+         tournament.register(new Player("Player " + i, 20));
+      }
+      List<Tournament.Standing> standings = tournament.run();
+      int byes = 0;
+      for (Tournament.Standing standing : standings)
+      {
+         assertTrue(standing.getByes() == 2 || standing.getByes() == 3, standing.toString());
+         assertEquals(12, standing.getWins() + standing.getLosses() + standing.getTies());
+         byes += standing.getByes();
+      }
+      assertEquals(12, byes);
+      assertEquals(24, tournament.getTablesPlayed());
+   }
+
+   @Test
+   public void cardsAreCanonicalAndCompareLikeTheOriginalCard() throws IOException
+   {
+      for (int id = 0; id < Card.STANDARD_COUNT; id++)
+      {
+         Card card = Card.byId(id);
+         assertSame(card, Card.of(card.getName(), card.getSuit()));
+         assertSame(card, Card.of(" " + card.getName() + " ", card.getSuit() + " "));
+         Card copy = new Card(card.getName(), card.getSuit(), card.getValue());
+         assertNotSame(card, copy);
+         assertSame(card, copy.canonical());
+         assertEquals(id, copy.getId());
+      }
+      Card joker = new Card("Joker", "Wild", 15);
+      assertSame(joker, joker.canonical());
+      assertThrows(IllegalArgumentException.class, () -> Card.of("Joker", "Hearts"));
+      assertThrows(IllegalArgumentException.class, () -> Card.of("Ace", null));
+      assertThrows(IllegalArgumentException.class, () -> Card.byId(Card.STANDARD_COUNT));
+
+      // equals is still name, suit and value equality, and hashCode agrees with it
+      String[] names = { "Ace", "2", "10", "King", " Ace", "Joker" };
+      String[] suits = { "Hearts", "Spades", "Spades ", "Wild" };
+      int[] values = { 1, 2, 10, 13, 14, 15 };
+      List<Card> cards = new ArrayList<>();
+      for (String name : names)
+      {
+         for (String suit : suits)
+         {
+            for (int value : values)
+            {
+               cards.add(new Card(name, suit, value));
+            }
+         }
+      }
+      for (Card a : cards)
+      {
+         for (Card b : cards)
+         {
+            boolean same = a.getName().equals(b.getName()) && a.getSuit().equals(b.getSuit())
+                  && a.getValue() == b.getValue();
+            assertEquals(same, a.equals(b), a + " " + a.getValue() + " vs " + b + " " + b.getValue());
+            assertEquals(same, a.canonical().equals(b.canonical()));
+            if (same)
+            {
+               assertEquals(a.hashCode(), b.hashCode());
+            }
+         }
+         if (a.isStandard())
+         {
+            assertSame(Card.of(a.getName(), a.getSuit()), a.canonical());
+         }
+         assertFalse(a.equals(null));
+         assertFalse(a.equals(a.toString()));
+      }
+      assertFalse(Card.of("Ace", "Hearts").equals(new Card("Ace", "Hearts", 1)));
+
+      // appendTo writes exactly what toString() returns, in the original formats
+      Random random = new Random(16);
+      for (int trial = 0; trial < 200; trial++)
+      {
+         Player player = new Player("Player " + trial, trial);
+         int mode = trial % 3;
+         if (mode == 1)
+         {
+            player.useBitsetHand();
+         }
+         else if (mode == 2)
+         {
+            player.useRankedHand();
+         }
+         Deck deck = new Deck(mode == 1 ? shoe(1) : cards.toArray(new Card[0]));
+         deck.shuffle(CardRandom.seeded(trial));
+         DiscardPile pile = new DiscardPile();
+         player.drawMany(deck, random.nextInt(10));
+         for (int i = random.nextInt(10); i > 0; i--)
+         {
+            pile.addCard(deck.draw());
+         }
+
+         StringBuilder expected = new StringBuilder(player.getName()).append(", ").append(player.getAge());
+         Card[] hand = player.getHand();
+         expected.append(hand.length > 0 ? ", " : ".");
+         for (int i = 0; i < hand.length; i++)
+         {
+            expected.append(hand[i].getName()).append(" of ").append(hand[i].getSuit());
+            expected.append(i < hand.length - 1 ? ", " : ".");
+         }
+         assertEquals(expected.toString(), player.toString());
+         StringWriter writer = new StringWriter();
+         player.appendTo(writer);
+         assertEquals(expected.toString(), writer.toString());
+         assertEquals("x" + expected, player.appendTo(new StringBuilder("x")).toString());
+
+         Card[] piled = pile.getCards();
+         expected.setLength(0);
+         for (int i = 0; i < piled.length; i++)
+         {
+            expected.append(piled[i].getName()).append(" of ").append(piled[i].getSuit());
+            expected.append(i < piled.length - 1 ? ", " : ".");
+         }
+         String pileText = piled.length == 0 ? "Empty discard pile" : expected.toString();
+         assertEquals(pileText, pile.toString());
+         writer = new StringWriter();
+         pile.appendTo(writer);
+         assertEquals(pileText, writer.toString());
+         assertEquals(pileText, pile.appendTo(new StringBuilder()).toString());
+
+         for (Card card : hand)
+         {
+            writer = new StringWriter();
+            card.appendTo(writer);
+            assertEquals(card.getName() + " of " + card.getSuit(), writer.toString());
+            assertSame(card.toString(), card.toString());
+         }
+      }
+   }
+
+   @Test
+   public void winEstimateKeepsSamplingNearlyCertainPositions()
+   {
+      // Player 1 holds two Aces and a King against a 2 with three rounds left, so a tie
+      // needs player 2 to be dealt both other Aces: about 0.09% once player 2 leads by a point
+      Card[] hand1 = { Card.of("Ace", "Hearts"), Card.of("Ace", "Clubs"), Card.of("King", "Hearts") };
+      Card[] hand2 = { Card.of("2", "Hearts") };
+      List<Card> rest = new ArrayList<>(Arrays.asList(shoe(1)));
+      rest.removeAll(Arrays.asList(hand1));
+      rest.removeAll(Arrays.asList(hand2));
+      ForkJoinPool pool = new ForkJoinPool(1);
+      try
+      {
+         for (int lead2 = 0; lead2 <= 1; lead2++)
+         {
+            Player player1 = new Player("A", 1, hand1.clone());
+            Player player2 = new Player("B", 1, hand2.clone());
+            Deck deck = new Deck(rest.toArray(new Card[0]));
+            WinOdds exact = new ExactOddsSolver(player1, player2, deck, 3, 0, lead2).solve();
+            assertEquals(lead2 == 0 ? 1.0 : 0.9991, exact.getPlayer1Win(), 0.0001);
+            for (long seed = 0; seed < 5; seed++)
+            {
+               WinOdds odds = new WinProbabilityEstimator(player1, player2, deck, 3, 0, lead2)
+                     .estimate(0.0005, 10000000L, seed, pool);
+               // Never seeing an outcome does not make its probability exactly known
+               assertTrue(odds.getHalfWidth() > 0.0003 && odds.getHalfWidth() <= 0.0005, odds.toString());
+               assertTrue(odds.getSamples() > 2048, odds.toString());
+               assertEquals(exact.getPlayer1Win(), odds.getPlayer1Win(), 2 * odds.getHalfWidth(), odds.toString());
+               assertEquals(exact.getTie(), odds.getTie(), 2 * odds.getHalfWidth(), odds.toString());
+               assertEquals(0.0, odds.getPlayer2Win());
+            }
+         }
+      }
+      finally
+      {
+         pool.shutdown();
+      }
+   }
+
+   @Test
+   public void exactOddsMatchBruteForceOverEveryDeal()
+   {
+      Random random = new Random(18);
+      for (int trial = 0; trial < 300; trial++)
+      {
+         // Few distinct values, so ties within and between hands are common
+         int values = 1 + random.nextInt(6);
+         int rounds = random.nextInt(5);
+         Card[] hand1 = randomCards(random, random.nextInt(4), values);
+         Card[] hand2 = randomCards(random, random.nextInt(4), values);
+         int deal = Math.max(0, rounds - hand1.length) + Math.max(0, rounds - hand2.length);
+         Card[] deckCards = randomCards(random, deal + random.nextInt(11 - deal), values);
+         int points1 = random.nextInt(3);
+         int points2 = random.nextInt(3);
+
+         WinOdds odds = new ExactOddsSolver(new Player("A", 1, hand1), new Player("B", 1, hand2),
+               new Deck(deckCards), rounds, points1, points2).solve();
+
+         // Every way of dealing the missing cards to player 1 and then player 2 is equally likely
+         long[] outcomes = new long[3];
+         int deal1 = Math.max(0, rounds - hand1.length);
+         int deal2 = Math.max(0, rounds - hand2.length);
+         int full = (1 << deckCards.length) - 1;
+         for (int mask1 = 0; mask1 <= full; mask1++)
+         {
+            if (Integer.bitCount(mask1) != deal1)
+            {
+               continue;
+            }
+            for (int mask2 = full & ~mask1; ; mask2 = (mask2 - 1) & full & ~mask1)
+            {
+               if (Integer.bitCount(mask2) == deal2)
+               {
+                  int lead = points1 - points2 + playHighestFirst(hand1, mask1, hand2, mask2, deckCards, rounds);
+                  outcomes[lead > 0 ? 0 : lead < 0 ? 1 : 2]++;
+               }
+               if (mask2 == 0)
+               {
+                  break;
+               }
+            }
+         }
+         double total = outcomes[0] + outcomes[1] + outcomes[2];
+         String position = "trial " + trial + ": " + Arrays.toString(hand1) + " vs "
+               + Arrays.toString(hand2) + " from " + Arrays.toString(deckCards);
+         assertEquals(outcomes[0] / total, odds.getPlayer1Win(), 1e-9, position);
+         assertEquals(outcomes[1] / total, odds.getPlayer2Win(), 1e-9, position);
+         assertEquals(outcomes[2] / total, odds.getTie(), 1e-9, position);
+      }
+   }
+
+   /**
+    * Builds cards with random values, using few names so equal cards repeat
+    * @param random the generator
+    * @param count the number of cards
+    * @param values the highest value, from 1
+    * @return the cards
+    */
+   private static Card[] randomCards(Random random, int count, int values)
+   {
+      Card[] cards = new Card[count];
+      for (int i = 0; i < count; i++)
+      {
+         int value = 1 + random.nextInt(values);
+         cards[i] = new Card("Card " + value, "Suit " + random.nextInt(2), value);
+      }
+      return cards;
+   }
+
+   /**
+    * Plays rounds of highest card against highest card
+    * @param hand1 player 1's hand
+    * @param mask1 the deck cards dealt to player 1
+    * @param hand2 player 2's hand
+    * @param mask2 the deck cards dealt to player 2
+    * @param deck the deck
+    * @param rounds the number of rounds to play
+    * @return player 1's round wins minus player 2's
+    */
+   private static int playHighestFirst(Card[] hand1, int mask1, Card[] hand2, int mask2, Card[] deck, int rounds)
+   {
+      int[] values1 = handValues(hand1, deck, mask1);
+      int[] values2 = handValues(hand2, deck, mask2);
+      int lead = 0;
+      for (int round = 0; round < rounds; round++)
+      {
+         lead += Integer.signum(values1[values1.length - 1 - round] - values2[values2.length - 1 - round]);
+      }
+      return lead;
+   }
+
+   /**
+    * Returns the sorted values of a hand plus the deck cards selected by a mask
+    * @param hand the hand
+    * @param deck the deck
+    * @param mask bit i set if deck card i is in the hand
+    * @return the values, lowest first
+    */
+   private static int[] handValues(Card[] hand, Card[] deck, int mask)
+   {
+      int[] values = new int[hand.length + Integer.bitCount(mask)];
+      int index = 0;
+      for (Card card : hand)
+      {
+         values[index++] = card.getValue();
+      }
+      for (int i = 0; i < deck.length; i++)
+      {
+         if ((mask & (1 << i)) != 0)
+         {
+            values[index++] = deck[i].getValue();
+         }
+      }
+      Arrays.sort(values);
+      return values;
+   }
+
+   @Test
+   public void standardDecksAreCopiedFromTheTemplate()
+   {
+      // Odd counts exercise the partial copy after the last doubling
+      for (int copies = 1; copies <= 13; copies++)
+      {
+         Card[] cards = Deck.standardCards(copies);
+         assertEquals(copies * Card.STANDARD_COUNT, cards.length);
+         for (int i = 0; i < cards.length; i++)
+         {
+            assertSame(Card.byId(i % Card.STANDARD_COUNT), cards[i], copies + " copies, card " + i);
+         }
+         Deck shoe = Deck.standard(copies);
+         assertEquals(cards.length, shoe.size());
+         assertArrayEquals(cards, shoe.getCards());
+
+         // Each call gets its own array, so changing one leaves the template alone
+         cards[0] = null;
+         shoe.draw(shoe.size());
+      }
+      assertSame(Card.byId(0), Deck.standardCards(1)[0]);
+      assertArrayEquals(Deck.standardCards(1), new Deck().getCards());
+      assertEquals(52, new Deck().size());
+      assertThrows(IllegalArgumentException.class, () -> Deck.standard(0));
+   }
+
+   @Test
+   public void tableStoreMatchesGameContextGameForGame()
+   {
+      TableStore store = new TableStore(50000);
+      CardRandom storeRandom = CardRandom.seeded(22);
+      CardRandom contextRandom = CardRandom.seeded(22);
+      GameContext context = new GameContext();
+
+      // Four passes over the store, so 200,000 seeded games in all
+      for (int pass = 0; pass < 4; pass++)
+      {
+         SimulationResult stored = new SimulationResult(HighCardEngine.ROUNDS);
+         store.reset(0, store.getTableCount());
+         store.shuffle(0, store.getTableCount(), storeRandom);
+         store.deal(0, store.getTableCount(), HighCardEngine.HAND_SIZE);
+         store.play(0, store.getTableCount(), stored);
+
+         SimulationResult played = new SimulationResult(HighCardEngine.ROUNDS);
+         for (int table = 0; table < store.getTableCount(); table++)
+         {
+            context.reset(contextRandom);
+            context.play();
+            played.record(context.getPoints1(), context.getPoints2());
+
+            assertArrayEquals(context.getDeck().getCards(), store.deckOf(table).getCards(), "deck of table " + table);
+            assertArrayEquals(cardValues(context.getDiscardPile().getCards()),
+                              cardValues(store.discardPileOf(table).getCards()), "discard pile of table " + table);
+            assertEquals(0, store.handSize(table, 1));
+            assertEquals(0, store.handSize(table, 2));
+         }
+
+         assertEquals(played.getGames(), stored.getGames());
+         assertEquals(played.getPlayer1Wins(), stored.getPlayer1Wins());
+         assertEquals(played.getPlayer2Wins(), stored.getPlayer2Wins());
+         assertArrayEquals(played.getPlayer1Points(), stored.getPlayer1Points());
+         assertArrayEquals(played.getPlayer2Points(), stored.getPlayer2Points());
+      }
+   }
+
+   /**
+    * Returns the values of some cards, in order
+    * @param cards the cards
+    * @return the values
+    */
+   private static int[] cardValues(Card[] cards)
+   {
+      int[] values = new int[cards.length];
+      for (int i = 0; i < cards.length; i++)
+      {
+         values[i] = cards[i].getValue();
+      }
+      return values;
+   }
+
+   @Test
+   public void tableStoreRejectsMoreThanADeckPerTable()
+   {
+      TableStore store = new TableStore(2);
+      store.reset(0, 2);
+      Card[] standard = new Deck().getCards();
+
+      // Fifty discards and two full hands would spill ten cards past the discard region when played
+      Card[] discarded = Arrays.copyOfRange(standard, 0, 50);
+      Card[] hand = Arrays.copyOfRange(standard, 47, 52);
+      assertThrows(IllegalArgumentException.class, () -> store.save(0, new Deck(new Card[0]), new Player("A", 0, hand),
+                                                                    new Player("B", 0, hand), new DiscardPile(discarded)));
+      assertThrows(IllegalArgumentException.class, () -> store.save(0, new Deck(), new Player("A", 0, hand),
+                                                                    new Player("B", 0, new Card[0]), new DiscardPile()));
+      assertEquals(52, store.deckSize(0));
+      assertEquals(0, store.discardSize(0));
+
+      // Exactly one deck's worth is accepted, and playing it out stays within the table
+      store.save(0, new Deck(new Card[0]), new Player("A", 0, Arrays.copyOfRange(standard, 0, 5)),
+                 new Player("B", 0, Arrays.copyOfRange(standard, 5, 10)),
+                 new DiscardPile(Arrays.copyOfRange(standard, 10, 52)));
+      store.play(0, 1, new SimulationResult(HighCardEngine.HAND_SIZE));
+      assertEquals(52, store.discardSize(0));
+      assertEquals(0, store.deckSize(0));
+      assertArrayEquals(standard, store.deckOf(1).getCards());
+      assertEquals(0, store.discardSize(1));
+   }
+
+   @Test
+   public void persistentStructuresMatchTheirMutableModels()
+   {
+      Random random = new Random(23);
+      Card[] customs = { new Card("Joker", "Red", 50), new Card("Ace", "Hearts", 1) };
+      for (int run = 0; run < 20; run++)
+      {
+         PersistentVector<Card> vector = PersistentVector.empty();
+         List<Card> list = new ArrayList<>();
+         PersistentDeck persistentDeck = PersistentDeck.standard();
+         Deck deck = new Deck();
+         PersistentPlayer persistentPlayer = new PersistentPlayer("Ann", 30);
+         Player player = new Player("Ann", 30);
+         PersistentDiscardPile persistentPile = PersistentDiscardPile.empty();
+         DiscardPile pile = new DiscardPile();
+         CardRandom persistentShuffles = CardRandom.seeded(run);
+         CardRandom shuffles = CardRandom.seeded(run);
+
+         // Old versions must never change, whatever is done to the versions after them
+         List<Object[]> snapshots = new ArrayList<>();
+
+         for (int step = 0; step < 5000; step++)
+         {
+            Card card = random.nextInt(5) == 0 ? customs[random.nextInt(customs.length)]
+                                               : Card.byId(random.nextInt(12));
+            switch (random.nextInt(9))
+            {
+               case 0:
+                  vector = vector.append(card);
+                  list.add(card);
+                  break;
+               case 1:
+                  if (!list.isEmpty())
+                  {
+                     int index = random.nextInt(list.size());
+                     vector = vector.set(index, card);
+                     list.set(index, card);
+                  }
+                  break;
+               case 2:
+                  if (!list.isEmpty())
+                  {
+                     vector = vector.pop();
+                     list.remove(list.size() - 1);
+                  }
+                  break;
+               case 3:
+                  // Draws slightly outpace additions, so the deck both empties and trims its drawn cards
+                  assertSame(deck.size() == 0 ? null : deck.cardAt(0), persistentDeck.top());
+                  persistentPlayer = persistentPlayer.draw(persistentDeck);
+                  persistentDeck = persistentDeck.draw();
+                  player.draw(deck);
+                  break;
+               case 4:
+                  persistentDeck = persistentDeck.addCard(card);
+                  deck.addCard(card);
+                  break;
+               case 5:
+                  if (deck.size() > 0 && random.nextInt(20) == 0)
+                  {
+                     persistentDeck = persistentDeck.shuffle(persistentShuffles);
+                     deck.shuffle(shuffles);
+                  }
+                  break;
+               case 6:
+                  persistentPlayer = persistentPlayer.addCard(card);
+                  player.draw(new Deck(new Card[] { card }));
+                  break;
+               case 7:
+                  boolean held = player.discardCard(card, pile);
+                  assertEquals(held, persistentPlayer.hasCard(card));
+                  if (held)
+                  {
+                     persistentPlayer = persistentPlayer.discardCard(card);
+                     persistentPile = persistentPile.addCard(card);
+                  }
+                  break;
+               default:
+                  Card removed = pile.removeCard(card);
+                  int before = persistentPile.size();
+                  persistentPile = persistentPile.removeCard(card);
+                  assertEquals(removed == null ? before : before - 1, persistentPile.size());
+                  break;
+            }
+
+            assertEquals(list.size(), vector.size());
+            if (!list.isEmpty())
+            {
+               int index = random.nextInt(list.size());
+               assertSame(list.get(index), vector.get(index));
+            }
+            assertEquals(deck.size(), persistentDeck.size());
+            assertTrue(persistentDeck.slotCount() <= Math.max(64, 2 * persistentDeck.size() + 1),
+                       persistentDeck.slotCount() + " slots for " + persistentDeck.size() + " cards");
+            assertEquals(player.size(), persistentPlayer.size());
+            assertEquals(player.getHighestCard() == null ? -1 : player.getHighestCard().getValue(),
+                         persistentPlayer.getHighestCard() == null ? -1 : persistentPlayer.getHighestCard().getValue());
+            assertEquals(pile.size(), persistentPile.size());
+            assertEquals(pile.peekTop(), persistentPile.peekTop());
+            int emptySlots = persistentPile.slotCount() - persistentPile.size();
+            assertTrue(emptySlots <= Math.max(16, persistentPile.size()),
+                       emptySlots + " empty slots for " + persistentPile.size() + " cards");
+
+            if (step % 250 == 0)
+            {
+               snapshots.add(new Object[] { vector, list.toArray(new Card[0]), persistentDeck, deck.getCards(),
+                                            persistentPlayer, sortedNames(player.getHand()),
+                                            persistentPile, pile.getCards() });
+            }
+         }
+
+         Card[] listed = new Card[vector.size()];
+         vector.copyTo(0, listed, 0, listed.length);
+         assertArrayEquals(list.toArray(new Card[0]), listed);
+         assertArrayEquals(deck.getCards(), persistentDeck.getCards());
+         assertArrayEquals(deck.getCards(), persistentDeck.toDeck().getCards());
+         assertArrayEquals(sortedNames(player.getHand()), sortedNames(persistentPlayer.getHand()));
+         assertArrayEquals(pile.getCards(), persistentPile.getCards());
+         assertArrayEquals(pile.getCards(), persistentPile.toDiscardPile().getCards());
+
+         for (Object[] snapshot : snapshots)
+         {
+            @SuppressWarnings("unchecked")
+            PersistentVector<Card> oldVector = (PersistentVector<Card>) snapshot[0];
+            Card[] oldListed = new Card[oldVector.size()];
+            oldVector.copyTo(0, oldListed, 0, oldListed.length);
+            assertArrayEquals((Card[]) snapshot[1], oldListed);
+            assertArrayEquals((Card[]) snapshot[3], ((PersistentDeck) snapshot[2]).getCards());
+            assertArrayEquals((String[]) snapshot[5], sortedNames(((PersistentPlayer) snapshot[4]).getHand()));
+            assertArrayEquals((Card[]) snapshot[7], ((PersistentDiscardPile) snapshot[6]).getCards());
+         }
+      }
+   }
+
+   /**
+    * Returns the names of some cards in sorted order, to compare hands whose order differs
+    * @param cards the cards
+    * @return the sorted names
+    */
+   private static String[] sortedNames(Card[] cards)
+   {
+      String[] names = new String[cards.length];
+      for (int i = 0; i < cards.length; i++)
+      {
+         names[i] = cards[i].toString();
+      }
+      Arrays.sort(names);
+      return names;
+   }
+
+   @Test
+   public void deckDefinitionsLayOutCopiesAndOrders() throws IOException
+   {
+      Card standard = Card.byId(0);
+      String text = "# Two small decks\n"
+                    + "deck Mini   # ranks first, then the whole deck twice\n"
+                    + "order ranks\n"
+                    + "copies 2\n"
+                    + "suits Red \"Deep Blue\"\n"
+                    + "card One 1\n"
+                    + "card \" Draw Two \" 20 x2\n"
+                    + "suits Wild\n"
+                    + "card Wild 50 x3\n"
+                    + "\n"
+                    + "deck Suited\r\n"
+                    + "suits Red \"" + standard.getSuit() + "\"\r\n"
+                    + "card One 1\r\n"
+                    + "card \"" + standard.getName() + "\" " + standard.getValue() + "\r\n";
+      DeckDefinitions registry = new DeckDefinitions();
+      List<DeckDefinition> loaded = registry.load("small.deck", utf8(text));
+
+      assertEquals(2, loaded.size());
+      assertEquals(2, registry.size());
+      assertSame(loaded.get(0), registry.get("Mini"));
+      assertSame(loaded.get(1), registry.get("Suited"));
+      assertNull(registry.get("Unknown"));
+
+      Card[] once = {
+         new Card("One", "Red", 1), new Card("One", "Deep Blue", 1),
+         new Card("Draw Two", "Red", 20), new Card("Draw Two", "Red", 20),
+         new Card("Draw Two", "Deep Blue", 20), new Card("Draw Two", "Deep Blue", 20),
+         new Card("Wild", "Wild", 50), new Card("Wild", "Wild", 50), new Card("Wild", "Wild", 50)
+      };
+      Card[] twice = Arrays.copyOf(once, 2 * once.length);
+      System.arraycopy(once, 0, twice, once.length, once.length);
+      assertArrayEquals(twice, registry.get("Mini").getCards());
+      assertArrayEquals(twice, registry.newDeck("Mini").getCards());
+
+      Card[] suited = {
+         new Card("One", "Red", 1), new Card(standard.getName(), "Red", standard.getValue()),
+         new Card("One", standard.getSuit(), 1), standard
+      };
+      Card[] cards = registry.get("Suited").getCards();
+      assertArrayEquals(suited, cards);
+
+      // Equal cards share one instance across definitions, and standard cards are the canonical ones
+      assertSame(registry.get("Mini").getCards()[0], cards[0]);
+      assertSame(registry.get("Mini").getCards()[2], registry.get("Mini").getCards()[3]);
+      assertSame(standard, cards[3]);
+      assertSame(cards[0].getSuit(), cards[1].getSuit());
+      assertThrows(IllegalArgumentException.class, () -> registry.newDeck("Unknown"));
+   }
+
+   /**
+    * Encodes definition text the way a definition file holds it
+    * @param text the text
+    * @return the UTF-8 bytes
+    */
+   private static ByteBuffer utf8(String text)
+   {
+      return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+   }
+
+   @Test
+   public void malformedDeckDefinitionsRegisterNothing() throws IOException
+   {
+      DeckDefinitions registry = new DeckDefinitions();
+      registry.load("base.deck", utf8("deck Base\nsuits Red\ncard One 1\n"));
+      int strings = registry.internedStrings();
+      int cards = registry.internedCards();
+
+      String fresh = "deck Fresh\nsuits Novel\ncard Brand 7 x2\n";
+      String[] malformed = {
+         fresh + "deck Broken\nsuits Novel\ncard Zero 0\n",
+         fresh + "deck Fresh\nsuits Red\ncard One 1\n",
+         fresh + "deck Base\nsuits Red\ncard One 1\n",
+         fresh + "deck Loose\ncard Loose 1\n",
+         fresh + "suits Empty\nsuits Red\ncard One 1\n",
+         fresh + "order ranks\n",
+         fresh + "order sideways\n",
+         fresh + "copies 0\n",
+         fresh + "card Many 1 2\n",
+         fresh + "card Many 1 x0\n",
+         fresh + "card \"Unclosed 1\n",
+         fresh + "card \"  \" 1\n",
+         fresh + "shuffle\n",
+         "suits Red\ncard One 1\n",
+         "deck Nothing\n",
+         fresh + "deck Huge\ncopies 999999999\nsuits Red\ncard One 1 x2\n"
+      };
+      for (String text : malformed)
+      {
+         assertThrows(IllegalArgumentException.class,
+                      () -> registry.load("bad.deck", utf8(text)), text);
+         assertEquals(1, registry.size(), text);
+         assertNull(registry.get("Fresh"), text);
+         assertEquals(strings, registry.internedStrings(), text);
+         assertEquals(cards, registry.internedCards(), text);
+      }
+
+      IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+         () -> registry.load("bad.deck", utf8(malformed[0])));
+      assertTrue(error.getMessage().startsWith("bad.deck:6:"), error.getMessage());
+      assertThrows(CharacterCodingException.class,
+                   () -> registry.load("bad.deck", ByteBuffer.wrap(new byte[] { 'd', (byte) 0xFF })));
+
+      // The same definitions load once the file is fixed, and only then join the shared tables
+      registry.load("fresh.deck", utf8(fresh));
+      assertEquals(2, registry.size());
+      assertEquals(strings + 3, registry.internedStrings());
+      assertEquals(cards + 1, registry.internedCards());
+      Card[] brand = registry.get("Fresh").getCards();
+      assertSame(brand[0], brand[1]);
+   }
+
+   /**
+    * Builds a shoe of several standard decks
+    * @param copies the number of decks
+    * @return the cards of all the decks
+    */
+   private static Card[] shoe(int copies)
+   {
+      Card[] cards = new Card[copies * Card.STANDARD_COUNT];
+      for (int i = 0; i < cards.length; i++)
+      {
+         cards[i] = Card.byId(i % Card.STANDARD_COUNT);
+      }
+      return cards;
+   }
+
+   /**
+    * Has several threads drain one concurrent deck, mixing single and bulk draws,
+    * and checks every card was dealt exactly once
+    * @param copies the number of decks in the shoe
+    * @param threads the number of dealer threads
+    * @param seed the shuffle seed
+    */
+   private static void drainConcurrently(int copies, int threads, long seed) throws InterruptedException
+   {
+      final ConcurrentDeck deck = new ConcurrentDeck(shoe(copies), CardRandom.seeded(seed));
+      final int[][] counts = new int[threads][Card.STANDARD_COUNT];
+      final CountDownLatch start = new CountDownLatch(1);
+      Thread[] dealers = new Thread[threads];
+
+      for (int t = 0; t < threads; t++)
+      {
+         final int[] mine = counts[t];
+         final int bulk = t % 3 == 0 ? 1 : t + 1; // some threads draw one at a time, others in batches
+         dealers[t] = new Thread(() -> {
+            try
+            {
+               start.await();
+            }
+            catch (InterruptedException e)
+            {
+               return;
+            }
+            while (true)
+            {
+               if (bulk == 1)
+               {
+                  Card card = deck.draw();
+                  if (card == null)
+                  {
+                     return;
+                  }
+                  mine[card.getId()]++;
+               }
+               else
+               {
+                  Card[] cards = deck.draw(bulk);
+                  if (cards.length == 0)
+                  {
+                     return;
+                  }
+                  for (Card card : cards)
+                  {
+                     mine[card.getId()]++;
+                  }
+               }
+            }
+         });
+         dealers[t].start();
+      }
+
+      start.countDown();
+      for (Thread dealer : dealers)
+      {
+         dealer.join();
+      }
+
+      for (int id = 0; id < Card.STANDARD_COUNT; id++)
+      {
+         int dealt = 0;
+         for (int t = 0; t < threads; t++)
+         {
+            dealt += counts[t][id];
+         }
+         assertEquals(copies, dealt, "card " + Card.byId(id) + " dealt the wrong number of times");
+      }
+      assertEquals(0, deck.size());
+      assertNull(deck.draw());
+      assertEquals(0, deck.draw(5).length);
+   }
+
+   @Test
+   public void concurrentDeckDealsEveryCardOnceUnderContention() throws InterruptedException
+   {
+      for (int run = 0; run < 200; run++)
+      {
+         drainConcurrently(8, 8, run);
+      }
+   }
+
+   @Test
+   public void concurrentDeckDealsLargeShoeOnceUnderContention() throws InterruptedException
+   {
+      for (int run = 0; run < 10; run++)
+      {
+         drainConcurrently(200, 16, run);
+      }
+   }
+
+   @Test
+   public void concurrentDeckBulkDrawIsContiguous()
+   {
+      Deck source = new Deck();
+      source.shuffle(CardRandom.seeded(1));
+      ConcurrentDeck deck = new ConcurrentDeck(source);
+      Card[] expected = source.getCards();
+
+      assertEquals(expected[0], deck.draw());
+      Card[] batch = deck.draw(10);
+      for (int i = 0; i < batch.length; i++)
+      {
+         assertEquals(expected[i + 1], batch[i]);
+      }
+      assertEquals(41, deck.size());
+      assertEquals(41, deck.draw(100).length);
+   }
+
+   /**
+    * Returns the bytes allocated so far by the current thread
+    * @return the allocated bytes
+    */
+   private static long allocatedBytes()
+   {
+      ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      Assumptions.assumeTrue(bean instanceof com.sun.management.ThreadMXBean, "JVM does not report thread allocation");
+      return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+   }
+
+   @Test
+   public void gameContextPlaysWithoutAllocating()
+   {
+      GameContext context = new GameContext();
+      CardRandom random = CardRandom.seeded(42);
+      long checksum = 0;
+
+      // Warm up so the game loop is compiled before measuring
+      for (int game = 0; game < 200000; game++)
+      {
+         context.reset(random);
+         checksum += context.play();
+      }
+
+      long before = allocatedBytes();
+      for (int game = 0; game < 100000; game++)
+      {
+         context.reset(random);
+         checksum += context.play();
+      }
+      long allocated = allocatedBytes() - before;
+
+      // Anything allocated per game would add up to megabytes here; allow a little for the bean itself
+      assertTrue(allocated < 4096, "100,000 games allocated " + allocated + " bytes");
+      assertTrue(checksum > 0);
+   }
+
+   @Test
+   public void gameContextResetRestoresFullDeck()
+   {
+      GameContext context = new GameContext();
+      context.reset(CardRandom.seeded(7));
+      int winner = context.play();
+
+      assertEquals(42, context.getDeck().size());
+      assertEquals(10, context.getDiscardPile().size());
+      assertEquals(0, context.getPlayer1().size());
+      assertEquals(winner == 0, context.getPoints1() == context.getPoints2());
+
+      context.reset();
+      assertEquals(0, context.getPoints1());
+      assertEquals(0, context.getPoints2());
+      assertEquals(0, context.getDiscardPile().size());
+      assertArrayEquals(new Deck().getCards(), context.getDeck().getCards());
+   }
+
+   @Test
+   public void gamePipelineMatchesSequentialGames()
+   {
+      GameContext context = new GameContext();
+      CardRandom random = CardRandom.seeded(11);
+      SimulationResult expected = new SimulationResult(HighCardEngine.ROUNDS);
+      for (int game = 0; game < 50000; game++)
+      {
+         context.reset(random);
+         context.play();
+         expected.record(context.getPoints1(), context.getPoints2());
+      }
+
+      // Tiny rings and odd batches make every stage wait on its neighbours
+      GamePipeline pipeline = new GamePipeline()
+         .queueCapacity(GamePipeline.Stage.PREPARE, 8)
+         .queueCapacity(GamePipeline.Stage.PLAY, 2)
+         .batchSize(GamePipeline.Stage.DEAL, 3)
+         .batchSize(GamePipeline.Stage.SCORE, 5);
+      SimulationResult actual = pipeline.run(50000, 11);
+
+      assertEquals(expected.getPlayer1Wins(), actual.getPlayer1Wins());
+      assertEquals(expected.getTies(), actual.getTies());
+      assertArrayEquals(expected.getPlayer1Points(), actual.getPlayer1Points());
+      assertArrayEquals(expected.getPlayer2Points(), actual.getPlayer2Points());
+      for (GamePipeline.StageStats stage : pipeline.getStats())
+      {
+         assertEquals(50000, stage.getItems(), stage.toString());
+      }
+   }
+
+   @Test
+   public void gamePipelineReportsEveryStage()
+   {
+      GamePipeline pipeline = new GamePipeline()
+         .queueCapacity(GamePipeline.Stage.PLAY, 3)
+         .batchSize(GamePipeline.Stage.DEAL, 7);
+      assertEquals(0, pipeline.getStats().length);
+      assertNull(pipeline.getBottleneck());
+
+      pipeline.run(20000, 3);
+      GamePipeline.StageStats[] stats = pipeline.getStats();
+      assertEquals(4, stats.length);
+      GamePipeline.StageStats busiest = stats[0];
+      for (int i = 0; i < stats.length; i++)
+      {
+         GamePipeline.StageStats stage = stats[i];
+         assertEquals(GamePipeline.Stage.values()[i], stage.getStage());
+         assertEquals(20000, stage.getItems(), stage.toString());
+         assertTrue(stage.getAverageBatch() >= 1 && stage.getAverageBatch() <= stage.getBatchSize(), stage.toString());
+         assertTrue(stage.getThroughput() > 0, stage.toString());
+         assertTrue(stage.getAverageOccupancy() >= 0 && stage.getAverageOccupancy() <= 1, stage.toString());
+         double shares = stage.getUtilization() + stage.getStarvedFraction() + stage.getBlockedFraction();
+         assertTrue(stage.getUtilization() > 0 && shares <= 1 + 1e-9, stage.toString());
+         if (stage.getUtilization() > busiest.getUtilization())
+         {
+            busiest = stage;
+         }
+      }
+      assertEquals(1024, stats[0].getQueueCapacity());
+      assertEquals(4, stats[2].getQueueCapacity(), "capacities round up to a power of two");
+      assertEquals(7, stats[1].getBatchSize());
+      assertSame(busiest, pipeline.getBottleneck());
+
+      // The statistics are a copy, and an empty run replaces them
+      stats[0] = null;
+      assertNotNull(pipeline.getStats()[0]);
+      pipeline.run(0, 3);
+      for (GamePipeline.StageStats stage : pipeline.getStats())
+      {
+         assertEquals(0, stage.getItems());
+         assertEquals(0, stage.getAverageBatch());
+      }
+   }
+
+   @Test
+   public void gamePipelineSpreadsStagesOverWorkers()
+   {
+      SimulationResult expected = new GamePipeline().run(30000, 17);
+
+      // Uneven worker counts and small rings make the producers fan out to
+      // several consumers, and the consumers gather from several producers
+      GamePipeline pipeline = new GamePipeline()
+         .workers(GamePipeline.Stage.PREPARE, 2)
+         .workers(GamePipeline.Stage.DEAL, 2)
+         .workers(GamePipeline.Stage.PLAY, 3)
+         .workers(GamePipeline.Stage.SCORE, 2)
+         .queueCapacity(GamePipeline.Stage.PREPARE, 64)
+         .queueCapacity(GamePipeline.Stage.PLAY, 4)
+         .batchSize(GamePipeline.Stage.PLAY, 5);
+      SimulationResult actual = pipeline.run(30000, 17);
+
+      assertEquals(30000, actual.getGames());
+      assertEquals(expected.getPlayer1Wins(), actual.getPlayer1Wins());
+      assertEquals(expected.getTies(), actual.getTies());
+      assertArrayEquals(expected.getPlayer1Points(), actual.getPlayer1Points());
+      assertArrayEquals(expected.getPlayer2Points(), actual.getPlayer2Points());
+      int[] workers = {2, 2, 3, 2};
+      GamePipeline.StageStats[] stats = pipeline.getStats();
+      for (int i = 0; i < stats.length; i++)
+      {
+         assertEquals(workers[i], stats[i].getWorkers(), stats[i].toString());
+         assertEquals(30000, stats[i].getItems(), stats[i].toString());
+         double shares = stats[i].getUtilization() + stats[i].getStarvedFraction() + stats[i].getBlockedFraction();
+         assertTrue(shares <= 1 + 1e-9, stats[i].toString());
+      }
+      assertEquals(4, stats[2].getQueueCapacity());
+
+      assertThrows(IllegalArgumentException.class, () -> pipeline.workers(GamePipeline.Stage.PLAY, 0));
+      assertThrows(IllegalArgumentException.class, () -> pipeline.workers(GamePipeline.Stage.PLAY, 65));
+      assertThrows(IllegalArgumentException.class, () -> pipeline.workers(null, 2));
+   }
+
+   @Test
+   public void gamePipelineStopsAllStagesWhenInterrupted() throws InterruptedException
+   {
+      GamePipeline pipeline = new GamePipeline();
+      AtomicReference<Throwable> thrown = new AtomicReference<>();
+      AtomicBoolean stillInterrupted = new AtomicBoolean();
+      Thread runner = new Thread(() -> {
+         try
+         {
+            pipeline.run(Long.MAX_VALUE, 5);
+         }
+         catch (Throwable e)
+         {
+            thrown.set(e);
+            stillInterrupted.set(Thread.currentThread().isInterrupted());
+         }
+      });
+      runner.start();
+      Thread.sleep(200);
+      runner.interrupt();
+      runner.join(10000);
+
+      assertFalse(runner.isAlive(), "run() returned once every stage stopped");
+      assertTrue(thrown.get() instanceof IllegalStateException, String.valueOf(thrown.get()));
+      assertTrue(thrown.get().getCause() instanceof InterruptedException, String.valueOf(thrown.get().getCause()));
+      assertTrue(stillInterrupted.get(), "the interrupt is passed back to the caller");
+
+      // Every game a stage worked on was taken by the next one, is in the ring between them,
+      // or is in the batch the stage was still passing on
+      GamePipeline.StageStats[] stats = pipeline.getStats();
+      assertTrue(stats[0].getItems() > 0);
+      for (int i = 1; i < stats.length; i++)
+      {
+         long behind = stats[i - 1].getItems() - stats[i].getItems();
+         assertTrue(behind >= 0 && behind <= stats[i].getQueueCapacity() + stats[i - 1].getBatchSize(),
+                    stats[i] + " after " + stats[i - 1]);
+      }
+
+      // An interrupt already pending stops the run at once, and the pipeline still works afterwards
+      Thread.currentThread().interrupt();
+      IllegalStateException error = assertThrows(IllegalStateException.class, () -> pipeline.run(1000000, 5));
+      assertTrue(Thread.interrupted());
+      assertTrue(error.getCause() instanceof InterruptedException);
+      assertEquals(1000, pipeline.run(1000, 5).getGames());
+   }
+
+   private static String expect(BufferedReader in, String prefix) throws IOException
+   {
+      String line = in.readLine();
+      assertNotNull(line, "Connection closed while waiting for " + prefix);
+      assertTrue(line.startsWith(prefix + " ") || line.equals(prefix), "Expected " + prefix + " but got " + line);
+      return line;
+   }
+
+   @Test
+   public void tableServerPlaysGameOverLoopback() throws IOException
+   {
+      try (TableServer server = new TableServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2);
+           Socket socket1 = new Socket())
+      {
+         server.start();
+         socket1.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+         socket1.setSoTimeout(5000);
+         BufferedReader in1 = new BufferedReader(new InputStreamReader(socket1.getInputStream(), "US-ASCII"));
+         PrintStream out1 = new PrintStream(socket1.getOutputStream(), true, "US-ASCII");
+
+         out1.print("JOIN Alice\n");
+         expect(in1, "SEATED");
+         out1.print("PLAY 3\n");
+         assertEquals("ERR No game in progress", in1.readLine());
+
+         try (Socket socket2 = new Socket())
+         {
+            socket2.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+            socket2.setSoTimeout(5000);
+            BufferedReader in2 = new BufferedReader(new InputStreamReader(socket2.getInputStream(), "US-ASCII"));
+            PrintStream out2 = new PrintStream(socket2.getOutputStream(), true, "US-ASCII");
+
+            // The second connection is accepted on the other loop but still sits at Alice's table
+            out2.print("JOIN Bob\n");
+            assertEquals("SEATED 1 2", expect(in2, "SEATED"));
+            assertEquals("OPPONENT Alice", expect(in2, "OPPONENT"));
+            assertEquals("OPPONENT Bob", expect(in1, "OPPONENT"));
+            out2.print("QUIT\n");
+            assertEquals("LEFT", in1.readLine());
+         }
+         out1.print("JOIN Alice\n");
+         assertEquals("SEATED 2 1", expect(in1, "SEATED"));
+
+         try (Socket socket3 = new Socket())
+         {
+            socket3.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+            socket3.setSoTimeout(5000);
+            BufferedReader in3 = new BufferedReader(new InputStreamReader(socket3.getInputStream(), "US-ASCII"));
+            PrintStream out3 = new PrintStream(socket3.getOutputStream(), true, "US-ASCII");
+
+            out3.print("JOIN Carol\n");
+            assertEquals("SEATED 2 2", expect(in3, "SEATED"));
+            assertEquals("OPPONENT Alice", expect(in3, "OPPONENT"));
+            assertEquals("OPPONENT Carol", expect(in1, "OPPONENT"));
+
+            out1.print("READY\n");
+            out3.print("READY\n");
+            String[] hand1 = expect(in1, "HAND").split(" ");
+            String[] hand3 = expect(in3, "HAND").split(" ");
+            assertEquals(HighCardEngine.HAND_SIZE + 1, hand1.length);
+            assertEquals(HighCardEngine.HAND_SIZE + 1, hand3.length);
+
+            out1.print("PLAY " + hand3[1] + "\n");
+            assertEquals("ERR Card not in hand", in1.readLine());
+
+            for (int round = 1; round <= HighCardEngine.ROUNDS; round++)
+            {
+               out1.print("PLAY " + hand1[round] + "\n");
+               assertEquals("PLAYED " + hand1[round], in1.readLine());
+               out3.print("PLAY " + hand3[round] + "\n");
+               assertEquals("PLAYED " + hand3[round], in3.readLine());
+
+               int value1 = Card.byId(Integer.parseInt(hand1[round])).getValue();
+               int value2 = Card.byId(Integer.parseInt(hand3[round])).getValue();
+               int winner = value1 > value2 ? 1 : (value2 > value1 ? 2 : 0);
+               String result = "ROUND " + round + " " + hand1[round] + " " + hand3[round] + " " + winner;
+               assertEquals(result, in1.readLine());
+               assertEquals(result, in3.readLine());
+            }
+            String over = expect(in1, "OVER");
+            assertEquals(over, expect(in3, "OVER"));
+
+            String[] points = over.split(" ");
+            assertTrue(Integer.parseInt(points[1]) + Integer.parseInt(points[2]) <= HighCardEngine.ROUNDS);
+
+            out3.print("STATE\n");
+            assertEquals("STATE SEATED 2 5 " + points[1] + " " + points[2], in3.readLine());
+            out3.print("QUIT\n");
+            assertEquals("LEFT", in1.readLine());
+         }
+      }
+   }
+
+   @Test
+   public void tableServerPairsPlayersAcrossEventLoops() throws IOException
+   {
+      // Eight clients over four loops, all joining at once; each pair must meet at one table
+      int clients = 8;
+      Socket[] sockets = new Socket[clients];
+      try (TableServer server = new TableServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4))
+      {
+         server.start();
+         BufferedReader[] in = new BufferedReader[clients];
+         PrintStream[] out = new PrintStream[clients];
+         for (int i = 0; i < clients; i++)
+         {
+            sockets[i] = new Socket();
+            sockets[i].connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+            sockets[i].setSoTimeout(5000);
+            in[i] = new BufferedReader(new InputStreamReader(sockets[i].getInputStream(), "US-ASCII"));
+            out[i] = new PrintStream(sockets[i].getOutputStream(), true, "US-ASCII");
+         }
+         // READY follows JOIN in the same write, so it is already buffered when a connection moves loops
+         for (int i = 0; i < clients; i++)
+         {
+            out[i].print("JOIN P" + i + "\nREADY\n");
+         }
+
+         Map<Integer, int[]> tables = new HashMap<>();
+         String[] opponents = new String[clients];
+         for (int i = 0; i < clients; i++)
+         {
+            String[] seated = expect(in[i], "SEATED").split(" ");
+            int[] seats = tables.computeIfAbsent(Integer.parseInt(seated[1]), t -> new int[] { -1, -1 });
+            int seat = Integer.parseInt(seated[2]) - 1;
+            assertEquals(-1, seats[seat], "two players in one seat");
+            seats[seat] = i;
+            opponents[i] = expect(in[i], "OPPONENT").substring("OPPONENT ".length());
+         }
+         assertEquals(clients / 2, tables.size());
+         assertEquals(clients / 2, server.getTablesOpened());
+         for (int[] seats : tables.values())
+         {
+            assertEquals("P" + seats[1], opponents[seats[0]]);
+            assertEquals("P" + seats[0], opponents[seats[1]]);
+
+            // Both READYs were handled, so the table deals and plays a round
+            String[] hand1 = expect(in[seats[0]], "HAND").split(" ");
+            String[] hand2 = expect(in[seats[1]], "HAND").split(" ");
+            out[seats[0]].print("PLAY " + hand1[1] + "\n");
+            out[seats[1]].print("PLAY " + hand2[1] + "\n");
+            expect(in[seats[0]], "PLAYED");
+            expect(in[seats[1]], "PLAYED");
+            String round = expect(in[seats[0]], "ROUND");
+            assertEquals(round, expect(in[seats[1]], "ROUND"));
+            assertTrue(round.startsWith("ROUND 1 " + hand1[1] + " " + hand2[1] + " "), round);
+         }
+
+         // Closing the server closes every connection, moved between loops or not, and counts them all
+         assertEquals(clients, server.getConnectionCount());
+         server.close();
+         assertEquals(0, server.getConnectionCount());
+         for (int i = 0; i < clients; i++)
+         {
+            assertNull(in[i].readLine());
+         }
+      }
+      finally
+      {
+         for (Socket socket : sockets)
+         {
+            if (socket != null)
+            {
+               socket.close();
+            }
+         }
+      }
+   }
 }